@@ -37,16 +37,12 @@ import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
-import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
-import javax.naming.ldap.LdapContext;
 
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.objects.AttributeBuilder;
-import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.ldap.LdapConstants.ServerType;
-import org.identityconnectors.ldap.search.LdapInternalSearch;
 import static org.identityconnectors.ldap.LdapUtil.escapeDNValueOfJNDIReservedChars;
 
 /*
@@ -58,7 +54,8 @@ public class ADLdapUtil {
     private static final Log log = Log.getLog(ADLdapUtil.class);
 
     /*
-     * Maximum number of members retrieved from a group in one search
+     * Maximum number of members retrieved from a group in one search, unless
+     * the server tells otherwise
      */
     public static final int GROUP_MEMBERS_MAXRANGE = 1500;
 
@@ -259,45 +256,19 @@ public class ADLdapUtil {
         return fetchGroupMembersByRange(conn, LdapEntry.create(null, result));
     }
 
-    /*
-     * This method returns the list of members when the group has over 1500 members.
-     *
+    /**
+     * Returns the members of a group whose members the server returned a
+     * range at a time. See {@link ADRangedValues} to iterate over them instead.
      */
     public static List<Object> fetchGroupMembersByRange(LdapConnection conn, LdapEntry entry){
-        boolean done = false;
-        int first = 0;
-        int last = GROUP_MEMBERS_MAXRANGE -1;
         List<Object> members = new ArrayList<>();
-        // get the first slice (0-1499)
-        org.identityconnectors.framework.common.objects.Attribute range = conn.getSchemaMapping().createAttribute(ObjectClass.GROUP, String.format("member;range=%d-%d",first,last), entry, false);
-        if (range != null){
-            members.addAll(range.getValue());
-            first = last +1;
-            last = first + GROUP_MEMBERS_MAXRANGE -1;
-
-            while (!done) {
-                try {
-                    SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
-                    controls.setSearchScope(SearchControls.OBJECT_SCOPE);
-                    controls.setReturningAttributes(new String[]{String.format("member;range=%d-%d", first, last)});
-                    LdapContext context = conn.getInitialContext().newInstance(null);
-                    NamingEnumeration<SearchResult> entries = context.search(entry.getDN(), "objectclass=*", controls);
-                    SearchResult res = entries.next();
-                    if (res != null) {
-                        range = conn.getSchemaMapping().createAttribute(ObjectClass.GROUP, String.format("member;range=%d-%d", first, last), LdapEntry.create(null,res), true);
-                        // we hit the last slice... so the range ends with an '*'
-                        if (range.getValue().isEmpty()) {
-                            range = conn.getSchemaMapping().createAttribute(ObjectClass.GROUP, String.format("member;range=%d-*", first), LdapEntry.create(null,res), true);
-                            done = true;
-                        }
-                        members.addAll(range.getValue());
-                    }
-                } catch (NamingException e) {
-                    log.error(e, "Error reading group member;range attribute");
-                }
-                first = last + 1;
-                last = first + GROUP_MEMBERS_MAXRANGE -1;
+        ADRangedValues values = new ADRangedValues(conn, entry, "member");
+        try {
+            while (values.hasNext()) {
+                members.add(values.next());
             }
+        } finally {
+            values.close();
         }
         return members;
     }
@@ -0,0 +1,298 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.ldap.search.LdapInternalSearch;
+
+/**
+ * Iterates over the values of an attribute which Active Directory returns a
+ * range at a time, such as the {@code member} attribute of a large group,
+ * without holding all of them.
+ *
+ * <p>The ranges are sized after the {@code MaxValRange} limit of the server,
+ * and read through a single connection. When the connection may be used by
+ * other threads, the next range is read while the values of the current one
+ * are iterated over. The connection is released once the last value was
+ * iterated over, or when the iterator is closed.</p>
+ */
+public class ADRangedValues implements Iterator<Object> {
+
+    private static final Log log = Log.getLog(ADRangedValues.class);
+
+    private static final Pattern RANGE = Pattern.compile(";range=(\\d+)-(\\d+|\\*)$", Pattern.CASE_INSENSITIVE);
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "LDAP ranged values read");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final LdapConnection conn;
+    private final LdapName entryDN;
+    private final String attrName;
+    private final int rangeSize;
+    private final boolean pipelined;
+
+    private LdapContext ctx;
+    private Iterator<Object> values;
+    // The first value of the next range, or -1 after the last range.
+    private int next;
+    private Future<Range> nextRange;
+
+    /**
+     * Creates an iterator over the values of the given attribute of an
+     * entry returned by a search, starting with the range returned with the
+     * entry.
+     */
+    public ADRangedValues(LdapConnection conn, LdapEntry entry, String attrName) {
+        this.conn = conn;
+        this.entryDN = entry.getDN();
+        this.attrName = attrName;
+        Range first = findRange(entry.getAttributes(), attrName);
+        if (first == null) {
+            values = Collections.emptyList().iterator();
+            next = -1;
+        } else {
+            values = first.values.iterator();
+            next = first.next;
+        }
+        Integer maxValRange = next >= 0 ? conn.getAdminLimits().get("MaxValRange") : null;
+        if (maxValRange != null && maxValRange > 0) {
+            rangeSize = maxValRange;
+        } else if (first != null && first.size > 0) {
+            rangeSize = first.size;
+        } else {
+            rangeSize = ADLdapUtil.GROUP_MEMBERS_MAXRANGE;
+        }
+        pipelined = conn.canSearchInOtherThreads();
+        if (next >= 0) {
+            ctx = conn.borrowReadContext();
+            if (pipelined) {
+                readAhead();
+            }
+        }
+    }
+
+    /**
+     * Returns the first range of the given attribute, e.g.
+     * {@code member;range=0-1499}, or {@code null} if the server returned all
+     * its values at once. The {@code member;range=0-0} attribute returned by
+     * DirSync for removed values is not a range.
+     */
+    public static Attribute getRangedAttribute(Attributes attrs, String attrName) {
+        NamingEnumeration<? extends Attribute> attrEnum = attrs.getAll();
+        try {
+            while (attrEnum.hasMore()) {
+                Attribute attr = attrEnum.next();
+                Matcher matcher = getRangeMatcher(attr.getID(), attrName);
+                if (matcher != null && Integer.parseInt(matcher.group(1)) == 0 && !"0".equals(matcher.group(2))) {
+                    return attr;
+                }
+            }
+        } catch (NamingException e) {
+            throw new ConnectorException(e);
+        }
+        return null;
+    }
+
+    public boolean hasNext() {
+        while (!values.hasNext()) {
+            if (next < 0) {
+                close();
+                return false;
+            }
+            Range range;
+            try {
+                range = pipelined ? takeReadAhead() : read(next);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+            values = range.values.iterator();
+            next = range.next;
+            if (next >= 0 && pipelined) {
+                readAhead();
+            }
+        }
+        return true;
+    }
+
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return values.next();
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops reading the ranges, and releases the connection.
+     */
+    public void close() {
+        next = -1;
+        values = Collections.emptyList().iterator();
+        if (nextRange != null) {
+            // The connection is released once the range being read is in.
+            try {
+                nextRange.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.ok(e.getCause(), "Range read after close failed");
+            }
+            nextRange = null;
+        }
+        if (ctx != null) {
+            conn.releaseContext(ctx);
+            ctx = null;
+        }
+    }
+
+    private void readAhead() {
+        final int first = next;
+        nextRange = executor.submit(new Callable<Range>() {
+            public Range call() {
+                return read(first);
+            }
+        });
+    }
+
+    private Range takeReadAhead() {
+        try {
+            return nextRange.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ConnectorException(cause);
+        } finally {
+            nextRange = null;
+        }
+    }
+
+    /**
+     * Reads the range starting at the given value. A failure is thrown, as
+     * the values would otherwise look complete while they are not.
+     */
+    private Range read(int first) {
+        String rangeAttr = String.format("%s;range=%d-%d", attrName, first, first + rangeSize - 1);
+        SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
+        controls.setSearchScope(SearchControls.OBJECT_SCOPE);
+        controls.setReturningAttributes(new String[] { rangeAttr });
+        try {
+            NamingEnumeration<SearchResult> results = ctx.search(entryDN, "(objectClass=*)", controls);
+            try {
+                if (results.hasMore()) {
+                    Range range = findRange(results.next().getAttributes(), attrName);
+                    if (range != null) {
+                        return range;
+                    }
+                }
+            } finally {
+                results.close();
+            }
+        } catch (NamingException e) {
+            throw new ConnectorException("Error reading group attribute " + rangeAttr, e);
+        }
+        return new Range(Collections.emptyList(), 0, -1);
+    }
+
+    private static Range findRange(Attributes attrs, String attrName) {
+        NamingEnumeration<? extends Attribute> attrEnum = attrs.getAll();
+        try {
+            while (attrEnum.hasMore()) {
+                Attribute attr = attrEnum.next();
+                Matcher matcher = getRangeMatcher(attr.getID(), attrName);
+                if (matcher == null) {
+                    continue;
+                }
+                List<Object> values = new ArrayList<Object>(attr.size());
+                NamingEnumeration<?> valueEnum = attr.getAll();
+                while (valueEnum.hasMore()) {
+                    values.add(valueEnum.next());
+                }
+                int first = Integer.parseInt(matcher.group(1));
+                if ("*".equals(matcher.group(2))) {
+                    return new Range(values, 0, -1);
+                }
+                int last = Integer.parseInt(matcher.group(2));
+                return new Range(values, last - first + 1, last + 1);
+            }
+        } catch (NamingException e) {
+            throw new ConnectorException(e);
+        }
+        return null;
+    }
+
+    private static Matcher getRangeMatcher(String attrID, String attrName) {
+        if (!attrID.regionMatches(true, 0, attrName, 0, attrName.length())) {
+            return null;
+        }
+        Matcher matcher = RANGE.matcher(attrID);
+        if (!matcher.find() || matcher.start() != attrName.length()) {
+            return null;
+        }
+        return matcher;
+    }
+
+    private static final class Range {
+
+        private final List<Object> values;
+        // The number of values the server returns at most, or 0 if unknown.
+        private final int size;
+        private final int next;
+
+        Range(List<Object> values, int size, int next) {
+            this.values = values;
+            this.size = size;
+            this.next = next;
+        }
+    }
+}
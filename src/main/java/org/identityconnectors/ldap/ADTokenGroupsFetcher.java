@@ -0,0 +1,252 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.identityconnectors.ldap.ADLdapUtil.objectSIDtoString;
+import static org.identityconnectors.ldap.LdapUtil.escapeAttrValue;
+import static org.identityconnectors.ldap.LdapUtil.escapeDNValueOfJNDIReservedChars;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.ldap.search.LdapSearchResultsHandler;
+import org.identityconnectors.ldap.search.LdapSearches;
+
+/**
+ * Reads the {@code tokenGroups} attribute of the entries returned by a
+ * search. Active Directory only computes this attribute when an entry is read
+ * on its own, which costs a request per entry.
+ *
+ * <p>With {@link LdapConfiguration#getTokenGroupsThreads()} threads, the
+ * entries can be prefetched as soon as the search returns them: they are read
+ * by other threads through pooled connections while the search goes on.
+ * Otherwise each entry is read when its groups are asked for.</p>
+ *
+ * <p>The groups can also be returned as DNs. The SIDs are resolved by a
+ * search for those not resolved yet, and remembered, so that the entries of
+ * a same search share them. A fetcher is therefore meant to live as long as
+ * one search, and is safe for use by several threads.</p>
+ */
+public class ADTokenGroupsFetcher {
+
+    private static final Log log = Log.getLog(ADTokenGroupsFetcher.class);
+
+    /**
+     * The maximum number of SIDs resolved by a single search.
+     */
+    static final int SID_CHUNK_SIZE = 100;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "LDAP token groups read");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final LdapConnection conn;
+    private final Semaphore reads;
+    private final Map<String, Future<List<String>>> prefetched = new ConcurrentHashMap<String, Future<List<String>>>();
+    // The group DNs by SID, or the SID itself when it could not be resolved.
+    private final Map<String, String> groupDNs = new HashMap<String, String>();
+
+    public ADTokenGroupsFetcher(LdapConnection conn) {
+        this.conn = conn;
+        int threads = conn.getConfiguration().getTokenGroupsThreads();
+        reads = threads > 0 && conn.canSearchInOtherThreads() ? new Semaphore(threads) : null;
+    }
+
+    /**
+     * Returns {@code true} if {@link #prefetch(String)} reads the entries in
+     * other threads.
+     */
+    public boolean isConcurrent() {
+        return reads != null;
+    }
+
+    /**
+     * Starts reading the groups of the given entry in another thread, when
+     * the fetcher is concurrent. Waits while all its threads are busy.
+     */
+    public void prefetch(final String entryDN) {
+        if (reads == null || prefetched.containsKey(entryDN)) {
+            return;
+        }
+        try {
+            reads.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException(e);
+        }
+        FutureTask<List<String>> task = new FutureTask<List<String>>(new Callable<List<String>>() {
+            public List<String> call() {
+                try {
+                    return readTokenGroups(entryDN);
+                } finally {
+                    reads.release();
+                }
+            }
+        });
+        prefetched.put(entryDN, task);
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            prefetched.remove(entryDN);
+            reads.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the SIDs of the groups of the given entry, or their DNs if so
+     * configured.
+     */
+    public List<String> getTokenGroups(String entryDN) {
+        List<String> sids;
+        Future<List<String>> future = prefetched.remove(entryDN);
+        if (future != null) {
+            try {
+                sids = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectorException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new ConnectorException(cause);
+            }
+        } else {
+            sids = readTokenGroups(entryDN);
+        }
+        if (!conn.getConfiguration().isTokenGroupsAsDNs()) {
+            return sids;
+        }
+        return toGroupDNs(sids);
+    }
+
+    /**
+     * Forgets the entries prefetched but not asked for, which happens when
+     * the handler stops the search. Their reads complete on their own.
+     */
+    public void cancel() {
+        prefetched.clear();
+    }
+
+    private List<String> readTokenGroups(String entryDN) {
+        List<String> groups = new ArrayList<String>();
+        LdapContext ctx = conn.borrowReadContext();
+        try {
+            Attributes attrs = ctx.getAttributes(escapeDNValueOfJNDIReservedChars(entryDN), new String[] { LdapConstants.MS_TOKEN_GROUPS_ATTR });
+            Attribute attr = attrs.get(LdapConstants.MS_TOKEN_GROUPS_ATTR);
+            if (attr != null) {
+                NamingEnumeration<?> ae = attr.getAll();
+                while (ae.hasMore()) {
+                    groups.add(objectSIDtoString((byte[]) ae.next()));
+                }
+            }
+        } catch (NamingException e) {
+            log.error(e, "Error reading tokenGroups attribute");
+        } finally {
+            conn.releaseContext(ctx);
+        }
+        return groups;
+    }
+
+    private List<String> toGroupDNs(List<String> sids) {
+        Set<String> unresolved = new LinkedHashSet<String>();
+        synchronized (groupDNs) {
+            for (String sid : sids) {
+                if (!groupDNs.containsKey(sid)) {
+                    unresolved.add(sid);
+                }
+            }
+        }
+        List<String> list = new ArrayList<String>(unresolved);
+        for (int i = 0; i < list.size(); i += SID_CHUNK_SIZE) {
+            resolve(list.subList(i, Math.min(i + SID_CHUNK_SIZE, list.size())));
+        }
+        List<String> result = new ArrayList<String>(sids.size());
+        synchronized (groupDNs) {
+            for (String sid : sids) {
+                result.add(groupDNs.get(sid));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Searches the groups with the given SIDs under the base contexts.
+     */
+    private void resolve(List<String> sids) {
+        StringBuilder filter = new StringBuilder();
+        if (sids.size() > 1) {
+            filter.append("(|");
+        }
+        for (String sid : sids) {
+            filter.append('(').append(LdapConstants.MS_SID_ATTR).append('=');
+            escapeAttrValue(sid, filter);
+            filter.append(')');
+        }
+        if (sids.size() > 1) {
+            filter.append(')');
+        }
+        final Map<String, String> found = new HashMap<String, String>();
+        LdapSearches.findEntries(new LdapSearchResultsHandler() {
+            public boolean handle(String baseDN, SearchResult result) throws NamingException {
+                LdapEntry entry = LdapEntry.create(baseDN, result);
+                Attribute attr = entry.getAttributes().get(LdapConstants.MS_SID_ATTR);
+                if (attr != null) {
+                    found.put(objectSIDtoString(attr), entry.getDN().toString());
+                }
+                return true;
+            }
+        }, conn, filter.toString(), LdapConstants.MS_SID_ATTR);
+        synchronized (groupDNs) {
+            for (String sid : sids) {
+                String dn = found.get(sid);
+                if (dn == null) {
+                    log.ok("Group {0} is not under the base contexts", sid);
+                    dn = sid;
+                }
+                groupDNs.put(sid, dn);
+            }
+        }
+    }
+}
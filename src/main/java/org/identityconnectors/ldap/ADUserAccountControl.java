@@ -42,7 +42,10 @@ import javax.naming.directory.SearchResult;
 
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
 import org.identityconnectors.framework.common.objects.OperationalAttributeInfos;
+import org.identityconnectors.ldap.LdapConstants.ServerType;
 import org.identityconnectors.ldap.search.LdapInternalSearch;
 
 /* 
@@ -321,6 +324,54 @@ public class ADUserAccountControl {
         return control;
     }
 
+    /**
+     * Adds the account control attributes of an entry of the given server
+     * type to the given builder: the flags of userAccountControl and
+     * msDS-User-Account-Control-Computed for Active Directory, the
+     * msDS-UserAccountDisabled, msDS-UserPasswordExpired or
+     * ms-DS-UserAccountAutoLocked attribute for AD LDS.
+     */
+    public static void addControlAttributes(ConnectorObjectBuilder builder, Attributes attrs, ServerType serverType) throws NamingException {
+        switch (serverType) {
+            case MSAD_GC:
+            case MSAD:
+                addUserAccountControlAttributes(builder, attrs);
+                break;
+            case MSAD_LDS:
+                if (attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED) != null) {
+                    builder.addAttribute(AttributeBuilder.buildEnabled(!Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED).get().toString())));
+                } else if (attrs.get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED) != null) {
+                    builder.addAttribute(AttributeBuilder.buildPasswordExpired(Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED).get().toString())));
+                } else if (attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED) != null) {
+                    builder.addAttribute(AttributeBuilder.buildLockOut(Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED).get().toString())));
+                }
+                break;
+            default:
+        }
+    }
+
+    /**
+     * Adds the flags of the userAccountControl and
+     * msDS-User-Account-Control-Computed attributes of an Active Directory
+     * entry to the given builder. Each attribute is parsed once.
+     */
+    public static void addUserAccountControlAttributes(ConnectorObjectBuilder builder, Attributes attrs) throws NamingException {
+        javax.naming.directory.Attribute uacAttr = attrs.get(MS_USR_ACCT_CTRL_ATTR);
+        if (uacAttr != null) {
+            int uac = Integer.parseInt(uacAttr.get().toString());
+            builder.addAttribute(AttributeBuilder.buildEnabled((uac & ACCOUNT_DISABLED) != ACCOUNT_DISABLED));
+            builder.addAttribute(AttributeBuilder.build(DONT_EXPIRE_PASSWORD_NAME, (uac & DONT_EXPIRE_PASSWORD) == DONT_EXPIRE_PASSWORD));
+            builder.addAttribute(AttributeBuilder.build(PASSWORD_NOTREQD_NAME, (uac & PASSWD_NOTREQD) == PASSWD_NOTREQD));
+            builder.addAttribute(AttributeBuilder.build(SMARTCARD_REQUIRED_NAME, (uac & SMARTCARD_REQUIRED) == SMARTCARD_REQUIRED));
+        }
+        javax.naming.directory.Attribute msDSUacAttr = attrs.get(MSDS_USR_ACCT_CTRL_ATTR);
+        if (msDSUacAttr != null) {
+            int msDSUac = Integer.parseInt(msDSUacAttr.get().toString());
+            builder.addAttribute(AttributeBuilder.buildLockOut((msDSUac & LOCKOUT) == LOCKOUT));
+            builder.addAttribute(AttributeBuilder.buildPasswordExpired((msDSUac & PASSWORD_EXPIRED) == PASSWORD_EXPIRED));
+        }
+    }
+
     // Static helpers
     public static boolean isAccountDisabled(String status) {
         return ((Integer.parseInt(status) & ACCOUNT_DISABLED) == ACCOUNT_DISABLED);
@@ -22,6 +22,8 @@
  */
 package org.identityconnectors.ldap;
 
+import static org.identityconnectors.common.CollectionUtil.newCaseInsensitiveSet;
+
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -207,8 +209,12 @@ public abstract class AppendingAttributes implements Attributes {
 
         @Override
         protected Enumeration<Attribute> getRemainingValues() {
-            final Set<String> remaining = getAttributeIDsToAppend();
-            remaining.removeAll(replaced);
+            // The IDs to append may be read-only.
+            final Set<String> remaining = newCaseInsensitiveSet();
+            remaining.addAll(getAttributeIDsToAppend());
+            for (String attrID : replaced) {
+                remaining.remove(attrID);
+            }
 
             return new Enumeration<Attribute>() {
                 private final Iterator<String> iterator = remaining.iterator();
@@ -244,8 +250,12 @@ public abstract class AppendingAttributes implements Attributes {
 
         @Override
         protected Enumeration<String> getRemainingValues() {
-            final Set<String> remaining = getAttributeIDsToAppend();
-            remaining.removeAll(replaced);
+            // The IDs to append may be read-only.
+            final Set<String> remaining = newCaseInsensitiveSet();
+            remaining.addAll(getAttributeIDsToAppend());
+            for (String attrID : replaced) {
+                remaining.remove(attrID);
+            }
 
             return new Enumeration<String>() {
                 private final Iterator<String> iterator = remaining.iterator();
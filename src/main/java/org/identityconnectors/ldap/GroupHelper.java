@@ -24,17 +24,23 @@
  */
 package org.identityconnectors.ldap;
 
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static org.identityconnectors.ldap.LdapUtil.escapeAttrValue;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
+import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
 import javax.naming.directory.AttributeInUseException;
 import javax.naming.directory.BasicAttribute;
 import javax.naming.directory.DirContext;
@@ -43,17 +49,33 @@ import javax.naming.directory.SearchResult;
 import javax.naming.ldap.LdapContext;
 import javax.naming.ldap.LdapName;
 
+import org.identityconnectors.common.Pair;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.ldap.search.LdapSearches;
+import org.identityconnectors.ldap.search.LdapSearchResultCache;
 import org.identityconnectors.ldap.search.LdapSearchResultsHandler;
 
 public class GroupHelper {
 
     private static final Log log = Log.getLog(GroupHelper.class);
 
+    /**
+     * The maximum number of member references whose POSIX groups are found
+     * by a single search.
+     */
+    static final int POSIX_GROUPS_CHUNK_SIZE = 100;
+
     private final LdapConnection conn;
 
+    // The number of entries whose LDAP groups were searched one at a time.
+    private int ldapGroupsSearched;
+    private LdapGroupIndex groupIndex;
+    private boolean groupIndexFailed;
+    // The POSIX groups of the member references of the entries being read.
+    private Map<String, Set<String>> prefetchedPosixGroups = emptyMap();
+
     public GroupHelper(LdapConnection conn) {
         this.conn = conn;
     }
@@ -76,6 +98,20 @@ public class GroupHelper {
         return memberAttr;
     }
 
+    /**
+     * Returns the LDAP groups of an entry returned by a search. Once the
+     * groups of enough entries were searched one at a time, they are told
+     * from an index of all the groups, which may be as old as the configured
+     * timeout.
+     */
+    public List<String> getIndexedLdapGroups(String entryDN) {
+        LdapGroupIndex index = getGroupIndex();
+        if (index != null) {
+            return index.getGroups(entryDN);
+        }
+        return getLdapGroups(entryDN);
+    }
+
     public List<String> getLdapGroups(String entryDN) {
         log.ok("Retrieving LDAP groups for {0}", entryDN);
         String filter = createAttributeFilter(getLdapGroupMemberAttribute(), singletonList(entryDN));
@@ -84,6 +120,36 @@ public class GroupHelper {
         return handler.getResults();
     }
 
+    /**
+     * Returns the index of the LDAP groups once the groups of enough entries
+     * were searched one at a time, or {@code null}. The index built by a
+     * previous search is used right away.
+     */
+    private synchronized LdapGroupIndex getGroupIndex() {
+        int threshold = conn.getConfiguration().getLdapGroupsIndexThreshold();
+        if (threshold <= 0 || groupIndexFailed) {
+            return null;
+        }
+        if (groupIndex == null) {
+            groupIndex = conn.getSharedGroupIndex();
+        }
+        if (groupIndex == null) {
+            if (ldapGroupsSearched < threshold) {
+                ldapGroupsSearched++;
+                return null;
+            }
+            try {
+                groupIndex = LdapGroupIndex.build(conn, getLdapGroupMemberAttribute());
+            } catch (ConnectorException e) {
+                log.warn(e, "Could not index the LDAP groups, searching them for each entry");
+                groupIndexFailed = true;
+                return null;
+            }
+            conn.shareGroupIndex(groupIndex);
+        }
+        return groupIndex;
+    }
+
     public Set<GroupMembership> getLdapGroupMemberships(String entryDN) {
         log.ok("Retrieving LDAP group memberships for {0}", entryDN);
         String filter = createAttributeFilter(getLdapGroupMemberAttribute(), singletonList(entryDN));
@@ -96,73 +162,132 @@ public class GroupHelper {
     public void addLdapGroupMemberships(String entryDN, Collection<String> groupDNs, LdapContext context) {
         log.ok("Adding {0} to LDAP groups {1}", entryDN, groupDNs);
         String ldapGroupMemberAttribute = getLdapGroupMemberAttribute();
+        List<MemberModification> mods = new ArrayList<MemberModification>(groupDNs.size());
         for (String groupDN : groupDNs) {
-            addMemberToGroup(ldapGroupMemberAttribute, entryDN, groupDN, context);
+            mods.add(new MemberModification(DirContext.ADD_ATTRIBUTE, ldapGroupMemberAttribute, entryDN, groupDN));
         }
+        modifyGroups(mods, context);
     }
 
     public void removeLdapGroupMemberships(String entryDN, Collection<String> groupDNs, LdapContext context) {
         log.ok("Removing {0} from LDAP groups {1}", entryDN, groupDNs);
         String ldapGroupMemberAttribute = getLdapGroupMemberAttribute();
+        List<MemberModification> mods = new ArrayList<MemberModification>(groupDNs.size());
         for (String groupDN : groupDNs) {
-            removeMemberFromGroup(ldapGroupMemberAttribute, entryDN, groupDN, context);
+            mods.add(new MemberModification(DirContext.REMOVE_ATTRIBUTE, ldapGroupMemberAttribute, entryDN, groupDN));
         }
+        modifyGroups(mods, context);
     }
 
     public void modifyLdapGroupMemberships(Modification<GroupMembership> mod, LdapContext context) {
         log.ok("Modifying LDAP group memberships: removing {0}, adding {1}", mod.getRemoved(), mod.getAdded());
-        String ldapGroupMemberAttribute = getLdapGroupMemberAttribute();
-        for (GroupMembership membership : mod.getRemoved()) {
-            removeMemberFromGroup(ldapGroupMemberAttribute, membership.getMemberRef(), membership.getGroupDN(), context);
-        }
-        for (GroupMembership membership : mod.getAdded()) {
-            addMemberToGroup(ldapGroupMemberAttribute, membership.getMemberRef(), membership.getGroupDN(), context);
-        }
+        modifyGroups(getMemberModifications(getLdapGroupMemberAttribute(), mod), context);
     }
 
     public List<String> getPosixGroups(Collection<String> posixRefAttrs) {
         log.ok("Retrieving POSIX groups for {0}", posixRefAttrs);
-        String filter = createAttributeFilter("memberUid", posixRefAttrs);
-        ToDNHandler handler = new ToDNHandler();
-        LdapSearches.findEntries(handler, conn, filter);
-        return handler.getResults();
+        Map<String, Set<String>> groupsByRef;
+        synchronized (this) {
+            groupsByRef = prefetchedPosixGroups;
+        }
+        if (posixRefAttrs == null || !groupsByRef.keySet().containsAll(posixRefAttrs)) {
+            groupsByRef = getPosixGroupsByMemberRef(posixRefAttrs);
+        }
+        Set<String> result = new LinkedHashSet<String>();
+        if (posixRefAttrs != null) {
+            for (String posixRefAttr : posixRefAttrs) {
+                result.addAll(groupsByRef.get(posixRefAttr));
+            }
+        }
+        return new ArrayList<String>(result);
+    }
+
+    /**
+     * Searches the POSIX groups of the given member references at once, so
+     * that {@link #getPosixGroups(Collection)} answers from them without a
+     * search. Replaces the groups searched by the previous call.
+     */
+    public void prefetchPosixGroups(Collection<String> posixRefAttrs) {
+        Map<String, Set<String>> groupsByRef = getPosixGroupsByMemberRef(posixRefAttrs);
+        synchronized (this) {
+            prefetchedPosixGroups = groupsByRef;
+        }
     }
 
     public Set<GroupMembership> getPosixGroupMemberships(Collection<String> posixRefAttrs) {
         log.ok("Retrieving POSIX group memberships for {0}", posixRefAttrs);
-        ToGroupMembershipHandler handler = new ToGroupMembershipHandler();
-        if (posixRefAttrs != null){
-            for (String posixRefAttr : posixRefAttrs) {
-                String filter = createAttributeFilter("memberUid", singletonList(posixRefAttr));
-                handler.setMemberRef(posixRefAttr);
-                LdapSearches.findEntries(handler, conn, filter);
+        Set<GroupMembership> result = new HashSet<GroupMembership>();
+        for (Map.Entry<String, Set<String>> entry : getPosixGroupsByMemberRef(posixRefAttrs).entrySet()) {
+            for (String groupDN : entry.getValue()) {
+                result.add(new GroupMembership(entry.getKey(), groupDN));
             }
         }
-        return handler.getResults();
+        return result;
+    }
+
+    /**
+     * Returns the DNs of the POSIX groups of each of the given member
+     * references. The groups of a chunk of references are found by a single
+     * search, and told apart by their {@code memberUid} values.
+     */
+    private Map<String, Set<String>> getPosixGroupsByMemberRef(Collection<String> posixRefAttrs) {
+        Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+        if (posixRefAttrs == null || posixRefAttrs.isEmpty()) {
+            return result;
+        }
+        List<String> refs = new ArrayList<String>(new LinkedHashSet<String>(posixRefAttrs));
+        for (String ref : refs) {
+            result.put(ref, new LinkedHashSet<String>());
+        }
+        for (int i = 0; i < refs.size(); i += POSIX_GROUPS_CHUNK_SIZE) {
+            List<String> chunk = refs.subList(i, Math.min(i + POSIX_GROUPS_CHUNK_SIZE, refs.size()));
+            ToPosixGroupsHandler handler = new ToPosixGroupsHandler(chunk, result);
+            LdapSearches.findEntries(handler, conn, createAttributeFilter("memberUid", chunk), "memberUid");
+            if (handler.hasUnmatched()) {
+                // The server matched values the connector cannot tell apart,
+                // so search the groups of each reference of the chunk.
+                for (String ref : chunk) {
+                    ToDNHandler refHandler = new ToDNHandler();
+                    LdapSearches.findEntries(refHandler, conn, createAttributeFilter("memberUid", singletonList(ref)));
+                    result.get(ref).addAll(refHandler.getResults());
+                }
+            }
+        }
+        return result;
     }
 
     public void addPosixGroupMemberships(String posixRefAttr, Collection<String> groupDNs, LdapContext context) {
         log.ok("Adding {0} to POSIX groups {1}", posixRefAttr, groupDNs);
+        List<MemberModification> mods = new ArrayList<MemberModification>(groupDNs.size());
         for (String groupDN : groupDNs) {
-            addMemberToGroup("memberUid", posixRefAttr, groupDN, context);
+            mods.add(new MemberModification(DirContext.ADD_ATTRIBUTE, "memberUid", posixRefAttr, groupDN));
         }
+        modifyGroups(mods, context);
     }
 
     public void removePosixGroupMemberships(Set<GroupMembership> memberships, LdapContext context) {
         log.ok("Removing POSIX group memberships {0}", memberships);
+        List<MemberModification> mods = new ArrayList<MemberModification>(memberships.size());
         for (GroupMembership membership : memberships) {
-            removeMemberFromGroup("memberUid", membership.getMemberRef(), membership.getGroupDN(), context);
+            mods.add(new MemberModification(DirContext.REMOVE_ATTRIBUTE, "memberUid", membership.getMemberRef(), membership.getGroupDN()));
         }
+        modifyGroups(mods, context);
     }
 
     public void modifyPosixGroupMemberships(Modification<GroupMembership> mod, LdapContext context) {
         log.ok("Modifying POSIX group memberships: removing {0}, adding {1}", mod.getRemoved(), mod.getAdded());
+        modifyGroups(getMemberModifications("memberUid", mod), context);
+    }
+
+    private static List<MemberModification> getMemberModifications(String memberAttr, Modification<GroupMembership> mod) {
+        List<MemberModification> result = new ArrayList<MemberModification>();
         for (GroupMembership membership : mod.getRemoved()) {
-            removeMemberFromGroup("memberUid", membership.getMemberRef(), membership.getGroupDN(), context);
+            result.add(new MemberModification(DirContext.REMOVE_ATTRIBUTE, memberAttr, membership.getMemberRef(), membership.getGroupDN()));
         }
         for (GroupMembership membership : mod.getAdded()) {
-            addMemberToGroup("memberUid", membership.getMemberRef(), membership.getGroupDN(), context);
+            result.add(new MemberModification(DirContext.ADD_ATTRIBUTE, memberAttr, membership.getMemberRef(), membership.getGroupDN()));
         }
+        return result;
     }
 
     private String createAttributeFilter(String memberAttr, Collection<?> memberValues) {
@@ -184,34 +309,94 @@ public class GroupHelper {
         return builder.toString();
     }
 
-    private void addMemberToGroup(String memberAttr, String memberValue, String groupDN, LdapContext context) {
-        BasicAttribute attr = new BasicAttribute(memberAttr, memberValue);
-        ModificationItem item = new ModificationItem(DirContext.ADD_ATTRIBUTE, attr);
+    /**
+     * Applies the modifications in order. They are pipelined over the
+     * asynchronous transport when it is enabled and the context is bound as
+     * the configured principal.
+     */
+    private void modifyGroups(List<MemberModification> mods, LdapContext context) {
+        for (MemberModification mod : mods) {
+            conn.recordWrite(null, mod.groupDN);
+        }
         try {
-            if (context != null){
-            context.modifyAttributes(groupDN, new ModificationItem[] { item });
-            } else {
-                conn.getInitialContext().modifyAttributes(groupDN, new ModificationItem[] { item });
+            doModifyGroups(mods, context);
+        } finally {
+            LdapSearchResultCache cache = conn.getSearchResultCache();
+            for (MemberModification mod : mods) {
+                cache.invalidate(ObjectClass.GROUP, null, mod.groupDN);
+                // The ldapGroups and posixGroups of the member change too. Only an
+                // LDAP group member is known by its DN.
+                String memberDN = "memberUid".equals(mod.memberAttr) ? null : mod.memberValue;
+                cache.invalidate(ObjectClass.ACCOUNT, null, memberDN);
+            }
+        }
+    }
+
+    private void doModifyGroups(List<MemberModification> mods, LdapContext context) {
+        LdapAsyncTransport transport = null;
+        if (mods.size() > 1 && conn.isConnectionContext(context)) {
+            transport = conn.getAsyncTransport();
+        }
+        if (transport == null) {
+            for (MemberModification mod : mods) {
+                modifyGroup(mod, context);
+            }
+            return;
+        }
+        List<Pair<String, ModificationItem[]>> requests = new ArrayList<Pair<String, ModificationItem[]>>(mods.size());
+        for (MemberModification mod : mods) {
+            requests.add(new Pair<String, ModificationItem[]>(mod.groupDN, new ModificationItem[] { mod.toModificationItem() }));
+        }
+        try {
+            List<NamingException> failures = transport.modifyAttributes(requests);
+            for (int i = 0; i < failures.size(); i++) {
+                if (failures.get(i) != null) {
+                    handleFailure(mods.get(i), failures.get(i));
+                }
             }
-        } catch (AttributeInUseException e) {
-            //throw new ConnectorException(conn.format("memberAlreadyInGroup", null, memberValue, groupDN), e);
-            log.ok("Duplicate value when adding {0} to {1}",memberValue,groupDN);
         } catch (NamingException e) {
             throw new ConnectorException(e);
         }
     }
 
-    private void removeMemberFromGroup(String memberAttr, String memberValue, String groupDN, LdapContext context) {
-        BasicAttribute attr = new BasicAttribute(memberAttr, memberValue);
-        ModificationItem item = new ModificationItem(DirContext.REMOVE_ATTRIBUTE, attr);
+    private void modifyGroup(MemberModification mod, LdapContext context) {
+        ModificationItem[] items = new ModificationItem[] { mod.toModificationItem() };
         try {
-            if (context != null){
-                context.modifyAttributes(groupDN, new ModificationItem[]{item});
+            if (context != null) {
+                context.modifyAttributes(mod.groupDN, items);
             } else {
-                conn.getInitialContext().modifyAttributes(groupDN, new ModificationItem[]{item});
+                conn.getInitialContext().modifyAttributes(mod.groupDN, items);
             }
         } catch (NamingException e) {
-            throw new ConnectorException(e);
+            handleFailure(mod, e);
+        }
+    }
+
+    private static void handleFailure(MemberModification mod, NamingException e) {
+        if (mod.op == DirContext.ADD_ATTRIBUTE && e instanceof AttributeInUseException) {
+            //throw new ConnectorException(conn.format("memberAlreadyInGroup", null, memberValue, groupDN), e);
+            log.ok("Duplicate value when adding {0} to {1}", mod.memberValue, mod.groupDN);
+            return;
+        }
+        throw new ConnectorException(e);
+    }
+
+    private static final class MemberModification {
+
+        private final int op;
+        private final String memberAttr;
+        private final String memberValue;
+        private final String groupDN;
+
+        MemberModification(int op, String memberAttr, String memberValue, String groupDN) {
+            this.op = op;
+            this.memberAttr = memberAttr;
+            this.memberValue = memberValue;
+            this.groupDN = groupDN;
+        }
+
+        ModificationItem toModificationItem() {
+            return new ModificationItem(op, new BasicAttribute(memberAttr, memberValue));
         }
     }
 
@@ -329,6 +514,58 @@ public class GroupHelper {
         }
     }
 
+    /**
+     * Puts the groups found for a chunk of member references with the
+     * references they list in their {@code memberUid} values.
+     */
+    private static final class ToPosixGroupsHandler implements LdapSearchResultsHandler {
+
+        private final Map<String, Set<String>> results;
+        private final Map<String, String> refsByValue = new HashMap<String, String>();
+        private boolean unmatched;
+
+        public ToPosixGroupsHandler(List<String> refs, Map<String, Set<String>> results) {
+            this.results = results;
+            // The values are compared ignoring case, as the server may do.
+            for (String ref : refs) {
+                refsByValue.put(ref.toLowerCase(Locale.ENGLISH), ref);
+            }
+            for (String ref : refs) {
+                refsByValue.put(ref, ref);
+            }
+        }
+
+        public boolean handle(String baseDN, SearchResult searchResult) throws NamingException {
+            LdapEntry entry = LdapEntry.create(baseDN, searchResult);
+            String groupDN = entry.getDN().toString();
+            boolean matched = false;
+            Attribute attr = entry.getAttributes().get("memberUid");
+            if (attr != null) {
+                NamingEnumeration<?> values = attr.getAll();
+                while (values.hasMore()) {
+                    String value = values.next().toString();
+                    String ref = refsByValue.get(value);
+                    if (ref == null) {
+                        ref = refsByValue.get(value.toLowerCase(Locale.ENGLISH));
+                    }
+                    if (ref != null) {
+                        results.get(ref).add(groupDN);
+                        matched = true;
+                    }
+                }
+            }
+            if (!matched) {
+                log.ok("Could not tell the member references of POSIX group {0}", groupDN);
+                unmatched = true;
+            }
+            return true;
+        }
+
+        public boolean hasUnmatched() {
+            return unmatched;
+        }
+    }
+
     private static final class ToGroupMembershipHandler implements LdapSearchResultsHandler {
 
         private final Set<GroupMembership> results = new HashSet<GroupMembership>();
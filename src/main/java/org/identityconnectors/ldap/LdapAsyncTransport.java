@@ -0,0 +1,613 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.identityconnectors.common.StringUtil.isNotBlank;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+import javax.naming.InvalidNameException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.NoPermissionException;
+import javax.naming.PartialResultException;
+import javax.naming.directory.AttributeInUseException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InvalidAttributeValueException;
+import javax.naming.directory.InvalidSearchFilterException;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.NoSuchAttributeException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.PagedResultsControl;
+import javax.net.ssl.SSLContext;
+
+import org.forgerock.opendj.ldap.Attribute;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.Connection;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.DecodeException;
+import org.forgerock.opendj.ldap.DecodeOptions;
+import org.forgerock.opendj.ldap.DereferenceAliasesPolicy;
+import org.forgerock.opendj.ldap.ErrorResultException;
+import org.forgerock.opendj.ldap.Filter;
+import org.forgerock.opendj.ldap.FutureResult;
+import org.forgerock.opendj.ldap.LDAPConnectionFactory;
+import org.forgerock.opendj.ldap.LDAPOptions;
+import org.forgerock.opendj.ldap.ModificationType;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.ldap.SearchResultHandler;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.forgerock.opendj.ldap.controls.SimplePagedResultsControl;
+import org.forgerock.opendj.ldap.requests.ModifyRequest;
+import org.forgerock.opendj.ldap.requests.Requests;
+import org.forgerock.opendj.ldap.requests.SearchRequest;
+import org.forgerock.opendj.ldap.responses.Result;
+import org.forgerock.opendj.ldap.responses.SearchResultEntry;
+import org.forgerock.opendj.ldap.responses.SearchResultReference;
+import org.identityconnectors.common.Pair;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.InvalidCredentialException;
+import org.identityconnectors.ldap.search.LdapSearchResultsHandler;
+
+/**
+ * An LDAP transport built on the asynchronous connections of the OpenDJ LDAP
+ * SDK. Requests are pipelined: they are all written to the single connection
+ * before the first response is waited for, so a batch of requests costs
+ * roughly one round trip instead of one per request.
+ *
+ * <p>The transport speaks the JNDI types used by the rest of the connector,
+ * and failures are reported as the {@link NamingException}s JNDI would have
+ * thrown. Referrals are not followed, so the transport is only used when
+ * the configured referrals handling is {@code ignore}.</p>
+ */
+public class LdapAsyncTransport {
+
+    /**
+     * The maximum number of requests which are outstanding at once.
+     */
+    static final int MAX_OUTSTANDING_REQUESTS = 100;
+
+    /**
+     * The number of search results received ahead of the handler past which
+     * no further search or page of results is requested.
+     */
+    static final int MAX_BUFFERED_RESULTS = 1000;
+
+    /**
+     * The number of results of each page, when the searches are paged.
+     */
+    static final int SEARCH_PAGE_SIZE = 100;
+
+    private static final Log log = Log.getLog(LdapAsyncTransport.class);
+
+    private static final Object END_OF_RESULTS = new Object();
+    private static final Object END_OF_PAGE = new Object();
+
+    private final LdapConnection conn;
+    private final Connection connection;
+
+    LdapAsyncTransport(LdapConnection conn, Connection connection) {
+        this.conn = conn;
+        this.connection = connection;
+    }
+
+    /**
+     * Opens a connection to the first reachable server of the given LDAP
+     * URLs and binds it as the configured principal.
+     */
+    static LdapAsyncTransport open(LdapConnection conn, List<String> ldapUrls) {
+        LdapConfiguration config = conn.getConfiguration();
+        ErrorResultException lastFailure = null;
+        for (String ldapUrl : ldapUrls) {
+            URI uri;
+            try {
+                uri = new URI(ldapUrl);
+            } catch (URISyntaxException e) {
+                log.warn("Ignoring invalid LDAP URL {0}", ldapUrl);
+                continue;
+            }
+            boolean ssl = config.isSsl() || "ldaps".equalsIgnoreCase(uri.getScheme());
+            int port = uri.getPort() != -1 ? uri.getPort() : (ssl ? 636 : LdapConfiguration.DEFAULT_PORT);
+            try {
+                Connection connection = new LDAPConnectionFactory(uri.getHost(), port,
+                        createOptions(ssl, config.isStartTLS())).getConnection();
+                try {
+                    bind(connection, config.getPrincipal(), config.getCredentials());
+                } catch (ErrorResultException e) {
+                    connection.close();
+                    if (ResultCode.INVALID_CREDENTIALS.equals(e.getResult().getResultCode())) {
+                        throw new InvalidCredentialException(e.getMessage(), e);
+                    }
+                    throw new ConnectorException(e);
+                }
+                log.ok("Asynchronous transport connected to {0}:{1}", uri.getHost(), port);
+                return new LdapAsyncTransport(conn, connection);
+            } catch (ErrorResultException e) {
+                log.warn("Cannot connect to {0}: {1}", ldapUrl, e.getMessage());
+                lastFailure = e;
+            }
+        }
+        throw new ConnectionFailedException(lastFailure);
+    }
+
+    private static LDAPOptions createOptions(boolean ssl, boolean startTLS) {
+        LDAPOptions options = new LDAPOptions();
+        if (ssl || startTLS) {
+            try {
+                options.setSSLContext(SSLContext.getDefault());
+            } catch (NoSuchAlgorithmException e) {
+                throw new ConnectorException(e);
+            }
+            options.setUseStartTLS(!ssl);
+        }
+        return options;
+    }
+
+    private static void bind(final Connection connection, final String principal, GuardedString credentials)
+            throws ErrorResultException {
+        if (!isNotBlank(principal)) {
+            return;
+        }
+        final char[][] password = { new char[0] };
+        if (credentials != null) {
+            credentials.access(new GuardedString.Accessor() {
+                public void access(char[] clearChars) {
+                    password[0] = clearChars.clone();
+                }
+            });
+        }
+        try {
+            connection.bind(principal, password[0]);
+        } finally {
+            Arrays.fill(password[0], '\0');
+        }
+    }
+
+    public boolean isValid() {
+        return connection.isValid();
+    }
+
+    public void close() {
+        connection.close();
+    }
+
+    /**
+     * Searches the given base DNs, with up to
+     * {@link #MAX_OUTSTANDING_REQUESTS} searches outstanding at once. The
+     * results are passed to the handler as they arrive, so the results of the
+     * base DNs may be interleaved.
+     *
+     * <p>The thread reading the connection never waits for the handler, which
+     * may itself send requests over the connection. Instead, no further
+     * search is started while {@link #MAX_BUFFERED_RESULTS} results wait for
+     * the handler. When the server supports the paged results control, and
+     * the search has no size limit, the searches are paged, and the next page
+     * of a search is only requested once the handler caught up, so at most
+     * {@link #SEARCH_PAGE_SIZE} results per outstanding search are received
+     * past that limit. Otherwise, all the results of a base DN are received
+     * once its search is started.</p>
+     */
+    public void search(List<String> baseDNs, String filter, SearchControls controls, boolean ignoreNonExistingBaseDNs,
+            LdapSearchResultsHandler handler) throws NamingException {
+        String[] attrs = controls.getReturningAttributes() != null ? controls.getReturningAttributes() : new String[0];
+        Filter parsedFilter;
+        try {
+            parsedFilter = Filter.valueOf(filter);
+        } catch (IllegalArgumentException e) {
+            throw (NamingException) new InvalidSearchFilterException(e.getMessage()).initCause(e);
+        }
+        int pageSize = controls.getCountLimit() == 0 && conn.supportsControl(PagedResultsControl.OID) ? SEARCH_PAGE_SIZE : 0;
+        ResultBuffer buffer = new ResultBuffer();
+        List<PendingSearch> started = new ArrayList<PendingSearch>(Math.min(baseDNs.size(), MAX_OUTSTANDING_REQUESTS));
+        // The paged searches waiting for the handler to request their next page.
+        Queue<PendingSearch> paused = new LinkedList<PendingSearch>();
+        Iterator<String> remaining = baseDNs.iterator();
+        int outstanding = 0;
+        try {
+            while (true) {
+                while (outstanding < MAX_OUTSTANDING_REQUESTS && buffer.getEntryCount() < MAX_BUFFERED_RESULTS) {
+                    PendingSearch search = paused.poll();
+                    if (search == null) {
+                        if (!remaining.hasNext()) {
+                            break;
+                        }
+                        String baseDN = remaining.next();
+                        DN name;
+                        try {
+                            name = DN.valueOf(baseDN);
+                        } catch (IllegalArgumentException e) {
+                            if (ignoreNonExistingBaseDNs) {
+                                log.info("Invalid base DN {0}", baseDN);
+                                continue;
+                            }
+                            throw (NamingException) new InvalidNameException(e.getMessage()).initCause(e);
+                        }
+                        SearchRequest request = Requests.newSearchRequest(name, toSearchScope(controls.getSearchScope()), parsedFilter, attrs);
+                        request.setSizeLimit((int) controls.getCountLimit());
+                        request.setTimeLimit(controls.getTimeLimit() / 1000);
+                        request.setDereferenceAliasesPolicy(controls.getDerefLinkFlag()
+                                ? DereferenceAliasesPolicy.ALWAYS : DereferenceAliasesPolicy.NEVER);
+                        search = new PendingSearch(baseDN, request, pageSize, buffer);
+                        started.add(search);
+                    }
+                    search.requestResults(connection);
+                    outstanding++;
+                }
+                if (outstanding == 0) {
+                    // No result is buffered either, so nothing remains.
+                    break;
+                }
+                BufferedResult next = buffer.take();
+                if (next.result == END_OF_RESULTS) {
+                    outstanding--;
+                    continue;
+                }
+                if (next.result == END_OF_PAGE) {
+                    outstanding--;
+                    paused.add(next.search);
+                    continue;
+                }
+                if (next.result instanceof ErrorResultException) {
+                    ErrorResultException e = (ErrorResultException) next.result;
+                    if (ignoreNonExistingBaseDNs && ResultCode.NO_SUCH_OBJECT.equals(e.getResult().getResultCode())) {
+                        log.info("Entry {0} does not exist", next.search.baseDN);
+                        outstanding--;
+                        continue;
+                    }
+                    throw toNamingException(e);
+                }
+                SearchResultEntry entry = (SearchResultEntry) next.result;
+                if (!handler.handle(next.search.baseDN, toSearchResult(entry))) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (NamingException) new NamingException("Interrupted while waiting for search results").initCause(e);
+        } finally {
+            buffer.close();
+            for (PendingSearch search : started) {
+                search.cancel();
+            }
+        }
+    }
+
+    /**
+     * Reads the given entries, pipelining the base object reads. Entries
+     * which do not exist are left out of the returned map, which is keyed by
+     * the requested DNs.
+     */
+    public Map<String, Attributes> readEntries(Collection<String> entryDNs, String... attrs) throws NamingException {
+        Map<String, Attributes> result = new LinkedHashMap<String, Attributes>();
+        List<String> dns = new ArrayList<String>(entryDNs);
+        Collection<String> attributeDescriptions = attrs.length > 0 ? Arrays.asList(attrs) : Collections.<String>emptyList();
+        for (int start = 0; start < dns.size(); start += MAX_OUTSTANDING_REQUESTS) {
+            List<String> window = dns.subList(start, Math.min(start + MAX_OUTSTANDING_REQUESTS, dns.size()));
+            List<Pair<String, FutureResult<SearchResultEntry>>> futures = new ArrayList<Pair<String, FutureResult<SearchResultEntry>>>(window.size());
+            for (String dn : window) {
+                DN name;
+                try {
+                    name = DN.valueOf(dn);
+                } catch (IllegalArgumentException e) {
+                    cancelReads(futures);
+                    throw (NamingException) new InvalidNameException(e.getMessage()).initCause(e);
+                }
+                futures.add(new Pair<String, FutureResult<SearchResultEntry>>(dn,
+                        connection.readEntryAsync(name, attributeDescriptions, null)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Pair<String, FutureResult<SearchResultEntry>> each = futures.get(i);
+                try {
+                    result.put(each.first, toAttributes(each.second.get()));
+                } catch (ErrorResultException e) {
+                    if (!ResultCode.NO_SUCH_OBJECT.equals(e.getResult().getResultCode())) {
+                        cancelReads(futures.subList(i + 1, futures.size()));
+                        throw toNamingException(e);
+                    }
+                    log.ok("Entry {0} does not exist", each.first);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelReads(futures.subList(i + 1, futures.size()));
+                    throw (NamingException) new NamingException("Interrupted while reading entries").initCause(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applies the given modifications, pipelining the modify requests. The
+     * modifications are not atomic as a whole: the returned list holds, for
+     * each of them, {@code null} if it succeeded or the exception describing
+     * its failure.
+     */
+    public List<NamingException> modifyAttributes(List<Pair<String, ModificationItem[]>> modifications) throws NamingException {
+        List<NamingException> result = new ArrayList<NamingException>(modifications.size());
+        for (int start = 0; start < modifications.size(); start += MAX_OUTSTANDING_REQUESTS) {
+            List<Pair<String, ModificationItem[]>> window = modifications.subList(start,
+                    Math.min(start + MAX_OUTSTANDING_REQUESTS, modifications.size()));
+            List<FutureResult<Result>> futures = new ArrayList<FutureResult<Result>>(window.size());
+            for (Pair<String, ModificationItem[]> each : window) {
+                futures.add(connection.modifyAsync(toModifyRequest(each.first, each.second), null, null));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                    result.add(null);
+                } catch (ErrorResultException e) {
+                    result.add(toNamingException(e));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelAll(futures.subList(i + 1, futures.size()));
+                    throw (NamingException) new NamingException("Interrupted while modifying entries").initCause(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static ModifyRequest toModifyRequest(String dn, ModificationItem[] items) throws NamingException {
+        ModifyRequest request;
+        try {
+            request = Requests.newModifyRequest(dn);
+        } catch (IllegalArgumentException e) {
+            throw (NamingException) new InvalidNameException(e.getMessage()).initCause(e);
+        }
+        for (ModificationItem item : items) {
+            javax.naming.directory.Attribute attr = item.getAttribute();
+            List<Object> values = new ArrayList<Object>(attr.size());
+            NamingEnumeration<?> all = attr.getAll();
+            while (all.hasMore()) {
+                values.add(all.next());
+            }
+            request.addModification(toModificationType(item.getModificationOp()), attr.getID(), values.toArray());
+        }
+        return request;
+    }
+
+    private static ModificationType toModificationType(int op) {
+        switch (op) {
+        case DirContext.ADD_ATTRIBUTE:
+            return ModificationType.ADD;
+        case DirContext.REMOVE_ATTRIBUTE:
+            return ModificationType.DELETE;
+        default:
+            return ModificationType.REPLACE;
+        }
+    }
+
+    private static SearchScope toSearchScope(int scope) {
+        switch (scope) {
+        case SearchControls.OBJECT_SCOPE:
+            return SearchScope.BASE_OBJECT;
+        case SearchControls.ONELEVEL_SCOPE:
+            return SearchScope.SINGLE_LEVEL;
+        default:
+            return SearchScope.WHOLE_SUBTREE;
+        }
+    }
+
+    private SearchResult toSearchResult(SearchResultEntry entry) {
+        String dn = entry.getName().toString();
+        SearchResult result = new SearchResult(dn, null, toAttributes(entry), true);
+        result.setNameInNamespace(dn);
+        return result;
+    }
+
+    private Attributes toAttributes(SearchResultEntry entry) {
+        BasicAttributes result = new BasicAttributes(true);
+        for (Attribute attr : entry.getAllAttributes()) {
+            String attrID = attr.getAttributeDescriptionAsString();
+            int optionsPos = attrID.indexOf(';');
+            boolean binary = conn.isBinarySyntax(optionsPos < 0 ? attrID : attrID.substring(0, optionsPos));
+            BasicAttribute ldapAttr = new BasicAttribute(attrID);
+            for (ByteString value : attr) {
+                ldapAttr.add(binary ? value.toByteArray() : value.toString());
+            }
+            result.put(ldapAttr);
+        }
+        return result;
+    }
+
+    static NamingException toNamingException(ErrorResultException e) {
+        ResultCode resultCode = e.getResult().getResultCode();
+        NamingException result;
+        if (ResultCode.NO_SUCH_OBJECT.equals(resultCode)) {
+            result = new NameNotFoundException(e.getMessage());
+        } else if (ResultCode.INVALID_DN_SYNTAX.equals(resultCode)) {
+            result = new InvalidNameException(e.getMessage());
+        } else if (ResultCode.ATTRIBUTE_OR_VALUE_EXISTS.equals(resultCode)) {
+            result = new AttributeInUseException(e.getMessage());
+        } else if (ResultCode.NO_SUCH_ATTRIBUTE.equals(resultCode)) {
+            result = new NoSuchAttributeException(e.getMessage());
+        } else if (ResultCode.INVALID_ATTRIBUTE_SYNTAX.equals(resultCode)
+                || ResultCode.CONSTRAINT_VIOLATION.equals(resultCode)) {
+            result = new InvalidAttributeValueException(e.getMessage());
+        } else if (ResultCode.INSUFFICIENT_ACCESS_RIGHTS.equals(resultCode)) {
+            result = new NoPermissionException(e.getMessage());
+        } else if (ResultCode.REFERRAL.equals(resultCode)) {
+            result = new PartialResultException(e.getMessage());
+        } else if (ResultCode.CLIENT_SIDE_SERVER_DOWN.equals(resultCode)
+                || ResultCode.CLIENT_SIDE_CONNECT_ERROR.equals(resultCode)
+                || ResultCode.UNAVAILABLE.equals(resultCode)) {
+            result = new CommunicationException(e.getMessage());
+        } else {
+            result = new NamingException(e.getMessage());
+        }
+        result.initCause(e);
+        return result;
+    }
+
+    private static void cancelReads(List<Pair<String, FutureResult<SearchResultEntry>>> futures) {
+        for (Pair<String, FutureResult<SearchResultEntry>> each : futures) {
+            each.second.cancel(false);
+        }
+    }
+
+    private static void cancelAll(Collection<? extends FutureResult<?>> futures) {
+        for (FutureResult<?> each : futures) {
+            each.cancel(false);
+        }
+    }
+
+    /**
+     * The results of the searches, received ahead of the handler. Adding a
+     * result never waits, so that the thread reading the connection is never
+     * blocked by the handler.
+     */
+    private static final class ResultBuffer {
+
+        private final BlockingQueue<BufferedResult> results = new LinkedBlockingQueue<BufferedResult>();
+        private final AtomicInteger entryCount = new AtomicInteger();
+        private volatile boolean closed;
+
+        void add(PendingSearch search, Object result) {
+            if (closed) {
+                return;
+            }
+            if (result instanceof SearchResultEntry) {
+                entryCount.incrementAndGet();
+            }
+            results.add(new BufferedResult(search, result));
+        }
+
+        BufferedResult take() throws InterruptedException {
+            BufferedResult result = results.take();
+            if (result.result instanceof SearchResultEntry) {
+                entryCount.decrementAndGet();
+            }
+            return result;
+        }
+
+        /**
+         * Returns the number of entries waiting for the handler.
+         */
+        int getEntryCount() {
+            return entryCount.get();
+        }
+
+        void close() {
+            closed = true;
+            results.clear();
+        }
+    }
+
+    private static final class BufferedResult {
+
+        private final PendingSearch search;
+        // An entry, an error, or the end of the results or of a page.
+        private final Object result;
+
+        BufferedResult(PendingSearch search, Object result) {
+            this.search = search;
+            this.result = result;
+        }
+    }
+
+    private static final class PendingSearch implements SearchResultHandler {
+
+        private final String baseDN;
+        private final SearchRequest request;
+        // The number of results per page, or 0 if the search is not paged.
+        private final int pageSize;
+        private final ResultBuffer results;
+        private ByteString cookie = ByteString.empty();
+        private volatile FutureResult<Result> future;
+
+        PendingSearch(String baseDN, SearchRequest request, int pageSize, ResultBuffer results) {
+            this.baseDN = baseDN;
+            this.request = request;
+            this.pageSize = pageSize;
+            this.results = results;
+        }
+
+        /**
+         * Sends the search, or requests its next page.
+         */
+        void requestResults(Connection connection) {
+            SearchRequest page = request;
+            if (pageSize > 0) {
+                page = Requests.copyOfSearchRequest(request);
+                page.addControl(SimplePagedResultsControl.newControl(true, pageSize, cookie));
+            }
+            future = connection.searchAsync(page, null, this);
+        }
+
+        void cancel() {
+            FutureResult<Result> current = future;
+            if (current != null && !current.isDone()) {
+                current.cancel(false);
+            }
+        }
+
+        public boolean handleEntry(SearchResultEntry entry) {
+            results.add(this, entry);
+            return true;
+        }
+
+        public boolean handleReference(SearchResultReference reference) {
+            // Not used with referrals to follow or throw, see LdapConnection.getAsyncTransport().
+            return true;
+        }
+
+        public void handleResult(Result result) {
+            if (pageSize > 0) {
+                SimplePagedResultsControl control;
+                try {
+                    control = result.getControl(SimplePagedResultsControl.DECODER, new DecodeOptions());
+                } catch (DecodeException e) {
+                    results.add(this, ErrorResultException.newErrorResult(ResultCode.CLIENT_SIDE_DECODING_ERROR,
+                            e.getMessage(), e));
+                    return;
+                }
+                if (control != null && control.getCookie().length() > 0) {
+                    cookie = control.getCookie();
+                    results.add(this, END_OF_PAGE);
+                    return;
+                }
+            }
+            results.add(this, END_OF_RESULTS);
+        }
+
+        public void handleErrorResult(ErrorResultException error) {
+            results.add(this, error);
+        }
+    }
+}
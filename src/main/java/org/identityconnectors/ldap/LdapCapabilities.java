@@ -0,0 +1,278 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Collections.unmodifiableSet;
+import static org.identityconnectors.common.CollectionUtil.newCaseInsensitiveMap;
+import static org.identityconnectors.ldap.LdapUtil.getStringAttrValue;
+import static org.identityconnectors.ldap.LdapUtil.getStringAttrValues;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.ldap.LdapConstants.ServerType;
+
+/**
+ * An immutable snapshot of what a directory server advertises in its rootDSE:
+ * its type, the controls and extended operations it supports, its naming
+ * contexts and, for Active Directory, its LDAP administrative limits.
+ */
+public final class LdapCapabilities {
+
+    private static final Log log = Log.getLog(LdapCapabilities.class);
+
+    private static final String[] ROOT_DSE_ATTRS = {
+        "vendorVersion", "vendorName", "highestCommittedUSN", "rootDomainNamingContext", "structuralObjectClass",
+        "supportedControl", "supportedExtension", "namingContexts", "defaultNamingContext",
+        "configurationNamingContext", "changeLog"
+    };
+
+    private static final String QUERY_POLICY_PREFIX = "CN=Default Query Policy,CN=Query-Policies,CN=Directory Service,CN=Windows NT,CN=Services,";
+
+    private final ServerType serverType;
+    private final Set<String> supportedControls;
+    private final Set<String> supportedExtensions;
+    private final List<String> namingContexts;
+    private final String defaultNamingContext;
+    private final String rootDomainNamingContext;
+    private final String configurationNamingContext;
+    private final String changeLog;
+    private final Map<String, Integer> adminLimits;
+    private final long timestamp;
+
+    private LdapCapabilities(ServerType serverType, Set<String> supportedControls, Set<String> supportedExtensions,
+            List<String> namingContexts, String defaultNamingContext, String rootDomainNamingContext,
+            String configurationNamingContext, String changeLog, Map<String, Integer> adminLimits, long timestamp) {
+        this.serverType = serverType;
+        this.supportedControls = supportedControls;
+        this.supportedExtensions = supportedExtensions;
+        this.namingContexts = namingContexts;
+        this.defaultNamingContext = defaultNamingContext;
+        this.rootDomainNamingContext = rootDomainNamingContext;
+        this.configurationNamingContext = configurationNamingContext;
+        this.changeLog = changeLog;
+        this.adminLimits = adminLimits;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Reads the rootDSE through the given context.
+     *
+     * @param port the port of the server, needed to tell an Active Directory
+     *            global catalog from a domain controller.
+     */
+    public static LdapCapabilities read(LdapContext ctx, int port) throws NamingException {
+        Attributes attrs = ctx.getAttributes("", ROOT_DSE_ATTRS);
+        return create(attrs, port, System.currentTimeMillis());
+    }
+
+    static LdapCapabilities create(Attributes rootDSE, int port, long timestamp) throws NamingException {
+        List<String> namingContexts = new ArrayList<String>();
+        Attribute attr = rootDSE.get("namingContexts");
+        if (attr != null) {
+            NamingEnumeration<?> values = attr.getAll();
+            while (values.hasMore()) {
+                namingContexts.add(values.next().toString());
+            }
+        }
+        return new LdapCapabilities(detectServerType(rootDSE, port),
+                unmodifiableSet(getStringAttrValues(rootDSE, "supportedControl")),
+                unmodifiableSet(getStringAttrValues(rootDSE, "supportedExtension")),
+                unmodifiableList(namingContexts),
+                getStringAttrValue(rootDSE, "defaultNamingContext"),
+                getStringAttrValue(rootDSE, "rootDomainNamingContext"),
+                getStringAttrValue(rootDSE, "configurationNamingContext"),
+                getStringAttrValue(rootDSE, "changeLog"),
+                null, timestamp);
+    }
+
+    /**
+     * Returns capabilities for a server whose rootDSE could not be read.
+     */
+    public static LdapCapabilities unknown() {
+        return new LdapCapabilities(ServerType.UNKNOWN, Collections.<String>emptySet(), Collections.<String>emptySet(),
+                Collections.<String>emptyList(), null, null, null, null, null, System.currentTimeMillis());
+    }
+
+    static ServerType detectServerType(Attributes attrs, int port) {
+        String vendorName = getStringAttrValue(attrs, "vendorName");
+        if (null != vendorName) {
+            vendorName = vendorName.toLowerCase();
+            if (vendorName.contains("ibm")) {
+                log.info("IBM Directory server has been detected");
+                return ServerType.IBM;
+            }
+            if (vendorName.contains("novell")) {
+                log.info("Novell eDirectory server has been detected");
+                return ServerType.NOVELL;
+            }
+            if (vendorName.contains("unboundid")) {
+                log.info("UnboundID Directory server has been detected");
+                return ServerType.UNBOUNDID;
+            }
+            // Red Hat / Fedora
+            // vendorName: 389 Project
+            if (vendorName.contains("389")) {
+                log.info("Red Hat/Fedora 389 Directory server has been detected");
+                return ServerType.RHDS;
+            }
+            // CA LDAP for Zos
+            if (vendorName.contains("caldap")) {
+                log.info("CA LDAP Directory server has been detected");
+                return ServerType.CALDAP;
+            }
+
+        }
+        String vendorVersion = getStringAttrValue(attrs, "vendorVersion");
+        if (vendorVersion != null) {
+            vendorVersion = vendorVersion.toLowerCase();
+            if (vendorVersion.contains("opends")) {
+                log.info("OpenDS Directory server has been detected");
+                return ServerType.OPENDS;
+            }
+            if (vendorVersion.contains("opendj")) {
+                log.info("ForgeRock OpenDJ Directory server has been detected");
+                return ServerType.OPENDJ;
+            }
+            if (vendorVersion.contains("sun") && vendorVersion.contains("directory")) {
+                log.info("Sun DSEE Directory server has been detected");
+                return ServerType.SUN_DSEE;
+            }
+        } else {
+            String hUSN = getStringAttrValue(attrs, "highestCommittedUSN");
+            String rDC = getStringAttrValue(attrs, "rootDomainNamingContext");
+            String sOC = getStringAttrValue(attrs, "structuralObjectClass");
+            if (hUSN != null) {
+                // Windows Active Directory
+                if (rDC != null) {
+                    // Only DCs and GCs have the rootDomainNamingContext
+                    // We check the port number as well. DC is using the standard 389|636 pair.
+                    if ((port != 389) && (port != 636)) {
+                        log.info("MS Active Directory Global Catalog server has been detected");
+                        return ServerType.MSAD_GC;
+                    } else {
+                        log.info("MS Active Directory server has been detected");
+                        return ServerType.MSAD;
+                    }
+                }
+                // ADLDS does not have the rootDomainNamingContext...
+                log.info("MS Active Directory Lightweight Directory Services server has been detected");
+                return ServerType.MSAD_LDS;
+            } else if (sOC != null && sOC.equalsIgnoreCase("OpenLDAProotDSE")) {
+                log.info("OpenLDAP Directory server has been detected");
+                return ServerType.OPENLDAP;
+            }
+        }
+        log.info("Directory server type is unknown");
+        return ServerType.UNKNOWN;
+    }
+
+    /**
+     * Reads the {@code lDAPAdminLimits} of the default query policy of an
+     * Active Directory forest, e.g. {@code MaxValRange} or {@code MaxPageSize}.
+     */
+    static Map<String, Integer> readAdminLimits(LdapContext ctx, String configurationNamingContext) throws NamingException {
+        Map<String, Integer> result = newCaseInsensitiveMap();
+        Attributes attrs;
+        try {
+            attrs = ctx.getAttributes(QUERY_POLICY_PREFIX + configurationNamingContext, new String[] { "lDAPAdminLimits" });
+        } catch (NameNotFoundException e) {
+            log.ok("No default query policy under {0}", configurationNamingContext);
+            return result;
+        }
+        for (String limit : getStringAttrValues(attrs, "lDAPAdminLimits")) {
+            parseAdminLimit(limit, result);
+        }
+        return result;
+    }
+
+    static void parseAdminLimit(String limit, Map<String, Integer> limits) {
+        int pos = limit.indexOf('=');
+        if (pos > 0) {
+            try {
+                limits.put(limit.substring(0, pos).trim(), Integer.valueOf(limit.substring(pos + 1).trim()));
+            } catch (NumberFormatException e) {
+                log.ok("Ignoring the non numeric LDAP admin limit {0}", limit);
+            }
+        }
+    }
+
+    LdapCapabilities withAdminLimits(Map<String, Integer> adminLimits) {
+        return new LdapCapabilities(serverType, supportedControls, supportedExtensions, namingContexts,
+                defaultNamingContext, rootDomainNamingContext, configurationNamingContext, changeLog,
+                unmodifiableMap(adminLimits), timestamp);
+    }
+
+    boolean isExpired(long now, long timeout) {
+        return now - timestamp >= timeout;
+    }
+
+    public ServerType getServerType() {
+        return serverType;
+    }
+
+    public Set<String> getSupportedControls() {
+        return supportedControls;
+    }
+
+    public Set<String> getSupportedExtensions() {
+        return supportedExtensions;
+    }
+
+    public List<String> getNamingContexts() {
+        return namingContexts;
+    }
+
+    public String getDefaultNamingContext() {
+        return defaultNamingContext;
+    }
+
+    public String getRootDomainNamingContext() {
+        return rootDomainNamingContext;
+    }
+
+    public String getConfigurationNamingContext() {
+        return configurationNamingContext;
+    }
+
+    /**
+     * Returns the DN of the retro change log, if the server has one.
+     */
+    public String getChangeLog() {
+        return changeLog;
+    }
+
+    /**
+     * Returns the LDAP administrative limits, or {@code null} if they have not
+     * been read yet.
+     */
+    public Map<String, Integer> getAdminLimits() {
+        return adminLimits;
+    }
+}
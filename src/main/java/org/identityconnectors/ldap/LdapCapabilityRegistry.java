@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.NamingException;
+
+/**
+ * A process wide cache of {@link LdapCapabilities}, shared by all the
+ * connector instances which talk to the same server(s) as the same principal.
+ * Only one instance reads the rootDSE of a given server at a time; the
+ * others wait for and reuse its result.
+ */
+final class LdapCapabilityRegistry {
+
+    /**
+     * Reads the capabilities when they are missing from the cache or stale.
+     */
+    interface Loader {
+
+        LdapCapabilities load() throws NamingException;
+    }
+
+    private static final ConcurrentMap<String, Holder> HOLDERS = new ConcurrentHashMap<String, Holder>();
+
+    private LdapCapabilityRegistry() {
+    }
+
+    /**
+     * Returns the cached capabilities for the key, loading them if they are
+     * missing or older than {@code timeout} milliseconds.
+     */
+    static LdapCapabilities get(String key, long timeout, Loader loader) throws NamingException {
+        Holder holder = getHolder(key);
+        synchronized (holder) {
+            if (holder.capabilities == null || holder.capabilities.isExpired(System.currentTimeMillis(), timeout)) {
+                holder.capabilities = loader.load();
+            }
+            return holder.capabilities;
+        }
+    }
+
+    /**
+     * Returns the cached capabilities for the key without loading them, or
+     * {@code null} if they are missing or stale.
+     */
+    static LdapCapabilities peek(String key, long timeout) {
+        Holder holder = HOLDERS.get(key);
+        if (holder == null) {
+            return null;
+        }
+        synchronized (holder) {
+            LdapCapabilities result = holder.capabilities;
+            return result == null || result.isExpired(System.currentTimeMillis(), timeout) ? null : result;
+        }
+    }
+
+    static void put(String key, LdapCapabilities capabilities) {
+        Holder holder = getHolder(key);
+        synchronized (holder) {
+            holder.capabilities = capabilities;
+        }
+    }
+
+    static void invalidate(String key) {
+        HOLDERS.remove(key);
+    }
+
+    // For tests.
+    static void clear() {
+        HOLDERS.clear();
+    }
+
+    private static Holder getHolder(String key) {
+        Holder holder = HOLDERS.get(key);
+        if (holder == null) {
+            Holder existing = HOLDERS.putIfAbsent(key, holder = new Holder());
+            if (existing != null) {
+                holder = existing;
+            }
+        }
+        return holder;
+    }
+
+    private static final class Holder {
+
+        private LdapCapabilities capabilities;
+    }
+}
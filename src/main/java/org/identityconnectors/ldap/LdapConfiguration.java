@@ -218,11 +218,185 @@ public class LdapConfiguration extends AbstractConfiguration implements Stateful
      */
     private boolean useDNSSRVRecord = false;
 
+    /**
+     * The time in milliseconds the servers resolved from the DNS SRV records are cached.
+     */
+    private long dnsSRVRecordCacheTimeout = 300000;
+
     /**
      * what to do when sync token conflicts with cn=changelog lastChangeNumber
      */
     private String resetSyncToken = "never";
 
+    /**
+     * The maximum number of pooled connections, or 0 to share a single connection. A pooled connection is checked
+     * with a read of the rootDSE each time it is leased.
+     */
+    private int connectionPoolMaxSize = 0;
+
+    /**
+     * The number of idle pooled connections which are never evicted.
+     */
+    private int connectionPoolMinSize = 0;
+
+    /**
+     * The time in milliseconds after which an idle pooled connection is closed.
+     */
+    private long connectionPoolIdleTimeout = 300000;
+
+    /**
+     * The time in milliseconds to wait for a pooled connection when all of them are in use.
+     */
+    private long connectionPoolMaxWait = 30000;
+
+    /**
+     * How new connections are spread across the host and the failover servers.
+     */
+    private String loadBalancingPolicy = "failover";
+
+    /**
+     * The time in milliseconds a server which could not be reached is only tried as a last resort.
+     */
+    private long serverEjectionTime = 30000;
+
+    /**
+     * The maximum number of pooled connections used to check credentials, or 0 to open one per check.
+     */
+    private int authenticationPoolMaxSize = 0;
+
+    /**
+     * The maximum number of cached run-as user DNs and bound run-as contexts, or 0 to disable the cache. A cached
+     * context stays usable until it expires, even after the password of its user changed or the user was disabled.
+     */
+    private int runAsCacheSize = 0;
+
+    /**
+     * The time in milliseconds a run-as user DN or bound run-as context is cached.
+     */
+    private long runAsCacheTimeout = 60000;
+
+    /**
+     * LDAP URL's of replicas searches are sent to, while writes go to the host and the failover servers.
+     */
+    private String[] readServers = { };
+
+    /**
+     * The time in milliseconds searches concerning a just written entry still go to the server it was written to.
+     */
+    private long readYourWritesWindow = 0;
+
+    /**
+     * Whether to connect, read the server capabilities and build the schema in the background at init.
+     */
+    private boolean warmUpOnInit = false;
+
+    /**
+     * The percentile of the recent read latencies after which a read is also sent to another server, or 0 to disable.
+     */
+    private int hedgedReadPercentile = 0;
+
+    /**
+     * The minimum time in milliseconds a read is given before it is also sent to another server.
+     */
+    private long hedgedReadMinDelay = 10;
+
+    /**
+     * The maximum number of base contexts searched at the same time, or 1 to search them one after another.
+     */
+    private int parallelSearchThreads = 1;
+
+    /**
+     * The number of threads converting search results while others read them and hand them over, or 0 to do all three in turn.
+     */
+    private int searchPipelineThreads = 0;
+
+    /**
+     * The number of search results read ahead of the handler when the search is pipelined.
+     */
+    private int searchPipelineQueueSize = 100;
+
+    /**
+     * The number of entries a search reads the LDAP groups of one at a time before it indexes all the groups, or 0 to never index them.
+     */
+    private int ldapGroupsIndexThreshold = 0;
+
+    /**
+     * The time in milliseconds the index of the LDAP groups built by a search is reused by the following ones.
+     */
+    private long ldapGroupsIndexTimeout = 0;
+
+    /**
+     * The number of threads reading the tokenGroups of the entries returned by a search, or 0 to read them in turn.
+     */
+    private int tokenGroupsThreads = 0;
+
+    /**
+     * Whether to return the tokenGroups as the DNs of the groups instead of their SIDs.
+     */
+    private boolean tokenGroupsAsDNs = false;
+
+    /**
+     * The maximum number of cached entry DNs by object class and Uid, or 0 to disable the cache.
+     */
+    private int entryDNCacheSize = 0;
+
+    /**
+     * The time in milliseconds an entry DN is cached.
+     */
+    private long entryDNCacheTimeout = 300000;
+
+    /**
+     * Whether to check that a cached entry DN still has the Uid by reading the entry before using it.
+     */
+    private boolean verifyCachedEntryDNs = true;
+
+    /**
+     * The maximum number of searches whose paged results cookies are kept by offset, or 0 to disable the checkpoints.
+     */
+    private int pagedResultsCheckpoints = 0;
+
+    /**
+     * The time in milliseconds a paged results cookie is kept by offset.
+     */
+    private long pagedResultsCheckpointsTimeout = 60000;
+
+    /**
+     * Whether to read the page at an offset of a sorted search through a virtual list view.
+     */
+    private boolean useVlvForPagedResultsOffset = false;
+
+    /**
+     * The maximum number of cached search results, or 0 to disable the cache.
+     */
+    private int searchResultCacheSize = 0;
+
+    /**
+     * The time in milliseconds a search result is cached.
+     */
+    private long searchResultCacheTimeout = 60000;
+
+    /**
+     * The relative costs of the filter terms on attributes, as "attribute=weight", used to order the terms of the
+     * search filters.
+     */
+    private String[] filterAttributeWeights = { };
+
+    /**
+     * The maximum number of terms of a disjunction in a search filter, above which the search is split into several
+     * searches, or 0 not to split the searches. The count-only searches are not split.
+     */
+    private int filterChunkSize = 500;
+
+    /**
+     * Whether to pipeline requests over an asynchronous connection where possible.
+     */
+    private boolean useAsynchronousTransport = false;
+
+    /**
+     * The time in milliseconds the rootDSE capabilities are shared between connector instances.
+     */
+    private long serverCapabilitiesCacheTimeout = 600000;
+
     // Sync configuration properties.
 
     private String[] baseContextsToSynchronize = { };
@@ -306,6 +480,87 @@ public class LdapConfiguration extends AbstractConfiguration implements Stateful
             failValidation("blockSize.legalValue");
         }
 
+        if (connectionPoolMaxSize < 0) {
+            failValidation("connectionPoolMaxSize.legalValue");
+        }
+        if (connectionPoolMinSize < 0 || connectionPoolMinSize > connectionPoolMaxSize) {
+            failValidation("connectionPoolMinSize.legalValue");
+        }
+        if (connectionPoolIdleTimeout < 0) {
+            failValidation("connectionPoolIdleTimeout.legalValue");
+        }
+        if (connectionPoolMaxWait < 0) {
+            failValidation("connectionPoolMaxWait.legalValue");
+        }
+        checkLoadBalancingPolicy(loadBalancingPolicy, "loadBalancingPolicy.invalidPolicy");
+        if (serverEjectionTime < 0) {
+            failValidation("serverEjectionTime.legalValue");
+        }
+        if (authenticationPoolMaxSize < 0) {
+            failValidation("authenticationPoolMaxSize.legalValue");
+        }
+        if (runAsCacheSize < 0) {
+            failValidation("runAsCacheSize.legalValue");
+        }
+        if (runAsCacheTimeout < 0) {
+            failValidation("runAsCacheTimeout.legalValue");
+        }
+        if (readYourWritesWindow < 0) {
+            failValidation("readYourWritesWindow.legalValue");
+        }
+        if (dnsSRVRecordCacheTimeout < 0) {
+            failValidation("dnsSRVRecordCacheTimeout.legalValue");
+        }
+        if (hedgedReadPercentile < 0 || hedgedReadPercentile > 99) {
+            failValidation("hedgedReadPercentile.legalValue");
+        }
+        if (hedgedReadMinDelay < 0) {
+            failValidation("hedgedReadMinDelay.legalValue");
+        }
+        if (parallelSearchThreads < 1) {
+            failValidation("parallelSearchThreads.legalValue");
+        }
+        if (searchPipelineThreads < 0) {
+            failValidation("searchPipelineThreads.legalValue");
+        }
+        if (searchPipelineQueueSize < 1) {
+            failValidation("searchPipelineQueueSize.legalValue");
+        }
+        if (ldapGroupsIndexThreshold < 0) {
+            failValidation("ldapGroupsIndexThreshold.legalValue");
+        }
+        if (ldapGroupsIndexTimeout < 0) {
+            failValidation("ldapGroupsIndexTimeout.legalValue");
+        }
+        if (tokenGroupsThreads < 0) {
+            failValidation("tokenGroupsThreads.legalValue");
+        }
+        if (entryDNCacheSize < 0) {
+            failValidation("entryDNCacheSize.legalValue");
+        }
+        if (entryDNCacheTimeout < 0) {
+            failValidation("entryDNCacheTimeout.legalValue");
+        }
+        if (pagedResultsCheckpoints < 0) {
+            failValidation("pagedResultsCheckpoints.legalValue");
+        }
+        if (pagedResultsCheckpointsTimeout < 0) {
+            failValidation("pagedResultsCheckpointsTimeout.legalValue");
+        }
+        if (searchResultCacheSize < 0) {
+            failValidation("searchResultCacheSize.legalValue");
+        }
+        if (searchResultCacheTimeout < 0) {
+            failValidation("searchResultCacheTimeout.legalValue");
+        }
+        checkFilterAttributeWeights(getFilterAttributeWeights(), "filterAttributeWeights.legalValue");
+        if (filterChunkSize < 0) {
+            failValidation("filterChunkSize.legalValue");
+        }
+        if (serverCapabilitiesCacheTimeout < 0) {
+            failValidation("serverCapabilitiesCacheTimeout.legalValue");
+        }
+
         checkNotBlank(vlvSortAttribute, "vlvSortAttribute.notBlank");
 
         checkNotBlank(uidAttribute, "uidAttribute.notBlank");
@@ -398,6 +653,14 @@ public class LdapConfiguration extends AbstractConfiguration implements Stateful
         }
     }
 
+    private void checkFilterAttributeWeights(String[] array, String errorMessage) {
+        for (String each : array) {
+            if (each == null || !each.matches("[^=\\s]+\\s*=\\s*\\d{1,9}")) {
+                failValidation(errorMessage, each);
+            }
+        }
+    }
+
     private void checkReferralsHandling(String ref, String errorMessage){
         if (!ref.matches("follow|ignore|throw")){
             failValidation(errorMessage);
@@ -416,6 +679,14 @@ public class LdapConfiguration extends AbstractConfiguration implements Stateful
         }
     }
 
+    private void checkLoadBalancingPolicy(String policy, String errorMessage) {
+        try {
+            LdapServerSelector.Policy.parse(policy);
+        } catch (RuntimeException e) {
+            failValidation(errorMessage);
+        }
+    }
+
     private void failValidation(String key, Object... args) {
         String message = getConnectorMessages().format(key, null, args);
         throw new ConfigurationException(message);
@@ -665,10 +936,282 @@ public class LdapConfiguration extends AbstractConfiguration implements Stateful
         this.useDNSSRVRecord = useDNSSRVRecord;
     }
 
+    public long getDnsSRVRecordCacheTimeout() {
+        return dnsSRVRecordCacheTimeout;
+    }
+
+    public void setDnsSRVRecordCacheTimeout(long dnsSRVRecordCacheTimeout) {
+        this.dnsSRVRecordCacheTimeout = dnsSRVRecordCacheTimeout;
+    }
+
     public String getResetSyncToken() {return resetSyncToken;}
 
     public void setResetSyncToken(String resetSyncToken) {this.resetSyncToken = resetSyncToken;}
 
+    public int getConnectionPoolMaxSize() {
+        return connectionPoolMaxSize;
+    }
+
+    public void setConnectionPoolMaxSize(int connectionPoolMaxSize) {
+        this.connectionPoolMaxSize = connectionPoolMaxSize;
+    }
+
+    public int getConnectionPoolMinSize() {
+        return connectionPoolMinSize;
+    }
+
+    public void setConnectionPoolMinSize(int connectionPoolMinSize) {
+        this.connectionPoolMinSize = connectionPoolMinSize;
+    }
+
+    public long getConnectionPoolIdleTimeout() {
+        return connectionPoolIdleTimeout;
+    }
+
+    public void setConnectionPoolIdleTimeout(long connectionPoolIdleTimeout) {
+        this.connectionPoolIdleTimeout = connectionPoolIdleTimeout;
+    }
+
+    public long getConnectionPoolMaxWait() {
+        return connectionPoolMaxWait;
+    }
+
+    public void setConnectionPoolMaxWait(long connectionPoolMaxWait) {
+        this.connectionPoolMaxWait = connectionPoolMaxWait;
+    }
+
+    public String getLoadBalancingPolicy() {
+        return loadBalancingPolicy;
+    }
+
+    public void setLoadBalancingPolicy(String loadBalancingPolicy) {
+        this.loadBalancingPolicy = loadBalancingPolicy;
+    }
+
+    public long getServerEjectionTime() {
+        return serverEjectionTime;
+    }
+
+    public void setServerEjectionTime(long serverEjectionTime) {
+        this.serverEjectionTime = serverEjectionTime;
+    }
+
+    public int getAuthenticationPoolMaxSize() {
+        return authenticationPoolMaxSize;
+    }
+
+    public void setAuthenticationPoolMaxSize(int authenticationPoolMaxSize) {
+        this.authenticationPoolMaxSize = authenticationPoolMaxSize;
+    }
+
+    public int getRunAsCacheSize() {
+        return runAsCacheSize;
+    }
+
+    public void setRunAsCacheSize(int runAsCacheSize) {
+        this.runAsCacheSize = runAsCacheSize;
+    }
+
+    public long getRunAsCacheTimeout() {
+        return runAsCacheTimeout;
+    }
+
+    public void setRunAsCacheTimeout(long runAsCacheTimeout) {
+        this.runAsCacheTimeout = runAsCacheTimeout;
+    }
+
+    public String[] getReadServers() {
+        return readServers != null ? readServers.clone() : new String[0];
+    }
+
+    public void setReadServers(String... readServers) {
+        this.readServers = readServers != null ? readServers.clone() : null;
+    }
+
+    public long getReadYourWritesWindow() {
+        return readYourWritesWindow;
+    }
+
+    public void setReadYourWritesWindow(long readYourWritesWindow) {
+        this.readYourWritesWindow = readYourWritesWindow;
+    }
+
+    public boolean isWarmUpOnInit() {
+        return warmUpOnInit;
+    }
+
+    public void setWarmUpOnInit(boolean warmUpOnInit) {
+        this.warmUpOnInit = warmUpOnInit;
+    }
+
+    public int getHedgedReadPercentile() {
+        return hedgedReadPercentile;
+    }
+
+    public void setHedgedReadPercentile(int hedgedReadPercentile) {
+        this.hedgedReadPercentile = hedgedReadPercentile;
+    }
+
+    public long getHedgedReadMinDelay() {
+        return hedgedReadMinDelay;
+    }
+
+    public void setHedgedReadMinDelay(long hedgedReadMinDelay) {
+        this.hedgedReadMinDelay = hedgedReadMinDelay;
+    }
+
+    public int getParallelSearchThreads() {
+        return parallelSearchThreads;
+    }
+
+    public void setParallelSearchThreads(int parallelSearchThreads) {
+        this.parallelSearchThreads = parallelSearchThreads;
+    }
+
+    public int getSearchPipelineThreads() {
+        return searchPipelineThreads;
+    }
+
+    public void setSearchPipelineThreads(int searchPipelineThreads) {
+        this.searchPipelineThreads = searchPipelineThreads;
+    }
+
+    public int getSearchPipelineQueueSize() {
+        return searchPipelineQueueSize;
+    }
+
+    public void setSearchPipelineQueueSize(int searchPipelineQueueSize) {
+        this.searchPipelineQueueSize = searchPipelineQueueSize;
+    }
+
+    public int getLdapGroupsIndexThreshold() {
+        return ldapGroupsIndexThreshold;
+    }
+
+    public void setLdapGroupsIndexThreshold(int ldapGroupsIndexThreshold) {
+        this.ldapGroupsIndexThreshold = ldapGroupsIndexThreshold;
+    }
+
+    public long getLdapGroupsIndexTimeout() {
+        return ldapGroupsIndexTimeout;
+    }
+
+    public void setLdapGroupsIndexTimeout(long ldapGroupsIndexTimeout) {
+        this.ldapGroupsIndexTimeout = ldapGroupsIndexTimeout;
+    }
+
+    public int getTokenGroupsThreads() {
+        return tokenGroupsThreads;
+    }
+
+    public void setTokenGroupsThreads(int tokenGroupsThreads) {
+        this.tokenGroupsThreads = tokenGroupsThreads;
+    }
+
+    public boolean isTokenGroupsAsDNs() {
+        return tokenGroupsAsDNs;
+    }
+
+    public void setTokenGroupsAsDNs(boolean tokenGroupsAsDNs) {
+        this.tokenGroupsAsDNs = tokenGroupsAsDNs;
+    }
+
+    public int getEntryDNCacheSize() {
+        return entryDNCacheSize;
+    }
+
+    public void setEntryDNCacheSize(int entryDNCacheSize) {
+        this.entryDNCacheSize = entryDNCacheSize;
+    }
+
+    public long getEntryDNCacheTimeout() {
+        return entryDNCacheTimeout;
+    }
+
+    public void setEntryDNCacheTimeout(long entryDNCacheTimeout) {
+        this.entryDNCacheTimeout = entryDNCacheTimeout;
+    }
+
+    public boolean isVerifyCachedEntryDNs() {
+        return verifyCachedEntryDNs;
+    }
+
+    public void setVerifyCachedEntryDNs(boolean verifyCachedEntryDNs) {
+        this.verifyCachedEntryDNs = verifyCachedEntryDNs;
+    }
+
+    public int getPagedResultsCheckpoints() {
+        return pagedResultsCheckpoints;
+    }
+
+    public void setPagedResultsCheckpoints(int pagedResultsCheckpoints) {
+        this.pagedResultsCheckpoints = pagedResultsCheckpoints;
+    }
+
+    public long getPagedResultsCheckpointsTimeout() {
+        return pagedResultsCheckpointsTimeout;
+    }
+
+    public void setPagedResultsCheckpointsTimeout(long pagedResultsCheckpointsTimeout) {
+        this.pagedResultsCheckpointsTimeout = pagedResultsCheckpointsTimeout;
+    }
+
+    public boolean isUseVlvForPagedResultsOffset() {
+        return useVlvForPagedResultsOffset;
+    }
+
+    public void setUseVlvForPagedResultsOffset(boolean useVlvForPagedResultsOffset) {
+        this.useVlvForPagedResultsOffset = useVlvForPagedResultsOffset;
+    }
+
+    public int getSearchResultCacheSize() {
+        return searchResultCacheSize;
+    }
+
+    public void setSearchResultCacheSize(int searchResultCacheSize) {
+        this.searchResultCacheSize = searchResultCacheSize;
+    }
+
+    public long getSearchResultCacheTimeout() {
+        return searchResultCacheTimeout;
+    }
+
+    public void setSearchResultCacheTimeout(long searchResultCacheTimeout) {
+        this.searchResultCacheTimeout = searchResultCacheTimeout;
+    }
+
+    public String[] getFilterAttributeWeights() {
+        return filterAttributeWeights != null ? filterAttributeWeights.clone() : new String[0];
+    }
+
+    public void setFilterAttributeWeights(String... filterAttributeWeights) {
+        this.filterAttributeWeights = filterAttributeWeights != null ? filterAttributeWeights.clone() : null;
+    }
+
+    public int getFilterChunkSize() {
+        return filterChunkSize;
+    }
+
+    public void setFilterChunkSize(int filterChunkSize) {
+        this.filterChunkSize = filterChunkSize;
+    }
+
+    public boolean isUseAsynchronousTransport() {
+        return useAsynchronousTransport;
+    }
+
+    public void setUseAsynchronousTransport(boolean useAsynchronousTransport) {
+        this.useAsynchronousTransport = useAsynchronousTransport;
+    }
+
+    public long getServerCapabilitiesCacheTimeout() {
+        return serverCapabilitiesCacheTimeout;
+    }
+
+    public void setServerCapabilitiesCacheTimeout(long serverCapabilitiesCacheTimeout) {
+        this.serverCapabilitiesCacheTimeout = serverCapabilitiesCacheTimeout;
+    }
+
     // Sync properties getters and setters.
 
     @ConfigurationProperty(operations = { SyncOp.class })
@@ -889,6 +1432,40 @@ public class LdapConfiguration extends AbstractConfiguration implements Stateful
         builder.append(binaryUid);
         builder.append(readSchema);
         builder.append(useDNSSRVRecord);
+        builder.append(dnsSRVRecordCacheTimeout);
+        builder.append(connectionPoolMaxSize);
+        builder.append(connectionPoolMinSize);
+        builder.append(connectionPoolIdleTimeout);
+        builder.append(connectionPoolMaxWait);
+        builder.append(loadBalancingPolicy);
+        builder.append(serverEjectionTime);
+        builder.append(authenticationPoolMaxSize);
+        builder.append(runAsCacheSize);
+        builder.append(runAsCacheTimeout);
+        builder.append(readServers);
+        builder.append(readYourWritesWindow);
+        builder.append(warmUpOnInit);
+        builder.append(hedgedReadPercentile);
+        builder.append(hedgedReadMinDelay);
+        builder.append(parallelSearchThreads);
+        builder.append(searchPipelineThreads);
+        builder.append(searchPipelineQueueSize);
+        builder.append(ldapGroupsIndexThreshold);
+        builder.append(ldapGroupsIndexTimeout);
+        builder.append(tokenGroupsThreads);
+        builder.append(tokenGroupsAsDNs);
+        builder.append(entryDNCacheSize);
+        builder.append(entryDNCacheTimeout);
+        builder.append(verifyCachedEntryDNs);
+        builder.append(pagedResultsCheckpoints);
+        builder.append(pagedResultsCheckpointsTimeout);
+        builder.append(useVlvForPagedResultsOffset);
+        builder.append(searchResultCacheSize);
+        builder.append(searchResultCacheTimeout);
+        builder.append(filterAttributeWeights);
+        builder.append(filterChunkSize);
+        builder.append(useAsynchronousTransport);
+        builder.append(serverCapabilitiesCacheTimeout);
         // Sync configuration properties.
         for (String baseContextToSynchronize : baseContextsToSynchronize) {
             builder.append(baseContextToSynchronize);
@@ -25,31 +25,26 @@
  */
 package org.identityconnectors.ldap;
 
-import static java.util.Collections.emptySet;
-import static java.util.Collections.unmodifiableSet;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.synchronizedMap;
 import static org.identityconnectors.common.CollectionUtil.newCaseInsensitiveSet;
 import static org.identityconnectors.common.StringUtil.isNotBlank;
 import static org.identityconnectors.ldap.ADLdapUtil.isServerMSADFamily;
-import static org.identityconnectors.ldap.LdapUtil.getStringAttrValue;
-import static org.identityconnectors.ldap.LdapUtil.getStringAttrValues;
 import static org.identityconnectors.ldap.LdapUtil.nullAsEmpty;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.naming.AuthenticationException;
 import javax.naming.CommunicationException;
 import javax.naming.Context;
-import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
-import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
 import javax.naming.ldap.Control;
 import javax.naming.ldap.InitialLdapContext;
 import javax.naming.ldap.LdapContext;
@@ -64,10 +59,16 @@ import org.identityconnectors.framework.common.exceptions.ConnectionFailedExcept
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.InvalidCredentialException;
 import org.identityconnectors.framework.common.exceptions.PasswordExpiredException;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.ldap.LdapConstants.ServerType;
 import org.identityconnectors.ldap.schema.ADStaticSchema;
 import org.identityconnectors.ldap.schema.LdapSchemaMapping;
 import org.identityconnectors.ldap.schema.LdapStaticSchema;
+import org.identityconnectors.ldap.search.LdapFilterOptimizer;
+import org.identityconnectors.ldap.search.LdapSearchPlan;
+import org.identityconnectors.ldap.search.LdapSearchResultCache;
+import org.identityconnectors.ldap.search.PagedResultsCheckpoints;
 
 public class LdapConnection {
 
@@ -122,15 +123,49 @@ public class LdapConnection {
     public static final String SASL_GSSAPI = "SASL-GSSAPI";
     public static final String PASSWORD_EXPIRED_OID = "2.16.840.1.113730.3.4.4";
     private static final Log log = Log.getLog(LdapConnection.class);
+    private static final int RECENT_WRITES_MAX_SIZE = 10000;
     private final LdapConfiguration config;
     private final LdapSchemaMapping schemaMapping;
     private LdapContext initCtx;
-    private StartTlsResponse startTlsResponse;
-    private Set<String> supportedControls;
+    private LdapCapabilities capabilities;
+    private final LdapContextRouter router;
+    private LdapRunAsCache runAsCache;
+    private final LdapEntryDNCache entryDNCache;
+    private final PagedResultsCheckpoints pagedResultsCheckpoints;
+    private final LdapSearchPlan.Cache searchPlans = new LdapSearchPlan.Cache();
+    private final LdapSearchResultCache searchResultCache;
+    private LdapFilterOptimizer filterOptimizer;
+    private final LdapRecentWrites recentWrites;
+    // The StartTLS session of each open context, closed with the context.
+    private final Map<LdapContext, StartTlsResponse> tlsSessions = synchronizedMap(new IdentityHashMap<LdapContext, StartTlsResponse>());
+    private LdapAsyncTransport asyncTransport;
+    // The index of the LDAP groups shared by the searches.
+    private LdapGroupIndex groupIndex;
 
     public LdapConnection(LdapConfiguration config) {
         this.config = config;
+        router = new LdapContextRouter(config, new LdapContextRouter.Connector() {
+            public Pair<AuthenticationResult, LdapContext> connect(String urls, String principal, GuardedString credentials) {
+                return createContext(urls, principal, credentials);
+            }
+
+            public LdapContext connectForBinds(String urls) {
+                return openBindContext(urls);
+            }
+
+            public LdapContext connectWithSasl() throws NamingException {
+                return getSaslContext();
+            }
+
+            public void close(LdapContext context) {
+                closeContext(context);
+            }
+        });
         schemaMapping = new LdapSchemaMapping(this);
+        recentWrites = new LdapRecentWrites(config.getReadYourWritesWindow(), RECENT_WRITES_MAX_SIZE);
+        entryDNCache = new LdapEntryDNCache(config.getEntryDNCacheSize(), config.getEntryDNCacheTimeout());
+        pagedResultsCheckpoints = new PagedResultsCheckpoints(config.getPagedResultsCheckpoints(), config.getPagedResultsCheckpointsTimeout());
+        searchResultCache = new LdapSearchResultCache(config.getSearchResultCacheSize(), config.getSearchResultCacheTimeout());
     }
 
     public String format(String key, String dflt, Object... args) {
@@ -149,7 +184,7 @@ public class LdapConnection {
                 LdapConstants.MS_TOKEN_GROUPS_ATTR +
                 (config.isBinaryUid() ? " " + config.getUidAttribute() : ""));
         env.put(Context.INITIAL_CONTEXT_FACTORY, LDAP_CTX_FACTORY);
-        env.put(Context.PROVIDER_URL, getLdapUrls());
+        env.put(Context.PROVIDER_URL, router.getLdapUrls());
         env.put(Context.REFERRAL, "follow");
         env.put(Context.SECURITY_AUTHENTICATION, "simple");
         if (config.isSsl()) {
@@ -183,29 +218,347 @@ public class LdapConnection {
                 throw new ConnectionFailedException(ex);
             }
         } else {
-            initCtx = connect(config.getPrincipal(), config.getCredentials());
+            initCtx = router.connect(config.getPrincipal(), config.getCredentials());
         }
 
         return initCtx;
     }
 
+    /**
+     * Leases a bound context for the duration of an operation. The context
+     * must be handed back with {@link #releaseContext(LdapContext)}, and must
+     * not be closed by the caller. When connection pooling is disabled, this
+     * is the shared initial context.
+     */
+    public LdapContext borrowContext() {
+        if (config.getConnectionPoolMaxSize() <= 0) {
+            return getInitialContext();
+        }
+        return router.borrowContext();
+    }
+
+    /**
+     * Leases a bound context for the duration of a read. When read servers
+     * are configured, this is a context to one of them, unless the current
+     * thread already holds a context to the write servers: reads performed
+     * as part of a write, or pinned to the write servers with
+     * {@link #borrowContext()}, see the writes made so far. The context must
+     * be handed back with {@link #releaseContext(LdapContext)}.
+     */
+    public LdapContext borrowReadContext() {
+        if (!hasReadServers()) {
+            return borrowContext();
+        }
+        return router.borrowReadContext();
+    }
+
+    /**
+     * Returns {@code true} if reads are sent to dedicated read servers.
+     */
+    public boolean hasReadServers() {
+        return router.hasReadServers();
+    }
+
+    /**
+     * Remembers that the entry identified by the given Uid and DN was just
+     * written, so that it is read from the write servers during the
+     * read-your-writes window.
+     */
+    public void recordWrite(Uid uid, String entryDN) {
+        // The write may change the groups, or the DN, of an entry.
+        shareGroupIndex(null);
+        if (!recentWrites.isEnabled() || !hasReadServers()) {
+            return;
+        }
+        List<String> keys = new ArrayList<String>(4);
+        keys.add(entryDN);
+        if (uid != null) {
+            String value = uid.getUidValue();
+            keys.add(value);
+            StringBuilder escaped = new StringBuilder();
+            LdapUtil.escapeAttrValue(value, escaped);
+            keys.add(escaped.toString());
+            if (config.isBinaryUid()) {
+                keys.add(LdapUtil.escapeBinaryUid(value));
+            }
+        }
+        recentWrites.record(keys.toArray(new String[keys.size()]));
+    }
+
+    /**
+     * Returns the index of the LDAP groups built by a previous search, or
+     * {@code null} if there is none, or it is older than the configured
+     * timeout.
+     */
+    public synchronized LdapGroupIndex getSharedGroupIndex() {
+        if (groupIndex != null && System.currentTimeMillis() - groupIndex.getCreatedAt() >= config.getLdapGroupsIndexTimeout()) {
+            groupIndex = null;
+        }
+        return groupIndex;
+    }
+
+    /**
+     * Lets the following searches reuse the given index of the LDAP groups,
+     * for the configured time.
+     */
+    public synchronized void shareGroupIndex(LdapGroupIndex index) {
+        groupIndex = config.getLdapGroupsIndexTimeout() > 0 ? index : null;
+    }
+
+    /**
+     * Returns {@code true} if the given DN or search filter concerns an entry
+     * written during the read-your-writes window.
+     */
+    public boolean isRecentlyWritten(String dnOrFilter) {
+        return recentWrites.isMentionedIn(dnOrFilter);
+    }
+
+    /**
+     * Hands back a context obtained from {@link #borrowContext()},
+     * {@link #borrowReadContext()} or {@link #borrowHedgeContext(LdapContext)}.
+     */
+    public void releaseContext(LdapContext ctx) {
+        if (ctx != null && ctx != initCtx) {
+            router.releaseContext(ctx);
+        }
+    }
+
+    /**
+     * Closes a context obtained from {@link #borrowContext()},
+     * {@link #borrowReadContext()} or {@link #borrowHedgeContext(LdapContext)}
+     * which may still be in use by another thread, e.g. the slower of two
+     * hedged reads. It is not handed out again.
+     */
+    public void abandonContext(LdapContext ctx) {
+        if (ctx != null && ctx != initCtx) {
+            router.abandonContext(ctx);
+        }
+    }
+
+    /**
+     * Returns {@code true} if a read about to be made by the current thread
+     * may be hedged: hedging is enabled, reads go through pooled contexts,
+     * and the thread does not hold one already, which the read would have to
+     * go through.
+     */
+    public boolean canHedgeReads() {
+        return config.getHedgedReadPercentile() > 0 && canSearchInOtherThreads();
+    }
+
+    /**
+     * Returns {@code true} if a search about to be made by the current thread
+     * may go through several base contexts at once: parallel searches are
+     * enabled, and the search could be made in other threads.
+     */
+    public boolean canSearchInParallel() {
+        return getSearchParallelism() > 1 && canSearchInOtherThreads();
+    }
+
+    /**
+     * Returns the number of threads a parallel search goes through. One
+     * pooled context is left for the lookups the handler of the search makes
+     * meanwhile, since the threads keep theirs while they wait for it.
+     */
+    public int getSearchParallelism() {
+        return Math.min(config.getParallelSearchThreads(), config.getConnectionPoolMaxSize() - 1);
+    }
+
+    /**
+     * Returns the number of threads a pipelined search converts the entries
+     * with, or 0 if searches are not pipelined. The reading thread keeps a
+     * pooled context for the whole search, so at most the remaining pooled
+     * contexts are used for the lookups the conversions make.
+     */
+    public int getSearchPipelineThreads() {
+        return Math.min(config.getSearchPipelineThreads(), config.getConnectionPoolMaxSize() - 1);
+    }
+
+    /**
+     * Marks the current thread as handling the results of searches made in
+     * other threads, which keep their contexts while they wait for it, until
+     * {@link #endStreaming()}. The searches the thread makes meanwhile are not
+     * spread across other threads, which could use up the pool.
+     */
+    public void beginStreaming() {
+        router.beginStreaming();
+    }
+
+    public void endStreaming() {
+        router.endStreaming();
+    }
+
+    /**
+     * Returns {@code true} if a search about to be made by the current thread
+     * could be made in other threads instead: they lease contexts of their
+     * own, and the current thread does not hold one, which the search would
+     * have to go through.
+     */
+    public boolean canSearchInOtherThreads() {
+        return router.canSearchInOtherThreads();
+    }
+
+    /**
+     * Returns the time in milliseconds after which a read which has not
+     * answered yet is sent to a second server, i.e. the configured percentile
+     * of the recent read latencies, or -1 if not enough reads were measured
+     * yet.
+     */
+    public long getHedgeDelay() {
+        return router.getHedgeDelay();
+    }
+
+    /**
+     * Records how long a read took to return its first result, or to
+     * complete if it returned none.
+     */
+    public void recordReadLatency(long latency) {
+        router.recordReadLatency(latency);
+    }
+
+    /**
+     * Leases a context for a hedged copy of a read made through the given
+     * context, preferably to another server. Must be called from a thread
+     * which holds no lease, and the context must be handed back with
+     * {@link #releaseContext(LdapContext)}.
+     */
+    public LdapContext borrowHedgeContext(LdapContext primary) {
+        return router.borrowHedgeContext(primary);
+    }
+
+    /**
+     * Returns {@code true} if the context is bound as the configured
+     * principal, i.e. it is the initial context or a pooled context, as
+     * opposed to a context bound as a run-as user.
+     */
+    public boolean isConnectionContext(LdapContext ctx) {
+        return ctx == null || ctx == initCtx || router.isLeased(ctx);
+    }
+
+    /**
+     * Returns the asynchronous transport, bound as the configured principal,
+     * or {@code null} if it is disabled or cannot be used with the configured
+     * authentication method. Since the transport does not follow referrals,
+     * it is only used when they are ignored.
+     */
+    public synchronized LdapAsyncTransport getAsyncTransport() {
+        if (!config.isUseAsynchronousTransport() || SASL_GSSAPI.equalsIgnoreCase(config.getAuthType())
+                || !"ignore".equalsIgnoreCase(config.getReferralsHandling())) {
+            return null;
+        }
+        if (asyncTransport != null && !asyncTransport.isValid()) {
+            asyncTransport.close();
+            asyncTransport = null;
+        }
+        if (asyncTransport == null) {
+            asyncTransport = LdapAsyncTransport.open(this, router.getCandidates());
+        }
+        return asyncTransport;
+    }
+
+    /**
+     * Opens an anonymous connection which is re-bound for each authentication.
+     */
+    private LdapContext openBindContext(String urls) {
+        Hashtable<Object, Object> env = getDefaultContextEnv();
+        env.put(Context.PROVIDER_URL, urls);
+        env.put(Context.REFERRAL, config.getReferralsHandling());
+        env.put(Context.SECURITY_AUTHENTICATION, "none");
+        LdapContext context = null;
+        try {
+            context = new InitialLdapContext(env, null);
+            if (config.isStartTLS()) {
+                StartTlsResponse tls = (StartTlsResponse) context.extendedOperation(new StartTlsRequest());
+                tls.negotiate();
+                tlsSessions.put(context, tls);
+            }
+            return context;
+        } catch (NamingException e) {
+            closeContext(context);
+            throw new ConnectionFailedException(e);
+        } catch (IOException e) {
+            closeContext(context);
+            throw new ConnectionFailedException(e);
+        }
+    }
+
     public LdapContext getRunAsContext(String principal, GuardedString credentials) {
-        return connect(principal, credentials);
+        return router.connect(principal, credentials);
     }
 
-    private LdapContext connect(String principal, GuardedString credentials) {
-        Pair<AuthenticationResult, LdapContext> pair = createContext(principal, credentials);
-        if (pair.first.getType().equals(AuthenticationResultType.SUCCESS)) {
-            return pair.second;
+    /**
+     * Returns the cache of the run-as user DNs and of the contexts bound as
+     * them.
+     */
+    public synchronized LdapRunAsCache getRunAsCache() {
+        if (runAsCache == null) {
+            runAsCache = new LdapRunAsCache(new LdapRunAsCache.ContextOpener() {
+                public LdapContext open(String dn, GuardedString password) {
+                    return getRunAsContext(dn, password);
+                }
+
+                public boolean validate(LdapContext context) {
+                    return LdapContextRouter.isAlive(context);
+                }
+
+                public void close(LdapContext context) {
+                    closeContext(context);
+                }
+            }, config.getRunAsCacheSize(), config.getRunAsCacheTimeout());
         }
-        pair.first.propagate();
-        throw new IllegalStateException("Should never get here");
+        return runAsCache;
+    }
+
+    /**
+     * Returns the cache of the entry DNs by object class and Uid.
+     */
+    public LdapEntryDNCache getEntryDNCache() {
+        return entryDNCache;
+    }
+
+    /**
+     * Returns the paged results cookies searches were at after skipping
+     * entries.
+     */
+    public PagedResultsCheckpoints getPagedResultsCheckpoints() {
+        return pagedResultsCheckpoints;
+    }
+
+    /**
+     * Returns the plans of the most recently performed searches.
+     */
+    public LdapSearchPlan.Cache getSearchPlans() {
+        return searchPlans;
+    }
+
+    /**
+     * Returns the cache of the results of the searches.
+     */
+    public LdapSearchResultCache getSearchResultCache() {
+        return searchResultCache;
     }
 
-    private Pair<AuthenticationResult, LdapContext> createContext(String principal, GuardedString credentials) {
-        final List<Pair<AuthenticationResult, LdapContext>> result = new ArrayList<Pair<AuthenticationResult, LdapContext>>(1);
+    /**
+     * Returns the optimizer of the search filters.
+     */
+    public synchronized LdapFilterOptimizer getFilterOptimizer() {
+        if (filterOptimizer == null) {
+            Map<String, Integer> weights = LdapFilterOptimizer.parseWeights(config.getFilterAttributeWeights());
+            // The Uid attribute identifies the entries, so it is expected to be indexed.
+            if (!weights.containsKey(config.getUidAttribute())) {
+                weights.put(config.getUidAttribute(), 1);
+            }
+            filterOptimizer = new LdapFilterOptimizer(weights, getServerType(), new LdapFilterOptimizer.ObjectClassHierarchy() {
+                public Set<String> getEffectiveObjectClasses(String ldapClass) {
+                    return getSchemaMapping().getEffectiveLdapClasses(ldapClass);
+                }
+            });
+        }
+        return filterOptimizer;
+    }
 
+    private Pair<AuthenticationResult, LdapContext> createContext(String urls, String principal, GuardedString credentials) {
         final Hashtable<Object, Object> env = getDefaultContextEnv();
+        env.put(Context.PROVIDER_URL, urls);
         env.put(Context.REFERRAL, config.getReferralsHandling());
         String authentication = (isNotBlank(principal) && !config.isStartTLS()) ? "simple" : "none";
         env.put(Context.SECURITY_AUTHENTICATION, authentication);
@@ -220,9 +573,7 @@ public class LdapConnection {
                 });
             }
         }
-        result.add(createContext(env, config.isStartTLS()));
-        assert result.size() == 1;
-        return result.get(0);
+        return createContext(env, config.isStartTLS());
     }
 
     private Pair<AuthenticationResult, LdapContext> createContext(Hashtable<?, ?> env, boolean useTLS) {
@@ -231,8 +582,9 @@ public class LdapConnection {
         try {
             context = new InitialLdapContext(env, null);
             if (useTLS) {
-                startTlsResponse = (StartTlsResponse)context.extendedOperation(new StartTlsRequest());
-                startTlsResponse.negotiate();
+                StartTlsResponse tls = (StartTlsResponse)context.extendedOperation(new StartTlsRequest());
+                tls.negotiate();
+                tlsSessions.put(context, tls);
                 context.addToEnvironment(Context.SECURITY_AUTHENTICATION, "simple");
                 context.reconnect(null);
             }
@@ -243,50 +595,7 @@ public class LdapConnection {
             }
             // TODO: process Password Policy control.
         } catch (AuthenticationException e) {
-            String message = e.getMessage().toLowerCase();
-            authnResult = new AuthenticationResult(AuthenticationResultType.PASSWORD_EXPIRED, e);
-            //SUN_DSEE, OPENDS, OPENDJ, IBM, MSAD, MSAD_LDS, MSAD_GC, NOVELL, UNBOUNDID, OPENLDAP, UNKNOWN
-            switch (getServerType()) {
-                case MSAD:
-                case MSAD_GC:
-                case MSAD_LDS:
-                    if (message.contains("ldap: error code 49 ")) {
-                        if (message.contains("data 525,")) {
-                            authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("User not found"));
-                        } else if (message.contains("data 52e,")) {
-                            authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("Invalid credentials"));
-                        } else if (message.contains("data 530,")) {
-                            authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("Not permitted to logon at this time"));
-                        } else if (message.contains("data 531,")) {
-                            authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("Not permitted to logon at this workstation"));
-                        } else if (message.contains("data 532,")) {
-                            authnResult = new AuthenticationResult(AuthenticationResultType.PASSWORD_EXPIRED, new AuthenticationException("Password expired"));
-                        } else if (message.contains("data 533,")) {
-                            authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("Account disabled"));
-                        } else if (message.contains("data 701,")) {
-                            authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("Account expired"));
-                        } else if (message.contains("data 773,")) {
-                            authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("User must reset password"));
-                        } else if (message.contains("data 775,")) {
-                            authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("User account locked"));
-                        }
-                    }
-                    break;
-                case SUN_DSEE:
-                    if (message.contains("password expired")) { // Sun DS.
-                        authnResult = new AuthenticationResult(AuthenticationResultType.PASSWORD_EXPIRED, e);
-                    }
-                    break;
-                case UNKNOWN:
-                    if (message.contains("password has expired")) { // RACF.
-                        authnResult = new AuthenticationResult(AuthenticationResultType.PASSWORD_EXPIRED, e);
-                    }
-                    break;
-                case OPENDJ:
-                case OPENLDAP:
-                default:
-                    break;
-            }
+            authnResult = getAuthenticationResult(e);
         } catch (CommunicationException e) {
             authnResult = new AuthenticationResult(AuthenticationResultType.COMMUNICATION_ISSUE, e);
         } catch (NamingException e) {
@@ -297,10 +606,62 @@ public class LdapConnection {
         if (authnResult == null) {
             assert context != null;
             authnResult = new AuthenticationResult(AuthenticationResultType.SUCCESS);
-    }
+        } else {
+            // Not handed out, so closed with its StartTLS session right away.
+            closeContext(context);
+            context = null;
+        }
         return new Pair<AuthenticationResult, LdapContext>(authnResult, context);
     }
 
+    private AuthenticationResult getAuthenticationResult(AuthenticationException e) {
+        String message = e.getMessage().toLowerCase();
+        AuthenticationResult authnResult = new AuthenticationResult(AuthenticationResultType.PASSWORD_EXPIRED, e);
+        //SUN_DSEE, OPENDS, OPENDJ, IBM, MSAD, MSAD_LDS, MSAD_GC, NOVELL, UNBOUNDID, OPENLDAP, UNKNOWN
+        switch (getServerType()) {
+            case MSAD:
+            case MSAD_GC:
+            case MSAD_LDS:
+                if (message.contains("ldap: error code 49 ")) {
+                    if (message.contains("data 525,")) {
+                        authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("User not found"));
+                    } else if (message.contains("data 52e,")) {
+                        authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("Invalid credentials"));
+                    } else if (message.contains("data 530,")) {
+                        authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("Not permitted to logon at this time"));
+                    } else if (message.contains("data 531,")) {
+                        authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("Not permitted to logon at this workstation"));
+                    } else if (message.contains("data 532,")) {
+                        authnResult = new AuthenticationResult(AuthenticationResultType.PASSWORD_EXPIRED, new AuthenticationException("Password expired"));
+                    } else if (message.contains("data 533,")) {
+                        authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("Account disabled"));
+                    } else if (message.contains("data 701,")) {
+                        authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("Account expired"));
+                    } else if (message.contains("data 773,")) {
+                        authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("User must reset password"));
+                    } else if (message.contains("data 775,")) {
+                        authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, new AuthenticationException("User account locked"));
+                    }
+                }
+                break;
+            case SUN_DSEE:
+                if (message.contains("password expired")) { // Sun DS.
+                    authnResult = new AuthenticationResult(AuthenticationResultType.PASSWORD_EXPIRED, e);
+                }
+                break;
+            case UNKNOWN:
+                if (message.contains("password has expired")) { // RACF.
+                    authnResult = new AuthenticationResult(AuthenticationResultType.PASSWORD_EXPIRED, e);
+                }
+                break;
+            case OPENDJ:
+            case OPENLDAP:
+            default:
+                break;
+        }
+        return authnResult;
+    }
+
     private static boolean hasPasswordExpiredControl(Control[] controls) {
         if (controls != null) {
             for (Control control : controls) {
@@ -311,33 +672,41 @@ public class LdapConnection {
         return false;
     }
 
-    private String getLdapUrls() {
-        if (config.isUseDNSSRVRecord()) {
-            String ldapUrl = getSRVRecords(config.getHost());
-            log.info("LDAP url built with SRV records: {0}", ldapUrl);
-            return ldapUrl;
-        } else {
-            StringBuilder builder = new StringBuilder();
-            builder.append("ldap://");
-            builder.append(config.getHost());
-            builder.append(':');
-            builder.append(config.getPort());
-            for (String failover : nullAsEmpty(config.getFailover())) {
-                builder.append(' ');
-                builder.append(failover);
-            }
-            return builder.toString();
-        }
-    }
-
     public void close() {
         try {
-            if (config.isStartTLS()) {
-                closeStartTLS(startTlsResponse);
-            }
-            quietClose(initCtx);
+            closeContext(initCtx);
         } finally {
             initCtx = null;
+            router.close();
+            entryDNCache.clear();
+            pagedResultsCheckpoints.clear();
+            searchPlans.clear();
+            if (searchResultCache.isEnabled()) {
+                log.info("Search result cache: {0} hits, {1} misses", searchResultCache.getHits(), searchResultCache.getMisses());
+            }
+            searchResultCache.clear();
+            synchronized (this) {
+                if (runAsCache != null) {
+                    runAsCache.close();
+                    runAsCache = null;
+                }
+                filterOptimizer = null;
+                if (asyncTransport != null) {
+                    asyncTransport.close();
+                    asyncTransport = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes a context opened by this connection, and its StartTLS session
+     * if it has one.
+     */
+    private void closeContext(LdapContext ctx) {
+        if (ctx != null) {
+            closeStartTLS(tlsSessions.remove(ctx));
+            quietClose(ctx);
         }
     }
 
@@ -383,18 +752,131 @@ public class LdapConnection {
     public AuthenticationResult authenticate(String entryDN, GuardedString password) {
         assert entryDN != null;
         log.ok("Attempting to authenticate {0}", entryDN);
-        Pair<AuthenticationResult, LdapContext> pair = createContext(entryDN, password);
-        if (pair.second != null) {
-            quietClose(pair.second);
+        AuthenticationResult result;
+        if (config.getAuthenticationPoolMaxSize() > 0) {
+            result = bind(entryDN, password);
+        } else {
+            Pair<AuthenticationResult, LdapContext> pair = router.open(entryDN, password);
+            if (pair.second != null) {
+                closeContext(pair.second);
+            }
+            result = pair.first;
+        }
+        log.ok("Authentication result: {0}", result);
+        return result;
+    }
+
+    /**
+     * Checks the credentials by re-binding a pooled connection, so that an
+     * authentication only costs a bind round trip. A connection which was
+     * pooled for a long time may have been dropped by the server, so a
+     * communication failure is retried once on another connection.
+     */
+    private AuthenticationResult bind(String entryDN, GuardedString password) {
+        for (int attempt = 0; ; attempt++) {
+            LdapContext context;
+            try {
+                context = router.borrowBindContext();
+            } catch (ConnectionFailedException e) {
+                return new AuthenticationResult(AuthenticationResultType.COMMUNICATION_ISSUE, e);
+            }
+            boolean broken = true;
+            try {
+                long start = System.currentTimeMillis();
+                AuthenticationResult result = rebind(context, entryDN, password);
+                if (result.getType() != AuthenticationResultType.COMMUNICATION_ISSUE) {
+                    router.recordLatency(context, System.currentTimeMillis() - start);
+                }
+                switch (result.getType()) {
+                    case SUCCESS:
+                        broken = false;
+                        break;
+                    case COMMUNICATION_ISSUE:
+                        if (attempt == 0) {
+                            log.ok("Retrying the authentication of {0} on another connection", entryDN);
+                            continue;
+                        }
+                        break;
+                    default:
+                        // The server keeps the connection open after a failed
+                        // bind, but JNDI would silently reopen it without
+                        // StartTLS if it did not.
+                        broken = config.isStartTLS() || (result.cause != null && !(result.cause instanceof AuthenticationException));
+                        break;
+                }
+                return result;
+            } finally {
+                router.releaseBindContext(context, broken);
+            }
+        }
+    }
+
+    private AuthenticationResult rebind(LdapContext context, String principal, GuardedString credentials) {
+        AuthenticationResult authnResult = null;
+        try {
+            context.addToEnvironment(Context.SECURITY_AUTHENTICATION, "simple");
+            context.addToEnvironment(Context.SECURITY_PRINCIPAL, principal);
+            final String[] password = new String[1];
+            if (credentials != null) {
+                credentials.access(new Accessor() {
+                    public void access(char[] clearChars) {
+                        password[0] = new String(clearChars);
+                    }
+                });
+            }
+            if (password[0] != null) {
+                context.addToEnvironment(Context.SECURITY_CREDENTIALS, password[0]);
+            } else {
+                context.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+            }
+            // Like after StartTLS, reconnect() binds again over the same connection.
+            context.reconnect(null);
+            if (config.isRespectResourcePasswordPolicyChangeAfterReset()) {
+                if (hasPasswordExpiredControl(context.getResponseControls())) {
+                    authnResult = new AuthenticationResult(AuthenticationResultType.PASSWORD_EXPIRED);
+                }
+            }
+        } catch (AuthenticationException e) {
+            authnResult = getAuthenticationResult(e);
+        } catch (CommunicationException e) {
+            authnResult = new AuthenticationResult(AuthenticationResultType.COMMUNICATION_ISSUE, e);
+        } catch (NamingException e) {
+            authnResult = new AuthenticationResult(AuthenticationResultType.FAILED, e);
+        } finally {
+            try {
+                context.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+            } catch (NamingException e) {
+                log.ok(e, "Exception while clearing the credentials of a pooled connection");
+            }
         }
-        log.ok("Authentication result: {0}", pair.first);
-        return pair.first;
+        if (authnResult == null) {
+            authnResult = new AuthenticationResult(AuthenticationResultType.SUCCESS);
+        }
+        return authnResult;
     }
 
     public void test() {
         checkAlive();
     }
 
+    /**
+     * Performs ahead of time what the first operations would otherwise do:
+     * connecting, detecting the server type, reading the rootDSE, building
+     * the schema and resolving the effective object classes.
+     */
+    public void warmUp() {
+        getInitialContext();
+        getServerType();
+        getCapabilities();
+        if (config.getConnectionPoolMaxSize() > 0) {
+            router.prefill();
+        }
+        schemaMapping.schema();
+        for (ObjectClass oclass : config.getObjectClassMappingConfigs().keySet()) {
+            schemaMapping.getEffectiveLdapClasses(oclass);
+        }
+    }
+
     public void checkAlive() {
         try {
             Attributes attrs = getInitialContext().getAttributes("", new String[]{"subschemaSubentry"});
@@ -409,50 +891,92 @@ public class LdapConnection {
      * the server.
      */
     public boolean supportsControl(String oid) {
-        return getSupportedControls().contains(oid);
+        return getCapabilities().getSupportedControls().contains(oid);
+    }
+
+    /**
+     * Returns {@code} true if the extended operation with the given OID is
+     * supported by the server.
+     */
+    public boolean supportsExtension(String oid) {
+        return getCapabilities().getSupportedExtensions().contains(oid);
     }
 
-    private Set<String> getSupportedControls() {
-        if (supportedControls == null) {
+    /**
+     * Returns what the server advertises in its rootDSE. The capabilities are
+     * shared with the other connector instances connecting to the same servers
+     * as the same principal for {@code serverCapabilitiesCacheTimeout}
+     * milliseconds.
+     */
+    public LdapCapabilities getCapabilities() {
+        LdapCapabilities result = capabilities;
+        long timeout = config.getServerCapabilitiesCacheTimeout();
+        if (result != null && (timeout <= 0 || !result.isExpired(System.currentTimeMillis(), timeout))) {
+            return result;
+        }
+        try {
+            if (timeout <= 0) {
+                result = LdapCapabilities.read(getInitialContext(), config.getPort());
+            } else {
+                result = LdapCapabilityRegistry.get(getCapabilitiesKey(), timeout, new LdapCapabilityRegistry.Loader() {
+                    public LdapCapabilities load() throws NamingException {
+                        return LdapCapabilities.read(getInitialContext(), config.getPort());
+                    }
+                });
+            }
+        } catch (NamingException e) {
+            log.warn(e, "Exception while reading the rootDSE");
+            // Not cached, so that the rootDSE is read again next time.
+            return LdapCapabilities.unknown();
+        }
+        capabilities = result;
+        return result;
+    }
+
+    /**
+     * Returns the {@code lDAPAdminLimits} of an Active Directory server, e.g.
+     * {@code MaxValRange}, or an empty map for other servers.
+     */
+    public Map<String, Integer> getAdminLimits() {
+        LdapCapabilities current = getCapabilities();
+        if (current.getAdminLimits() != null) {
+            return current.getAdminLimits();
+        }
+        Map<String, Integer> limits = emptyMap();
+        if (isServerMSADFamily(current.getServerType()) && current.getConfigurationNamingContext() != null) {
             try {
-                Attributes attrs = getInitialContext().getAttributes("", new String[]{"supportedControl"});
-                supportedControls = unmodifiableSet(getStringAttrValues(attrs, "supportedControl"));
+                limits = LdapCapabilities.readAdminLimits(getInitialContext(), current.getConfigurationNamingContext());
             } catch (NamingException e) {
-                log.warn(e, "Exception while retrieving the supported controls");
-                supportedControls = emptySet();
+                log.warn(e, "Exception while reading the LDAP admin limits");
+                return limits;
             }
         }
-        return supportedControls;
+        capabilities = current.withAdminLimits(limits);
+        if (config.getServerCapabilitiesCacheTimeout() > 0) {
+            LdapCapabilityRegistry.put(getCapabilitiesKey(), capabilities);
+        }
+        return capabilities.getAdminLimits();
     }
 
-    private String getSRVRecords(String server) {
+    // Not using the URLs of the router, whose order changes with the SRV records.
+    private String getCapabilitiesKey() {
         StringBuilder builder = new StringBuilder();
-        try {
-            DirContext context = new InitialDirContext();
-            Attributes attributes = context.getAttributes("dns:/" + server, new String[]{"SRV"});
-
-            NamingEnumeration<?> servers = attributes.getAll();
-            while (servers.hasMoreElements()) {
-                Attribute attr = (Attribute) servers.nextElement();
-                Enumeration<?> values = attr.getAll();
-                while (values.hasMoreElements()) {
-                    String value = (String) values.nextElement();
-                    String[] vals = value.split(" ");
-                    if (vals.length == 4) {
-                        builder.append("ldap://");
-                        builder.append(vals[3]);
-                        builder.append(":");
-                        builder.append(vals[2]);
-                        builder.append(" ");
-                    }
-                }
-            }
-            servers.close();
-            context.close();
-        } catch (NamingException e) {
-            log.warn(e + "Exception while retrieving DNS SRV records");
+        builder.append(config.isSsl() ? "ldaps://" : "ldap://");
+        builder.append(config.getHost());
+        builder.append(':');
+        builder.append(config.getPort());
+        for (String failover : nullAsEmpty(config.getFailover())) {
+            builder.append(' ');
+            builder.append(failover);
         }
-        return builder.toString().trim();
+        if (config.isUseDNSSRVRecord()) {
+            builder.append(" srv");
+        }
+        builder.append('|');
+        builder.append(config.getPrincipal());
+        builder.append('|');
+        builder.append(config.getAuthType());
+        return builder.toString();
     }
 
     public ServerType getServerType() {
@@ -464,87 +988,27 @@ public class LdapConnection {
     }
 
     private ServerType detectServerType() {
-        LdapContext ctx = initCtx;
-        boolean useAnonContext = false;
-        try {
-            if (ctx == null) {
-                useAnonContext = true;
-                ctx = getAnonymousContext();
-            }
-
-            Attributes attrs = ctx.getAttributes("", new String[]{"vendorVersion", "vendorName", "highestCommittedUSN", "rootDomainNamingContext", "structuralObjectClass"});
-            String vendorName = getStringAttrValue(attrs, "vendorName");
-            if (null != vendorName) {
-                vendorName = vendorName.toLowerCase();
-                if (vendorName.contains("ibm")) {
-                    log.info("IBM Directory server has been detected");
-                    return ServerType.IBM;
-                }
-                if (vendorName.contains("novell")) {
-                    log.info("Novell eDirectory server has been detected");
-                    return ServerType.NOVELL;
-                }
-                if (vendorName.contains("unboundid")) {
-                    log.info("UnboundID Directory server has been detected");
-                    return ServerType.UNBOUNDID;
-                }
-                // Red Hat / Fedora
-                // vendorName: 389 Project
-                if (vendorName.contains("389")) {
-                    log.info("Red Hat/Fedora 389 Directory server has been detected");
-                    return ServerType.RHDS;
-                }
-                // CA LDAP for Zos
-                if (vendorName.contains("caldap")) {
-                    log.info("CA LDAP Directory server has been detected");
-                    return ServerType.CALDAP;
-                }
-
-            }
-            String vendorVersion = getStringAttrValue(attrs, "vendorVersion");
-            if (vendorVersion != null) {
-                vendorVersion = vendorVersion.toLowerCase();
-                if (vendorVersion.contains("opends")) {
-                    log.info("OpenDS Directory server has been detected");
-                    return ServerType.OPENDS;
-                }
-                if (vendorVersion.contains("opendj")) {
-                    log.info("ForgeRock OpenDJ Directory server has been detected");
-                    return ServerType.OPENDJ;
-                }
-                if (vendorVersion.contains("sun") && vendorVersion.contains("directory")) {
-                    log.info("Sun DSEE Directory server has been detected");
-                    return ServerType.SUN_DSEE;
-                }
-            } else {
-                String hUSN = getStringAttrValue(attrs, "highestCommittedUSN");
-                String rDC = getStringAttrValue(attrs, "rootDomainNamingContext");
-                String sOC = getStringAttrValue(attrs, "structuralObjectClass");
-                if (hUSN != null) {
-                    // Windows Active Directory
-                    if (rDC != null) {
-                        // Only DCs and GCs have the rootDomainNamingContext
-                        // We check the port number as well. DC is using the standard 389|636 pair.
-                        if ((config.getPort() != 389) && (config.getPort() != 636)) {
-                            log.info("MS Active Directory Global Catalog server has been detected");
-                            return ServerType.MSAD_GC;
-                        } else {
-                            log.info("MS Active Directory server has been detected");
-                            return ServerType.MSAD;
-                        }
-                    }
-                    // ADLDS does not have the rootDomainNamingContext...
-                    log.info("MS Active Directory Lightweight Directory Services server has been detected");
-                    return ServerType.MSAD_LDS;
-                } else if (sOC != null && sOC.equalsIgnoreCase("OpenLDAProotDSE")) {
-                    log.info("OpenLDAP Directory server has been detected");
-                    return ServerType.OPENLDAP;
-                }
+        if (initCtx != null || capabilities != null) {
+            return getCapabilities().getServerType();
+        }
+        long timeout = config.getServerCapabilitiesCacheTimeout();
+        if (timeout > 0) {
+            LdapCapabilities cached = LdapCapabilityRegistry.peek(getCapabilitiesKey(), timeout);
+            if (cached != null) {
+                return cached.getServerType();
             }
+        }
+        // Not bound yet (e.g. while handling a failed bind), so use an
+        // anonymous context. What it sees of the rootDSE is not cached, since
+        // some servers only return part of it to anonymous clients.
+        LdapContext ctx = null;
+        try {
+            ctx = getAnonymousContext();
+            return LdapCapabilities.read(ctx, config.getPort()).getServerType();
         } catch (NamingException e) {
             log.warn("Exception while detecting the server type: {0}", e.getExplanation());
         } finally {
-            if (null != ctx && useAnonContext) {
+            if (null != ctx) {
                 try {
                     ctx.close();
                 } catch (NamingException ex) {
@@ -27,14 +27,27 @@ package org.identityconnectors.ldap;
 
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
 import javax.security.auth.Subject;
 import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.common.exceptions.ConfigurationException;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
@@ -84,6 +97,13 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
      * The connection to the LDAP server.
      */
     private LdapConnection conn;
+    /**
+     * The warm-up started at init, if enabled.
+     */
+    private LdapWarmUp warmUp;
+
+    // The maximum number of base contexts checked in parallel by test().
+    private static final int MAX_TEST_THREADS = 8;
 
     private enum UpdateType {
         REPLACE, ADD, REMOVE
@@ -110,13 +130,41 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
             }
         } else {
         }
+
+        if (config.isWarmUpOnInit()) {
+            warmUp = LdapWarmUp.start(new Runnable() {
+                public void run() {
+                    if (loginContext != null) {
+                        Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Object>() {
+                            public Object run() {
+                                conn.warmUp();
+                                return null;
+                            }
+                        });
+                    } else {
+                        conn.warmUp();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits for the warm-up started at init, if it is still running.
+     */
+    private void awaitWarmUp() {
+        if (warmUp != null) {
+            warmUp.await();
+        }
     }
 
     public void dispose() {
+        awaitWarmUp();
         conn.close();
     }
 
     public void test() {
+        awaitWarmUp();
         if (loginContext != null) {
             Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Object>() {
                 public Object run() {
@@ -130,6 +178,7 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public void checkAlive() {
+        awaitWarmUp();
         if (loginContext != null) {
             Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Object>() {
                 public Object run() {
@@ -143,6 +192,7 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public Schema schema() {
+        awaitWarmUp();
         if (loginContext != null) {
             return Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Schema>() {
                 public Schema run() {
@@ -155,6 +205,7 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public Uid authenticate(final ObjectClass objectClass, final String username, final GuardedString password, final OperationOptions options) {
+        awaitWarmUp();
         if (loginContext != null) {
             return Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Uid>() {
                 public Uid run() {
@@ -167,6 +218,7 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public Uid resolveUsername(final ObjectClass objectClass, final String username, final OperationOptions options) {
+        awaitWarmUp();
          if (loginContext != null) {
             return Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Uid>() {
                 public Uid run() {
@@ -179,10 +231,12 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public FilterTranslator<LdapFilter> createFilterTranslator(ObjectClass objectClass, OperationOptions options) {
+        awaitWarmUp();
         return new LdapFilterTranslator(conn.getSchemaMapping(), objectClass);
     }
 
     public void executeQuery(final ObjectClass objectClass, final LdapFilter query, final ResultsHandler handler, final OperationOptions options) {
+        awaitWarmUp();
         if (objectClass.is(LdapUtil.SERVER_INFO_NAME)) {
             LdapUtil.getServerInfo(conn, handler);
         } else {
@@ -200,6 +254,7 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public Uid create(final ObjectClass objectClass, final Set<Attribute> attrs, final OperationOptions options) {
+        awaitWarmUp();
         if (loginContext != null) {
             return Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Uid>() {
                 public Uid run() {
@@ -212,6 +267,7 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public void delete(final ObjectClass objectClass, final Uid uid, final OperationOptions options) {
+        awaitWarmUp();
         if (loginContext != null) {
             Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Object>() {
                 public Object run() {
@@ -225,6 +281,7 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public Uid update(final ObjectClass objectClass, final Uid uid, final Set<Attribute> replaceAttributes, final OperationOptions options) {
+        awaitWarmUp();
         if (loginContext != null) {
             return Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Uid>() {
                 public Uid run() {
@@ -237,6 +294,7 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public Uid addAttributeValues(final ObjectClass objectClass, final Uid uid, final Set<Attribute> valuesToAdd, final OperationOptions options) {
+        awaitWarmUp();
         if (loginContext != null) {
             return Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Uid>() {
                 public Uid run() {
@@ -249,6 +307,7 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public Uid removeAttributeValues(final ObjectClass objectClass, final Uid uid, final Set<Attribute> valuesToRemove, final OperationOptions options) {
+        awaitWarmUp();
         if (loginContext != null) {
             return Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Uid>() {
                 public Uid run() {
@@ -261,6 +320,7 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public SyncToken getLatestSyncToken(final ObjectClass objectClass) {
+        awaitWarmUp();
         if (loginContext != null) {
             return Subject.doAs(loginContext.getSubject(), new PrivilegedAction<SyncToken>() {
                 public SyncToken run() {
@@ -273,6 +333,7 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     public void sync(final ObjectClass objectClass, final SyncToken token, final SyncResultsHandler handler, final OperationOptions options) {
+        awaitWarmUp();
         if (loginContext != null) {
             Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Object>() {
                 public Object run() {
@@ -329,22 +390,22 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
 
     private void doTest(){
-         List<String> badBC = new ArrayList<String>();
-        List<String> badBCS = new ArrayList<String>();
         config.validate();
         conn.test();
         // Need to check that all the base contexts are valid
+        Set<String> contexts = new LinkedHashSet<String>();
+        contexts.addAll(Arrays.asList(config.getBaseContexts()));
+        contexts.addAll(Arrays.asList(config.getBaseContextsToSynchronize()));
+        Set<String> bad = findBadContexts(contexts);
+        List<String> badBC = new ArrayList<String>();
         for (String context : config.getBaseContexts()) {
-            try {
-                conn.getInitialContext().getAttributes(context);
-            } catch (NamingException e) {
+            if (bad.contains(context)) {
                 badBC.add(context);
             }
         }
+        List<String> badBCS = new ArrayList<String>();
         for (String context : config.getBaseContextsToSynchronize()) {
-            try {
-                conn.getInitialContext().getAttributes(context);
-            } catch (NamingException e) {
+            if (bad.contains(context)) {
                 badBCS.add(context);
             }
         }
@@ -355,4 +416,74 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
             throw new ConfigurationException("Bad Base Context(s) to Synchronize: " + badBCS.toString());
         }
     }
+
+    /**
+     * Returns the contexts which cannot be read. They are read in parallel,
+     * each through its own pooled connection, when connection pooling is
+     * enabled.
+     */
+    private Set<String> findBadContexts(Set<String> contexts) {
+        Set<String> result = new HashSet<String>();
+        int threads = Math.min(Math.min(contexts.size(), config.getConnectionPoolMaxSize()), MAX_TEST_THREADS);
+        if (threads <= 1) {
+            for (String context : contexts) {
+                if (!isReadable(context)) {
+                    result.add(context);
+                }
+            }
+            return result;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LDAP base context check");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            Map<String, Future<Boolean>> checks = new LinkedHashMap<String, Future<Boolean>>();
+            for (final String context : contexts) {
+                checks.put(context, executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        if (loginContext != null) {
+                            return Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Boolean>() {
+                                public Boolean run() {
+                                    return isReadable(context);
+                                }
+                            });
+                        }
+                        return isReadable(context);
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<Boolean>> check : checks.entrySet()) {
+                if (!check.getValue().get()) {
+                    result.add(check.getKey());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ConnectorException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private boolean isReadable(String context) {
+        LdapContext ctx = conn.borrowContext();
+        try {
+            ctx.getAttributes(context);
+            return true;
+        } catch (NamingException e) {
+            return false;
+        } finally {
+            conn.releaseContext(ctx);
+        }
+    }
 }
@@ -44,6 +44,12 @@ public class LdapConstants {
     public static final String SEARCH_FILTER_NAME = "searchFilter";
 
     public static final String OP_SEARCH_FILTER = "searchFilter";
+
+    /**
+     * The search option asking for the number of matching entries only, which
+     * is reported as the remaining paged results of the search result.
+     */
+    public static final String COUNT_ONLY_NAME = "countOnly";
     
     public static final String MS_GUID_ATTR = "objectGUID";
     
@@ -100,5 +106,9 @@ public class LdapConstants {
         return (String) options.getOptions().get(SEARCH_FILTER_NAME);
     }
 
+    public static boolean isCountOnly(OperationOptions options) {
+        return Boolean.TRUE.equals(options.getOptions().get(COUNT_ONLY_NAME));
+    }
+
     private LdapConstants() { }
 }
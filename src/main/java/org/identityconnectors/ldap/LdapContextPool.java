@@ -0,0 +1,346 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * A bounded pool of bound {@link LdapContext} instances.
+ *
+ * <p>Contexts are leased with {@link #borrow()} and handed back with
+ * {@link #release(LdapContext)}. A thread which borrows again while already
+ * holding a lease gets the same context back, so that nested searches (e.g.,
+ * group lookups performed while converting search results) run on the context
+ * of the enclosing operation instead of exhausting the pool. Idle contexts are
+ * validated before being leased and evicted once they have been idle longer
+ * than the configured timeout, while at least {@code minSize} of them are kept
+ * open.</p>
+ */
+public class LdapContextPool {
+
+    /**
+     * Creates, validates and destroys the contexts managed by the pool.
+     */
+    public interface ContextFactory {
+
+        LdapContext createContext();
+
+        boolean validateContext(LdapContext context);
+
+        void destroyContext(LdapContext context);
+    }
+
+    private static final Log log = Log.getLog(LdapContextPool.class);
+
+    private final ContextFactory factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeout;
+    private final long maxWait;
+
+    // Most recently released contexts first.
+    private final LinkedList<IdleContext> idle = new LinkedList<IdleContext>();
+    private final Map<LdapContext, Lease> leased = new IdentityHashMap<LdapContext, Lease>();
+    private final ThreadLocal<Lease> currentLease = new ThreadLocal<Lease>();
+    private int total;
+    private boolean closed;
+
+    /**
+     * @param factory the factory for the pooled contexts.
+     * @param minSize the number of idle contexts which are never evicted.
+     * @param maxSize the maximum number of open contexts.
+     * @param idleTimeout the time in milliseconds after which an idle context
+     *            is evicted, or 0 to never evict idle contexts.
+     * @param maxWait the time in milliseconds to wait for a context when the
+     *            pool is exhausted.
+     */
+    public LdapContextPool(ContextFactory factory, int minSize, int maxSize, long idleTimeout, long maxWait) {
+        if (maxSize <= 0 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Illegal pool size [" + minSize + ", " + maxSize + "]");
+        }
+        this.factory = factory;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Leases a context from the pool, opening a new one if no idle context is
+     * available and the pool is not full. Waits at most {@code maxWait}
+     * milliseconds for a context to be released otherwise.
+     */
+    public LdapContext borrow() {
+        Lease lease = currentLease.get();
+        if (lease != null) {
+            synchronized (this) {
+                if (leased.get(lease.context) == lease) {
+                    lease.depth++;
+                    return lease.context;
+                }
+            }
+            currentLease.remove();
+        }
+        LdapContext context = acquire();
+        lease = new Lease(context);
+        synchronized (this) {
+            leased.put(context, lease);
+        }
+        currentLease.set(lease);
+        return context;
+    }
+
+    /**
+     * Opens contexts until the pool holds at least {@code minSize} of them.
+     */
+    public void prefill() {
+        while (true) {
+            synchronized (this) {
+                if (closed || total >= minSize) {
+                    return;
+                }
+                total++;
+            }
+            LdapContext context;
+            try {
+                context = factory.createContext();
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    total--;
+                    notifyAll();
+                }
+                throw e;
+            }
+            boolean destroy;
+            synchronized (this) {
+                destroy = closed;
+                if (destroy) {
+                    total--;
+                } else {
+                    idle.addLast(new IdleContext(context, System.currentTimeMillis()));
+                }
+                notifyAll();
+            }
+            if (destroy) {
+                factory.destroyContext(context);
+            }
+        }
+    }
+
+    /**
+     * Hands a context obtained from {@link #borrow()} back to the pool.
+     * Contexts which were not leased from this pool are ignored.
+     */
+    public void release(LdapContext context) {
+        release(context, false);
+    }
+
+    /**
+     * Hands a broken context back to the pool, which then closes it instead
+     * of leasing it again.
+     */
+    public void invalidate(LdapContext context) {
+        release(context, true);
+    }
+
+    private void release(LdapContext context, boolean broken) {
+        boolean destroy;
+        synchronized (this) {
+            Lease lease = leased.get(context);
+            if (lease == null) {
+                return;
+            }
+            lease.broken |= broken;
+            if (--lease.depth > 0) {
+                return;
+            }
+            leased.remove(context);
+            if (currentLease.get() == lease) {
+                currentLease.remove();
+            }
+            destroy = closed || lease.broken;
+            if (destroy) {
+                total--;
+            } else {
+                idle.addFirst(new IdleContext(context, System.currentTimeMillis()));
+            }
+            notifyAll();
+        }
+        if (destroy) {
+            factory.destroyContext(context);
+        }
+    }
+
+    /**
+     * Closes the idle contexts. Contexts which are currently leased are
+     * closed when they are released.
+     */
+    public void close() {
+        List<IdleContext> toDestroy;
+        synchronized (this) {
+            closed = true;
+            toDestroy = new ArrayList<IdleContext>(idle);
+            total -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        for (IdleContext each : toDestroy) {
+            factory.destroyContext(each.context);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the context is currently leased from this pool.
+     */
+    public synchronized boolean isLeased(LdapContext context) {
+        return leased.containsKey(context);
+    }
+
+    /**
+     * Returns {@code true} if the current thread holds a lease on a context
+     * of this pool.
+     */
+    public boolean hasLease() {
+        Lease lease = currentLease.get();
+        if (lease == null) {
+            return false;
+        }
+        synchronized (this) {
+            return leased.get(lease.context) == lease;
+        }
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    public synchronized int getActiveCount() {
+        return leased.size();
+    }
+
+    private LdapContext acquire() {
+        long deadline = System.currentTimeMillis() + maxWait;
+        while (true) {
+            List<IdleContext> evicted;
+            IdleContext candidate = null;
+            boolean create = false;
+            synchronized (this) {
+                if (closed) {
+                    throw new ConnectorException("The LDAP connection pool is closed");
+                }
+                evicted = evictIdle(System.currentTimeMillis());
+                if (!idle.isEmpty()) {
+                    candidate = idle.removeFirst();
+                } else if (total < maxSize) {
+                    total++;
+                    create = true;
+                } else if (evicted.isEmpty()) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new ConnectionFailedException("Timed out waiting for a pooled LDAP connection");
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new ConnectorException(e);
+                    }
+                }
+            }
+            for (IdleContext each : evicted) {
+                factory.destroyContext(each.context);
+            }
+            if (candidate != null) {
+                if (factory.validateContext(candidate.context)) {
+                    return candidate.context;
+                }
+                log.ok("Discarding a pooled LDAP connection which failed validation");
+                discard(candidate.context);
+            } else if (create) {
+                try {
+                    return factory.createContext();
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        total--;
+                        notifyAll();
+                    }
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void discard(LdapContext context) {
+        synchronized (this) {
+            total--;
+            notifyAll();
+        }
+        factory.destroyContext(context);
+    }
+
+    // Must be called while holding the monitor.
+    private List<IdleContext> evictIdle(long now) {
+        List<IdleContext> result = new ArrayList<IdleContext>(0);
+        if (idleTimeout <= 0) {
+            return result;
+        }
+        // The least recently used contexts are at the tail.
+        Iterator<IdleContext> it = idle.descendingIterator();
+        while (it.hasNext() && idle.size() > minSize) {
+            IdleContext each = it.next();
+            if (now - each.since < idleTimeout) {
+                break;
+            }
+            it.remove();
+            total--;
+            result.add(each);
+        }
+        return result;
+    }
+
+    private static final class IdleContext {
+
+        private final LdapContext context;
+        private final long since;
+
+        IdleContext(LdapContext context, long since) {
+            this.context = context;
+            this.since = since;
+        }
+    }
+
+    private static final class Lease {
+
+        private final LdapContext context;
+        private int depth = 1;
+        private boolean broken;
+
+        Lease(LdapContext context) {
+            this.context = context;
+        }
+    }
+}
@@ -0,0 +1,622 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static java.util.Collections.synchronizedMap;
+import static java.util.Collections.synchronizedSet;
+import static org.identityconnectors.ldap.LdapUtil.nullAsEmpty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.common.Pair;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.ldap.LdapConnection.AuthenticationResult;
+import org.identityconnectors.ldap.LdapConnection.AuthenticationResultType;
+
+/**
+ * Decides which server each context of a connection is opened to, and leases
+ * the contexts from the pools they are kept in: the contexts bound as the
+ * configured principal, those to the read servers, and those re-bound for
+ * each authentication.
+ *
+ * <p>The contexts themselves are opened and closed by a {@link Connector}.
+ * The router keeps track of the server each of them is connected to, so that
+ * the load balancing policy sees the leased contexts and the latency of their
+ * servers, and hedged reads go to another server.</p>
+ */
+public class LdapContextRouter {
+
+    /**
+     * Opens and closes the contexts of the router.
+     */
+    public interface Connector {
+
+        /**
+         * Opens a context bound as the given principal to the given servers,
+         * separated by spaces, which are tried in order. The context is only
+         * returned with a successful result.
+         */
+        Pair<AuthenticationResult, LdapContext> connect(String urls, String principal, GuardedString credentials);
+
+        /**
+         * Opens an anonymous context to the given servers, which is re-bound
+         * for each authentication.
+         */
+        LdapContext connectForBinds(String urls);
+
+        /**
+         * Opens a context authenticated as the current SASL GSSAPI subject.
+         */
+        LdapContext connectWithSasl() throws NamingException;
+
+        void close(LdapContext context);
+    }
+
+    private static final Log log = Log.getLog(LdapContextRouter.class);
+
+    private static final int READ_LATENCY_SAMPLES = 1000;
+    // The hedge delay is only computed past this number of samples.
+    private static final int READ_LATENCY_MIN_SAMPLES = 20;
+
+    private final LdapConfiguration config;
+    private final Connector connector;
+    private LdapContextPool contextPool;
+    private LdapContextPool readPool;
+    private LdapContextPool bindPool;
+    private LdapServerSelector serverSelector;
+    // The SRV records the server selector was last updated with.
+    private List<LdapSrvResolver.Target> srvTargets;
+    private LdapServerSelector readServerSelector;
+    // The server each context was opened to, when load balancing.
+    private final Map<LdapContext, String> contextServers = synchronizedMap(new WeakHashMap<LdapContext, String>());
+    private final LdapLatencyWindow readLatencies = new LdapLatencyWindow(READ_LATENCY_SAMPLES, READ_LATENCY_MIN_SAMPLES);
+    // The contexts opened for a single hedged read, closed when released.
+    private final Set<LdapContext> hedgeContexts = synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<LdapContext, Boolean>()));
+    // How many searches made in other threads the current thread handles the results of.
+    private final ThreadLocal<Integer> streamingDepth = new ThreadLocal<Integer>();
+
+    public LdapContextRouter(LdapConfiguration config, Connector connector) {
+        this.config = config;
+        this.connector = connector;
+    }
+
+    /**
+     * Opens a context bound as the given principal to the first server chosen
+     * by the load balancing policy which answers, throwing the failure if
+     * the bind did not succeed.
+     */
+    public LdapContext connect(String principal, GuardedString credentials) {
+        return connect(principal, credentials, getServerSelector());
+    }
+
+    private LdapContext connect(String principal, GuardedString credentials, LdapServerSelector selector) {
+        Pair<AuthenticationResult, LdapContext> pair = open(principal, credentials, selector);
+        if (pair.first.getType().equals(AuthenticationResultType.SUCCESS)) {
+            return pair.second;
+        }
+        pair.first.propagate();
+        throw new IllegalStateException("Should never get here");
+    }
+
+    /**
+     * Opens a context like {@link #connect(String, GuardedString)}, returning
+     * the result of the bind instead of throwing it.
+     */
+    public Pair<AuthenticationResult, LdapContext> open(String principal, GuardedString credentials) {
+        return open(principal, credentials, getServerSelector());
+    }
+
+    /**
+     * Opens a context to the first server chosen by the load balancing
+     * policy which answers. With the failover policy, JNDI is given the whole
+     * list of servers and tries them in order itself.
+     */
+    private Pair<AuthenticationResult, LdapContext> open(String principal, GuardedString credentials, LdapServerSelector selector) {
+        if (selector.getPolicy() == LdapServerSelector.Policy.FAILOVER && selector == getServerSelector()) {
+            return connector.connect(getLdapUrls(), principal, credentials);
+        }
+        Pair<AuthenticationResult, LdapContext> pair = null;
+        for (String url : selector.getCandidates()) {
+            long start = System.currentTimeMillis();
+            pair = connector.connect(url, principal, credentials);
+            if (pair.first.getType() == AuthenticationResultType.COMMUNICATION_ISSUE) {
+                selector.recordFailure(url);
+                continue;
+            }
+            selector.recordSuccess(url, System.currentTimeMillis() - start);
+            if (pair.second != null) {
+                contextServers.put(pair.second, url);
+            }
+            return pair;
+        }
+        return pair != null ? pair : connector.connect(getLdapUrls(), principal, credentials);
+    }
+
+    /**
+     * Opens an anonymous connection which is re-bound for each authentication.
+     */
+    private LdapContext openBindContext() {
+        LdapServerSelector selector = getServerSelector();
+        if (selector.getPolicy() == LdapServerSelector.Policy.FAILOVER) {
+            return connector.connectForBinds(getLdapUrls());
+        }
+        ConnectionFailedException failure = null;
+        for (String url : selector.getCandidates()) {
+            long start = System.currentTimeMillis();
+            try {
+                LdapContext context = connector.connectForBinds(url);
+                selector.recordSuccess(url, System.currentTimeMillis() - start);
+                contextServers.put(context, url);
+                return context;
+            } catch (ConnectionFailedException e) {
+                selector.recordFailure(url);
+                failure = e;
+            }
+        }
+        throw failure != null ? failure : new ConnectionFailedException("No LDAP server to connect to");
+    }
+
+    /**
+     * Returns the URLs of the configured servers, separated by spaces, in the
+     * order they are configured or, with DNS SRV records, in the order they
+     * were resolved.
+     */
+    public String getLdapUrls() {
+        if (config.isUseDNSSRVRecord()) {
+            StringBuilder builder = new StringBuilder();
+            for (LdapSrvResolver.Target target : getSrvResolver().getTargets()) {
+                if (builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(target.getUrl());
+            }
+            return builder.toString();
+        } else {
+            StringBuilder builder = new StringBuilder();
+            builder.append("ldap://");
+            builder.append(config.getHost());
+            builder.append(':');
+            builder.append(config.getPort());
+            for (String failover : nullAsEmpty(config.getFailover())) {
+                builder.append(' ');
+                builder.append(failover);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Returns the URLs of the servers, in the order the load balancing policy
+     * would try them for a new connection.
+     */
+    public List<String> getCandidates() {
+        return getServerSelector().getCandidates();
+    }
+
+    /**
+     * Leases a pooled context bound as the configured principal. It must be
+     * handed back with {@link #releaseContext(LdapContext)}.
+     */
+    public LdapContext borrowContext() {
+        LdapContext ctx = getContextPool().borrow();
+        serverAcquired(ctx);
+        return ctx;
+    }
+
+    /**
+     * Leases a pooled context to the read servers, unless there are none or
+     * the current thread already holds a context to the write servers, see
+     * {@link LdapConnection#borrowReadContext()}.
+     */
+    public LdapContext borrowReadContext() {
+        if (!hasReadServers() || getContextPool().hasLease()) {
+            return borrowContext();
+        }
+        LdapContext ctx = getReadPool().borrow();
+        serverAcquired(ctx);
+        return ctx;
+    }
+
+    /**
+     * Returns {@code true} if reads are sent to dedicated read servers.
+     */
+    public boolean hasReadServers() {
+        return config.getReadServers().length > 0 && config.getConnectionPoolMaxSize() > 0
+                && !LdapConnection.SASL_GSSAPI.equalsIgnoreCase(config.getAuthType());
+    }
+
+    /**
+     * Hands back a context obtained from {@link #borrowContext()},
+     * {@link #borrowReadContext()} or {@link #borrowHedgeContext(LdapContext)},
+     * closing the contexts which are not pooled.
+     */
+    public void releaseContext(LdapContext ctx) {
+        if (hedgeContexts.remove(ctx)) {
+            connector.close(ctx);
+            return;
+        }
+        LdapContextPool pool;
+        synchronized (this) {
+            pool = readPool != null && readPool.isLeased(ctx) ? readPool : contextPool;
+        }
+        if (pool != null) {
+            // Not leased any more if it was abandoned.
+            if (pool.isLeased(ctx)) {
+                serverReleased(ctx);
+                pool.release(ctx);
+            }
+        } else {
+            connector.close(ctx);
+        }
+    }
+
+    /**
+     * Closes a context obtained from {@link #borrowContext()},
+     * {@link #borrowReadContext()} or {@link #borrowHedgeContext(LdapContext)}
+     * which may still be in use by another thread. It is not handed out
+     * again.
+     */
+    public void abandonContext(LdapContext ctx) {
+        if (hedgeContexts.remove(ctx)) {
+            connector.close(ctx);
+            return;
+        }
+        LdapContextPool pool;
+        synchronized (this) {
+            pool = readPool != null && readPool.isLeased(ctx) ? readPool : contextPool;
+        }
+        if (pool != null && pool.isLeased(ctx)) {
+            serverReleased(ctx);
+            pool.invalidate(ctx);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the context is currently leased from the pool
+     * of the contexts bound as the configured principal, or from the pool of
+     * the read servers.
+     */
+    public synchronized boolean isLeased(LdapContext ctx) {
+        return contextPool != null && contextPool.isLeased(ctx)
+                || readPool != null && readPool.isLeased(ctx);
+    }
+
+    /**
+     * Marks the current thread as handling the results of searches made in
+     * other threads, which keep their contexts while they wait for it, until
+     * {@link #endStreaming()}. The searches the thread makes meanwhile are not
+     * spread across other threads, which could use up the pool.
+     */
+    public void beginStreaming() {
+        Integer depth = streamingDepth.get();
+        streamingDepth.set(depth == null ? 1 : depth + 1);
+    }
+
+    public void endStreaming() {
+        Integer depth = streamingDepth.get();
+        if (depth == null || depth <= 1) {
+            streamingDepth.remove();
+        } else {
+            streamingDepth.set(depth - 1);
+        }
+    }
+
+    /**
+     * Returns {@code true} if a search about to be made by the current thread
+     * could be made in other threads instead: they lease contexts of their
+     * own, and the current thread does not hold one, which the search would
+     * have to go through.
+     */
+    public boolean canSearchInOtherThreads() {
+        // The other threads do not run as the SASL subject.
+        if (config.getConnectionPoolMaxSize() <= 0 || LdapConnection.SASL_GSSAPI.equalsIgnoreCase(config.getAuthType())) {
+            return false;
+        }
+        if (streamingDepth.get() != null || getContextPool().hasLease()) {
+            return false;
+        }
+        return !hasReadServers() || !getReadPool().hasLease();
+    }
+
+    /**
+     * Returns the time in milliseconds after which a read which has not
+     * answered yet is sent to a second server, i.e. the configured percentile
+     * of the recent read latencies, or -1 if not enough reads were measured
+     * yet.
+     */
+    public long getHedgeDelay() {
+        long percentile = readLatencies.getPercentile(config.getHedgedReadPercentile());
+        return percentile < 0 ? -1 : Math.max(percentile, config.getHedgedReadMinDelay());
+    }
+
+    /**
+     * Records how long a read took to return its first result, or to
+     * complete if it returned none.
+     */
+    public void recordReadLatency(long latency) {
+        readLatencies.record(latency);
+    }
+
+    /**
+     * Leases a context for a hedged copy of a read made through the given
+     * context, from the pool the latter comes from. When the leased context
+     * is connected to the same server as the given one and the pool spreads
+     * its connections across several servers, a context to another server
+     * is opened for this read only. Must be called from a thread which holds
+     * no lease, and the context must be handed back with
+     * {@link #releaseContext(LdapContext)}.
+     */
+    public LdapContext borrowHedgeContext(LdapContext primary) {
+        boolean read;
+        synchronized (this) {
+            read = primary != null && readPool != null && readPool.isLeased(primary);
+        }
+        read |= primary == null && hasReadServers();
+        LdapContextPool pool = read ? getReadPool() : getContextPool();
+        LdapServerSelector selector = read ? getReadServerSelector() : getServerSelector();
+        LdapContext ctx = pool.borrow();
+        serverAcquired(ctx);
+        String primaryUrl = primary != null ? contextServers.get(primary) : null;
+        if (primaryUrl == null || !primaryUrl.equals(contextServers.get(ctx))) {
+            return ctx;
+        }
+        for (String url : selector.getCandidates()) {
+            if (!url.equals(primaryUrl)) {
+                LdapServerSelector single = new LdapServerSelector(Collections.singletonList(url),
+                        LdapServerSelector.Policy.ROUND_ROBIN, 0);
+                LdapContext other;
+                try {
+                    other = connect(config.getPrincipal(), config.getCredentials(), single);
+                } catch (ConnectorException e) {
+                    selector.recordFailure(url);
+                    log.ok(e, "Could not connect to {0} for a hedged read", url);
+                    continue;
+                }
+                hedgeContexts.add(other);
+                releaseContext(ctx);
+                return other;
+            }
+        }
+        return ctx;
+    }
+
+    /**
+     * Leases an anonymous context to re-bind for an authentication. It must
+     * be handed back with {@link #releaseBindContext(LdapContext, boolean)}.
+     */
+    public LdapContext borrowBindContext() {
+        LdapContext context = getBindPool().borrow();
+        serverAcquired(context);
+        return context;
+    }
+
+    /**
+     * Hands back a context obtained from {@link #borrowBindContext()}, which
+     * is closed if it is broken.
+     */
+    public void releaseBindContext(LdapContext context, boolean broken) {
+        LdapContextPool pool = getBindPool();
+        serverReleased(context);
+        if (broken) {
+            pool.invalidate(context);
+        } else {
+            pool.release(context);
+        }
+    }
+
+    /**
+     * Records how long the server of the given context took to answer.
+     */
+    public void recordLatency(LdapContext ctx, long latency) {
+        String url = contextServers.get(ctx);
+        if (url != null) {
+            getServerSelector().recordSuccess(url, latency);
+            if (hasReadServers()) {
+                getReadServerSelector().recordSuccess(url, latency);
+            }
+        }
+    }
+
+    /**
+     * Opens the contexts the pool of the contexts bound as the configured
+     * principal keeps at least.
+     */
+    public void prefill() {
+        getContextPool().prefill();
+    }
+
+    /**
+     * Closes the pooled contexts. The leased ones are closed when they are
+     * handed back.
+     */
+    public synchronized void close() {
+        if (contextPool != null) {
+            contextPool.close();
+            contextPool = null;
+        }
+        if (readPool != null) {
+            readPool.close();
+            readPool = null;
+        }
+        if (bindPool != null) {
+            bindPool.close();
+            bindPool = null;
+        }
+    }
+
+    private synchronized LdapContextPool getContextPool() {
+        if (contextPool == null) {
+            contextPool = new LdapContextPool(new PooledContextFactory() {
+                public LdapContext createContext() {
+                    if (LdapConnection.SASL_GSSAPI.equalsIgnoreCase(config.getAuthType())) {
+                        try {
+                            return connector.connectWithSasl();
+                        } catch (NamingException e) {
+                            throw new ConnectionFailedException(e);
+                        }
+                    }
+                    return connect(config.getPrincipal(), config.getCredentials());
+                }
+            }, config.getConnectionPoolMinSize(), config.getConnectionPoolMaxSize(),
+                    config.getConnectionPoolIdleTimeout(), config.getConnectionPoolMaxWait());
+        }
+        return contextPool;
+    }
+
+    private synchronized LdapContextPool getReadPool() {
+        if (readPool == null) {
+            final LdapServerSelector selector = getReadServerSelector();
+            readPool = new LdapContextPool(new PooledContextFactory() {
+                public LdapContext createContext() {
+                    return connect(config.getPrincipal(), config.getCredentials(), selector);
+                }
+            }, config.getConnectionPoolMinSize(), config.getConnectionPoolMaxSize(),
+                    config.getConnectionPoolIdleTimeout(), config.getConnectionPoolMaxWait());
+        }
+        return readPool;
+    }
+
+    /**
+     * Validates the pooled contexts with a liveness check, which also
+     * measures the latency of their server.
+     */
+    private abstract class PooledContextFactory implements LdapContextPool.ContextFactory {
+
+        public boolean validateContext(LdapContext context) {
+            long start = System.currentTimeMillis();
+            if (isAlive(context)) {
+                recordLatency(context, System.currentTimeMillis() - start);
+                return true;
+            }
+            return false;
+        }
+
+        public void destroyContext(LdapContext context) {
+            contextServers.remove(context);
+            connector.close(context);
+        }
+    }
+
+    private synchronized LdapContextPool getBindPool() {
+        if (bindPool == null) {
+            bindPool = new LdapContextPool(new LdapContextPool.ContextFactory() {
+                public LdapContext createContext() {
+                    return openBindContext();
+                }
+
+                public boolean validateContext(LdapContext context) {
+                    // Validated by the bind itself.
+                    return true;
+                }
+
+                public void destroyContext(LdapContext context) {
+                    contextServers.remove(context);
+                    connector.close(context);
+                }
+            }, 0, config.getAuthenticationPoolMaxSize(),
+                    config.getConnectionPoolIdleTimeout(), config.getConnectionPoolMaxWait());
+        }
+        return bindPool;
+    }
+
+    private synchronized LdapServerSelector getServerSelector() {
+        if (config.isUseDNSSRVRecord()) {
+            // The cached answer, unless it changed since the last call.
+            List<LdapSrvResolver.Target> targets = getSrvResolver().getTargets();
+            if (serverSelector == null || targets != srvTargets) {
+                List<String> urls = new ArrayList<String>(targets.size());
+                List<Integer> priorities = new ArrayList<Integer>(targets.size());
+                for (LdapSrvResolver.Target target : targets) {
+                    urls.add(target.getUrl());
+                    priorities.add(target.getPriority());
+                }
+                if (serverSelector == null) {
+                    serverSelector = new LdapServerSelector(urls,
+                            LdapServerSelector.Policy.parse(config.getLoadBalancingPolicy()), config.getServerEjectionTime());
+                }
+                serverSelector.setServers(urls, priorities);
+                srvTargets = targets;
+            }
+        } else if (serverSelector == null) {
+            List<String> urls = new ArrayList<String>();
+            for (String url : getLdapUrls().split("\\s+")) {
+                if (url.length() > 0) {
+                    urls.add(url);
+                }
+            }
+            serverSelector = new LdapServerSelector(urls,
+                    LdapServerSelector.Policy.parse(config.getLoadBalancingPolicy()), config.getServerEjectionTime());
+        }
+        return serverSelector;
+    }
+
+    private LdapSrvResolver getSrvResolver() {
+        return LdapSrvResolver.forName(config.getHost(), config.getDnsSRVRecordCacheTimeout());
+    }
+
+    private synchronized LdapServerSelector getReadServerSelector() {
+        if (readServerSelector == null) {
+            readServerSelector = new LdapServerSelector(Arrays.asList(config.getReadServers()),
+                    LdapServerSelector.Policy.parse(config.getLoadBalancingPolicy()), config.getServerEjectionTime());
+        }
+        return readServerSelector;
+    }
+
+    // The selectors ignore the servers they do not know.
+
+    private void serverAcquired(LdapContext ctx) {
+        String url = contextServers.get(ctx);
+        if (url != null) {
+            getServerSelector().acquired(url);
+            if (hasReadServers()) {
+                getReadServerSelector().acquired(url);
+            }
+        }
+    }
+
+    private void serverReleased(LdapContext ctx) {
+        String url = contextServers.get(ctx);
+        if (url != null) {
+            getServerSelector().released(url);
+            if (hasReadServers()) {
+                getReadServerSelector().released(url);
+            }
+        }
+    }
+
+    static boolean isAlive(LdapContext ctx) {
+        try {
+            ctx.getAttributes("", new String[]{"subschemaSubentry"});
+            return true;
+        } catch (NamingException e) {
+            log.ok(e, "Pooled connection failed the liveness check");
+            return false;
+        }
+    }
+}
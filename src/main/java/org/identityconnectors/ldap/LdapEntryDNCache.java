@@ -0,0 +1,134 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+
+/**
+ * Caches the DNs of the entries by object class and {@link Uid}, so that the
+ * operations given a Uid do not search for the entry it identifies.
+ *
+ * <p>The DNs are those of the entries returned by searches, created or
+ * renamed through the connection. Since the entries may be renamed or deleted
+ * by other clients, a DN expires after the configured timeout. The least
+ * recently used DNs are discarded past the configured size. A timeout or a
+ * size of 0 disables the cache.</p>
+ */
+public class LdapEntryDNCache {
+
+    private final int maxSize;
+    private final long timeout;
+
+    private final Map<String, CachedDn> dns;
+
+    /**
+     * @param maxSize the maximum number of cached DNs.
+     * @param timeout the time in milliseconds after which a DN is discarded.
+     */
+    public LdapEntryDNCache(final int maxSize, long timeout) {
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+        dns = new LinkedHashMap<String, CachedDn>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedDn> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0 && timeout > 0;
+    }
+
+    /**
+     * Returns the DN of the entry of the given class identified by the given
+     * Uid, or {@code null} if it is not cached.
+     */
+    public String get(ObjectClass oclass, Uid uid) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = getKey(oclass, uid);
+        synchronized (this) {
+            CachedDn cached = dns.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - cached.since >= timeout) {
+                dns.remove(key);
+                return null;
+            }
+            return cached.dn;
+        }
+    }
+
+    /**
+     * Remembers the DN of the entry of the given class identified by the
+     * given Uid.
+     */
+    public void put(ObjectClass oclass, Uid uid, String dn) {
+        if (!isEnabled()) {
+            return;
+        }
+        String key = getKey(oclass, uid);
+        synchronized (this) {
+            dns.put(key, new CachedDn(dn, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Forgets the DN of the entry of the given class identified by the given
+     * Uid, e.g. because the entry is being renamed or deleted.
+     */
+    public void invalidate(ObjectClass oclass, Uid uid) {
+        if (!isEnabled()) {
+            return;
+        }
+        String key = getKey(oclass, uid);
+        synchronized (this) {
+            dns.remove(key);
+        }
+    }
+
+    public synchronized void clear() {
+        dns.clear();
+    }
+
+    synchronized int size() {
+        return dns.size();
+    }
+
+    private static String getKey(ObjectClass oclass, Uid uid) {
+        return oclass.getObjectClassValue() + '|' + uid.getUidValue();
+    }
+
+    private static final class CachedDn {
+
+        private final String dn;
+        private final long since;
+
+        CachedDn(String dn, long since) {
+            this.dn = dn;
+            this.since = since;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static java.util.Collections.emptyList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.naming.InvalidNameException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.PagedResultsControl;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.ldap.search.DefaultSearchStrategy;
+import org.identityconnectors.ldap.search.LdapInternalSearch;
+import org.identityconnectors.ldap.search.LdapSearchResultsHandler;
+import org.identityconnectors.ldap.search.LdapSearchStrategy;
+import org.identityconnectors.ldap.search.SimplePagedSearchStrategy;
+
+/**
+ * The LDAP groups of every member, read by scanning all the groups once, so
+ * that the groups of many entries can be told without a search for each.
+ *
+ * <p>The group DNs are stored once, and each member only holds the indexes
+ * of its groups, keyed by its normalized DN.</p>
+ */
+public class LdapGroupIndex {
+
+    private static final Log log = Log.getLog(LdapGroupIndex.class);
+
+    private final String[] groups;
+    private final Map<String, int[]> memberships;
+    private final long createdAt = System.currentTimeMillis();
+
+    LdapGroupIndex(String[] groups, Map<String, int[]> memberships) {
+        this.groups = groups;
+        this.memberships = memberships;
+    }
+
+    /**
+     * Reads the groups under the base contexts, i.e. the entries with a value
+     * of the given member attribute.
+     */
+    public static LdapGroupIndex build(final LdapConnection conn, final String memberAttr) {
+        long start = System.currentTimeMillis();
+        final List<String> groups = new ArrayList<String>();
+        final Map<String, int[]> memberships = new HashMap<String, int[]>();
+        LdapSearchStrategy strategy;
+        if (conn.supportsControl(PagedResultsControl.OID)) {
+            strategy = new SimplePagedSearchStrategy(conn.getConfiguration().getBlockSize());
+        } else {
+            strategy = new DefaultSearchStrategy(false);
+        }
+        SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        controls.setReturningAttributes(new String[] { memberAttr });
+        LdapInternalSearch search = new LdapInternalSearch(conn, "(" + memberAttr + "=*)",
+                Arrays.asList(conn.getConfiguration().getBaseContexts()), strategy, controls);
+        search.execute(new LdapSearchResultsHandler() {
+            public boolean handle(String baseDN, SearchResult result) throws NamingException {
+                LdapEntry entry = LdapEntry.create(baseDN, result);
+                int group = groups.size();
+                groups.add(entry.getDN().toString());
+                // Make sure we're not hitting AD large group issue.
+                if (ADRangedValues.getRangedAttribute(entry.getAttributes(), "member") != null) {
+                    // The members are indexed a range at a time.
+                    ADRangedValues members = new ADRangedValues(conn, entry, "member");
+                    try {
+                        while (members.hasNext()) {
+                            add(memberships, normalize(members.next().toString()), group);
+                        }
+                    } finally {
+                        members.close();
+                    }
+                } else {
+                    Attribute attr = entry.getAttributes().get(memberAttr);
+                    if (attr != null) {
+                        NamingEnumeration<?> values = attr.getAll();
+                        while (values.hasMore()) {
+                            add(memberships, normalize(values.next().toString()), group);
+                        }
+                    }
+                }
+                return true;
+            }
+        });
+        log.info("Indexed {0} LDAP groups with {1} members in {2} ms", groups.size(), memberships.size(),
+                System.currentTimeMillis() - start);
+        return new LdapGroupIndex(groups.toArray(new String[groups.size()]), memberships);
+    }
+
+    private static void add(Map<String, int[]> memberships, String member, int group) {
+        int[] groups = memberships.get(member);
+        if (groups == null) {
+            memberships.put(member, new int[] { group });
+        } else if (groups[groups.length - 1] != group) {
+            int[] added = Arrays.copyOf(groups, groups.length + 1);
+            added[groups.length] = group;
+            memberships.put(member, added);
+        }
+    }
+
+    /**
+     * Returns the DNs of the groups the given entry is a member of.
+     */
+    public List<String> getGroups(String memberDN) {
+        int[] indexes = memberships.get(normalize(memberDN));
+        if (indexes == null) {
+            return emptyList();
+        }
+        List<String> result = new ArrayList<String>(indexes.length);
+        for (int index : indexes) {
+            result.add(groups[index]);
+        }
+        return result;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Returns a form of the given DN which is the same for all the forms of
+     * the DN the server considers equal: the RDNs written in a same way, and
+     * the types and values in lower case.
+     */
+    static String normalize(String dn) {
+        LdapName name;
+        try {
+            name = new LdapName(dn);
+        } catch (InvalidNameException e) {
+            return dn.trim().toLowerCase(Locale.ENGLISH);
+        }
+        StringBuilder result = new StringBuilder(dn.length());
+        for (int i = name.size() - 1; i >= 0; i--) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(name.getRdn(i).toString().toLowerCase(Locale.ENGLISH));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static java.util.Collections.singletonList;
+import static org.identityconnectors.ldap.LdapEntry.isDNAttribute;
+import static org.identityconnectors.ldap.LdapUtil.escapeAttrValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.naming.InvalidNameException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.ldap.search.DefaultSearchStrategy;
+import org.identityconnectors.ldap.search.LdapInternalSearch;
+import org.identityconnectors.ldap.search.LdapSearchResultsHandler;
+
+/**
+ * Resolves the DNs of group members to their Uid values in bulk, for the
+ * {@code _memberId} attribute.
+ *
+ * <p>The members are read a chunk at a time: the members under a same parent
+ * entry are found by a one-level search under the parent, whose filter
+ * matches their RDNs. A member which is not found that way is read on its
+ * own. The resolved members are remembered, so that the groups read by a
+ * same search or synchronization share them. A resolver is therefore meant
+ * to live as long as one operation, and is safe for use by several threads.</p>
+ */
+public class LdapMemberIdResolver {
+
+    private static final Log log = Log.getLog(LdapMemberIdResolver.class);
+
+    /**
+     * The maximum number of members found by a single search.
+     */
+    static final int CHUNK_SIZE = 100;
+
+    /**
+     * The maximum number of resolved members remembered.
+     */
+    static final int CACHE_SIZE = 10000;
+
+    private final LdapConnection conn;
+    private final int chunkSize;
+    private final Map<LdapName, String> cache;
+
+    public LdapMemberIdResolver(LdapConnection conn) {
+        this(conn, CHUNK_SIZE, CACHE_SIZE);
+    }
+
+    LdapMemberIdResolver(LdapConnection conn, int chunkSize, final int cacheSize) {
+        this.conn = conn;
+        this.chunkSize = chunkSize;
+        cache = new LinkedHashMap<LdapName, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LdapName, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the Uid values of the given members, in order. The members
+     * which do not exist are left out, whether they are read through the
+     * asynchronous transport or not, and do not prevent the resolution of
+     * the others.
+     */
+    public List<String> resolve(List<String> dns) throws NamingException {
+        String uidAttr = conn.getConfiguration().getUidAttribute();
+        if (isDNAttribute(uidAttr)) {
+            return new ArrayList<String>(dns);
+        }
+        Map<String, String> ids = new HashMap<String, String>();
+        // The members to read, by parent entry.
+        Map<LdapName, Map<LdapName, String>> unresolved = new LinkedHashMap<LdapName, Map<LdapName, String>>();
+        List<String> invalid = new ArrayList<String>();
+        for (String dn : dns) {
+            if (ids.containsKey(dn)) {
+                continue;
+            }
+            LdapName name;
+            try {
+                name = new LdapName(dn);
+            } catch (InvalidNameException e) {
+                invalid.add(dn);
+                continue;
+            }
+            String id = getCached(name);
+            if (id != null) {
+                ids.put(dn, id);
+            } else if (name.size() > 0) {
+                LdapName parent = (LdapName) name.getPrefix(name.size() - 1);
+                Map<LdapName, String> children = unresolved.get(parent);
+                if (children == null) {
+                    children = new LinkedHashMap<LdapName, String>();
+                    unresolved.put(parent, children);
+                }
+                children.put(name, dn);
+            } else {
+                invalid.add(dn);
+            }
+        }
+        List<String> remaining = new ArrayList<String>(invalid);
+        LdapAsyncTransport transport = !conn.hasReadServers() ? conn.getAsyncTransport() : null;
+        if (transport != null && !unresolved.isEmpty()) {
+            // The asynchronous transport reads the entries in one pipelined batch.
+            List<String> toRead = new ArrayList<String>();
+            for (Map<LdapName, String> children : unresolved.values()) {
+                toRead.addAll(children.values());
+            }
+            Map<String, Attributes> entries = transport.readEntries(toRead, uidAttr);
+            for (String dn : toRead) {
+                Attributes attrs = entries.get(dn);
+                if (attrs != null) {
+                    String id = LdapUtil.getIDfromAttributes(conn, attrs);
+                    ids.put(dn, id);
+                    putCached(new LdapName(dn), id);
+                } else {
+                    log.warn("Group member {0} does not exist", dn);
+                }
+            }
+        } else {
+            for (Map.Entry<LdapName, Map<LdapName, String>> entry : unresolved.entrySet()) {
+                List<Map.Entry<LdapName, String>> children = new ArrayList<Map.Entry<LdapName, String>>(entry.getValue().entrySet());
+                for (int i = 0; i < children.size(); i += chunkSize) {
+                    List<Map.Entry<LdapName, String>> chunk = children.subList(i, Math.min(i + chunkSize, children.size()));
+                    searchChildren(entry.getKey(), chunk, ids);
+                    for (Map.Entry<LdapName, String> child : chunk) {
+                        if (!ids.containsKey(child.getValue())) {
+                            remaining.add(child.getValue());
+                        }
+                    }
+                }
+            }
+        }
+        for (String dn : remaining) {
+            try {
+                ids.put(dn, LdapUtil.getIDfromDN(conn, dn));
+            } catch (NameNotFoundException e) {
+                log.warn("Group member {0} does not exist", dn);
+            }
+        }
+        List<String> result = new ArrayList<String>(dns.size());
+        for (String dn : dns) {
+            String id = ids.get(dn);
+            if (id != null) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the given children of a parent entry, and puts the Uid values of
+     * those found.
+     */
+    private void searchChildren(LdapName parent, List<Map.Entry<LdapName, String>> children, final Map<String, String> ids)
+            throws NamingException {
+        final Map<LdapName, String> wanted = new HashMap<LdapName, String>();
+        StringBuilder filter = new StringBuilder();
+        if (children.size() > 1) {
+            filter.append("(|");
+        }
+        for (Map.Entry<LdapName, String> child : children) {
+            wanted.put(child.getKey(), child.getValue());
+            appendRdnFilter(child.getKey().getRdn(child.getKey().size() - 1), filter);
+        }
+        if (children.size() > 1) {
+            filter.append(')');
+        }
+        SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
+        controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+        controls.setReturningAttributes(new String[] { conn.getConfiguration().getUidAttribute() });
+        LdapInternalSearch search = new LdapInternalSearch(conn, filter.toString(), singletonList(parent.toString()),
+                new DefaultSearchStrategy(true), controls);
+        final Set<String> found = new HashSet<String>();
+        try {
+            search.execute(new LdapSearchResultsHandler() {
+                public boolean handle(String baseDN, SearchResult result) throws NamingException {
+                    LdapEntry entry = LdapEntry.create(baseDN, result);
+                    // Other entries may match the RDN values through other values.
+                    String dn = wanted.get(entry.getDN());
+                    if (dn != null && entry.getAttributes().get(conn.getConfiguration().getUidAttribute()) != null) {
+                        String id = LdapUtil.getIDfromAttributes(conn, entry.getAttributes());
+                        ids.put(dn, id);
+                        putCached(entry.getDN(), id);
+                        found.add(dn);
+                    }
+                    return true;
+                }
+            });
+        } catch (ConnectorException e) {
+            // The members not found are read on their own.
+            log.ok(e, "Could not search the members under {0}", parent);
+        }
+        log.ok("Found {0} of {1} members under {2}", found.size(), children.size(), parent);
+    }
+
+    private static void appendRdnFilter(Rdn rdn, StringBuilder filter) throws NamingException {
+        Attributes attrs = rdn.toAttributes();
+        if (attrs.size() > 1) {
+            filter.append("(&");
+        }
+        NamingEnumeration<? extends Attribute> attrEnum = attrs.getAll();
+        while (attrEnum.hasMore()) {
+            Attribute attr = attrEnum.next();
+            filter.append('(').append(attr.getID()).append('=');
+            escapeAttrValue(attr.get(), filter);
+            filter.append(')');
+        }
+        if (attrs.size() > 1) {
+            filter.append(')');
+        }
+    }
+
+    private synchronized String getCached(LdapName name) {
+        return cache.get(name);
+    }
+
+    private synchronized void putCached(LdapName name, String id) {
+        cache.put(name, id);
+    }
+}
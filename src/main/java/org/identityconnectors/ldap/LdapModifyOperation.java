@@ -28,6 +28,7 @@ import java.io.UnsupportedEncodingException;
 import static java.util.Collections.min;
 import static org.identityconnectors.common.CollectionUtil.isEmpty;
 import static org.identityconnectors.common.StringUtil.isBlank;
+import static org.identityconnectors.common.StringUtil.isNotBlank;
 import static org.identityconnectors.ldap.LdapUtil.addStringAttrValues;
 import static org.identityconnectors.ldap.LdapUtil.quietCreateLdapName;
 
@@ -38,15 +39,19 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
+import javax.naming.CommunicationException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
+import javax.naming.ldap.LdapContext;
 import javax.naming.ldap.LdapName;
 import javax.naming.ldap.Rdn;
 
 import org.identityconnectors.common.Base64;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.ldap.GroupHelper.GroupMembership;
 import org.identityconnectors.ldap.search.LdapSearches;
 
@@ -60,6 +65,69 @@ public abstract class LdapModifyOperation {
         groupHelper = new GroupHelper(conn);
     }
 
+    /**
+     * Returns the context to perform the modifications with: a context bound
+     * as the run-as user when one is requested by the options, a context
+     * leased from the connection otherwise. It must be handed back with
+     * {@link #closeContext(LdapContext, OperationOptions, Throwable)}.
+     */
+    protected final LdapContext openContext(ObjectClass oclass, OperationOptions options) {
+        if (isRunAs(options)) {
+            LdapRunAsCache cache = conn.getRunAsCache();
+            String dn = cache.getDn(conn, oclass, options);
+            try {
+                return cache.borrow(dn, options.getRunWithPassword());
+            } catch (ConnectorException e) {
+                // The user may have been renamed since its DN was cached.
+                cache.invalidateDn(oclass, options);
+                String current = cache.getDn(conn, oclass, options);
+                if (current.equals(dn)) {
+                    throw e;
+                }
+                return cache.borrow(current, options.getRunWithPassword());
+            }
+        }
+        return conn.borrowContext();
+    }
+
+    /**
+     * Hands back a context obtained from
+     * {@link #openContext(ObjectClass, OperationOptions)}, given the exception
+     * the modifications failed with, if any. A context which failed with a
+     * communication error is closed instead of being kept for the next
+     * operation.
+     */
+    protected final void closeContext(LdapContext context, OperationOptions options, Throwable failure) {
+        if (context == null) {
+            return;
+        }
+        boolean broken = isCommunicationFailure(failure);
+        if (isRunAs(options)) {
+            if (broken) {
+                conn.getRunAsCache().invalidate(context);
+            } else {
+                conn.getRunAsCache().release(context);
+            }
+        } else if (broken) {
+            conn.abandonContext(context);
+        } else {
+            conn.releaseContext(context);
+        }
+    }
+
+    private static boolean isCommunicationFailure(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CommunicationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRunAs(OperationOptions options) {
+        return options != null && isNotBlank(options.getRunAsUser());
+    }
+
     protected final void hashPassword(Attribute passwordAttr, String entryDN) {
         String hashAlgorithm = conn.getConfiguration().getPasswordHashAlgorithm();
         if (isBlank(hashAlgorithm) || "NONE".equalsIgnoreCase(hashAlgorithm)) {
@@ -0,0 +1,253 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+/**
+ * Remembers which entries were written during the last {@code window}
+ * milliseconds, so that reads of these entries can be sent to the server the
+ * write went to rather than to a replica which may not have it yet.
+ *
+ * <p>Entries are remembered by keys such as their Uid value, their DN or
+ * their Uid value as it appears in a search filter. A read is considered to
+ * concern a recently written entry when its base DN is, or is below, one of
+ * these keys, or when a value of its filter is one of them. Values and DNs
+ * are compared ignoring case, and DNs once normalized. A substring filter
+ * value concerns the keys it matches. This errs on the side of reading from
+ * the writer.</p>
+ */
+public class LdapRecentWrites {
+
+    private final long window;
+    private final int maxSize;
+    // Normalized key to expiry, oldest first.
+    private final LinkedHashMap<String, Long> keys = new LinkedHashMap<String, Long>();
+
+    public LdapRecentWrites(long window, int maxSize) {
+        this.window = window;
+        this.maxSize = maxSize;
+    }
+
+    public boolean isEnabled() {
+        return window > 0;
+    }
+
+    /**
+     * Remembers that the entry identified by the given keys was just written.
+     */
+    public synchronized void record(String... entryKeys) {
+        if (!isEnabled()) {
+            return;
+        }
+        long expiry = System.currentTimeMillis() + window;
+        for (String key : entryKeys) {
+            if (key != null && key.length() > 0) {
+                String normalized = normalize(key);
+                // Re-insert, so that the entry order remains the expiry order.
+                keys.remove(normalized);
+                keys.put(normalized, expiry);
+            }
+        }
+        Iterator<Long> it = keys.values().iterator();
+        while (keys.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the given DN or filter mentions an entry which
+     * was written during the window.
+     */
+    public synchronized boolean isMentionedIn(String text) {
+        if (text == null || keys.isEmpty()) {
+            return false;
+        }
+        Set<String> values = new HashSet<String>();
+        List<String[]> patterns = new ArrayList<String[]>();
+        if (text.startsWith("(")) {
+            addFilterValues(text, values, patterns);
+        } else {
+            addDNValues(text, values);
+        }
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, Long>> it = keys.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getValue() <= now) {
+                it.remove();
+            } else if (values.contains(entry.getKey()) || matchesAny(entry.getKey(), patterns)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the values of the items of the given filter, as they appear in the
+     * filter and unescaped, and the pieces of its substring values.
+     */
+    private static void addFilterValues(String filter, Set<String> values, List<String[]> patterns) {
+        int start = 0;
+        while ((start = filter.indexOf('(', start)) >= 0) {
+            start++;
+            int end = filter.indexOf(')', start);
+            if (end < 0) {
+                break;
+            }
+            int equals = filter.indexOf('=', start);
+            if (equals < 0 || equals > end || filter.lastIndexOf('(', end) >= start) {
+                // A nested filter, whose items come next.
+                continue;
+            }
+            String value = filter.substring(equals + 1, end);
+            if (value.indexOf('*') < 0) {
+                values.add(value.toLowerCase());
+                values.add(normalize(unescapeFilterValue(value)));
+            } else if (!"*".equals(value)) {
+                String[] pieces = value.split("\\*", -1);
+                for (int i = 0; i < pieces.length; i++) {
+                    pieces[i] = unescapeFilterValue(pieces[i]).toLowerCase();
+                }
+                patterns.add(pieces);
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Adds the given DN and its ancestors, and the value of its RDN.
+     */
+    private static void addDNValues(String dn, Set<String> values) {
+        values.add(normalize(dn));
+        LdapName name;
+        try {
+            name = new LdapName(dn);
+        } catch (InvalidNameException e) {
+            return;
+        }
+        for (int i = name.size() - 1; i > 0; i--) {
+            values.add(normalize((LdapName) name.getPrefix(i)));
+        }
+        if (name.size() > 0) {
+            values.add(name.getRdn(name.size() - 1).getValue().toString().toLowerCase());
+        }
+    }
+
+    private static boolean matchesAny(String key, List<String[]> patterns) {
+        for (String[] pieces : patterns) {
+            if (matches(key, pieces)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if the given key matches the substring filter
+     * value made of the given pieces, the first and last of which are empty
+     * if the value starts or ends with a wildcard.
+     */
+    private static boolean matches(String key, String[] pieces) {
+        int last = pieces.length - 1;
+        if (!key.startsWith(pieces[0]) || key.length() < pieces[0].length() + pieces[last].length()) {
+            return false;
+        }
+        int from = pieces[0].length();
+        int to = key.length() - pieces[last].length();
+        if (!key.startsWith(pieces[last], to)) {
+            return false;
+        }
+        for (int i = 1; i < last; i++) {
+            int index = key.indexOf(pieces[i], from);
+            if (index < 0 || index + pieces[i].length() > to) {
+                return false;
+            }
+            from = index + pieces[i].length();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the given value in lower case, or its normalized form in lower
+     * case if it is a DN.
+     */
+    private static String normalize(String value) {
+        if (value.indexOf('=') >= 0) {
+            try {
+                return normalize(new LdapName(value));
+            } catch (InvalidNameException e) {
+                // Not a DN.
+            }
+        }
+        return value.toLowerCase();
+    }
+
+    private static String normalize(LdapName name) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = name.size() - 1; i >= 0; i--) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(name.getRdn(i).toString());
+        }
+        return builder.toString().toLowerCase();
+    }
+
+    /**
+     * Replaces the escaped characters of the given filter value, such as
+     * {@code \2a}, with the characters they stand for.
+     */
+    private static String unescapeFilterValue(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length());
+        try {
+            int start = 0;
+            for (int i = 0; i + 2 < value.length(); i++) {
+                if (value.charAt(i) == '\\' && isHexDigit(value.charAt(i + 1)) && isHexDigit(value.charAt(i + 2))) {
+                    byte[] plain = value.substring(start, i).getBytes("UTF-8");
+                    bytes.write(plain, 0, plain.length);
+                    bytes.write(Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                    i += 2;
+                    start = i + 1;
+                }
+            }
+            byte[] plain = value.substring(start).getBytes("UTF-8");
+            bytes.write(plain, 0, plain.length);
+            return new String(bytes.toByteArray(), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isHexDigit(char ch) {
+        return Character.digit(ch, 16) >= 0;
+    }
+}
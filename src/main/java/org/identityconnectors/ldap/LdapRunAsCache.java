@@ -0,0 +1,308 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.common.security.GuardedString.Accessor;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+
+/**
+ * Caches what it takes to perform an operation as a run-as user: the DN the
+ * user name resolves to, and contexts already bound as that DN.
+ *
+ * <p>Bound contexts are keyed by the DN and a salted digest of the password,
+ * so that a context is only ever handed to a caller who presented the same
+ * credentials as the one it was bound with. Both the resolved DNs and the
+ * contexts expire after the configured timeout, which bounds how long a
+ * renamed user or a password changed on the server goes unnoticed. A timeout
+ * or a size of 0 disables the cache.</p>
+ */
+public class LdapRunAsCache {
+
+    /**
+     * Opens the contexts bound as a DN, validates and closes them.
+     */
+    public interface ContextOpener {
+
+        LdapContext open(String dn, GuardedString password);
+
+        boolean validate(LdapContext context);
+
+        void close(LdapContext context);
+    }
+
+    private static final Log log = Log.getLog(LdapRunAsCache.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ContextOpener opener;
+    private final int maxSize;
+    private final long timeout;
+    private final byte[] salt = new byte[16];
+
+    private final Map<String, CachedDn> dns;
+    // Most recently released contexts first.
+    private final LinkedList<IdleContext> idle = new LinkedList<IdleContext>();
+    private final Map<LdapContext, IdleContext> leased = new IdentityHashMap<LdapContext, IdleContext>();
+    private boolean closed;
+
+    /**
+     * @param opener opens the contexts which are not in the cache.
+     * @param maxSize the maximum number of cached DNs, and of idle contexts.
+     * @param timeout the time in milliseconds after which a resolved DN or a
+     *            context is discarded.
+     */
+    public LdapRunAsCache(ContextOpener opener, final int maxSize, long timeout) {
+        this.opener = opener;
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+        new SecureRandom().nextBytes(salt);
+        dns = new LinkedHashMap<String, CachedDn>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedDn> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private boolean isEnabled() {
+        return maxSize > 0 && timeout > 0;
+    }
+
+    /**
+     * Returns the DN of the run-as user of the options, searching for it
+     * only if it has not been resolved recently.
+     */
+    public String getDn(LdapConnection conn, ObjectClass oclass, OperationOptions options) {
+        String username = options.getRunAsUser();
+        if (!isEnabled()) {
+            return new LdapAuthenticate(conn, oclass, username, options).getDn();
+        }
+        String key = getDnKey(oclass, options);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            CachedDn cached = dns.get(key);
+            if (cached != null && now - cached.since < timeout) {
+                return cached.dn;
+            }
+        }
+        String dn = new LdapAuthenticate(conn, oclass, username, options).getDn();
+        synchronized (this) {
+            dns.put(key, new CachedDn(dn, now));
+        }
+        return dn;
+    }
+
+    /**
+     * Forgets the DN of the run-as user of the options, e.g. because binding
+     * as that DN failed.
+     */
+    public synchronized void invalidateDn(ObjectClass oclass, OperationOptions options) {
+        dns.remove(getDnKey(oclass, options));
+    }
+
+    /**
+     * Leases a context bound as the given DN with the given password. It must
+     * be handed back with {@link #release(LdapContext)}.
+     */
+    public LdapContext borrow(String dn, GuardedString password) {
+        if (!isEnabled()) {
+            return opener.open(dn, password);
+        }
+        String key = getContextKey(dn, password);
+        while (true) {
+            List<IdleContext> expired = new ArrayList<IdleContext>(0);
+            IdleContext found = null;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                for (Iterator<IdleContext> it = idle.iterator(); it.hasNext();) {
+                    IdleContext each = it.next();
+                    if (now - each.since >= timeout) {
+                        it.remove();
+                        expired.add(each);
+                    } else if (found == null && each.key.equals(key)) {
+                        it.remove();
+                        found = each;
+                    }
+                }
+            }
+            closeAll(expired);
+            if (found == null) {
+                break;
+            }
+            // The server may have dropped the connection while it was idle.
+            if (opener.validate(found.context)) {
+                synchronized (this) {
+                    leased.put(found.context, found);
+                }
+                return found.context;
+            }
+            log.ok("Discarding a run-as context which failed validation");
+            opener.close(found.context);
+        }
+        LdapContext context = opener.open(dn, password);
+        synchronized (this) {
+            leased.put(context, new IdleContext(key, context, System.currentTimeMillis()));
+        }
+        return context;
+    }
+
+    /**
+     * Hands back a context obtained from {@link #borrow(String, GuardedString)},
+     * keeping it for the next operation performed with the same credentials.
+     */
+    public void release(LdapContext context) {
+        IdleContext evicted = null;
+        synchronized (this) {
+            IdleContext entry = leased.remove(context);
+            if (entry != null && !closed) {
+                idle.addFirst(entry);
+                if (idle.size() > maxSize) {
+                    evicted = idle.removeLast();
+                }
+                context = null;
+            }
+        }
+        if (evicted != null) {
+            opener.close(evicted.context);
+        }
+        if (context != null) {
+            opener.close(context);
+        }
+    }
+
+    /**
+     * Closes a context obtained from {@link #borrow(String, GuardedString)}
+     * which is broken, e.g. because it failed with a communication error,
+     * instead of keeping it for the next operation.
+     */
+    public void invalidate(LdapContext context) {
+        synchronized (this) {
+            leased.remove(context);
+        }
+        opener.close(context);
+    }
+
+    /**
+     * Closes the idle contexts and forgets the resolved DNs. Leased contexts
+     * are closed when they are released.
+     */
+    public void close() {
+        List<IdleContext> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<IdleContext>(idle);
+            idle.clear();
+            dns.clear();
+        }
+        closeAll(toClose);
+    }
+
+    synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    private static String getDnKey(ObjectClass oclass, OperationOptions options) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(oclass.getObjectClassValue());
+        builder.append('|');
+        String[] uidAttrs = LdapConstants.getLdapUidAttributes(options);
+        if (uidAttrs != null) {
+            builder.append(Arrays.toString(uidAttrs));
+        }
+        builder.append('|');
+        builder.append(options.getRunAsUser());
+        return builder.toString();
+    }
+
+    String getContextKey(String dn, GuardedString password) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new ConnectorException(e);
+        }
+        digest.update(salt);
+        if (password != null) {
+            password.access(new Accessor() {
+                public void access(char[] clearChars) {
+                    ByteBuffer bytes = UTF8.encode(CharBuffer.wrap(clearChars));
+                    digest.update(bytes.array(), 0, bytes.limit());
+                    Arrays.fill(bytes.array(), (byte) 0);
+                }
+            });
+        }
+        StringBuilder builder = new StringBuilder(dn);
+        builder.append('|');
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    private void closeAll(List<IdleContext> contexts) {
+        for (IdleContext each : contexts) {
+            opener.close(each.context);
+        }
+    }
+
+    private static final class CachedDn {
+
+        private final String dn;
+        private final long since;
+
+        CachedDn(String dn, long since) {
+            this.dn = dn;
+            this.since = since;
+        }
+    }
+
+    private static final class IdleContext {
+
+        private final String key;
+        private final LdapContext context;
+        private final long since;
+
+        IdleContext(String key, LdapContext context, long since) {
+            this.key = key;
+            this.context = context;
+            this.since = since;
+        }
+    }
+}
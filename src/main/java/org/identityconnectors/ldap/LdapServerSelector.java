@@ -0,0 +1,237 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * Chooses which of the configured servers a new connection is opened to.
+ *
+ * <p>The servers are returned in order of preference: the connection is
+ * opened to the first one which answers. Servers which recently failed are
+ * ejected, i.e. only tried after all the healthy ones, until the ejection
+ * time has passed or a connection to them succeeds again.</p>
+ *
+ * <p>Servers can be given a priority, as DNS SRV records do: the healthy
+ * servers of the lowest priority are always tried before the others, the
+ * policy only spreading the connections among servers of a same priority.</p>
+ */
+public class LdapServerSelector {
+
+    public enum Policy {
+
+        /**
+         * The servers are always tried in the configured order.
+         */
+        FAILOVER,
+
+        /**
+         * Each new connection starts with the next server.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * The server with the fewest operations in progress comes first.
+         */
+        LEAST_OUTSTANDING,
+
+        /**
+         * The server with the lowest moving average of response times, weighted
+         * by its operations in progress, comes first.
+         */
+        LATENCY;
+
+        public static Policy parse(String value) {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private static final Log log = Log.getLog(LdapServerSelector.class);
+
+    // The weight of the newest sample in the moving average of the latency.
+    private static final double EWMA_ALPHA = 0.3;
+
+    private final Policy policy;
+    private final long ejectionTime;
+    private final Map<String, Server> servers = new LinkedHashMap<String, Server>();
+    private int next;
+
+    /**
+     * @param urls the LDAP URLs of the servers, in the configured order.
+     * @param policy how to order the servers.
+     * @param ejectionTime the time in milliseconds a failed server is ejected.
+     */
+    public LdapServerSelector(List<String> urls, Policy policy, long ejectionTime) {
+        this.policy = policy;
+        this.ejectionTime = ejectionTime;
+        setServers(urls, null);
+    }
+
+    /**
+     * Replaces the servers, e.g. because the SRV records they were resolved
+     * from changed. What is known about the servers which remain is kept.
+     *
+     * @param urls the LDAP URLs of the servers, in the configured order.
+     * @param priorities the priority of each server, lowest first, or
+     *            {@code null} if they all have the same priority.
+     */
+    public synchronized void setServers(List<String> urls, List<Integer> priorities) {
+        Map<String, Server> previous = new LinkedHashMap<String, Server>(servers);
+        servers.clear();
+        for (int i = 0; i < urls.size(); i++) {
+            String url = urls.get(i);
+            if (!servers.containsKey(url)) {
+                Server server = previous.get(url);
+                if (server == null) {
+                    server = new Server(url);
+                }
+                server.priority = priorities != null ? priorities.get(i) : 0;
+                servers.put(url, server);
+            }
+        }
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the URLs of all the servers in the order they should be tried
+     * for a new connection.
+     */
+    public synchronized List<String> getCandidates() {
+        long now = System.currentTimeMillis();
+        List<Server> healthy = new ArrayList<Server>(servers.size());
+        List<Server> ejected = new ArrayList<Server>(0);
+        for (Server server : servers.values()) {
+            (server.ejectedUntil > now ? ejected : healthy).add(server);
+        }
+        if (policy != Policy.FAILOVER && !healthy.isEmpty()) {
+            // Rotate first, so that ties are broken differently each time.
+            Collections.rotate(healthy, -(next++ % healthy.size()));
+            if (policy == Policy.LEAST_OUTSTANDING) {
+                Collections.sort(healthy, new Comparator<Server>() {
+                    public int compare(Server s1, Server s2) {
+                        return s1.outstanding - s2.outstanding;
+                    }
+                });
+            } else if (policy == Policy.LATENCY) {
+                Collections.sort(healthy, new Comparator<Server>() {
+                    public int compare(Server s1, Server s2) {
+                        return Double.compare(s1.getCost(), s2.getCost());
+                    }
+                });
+            }
+        }
+        // The sort is stable, so the order within a priority is kept.
+        Collections.sort(healthy, new Comparator<Server>() {
+            public int compare(Server s1, Server s2) {
+                return s1.priority < s2.priority ? -1 : (s1.priority > s2.priority ? 1 : 0);
+            }
+        });
+        // The ejected servers are still tried if no healthy one answers,
+        // those whose ejection ends first before the others.
+        Collections.sort(ejected, new Comparator<Server>() {
+            public int compare(Server s1, Server s2) {
+                return s1.ejectedUntil < s2.ejectedUntil ? -1 : (s1.ejectedUntil > s2.ejectedUntil ? 1 : 0);
+            }
+        });
+        List<String> result = new ArrayList<String>(servers.size());
+        for (Server server : healthy) {
+            result.add(server.url);
+        }
+        for (Server server : ejected) {
+            result.add(server.url);
+        }
+        return result;
+    }
+
+    /**
+     * Records that the server answered in the given time.
+     */
+    public synchronized void recordSuccess(String url, long latency) {
+        Server server = servers.get(url);
+        if (server == null) {
+            return;
+        }
+        if (server.ejectedUntil != 0) {
+            log.info("Server {0} is available again", url);
+            server.ejectedUntil = 0;
+        }
+        server.latency = server.latency < 0 ? latency : EWMA_ALPHA * latency + (1 - EWMA_ALPHA) * server.latency;
+    }
+
+    /**
+     * Records that the server could not be reached, which ejects it.
+     */
+    public synchronized void recordFailure(String url) {
+        Server server = servers.get(url);
+        if (server != null && ejectionTime > 0) {
+            log.warn("Ejecting server {0} for {1} ms", url, ejectionTime);
+            server.ejectedUntil = System.currentTimeMillis() + ejectionTime;
+        }
+    }
+
+    /**
+     * Records that an operation started on a connection to the server.
+     */
+    public synchronized void acquired(String url) {
+        Server server = servers.get(url);
+        if (server != null) {
+            server.outstanding++;
+        }
+    }
+
+    /**
+     * Records that an operation ended on a connection to the server.
+     */
+    public synchronized void released(String url) {
+        Server server = servers.get(url);
+        if (server != null && server.outstanding > 0) {
+            server.outstanding--;
+        }
+    }
+
+    synchronized int getOutstanding(String url) {
+        return servers.get(url).outstanding;
+    }
+
+    private static final class Server {
+
+        private final String url;
+        private int priority;
+        private int outstanding;
+        // Negative until the first sample.
+        private double latency = -1;
+        private long ejectedUntil;
+
+        Server(String url) {
+            this.url = url;
+        }
+
+        double getCost() {
+            // Servers never measured come first, so that they get measured.
+            return latency < 0 ? -1 : latency * (outstanding + 1);
+        }
+    }
+}
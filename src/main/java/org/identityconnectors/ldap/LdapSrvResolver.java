@@ -0,0 +1,317 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * Resolves the DNS SRV records of a name, such as
+ * {@code _ldap._tcp.example.com}, into the servers to connect to, ordered as
+ * RFC 2782 prescribes: by ascending priority and, within a priority, by a
+ * random order in which servers with a higher weight tend to come first.
+ *
+ * <p>The answer is cached for the configured time, since the JNDI DNS
+ * provider does not expose the TTL of the records. Once it has expired, the
+ * previous answer is still returned while it is resolved again in the
+ * background, so that opening a connection does not wait for DNS. If the
+ * name cannot be resolved again, the previous answer is kept.</p>
+ */
+public class LdapSrvResolver {
+
+    /**
+     * Opens the context the SRV records are read from.
+     */
+    public interface DnsContextFactory {
+
+        DirContext open() throws NamingException;
+    }
+
+    /**
+     * The target of a SRV record.
+     */
+    public static final class Target {
+
+        private final String host;
+        private final int port;
+        private final int priority;
+        private final int weight;
+
+        public Target(String host, int port, int priority, int weight) {
+            this.host = host;
+            this.port = port;
+            this.priority = priority;
+            this.weight = weight;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public String getUrl() {
+            return "ldap://" + host + ":" + port;
+        }
+
+        @Override
+        public String toString() {
+            return priority + " " + weight + " " + port + " " + host;
+        }
+    }
+
+    private static final Log log = Log.getLog(LdapSrvResolver.class);
+
+    private static final ConcurrentMap<String, LdapSrvResolver> resolvers = new ConcurrentHashMap<String, LdapSrvResolver>();
+
+    private static final DnsContextFactory DEFAULT_FACTORY = new DnsContextFactory() {
+        public DirContext open() throws NamingException {
+            return new InitialDirContext();
+        }
+    };
+
+    private static final Executor BACKGROUND = new Executor() {
+        public void execute(Runnable command) {
+            Thread thread = new Thread(command, "LDAP SRV record refresh");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    };
+
+    private final String name;
+    private final long timeout;
+    private final DnsContextFactory factory;
+    private final Executor executor;
+    private final Random random;
+
+    private List<Target> targets;
+    private long resolvedAt;
+    private boolean refreshing;
+
+    /**
+     * @param name the name whose SRV records are resolved.
+     * @param timeout the time in milliseconds an answer is cached.
+     * @param factory opens the DNS context.
+     * @param executor runs the background resolutions.
+     * @param random orders the servers of a same priority.
+     */
+    public LdapSrvResolver(String name, long timeout, DnsContextFactory factory, Executor executor, Random random) {
+        this.name = name;
+        this.timeout = timeout;
+        this.factory = factory;
+        this.executor = executor;
+        this.random = random;
+    }
+
+    /**
+     * Returns the resolver of the given name shared by all the connector
+     * instances, so that they share its cached answer.
+     */
+    public static LdapSrvResolver forName(String name, long timeout) {
+        String key = name.toLowerCase() + "|" + timeout;
+        LdapSrvResolver resolver = resolvers.get(key);
+        if (resolver == null) {
+            resolver = new LdapSrvResolver(name, timeout, DEFAULT_FACTORY, BACKGROUND, new Random());
+            LdapSrvResolver existing = resolvers.putIfAbsent(key, resolver);
+            if (existing != null) {
+                resolver = existing;
+            }
+        }
+        return resolver;
+    }
+
+    /**
+     * Returns the servers in the order they should be tried. Only the first
+     * call, or a call after a resolution failed with no previous answer,
+     * waits for DNS, unless the cache timeout is 0.
+     */
+    public List<Target> getTargets() {
+        if (timeout <= 0) {
+            return refresh();
+        }
+        synchronized (this) {
+            if (targets != null) {
+                if (System.currentTimeMillis() - resolvedAt >= timeout && !refreshing) {
+                    refreshing = true;
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            refresh();
+                        }
+                    });
+                }
+                return targets;
+            }
+        }
+        return refresh();
+    }
+
+    private List<Target> refresh() {
+        List<Target> resolved = null;
+        try {
+            resolved = resolve();
+            log.info("SRV records of {0} resolved to {1}", name, resolved);
+        } catch (NamingException e) {
+            log.warn(e, "Exception while retrieving DNS SRV records of {0}", name);
+        }
+        synchronized (this) {
+            refreshing = false;
+            if (resolved != null && (!resolved.isEmpty() || targets == null)) {
+                targets = resolved;
+                resolvedAt = System.currentTimeMillis();
+            } else if (targets != null) {
+                // Keep the previous answer, and only try again after the timeout.
+                resolvedAt = System.currentTimeMillis();
+            }
+            return targets != null ? targets : Collections.<Target>emptyList();
+        }
+    }
+
+    private List<Target> resolve() throws NamingException {
+        List<Target> result = new ArrayList<Target>();
+        DirContext context = factory.open();
+        try {
+            Attributes attributes = context.getAttributes("dns:/" + name, new String[] { "SRV" });
+            Attribute attr = attributes.get("SRV");
+            if (attr != null) {
+                NamingEnumeration<?> values = attr.getAll();
+                while (values.hasMore()) {
+                    Target target = parse(values.next().toString());
+                    if (target != null) {
+                        result.add(target);
+                    }
+                }
+            }
+        } finally {
+            context.close();
+        }
+        return unmodifiableList(order(result, random));
+    }
+
+    /**
+     * Parses a SRV record, i.e. "priority weight port target".
+     */
+    static Target parse(String record) {
+        String[] vals = record.trim().split("\\s+");
+        if (vals.length != 4) {
+            log.ok("Ignoring the malformed SRV record {0}", record);
+            return null;
+        }
+        String host = vals[3];
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        // A target of "." means the service is not available for the name.
+        if (host.length() == 0) {
+            return null;
+        }
+        try {
+            return new Target(host, Integer.parseInt(vals[2]), Integer.parseInt(vals[0]), Integer.parseInt(vals[1]));
+        } catch (NumberFormatException e) {
+            log.ok("Ignoring the malformed SRV record {0}", record);
+            return null;
+        }
+    }
+
+    /**
+     * Orders the targets as RFC 2782 prescribes.
+     */
+    static List<Target> order(List<Target> targets, Random random) {
+        List<Target> sorted = new ArrayList<Target>(targets);
+        Collections.sort(sorted, new Comparator<Target>() {
+            public int compare(Target t1, Target t2) {
+                return t1.priority < t2.priority ? -1 : (t1.priority > t2.priority ? 1 : 0);
+            }
+        });
+        List<Target> result = new ArrayList<Target>(sorted.size());
+        int start = 0;
+        while (start < sorted.size()) {
+            int end = start;
+            while (end < sorted.size() && sorted.get(end).priority == sorted.get(start).priority) {
+                end++;
+            }
+            orderByWeight(new ArrayList<Target>(sorted.subList(start, end)), random, result);
+            start = end;
+        }
+        return result;
+    }
+
+    private static void orderByWeight(List<Target> group, Random random, List<Target> result) {
+        // The targets with a weight of 0 go first, so that they have a very
+        // small chance to be selected.
+        List<Target> unselected = new ArrayList<Target>(group.size());
+        for (Target target : group) {
+            if (target.weight == 0) {
+                unselected.add(target);
+            }
+        }
+        for (Target target : group) {
+            if (target.weight != 0) {
+                unselected.add(target);
+            }
+        }
+        while (!unselected.isEmpty()) {
+            int sum = 0;
+            for (Target target : unselected) {
+                sum += Math.max(target.weight, 0);
+            }
+            int chosen = random.nextInt(sum + 1);
+            int running = 0;
+            int index = unselected.size() - 1;
+            for (int i = 0; i < unselected.size(); i++) {
+                running += Math.max(unselected.get(i).weight, 0);
+                if (running >= chosen) {
+                    index = i;
+                    break;
+                }
+            }
+            result.add(unselected.remove(index));
+        }
+    }
+
+    /**
+     * Forgets the resolvers shared by the connector instances.
+     */
+    static void clear() {
+        resolvers.clear();
+    }
+}
@@ -503,32 +503,53 @@ public class LdapUtil {
         }
     }
 
-    private static String getIDfromDN(LdapConnection conn, String dn) throws NamingException {
+    static String getIDfromDN(LdapConnection conn, String dn) throws NamingException {
         if (isDNAttribute(conn.getConfiguration().getUidAttribute())) {
             return dn;
         } else {
             Attributes attrs = conn.getInitialContext().getAttributes(escapeDNValueOfJNDIReservedChars(dn), new String[]{conn.getConfiguration().getUidAttribute()});
-            String uidAttr = conn.getConfiguration().getUidAttribute();
-            if (LdapConstants.MS_GUID_ATTR.equalsIgnoreCase(uidAttr)) {
-                return (ADLdapUtil.objectGUIDtoString(attrs.get(conn.getConfiguration().getUidAttribute())));
-            } else if (conn.getConfiguration().isBinaryUid()) {
-                return formatBinaryUid(attrs.get(conn.getConfiguration().getUidAttribute()));
-            } else {
-                return (attrs.get(conn.getConfiguration().getUidAttribute()).get(0).toString());
-            }
+            return getIDfromAttributes(conn, attrs);
+        }
+    }
+
+    static String getIDfromAttributes(LdapConnection conn, Attributes attrs) throws NamingException {
+        String uidAttr = conn.getConfiguration().getUidAttribute();
+        if (LdapConstants.MS_GUID_ATTR.equalsIgnoreCase(uidAttr)) {
+            return (ADLdapUtil.objectGUIDtoString(attrs.get(uidAttr)));
+        } else if (conn.getConfiguration().isBinaryUid()) {
+            return formatBinaryUid(attrs.get(uidAttr));
+        } else {
+            return (attrs.get(uidAttr).get(0).toString());
         }
     }
 
     // This function builds a _memberId attribute which is a helper
     // that contains the group members' GUID
     public static org.identityconnectors.framework.common.objects.Attribute buildMemberIdAttribute(LdapConnection conn, javax.naming.directory.Attribute attr) {
-        ArrayList<String> membersIds = new ArrayList<String>();
+        return buildMemberIdAttribute(new LdapMemberIdResolver(conn), attr);
+    }
+
+    public static org.identityconnectors.framework.common.objects.Attribute buildMemberIdAttribute(LdapConnection conn, org.identityconnectors.framework.common.objects.Attribute attr) {
+        return buildMemberIdAttribute(new LdapMemberIdResolver(conn), attr);
+    }
+
+    /**
+     * Builds the _memberId attribute through the given resolver, which
+     * remembers the members resolved for the previous groups. The members
+     * which do not exist, such as entries deleted without being removed from
+     * the group, are left out with a warning, and the other members are
+     * still resolved.
+     */
+    public static org.identityconnectors.framework.common.objects.Attribute buildMemberIdAttribute(LdapMemberIdResolver resolver, javax.naming.directory.Attribute attr) {
+        List<String> membersIds = new ArrayList<String>();
         try {
             if (attr != null) {
+                List<String> dns = new ArrayList<String>(attr.size());
                 NamingEnumeration<?> vals = attr.getAll();
                 while (vals.hasMore()) {
-                    membersIds.add(getIDfromDN(conn, vals.next().toString()));
+                    dns.add(vals.next().toString());
                 }
+                membersIds = resolver.resolve(dns);
             }
         } catch (NamingException e) {
             log.warn(e,"Error reading group member attribute");
@@ -536,13 +557,15 @@ public class LdapUtil {
         return AttributeBuilder.build("_memberId", membersIds);
     }
 
-    public static org.identityconnectors.framework.common.objects.Attribute buildMemberIdAttribute(LdapConnection conn, org.identityconnectors.framework.common.objects.Attribute attr) {
-        ArrayList<String> membersIds = new ArrayList<String>();
+    public static org.identityconnectors.framework.common.objects.Attribute buildMemberIdAttribute(LdapMemberIdResolver resolver, org.identityconnectors.framework.common.objects.Attribute attr) {
+        List<String> membersIds = new ArrayList<String>();
         try {
             if (attr != null) {
+                List<String> dns = new ArrayList<String>(attr.getValue().size());
                 for(Object val: attr.getValue()){
-                    membersIds.add(getIDfromDN(conn, val.toString()));
+                    dns.add(val.toString());
                 }
+                membersIds = resolver.resolve(dns);
             }
         } catch (NamingException e) {
             log.warn(e,"Error reading group member attribute");
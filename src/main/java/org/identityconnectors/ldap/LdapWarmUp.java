@@ -0,0 +1,83 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * Runs the warm-up of a connector instance in a background thread.
+ *
+ * <p>The operations of the connector call {@link #await()} first, so they
+ * only wait if they arrive before the warm-up is done, and then see
+ * everything it set up. A failed warm-up is only logged: the operations
+ * perform the failed steps again themselves, and report the failure as they
+ * would have without a warm-up.</p>
+ */
+class LdapWarmUp {
+
+    private static final Log log = Log.getLog(LdapWarmUp.class);
+
+    private final FutureTask<Object> task;
+
+    private LdapWarmUp(final Runnable steps) {
+        task = new FutureTask<Object>(new Runnable() {
+            public void run() {
+                long start = System.currentTimeMillis();
+                try {
+                    steps.run();
+                    log.info("Warm-up done in {0} ms", System.currentTimeMillis() - start);
+                } catch (RuntimeException e) {
+                    log.warn(e, "The warm-up failed after {0} ms", System.currentTimeMillis() - start);
+                }
+            }
+        }, null);
+    }
+
+    /**
+     * Starts running the given steps in a background thread.
+     */
+    static LdapWarmUp start(Runnable steps) {
+        LdapWarmUp warmUp = new LdapWarmUp(steps);
+        Thread thread = new Thread(warmUp.task, "LDAP connector warm-up");
+        thread.setDaemon(true);
+        thread.start();
+        return warmUp;
+    }
+
+    /**
+     * Waits until the warm-up is done.
+     */
+    void await() {
+        if (task.isDone()) {
+            return;
+        }
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Not thrown, the failures are caught by the task.
+            log.ok(e, "Unexpected warm-up failure");
+        }
+    }
+
+    boolean isDone() {
+        return task.isDone();
+    }
+}
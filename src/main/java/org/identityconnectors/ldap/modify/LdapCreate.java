@@ -43,7 +43,6 @@ import javax.naming.ldap.LdapContext;
 import javax.naming.ldap.LdapName;
 
 
-import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.AlreadyExistsException;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
@@ -57,8 +56,8 @@ import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.ldap.ADGroupType;
 import org.identityconnectors.ldap.ADUserAccountControl;
 import org.identityconnectors.ldap.GroupHelper;
-import org.identityconnectors.ldap.LdapAuthenticate;
 import org.identityconnectors.ldap.LdapConnection;
+import org.identityconnectors.ldap.LdapEntry;
 import org.identityconnectors.ldap.LdapModifyOperation;
 import org.identityconnectors.ldap.LdapConstants;
 import org.identityconnectors.ldap.schema.GuardedPasswordAttribute;
@@ -89,7 +88,6 @@ public class LdapCreate extends LdapModifyOperation {
     }
 
     private Uid executeImpl() throws NamingException {
-        final LdapContext runAsContext;
         List<String> ldapGroups = null;
         List<String> posixGroups = null;
         GuardedPasswordAttribute pwdAttr = null;
@@ -146,48 +144,50 @@ public class LdapCreate extends LdapModifyOperation {
             }
         }
 
-        if (StringUtil.isNotBlank(options.getRunAsUser())) {
-            String dn = new LdapAuthenticate(conn, oclass, options.getRunAsUser(), options).getDn();
-            runAsContext = conn.getRunAsContext(dn, options.getRunWithPassword());
-        } else {
-            runAsContext = null;
-        }
+        final LdapContext context = openContext(oclass, options);
 
         final String[] entryDN = {null};
+        String createdDN;
+        Throwable failure = null;
         try {
             if (pwdAttr != null) {
                 pwdAttr.access(new Accessor() {
                     public void access(javax.naming.directory.Attribute passwordAttr) {
                         hashPassword(passwordAttr, null);
                         ldapAttrs.put(passwordAttr);
-                        entryDN[0] = doCreate(nameAttr, ldapAttrs, runAsContext);
+                        entryDN[0] = doCreate(nameAttr, ldapAttrs, context);
                     }
                 });
             } else {
-                entryDN[0] = doCreate(nameAttr, ldapAttrs, runAsContext);
+                entryDN[0] = doCreate(nameAttr, ldapAttrs, context);
             }
 
+            createdDN = entryDN[0];
             entryDN[0] = escapeDNValueOfJNDIReservedChars(entryDN[0]);
 
             if (!isEmpty(ldapGroups)) {
-                groupHelper.addLdapGroupMemberships(entryDN[0], ldapGroups, runAsContext);
+                groupHelper.addLdapGroupMemberships(entryDN[0], ldapGroups, context);
             }
 
             if (!isEmpty(posixGroups)) {
                 Set<String> posixRefAttrs = getAttributeValues(GroupHelper.getPosixRefAttribute(), null, ldapAttrs);
                 String posixRefAttr = getFirstPosixRefAttr(entryDN[0], posixRefAttrs);
-                groupHelper.addPosixGroupMemberships(posixRefAttr, posixGroups, runAsContext);
+                groupHelper.addPosixGroupMemberships(posixRefAttr, posixGroups, context);
             }
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
         } finally {
-            if (runAsContext != null) {
-                try {
-                    runAsContext.close();
-                } catch (NamingException e) {
-                }
-            }
+            closeContext(context, options, failure);
         }
 
-        return conn.getSchemaMapping().createUid(oclass, entryDN[0]);
+        Uid uid = conn.getSchemaMapping().createUid(oclass, entryDN[0]);
+        conn.recordWrite(uid, entryDN[0]);
+        conn.getSearchResultCache().invalidate(oclass, uid, entryDN[0]);
+        if (!LdapEntry.isDNAttribute(conn.getSchemaMapping().getLdapUidAttribute(oclass))) {
+            conn.getEntryDNCache().put(oclass, uid, createdDN);
+        }
+        return uid;
     }
 
     public String doCreate(Name name, javax.naming.directory.Attributes initialAttrs, LdapContext runAsContext) {
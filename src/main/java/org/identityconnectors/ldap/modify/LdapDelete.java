@@ -31,7 +31,6 @@ import java.util.Set;
 import javax.naming.NamingException;
 import javax.naming.ldap.LdapContext;
 
-import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.objects.ObjectClass;
@@ -40,7 +39,6 @@ import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.ldap.LdapConnection;
 import org.identityconnectors.ldap.LdapModifyOperation;
 import org.identityconnectors.ldap.GroupHelper.GroupMembership;
-import org.identityconnectors.ldap.LdapAuthenticate;
 import org.identityconnectors.ldap.search.LdapSearches;
 
 public class LdapDelete extends LdapModifyOperation {
@@ -60,42 +58,34 @@ public class LdapDelete extends LdapModifyOperation {
 
     public void execute() {
         String entryDN = escapeDNValueOfJNDIReservedChars(LdapSearches.getEntryDN(conn, oclass, uid));
-        LdapContext runAsContext = null;
-        
-        if (StringUtil.isNotBlank(options.getRunAsUser())) {
-            String dn = new LdapAuthenticate(conn, oclass, options.getRunAsUser(), options).getDn();
-            runAsContext = conn.getRunAsContext(dn, options.getRunWithPassword());
-        }
-        
-        if (conn.getConfiguration().isMaintainLdapGroupMembership()) {
-            List<String> ldapGroups = groupHelper.getLdapGroups(entryDN);
-            groupHelper.removeLdapGroupMemberships(entryDN, ldapGroups, runAsContext);
-        }
-
-        if (conn.getConfiguration().isMaintainPosixGroupMembership()) {
-            PosixGroupMember posixMember = new PosixGroupMember(entryDN);
-            Set<GroupMembership> memberships = posixMember.getPosixGroupMemberships();
-            groupHelper.removePosixGroupMemberships(memberships, runAsContext);
-        }
-
-        log.ok("Deleting LDAP entry {0}", entryDN);
+        LdapContext context = openContext(oclass, options);
+        Throwable failure = null;
         try {
-            if (runAsContext == null) {
-                conn.getInitialContext().destroySubcontext(entryDN);
+            if (conn.getConfiguration().isMaintainLdapGroupMembership()) {
+                List<String> ldapGroups = groupHelper.getLdapGroups(entryDN);
+                groupHelper.removeLdapGroupMemberships(entryDN, ldapGroups, context);
             }
-            else {
-                runAsContext.destroySubcontext(entryDN);
-                }
+
+            if (conn.getConfiguration().isMaintainPosixGroupMembership()) {
+                PosixGroupMember posixMember = new PosixGroupMember(entryDN);
+                Set<GroupMembership> memberships = posixMember.getPosixGroupMemberships();
+                groupHelper.removePosixGroupMemberships(memberships, context);
+            }
+
+            log.ok("Deleting LDAP entry {0}", entryDN);
+            conn.recordWrite(uid, entryDN);
+            conn.getEntryDNCache().invalidate(oclass, uid);
+            context.destroySubcontext(entryDN);
+            conn.getSearchResultCache().invalidate(oclass, uid, entryDN);
         } catch (NamingException e) {
+            failure = e;
             throw new ConnectorException(e);
-        }
-        finally {
-            if (runAsContext != null) {
-                try {
-                    runAsContext.close();
-                } catch (NamingException ex) {
-                }
-            }
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            closeContext(context, options, failure);
         }
     }
+
 }
\ No newline at end of file
@@ -55,7 +55,6 @@ import javax.naming.ldap.Control;
 import javax.naming.ldap.LdapContext;
 
 import org.identityconnectors.common.Pair;
-import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.AlreadyExistsException;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
@@ -72,9 +71,9 @@ import org.identityconnectors.ldap.ADUserAccountControl;
 import org.identityconnectors.ldap.GroupHelper;
 import org.identityconnectors.ldap.GroupHelper.GroupMembership;
 import org.identityconnectors.ldap.GroupHelper.Modification;
-import org.identityconnectors.ldap.LdapAuthenticate;
 import org.identityconnectors.ldap.LdapConnection;
 import org.identityconnectors.ldap.LdapConstants;
+import org.identityconnectors.ldap.LdapEntry;
 import org.identityconnectors.ldap.LdapModifyOperation;
 import org.identityconnectors.ldap.schema.GuardedPasswordAttribute;
 import org.identityconnectors.ldap.schema.GuardedPasswordAttribute.Accessor;
@@ -98,7 +97,6 @@ public class LdapUpdate extends LdapModifyOperation {
     public Uid update(Set<Attribute> attrs) {
         String entryDN = escapeDNValueOfJNDIReservedChars(LdapSearches.getEntryDN(conn, oclass, uid));
         PosixGroupMember posixMember = new PosixGroupMember(entryDN);
-        LdapContext runAsContext = null;
 
         // Extract the Name attribute if any, to be used to rename the entry later.
         Set<Attribute> updateAttrs = attrs;
@@ -124,11 +122,9 @@ public class LdapUpdate extends LdapModifyOperation {
             checkRemovedPosixRefAttrs(posixMember.getPosixRefAttributes(), posixMember.getPosixGroupMemberships());
         }
 
-        if (StringUtil.isNotBlank(options.getRunAsUser())) {
-            String dn = new LdapAuthenticate(conn, oclass, options.getRunAsUser(), options).getDn();
-            runAsContext = conn.getRunAsContext(dn, options.getRunWithPassword());
-        }
-
+        LdapContext context = openContext(oclass, options);
+        boolean renamed = false;
+        Throwable failure = null;
         try {
             // Rename the entry if needed.
             String oldEntryDN = null;
@@ -137,15 +133,15 @@ public class LdapUpdate extends LdapModifyOperation {
                     posixMember.getPosixRefAttributes();
                 }
                 oldEntryDN = entryDN;
-                if (runAsContext == null) {
-                    conn.getInitialContext().rename(oldEntryDN, newEntryDN);
-                } else {
-                    runAsContext.rename(oldEntryDN, newEntryDN);
-                }
+                conn.recordWrite(uid, oldEntryDN);
+                conn.getEntryDNCache().invalidate(oclass, uid);
+                context.rename(oldEntryDN, newEntryDN);
+                conn.getSearchResultCache().invalidate(oclass, uid, oldEntryDN);
                 entryDN = newEntryDN;
+                renamed = true;
             }
             // Update the attributes.
-            modifyAttributes(entryDN, attrToModify, DirContext.REPLACE_ATTRIBUTE, runAsContext);
+            modifyAttributes(entryDN, attrToModify, DirContext.REPLACE_ATTRIBUTE, context);
 
             // Update the LDAP groups.
             Modification<GroupMembership> ldapGroupMod = new Modification<GroupMembership>();
@@ -164,7 +160,7 @@ public class LdapUpdate extends LdapModifyOperation {
                     ldapGroupMod.add(new GroupMembership(entryDN, ldapGroup));
                 }
             }
-            groupHelper.modifyLdapGroupMemberships(ldapGroupMod, runAsContext);
+            groupHelper.modifyLdapGroupMemberships(ldapGroupMod, context);
 
             // Update the POSIX groups.
             Modification<GroupMembership> posixGroupMod = new Modification<GroupMembership>();
@@ -191,46 +187,53 @@ public class LdapUpdate extends LdapModifyOperation {
                     }
                 }
             }
-            groupHelper.modifyPosixGroupMemberships(posixGroupMod, runAsContext);
+            groupHelper.modifyPosixGroupMemberships(posixGroupMod, context);
         } catch (NameAlreadyBoundException e) {
             throw new AlreadyExistsException(e);
         } catch (NamingException e) {
+            failure = e;
             throw new ConnectorException(e);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
         } finally {
-            if (runAsContext != null) {
-                try {
-                    runAsContext.close();
-                } catch (NamingException e) {
-                }
-            }
+            closeContext(context, options, failure);
         }
 
-        return conn.getSchemaMapping().createUid(oclass, entryDN);
+        Uid newUid = conn.getSchemaMapping().createUid(oclass, entryDN);
+        conn.recordWrite(newUid, entryDN);
+        if (renamed && !LdapEntry.isDNAttribute(conn.getSchemaMapping().getLdapUidAttribute(oclass))) {
+            conn.getEntryDNCache().put(oclass, newUid, newEntryDN);
+        }
+        return newUid;
     }
 
     public Uid addAttributeValues(Set<Attribute> attrs) {
         String entryDN = LdapSearches.findEntryDN(conn, oclass, uid);
         PosixGroupMember posixMember = new PosixGroupMember(entryDN);
-        LdapContext runAsContext = null;
-
-        if (StringUtil.isNotBlank(options.getRunAsUser())) {
-            String dn = new LdapAuthenticate(conn, oclass, options.getRunAsUser(), options).getDn();
-            runAsContext = conn.getRunAsContext(dn, options.getRunWithPassword());
-        }
-
         Pair<Attributes, Pair<GuardedPasswordAttribute, GuardedPasswordAttribute>> attrsToModify = getAttributesToModify(attrs);
-        modifyAttributes(entryDN, attrsToModify, DirContext.ADD_ATTRIBUTE, runAsContext);
 
-        List<String> ldapGroups = getStringListValue(attrs, LdapConstants.LDAP_GROUPS_NAME);
-        if (!isEmpty(ldapGroups)) {
-            groupHelper.addLdapGroupMemberships(entryDN, ldapGroups, runAsContext);
-        }
+        LdapContext context = openContext(oclass, options);
+        Throwable failure = null;
+        try {
+            modifyAttributes(entryDN, attrsToModify, DirContext.ADD_ATTRIBUTE, context);
 
-        List<String> posixGroups = getStringListValue(attrs, LdapConstants.POSIX_GROUPS_NAME);
-        if (!isEmpty(posixGroups)) {
-            Set<String> posixRefAttrs = posixMember.getPosixRefAttributes();
-            String posixRefAttr = getFirstPosixRefAttr(entryDN, posixRefAttrs);
-            groupHelper.addPosixGroupMemberships(posixRefAttr, posixGroups, runAsContext);
+            List<String> ldapGroups = getStringListValue(attrs, LdapConstants.LDAP_GROUPS_NAME);
+            if (!isEmpty(ldapGroups)) {
+                groupHelper.addLdapGroupMemberships(entryDN, ldapGroups, context);
+            }
+
+            List<String> posixGroups = getStringListValue(attrs, LdapConstants.POSIX_GROUPS_NAME);
+            if (!isEmpty(posixGroups)) {
+                Set<String> posixRefAttrs = posixMember.getPosixRefAttributes();
+                String posixRefAttr = getFirstPosixRefAttr(entryDN, posixRefAttrs);
+                groupHelper.addPosixGroupMemberships(posixRefAttr, posixGroups, context);
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            closeContext(context, options, failure);
         }
 
         return uid;
@@ -239,13 +242,6 @@ public class LdapUpdate extends LdapModifyOperation {
     public Uid removeAttributeValues(Set<Attribute> attrs) {
         String entryDN = LdapSearches.findEntryDN(conn, oclass, uid);
         PosixGroupMember posixMember = new PosixGroupMember(entryDN);
-        LdapContext runAsContext = null;
-
-        if (StringUtil.isNotBlank(options.getRunAsUser())) {
-            String dn = new LdapAuthenticate(conn, oclass, options.getRunAsUser(), options).getDn();
-            runAsContext = conn.getRunAsContext(dn, options.getRunWithPassword());
-        }
-
         Pair<Attributes, Pair<GuardedPasswordAttribute, GuardedPasswordAttribute>> attrsToModify = getAttributesToModify(attrs);
         Attributes ldapAttrs = attrsToModify.first;
 
@@ -254,17 +250,26 @@ public class LdapUpdate extends LdapModifyOperation {
             checkRemovedPosixRefAttrs(removedPosixRefAttrs, posixMember.getPosixGroupMemberships());
         }
 
-        modifyAttributes(entryDN, attrsToModify, DirContext.REMOVE_ATTRIBUTE, runAsContext);
+        LdapContext context = openContext(oclass, options);
+        Throwable failure = null;
+        try {
+            modifyAttributes(entryDN, attrsToModify, DirContext.REMOVE_ATTRIBUTE, context);
 
-        List<String> ldapGroups = getStringListValue(attrs, LdapConstants.LDAP_GROUPS_NAME);
-        if (!isEmpty(ldapGroups)) {
-            groupHelper.removeLdapGroupMemberships(entryDN, ldapGroups, runAsContext);
-        }
+            List<String> ldapGroups = getStringListValue(attrs, LdapConstants.LDAP_GROUPS_NAME);
+            if (!isEmpty(ldapGroups)) {
+                groupHelper.removeLdapGroupMemberships(entryDN, ldapGroups, context);
+            }
 
-        List<String> posixGroups = getStringListValue(attrs, LdapConstants.POSIX_GROUPS_NAME);
-        if (!isEmpty(posixGroups)) {
-            Set<GroupMembership> members = posixMember.getPosixGroupMembershipsByGroups(posixGroups);
-            groupHelper.removePosixGroupMemberships(members, runAsContext);
+            List<String> posixGroups = getStringListValue(attrs, LdapConstants.POSIX_GROUPS_NAME);
+            if (!isEmpty(posixGroups)) {
+                Set<GroupMembership> members = posixMember.getPosixGroupMembershipsByGroups(posixGroups);
+                groupHelper.removePosixGroupMemberships(members, context);
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            closeContext(context, options, failure);
         }
 
         return uid;
@@ -402,6 +407,7 @@ public class LdapUpdate extends LdapModifyOperation {
     }
 
     private void modifyAttributes(String entryDN, List<ModificationItem> modItems, LdapContext context) {
+        conn.recordWrite(uid, entryDN);
         try {
             if (context == null) {
                 conn.getInitialContext().modifyAttributes(entryDN, modItems.toArray(new ModificationItem[modItems.size()]));
@@ -448,6 +454,8 @@ public class LdapUpdate extends LdapModifyOperation {
             throw new ConnectorException("Insufficient Access Rights to perform");
         } catch (NamingException e) {
             throw new ConnectorException(e);
+        } finally {
+            conn.getSearchResultCache().invalidate(oclass, uid, entryDN);
         }
     }
 
@@ -35,6 +35,7 @@ import org.identityconnectors.framework.common.objects.AttributeInfo.Flags;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.ObjectClassInfo;
 import org.identityconnectors.framework.common.objects.ObjectClassInfoBuilder;
+import org.identityconnectors.framework.common.objects.OperationOptionInfo;
 import org.identityconnectors.framework.common.objects.OperationOptionInfoBuilder;
 import org.identityconnectors.framework.common.objects.Schema;
 import org.identityconnectors.framework.common.objects.SchemaBuilder;
@@ -49,6 +50,7 @@ import org.identityconnectors.framework.spi.operations.UpdateOp;
 import org.identityconnectors.ldap.LdapAttributeType;
 import org.identityconnectors.ldap.LdapConnection;
 import org.identityconnectors.ldap.LdapConnector;
+import org.identityconnectors.ldap.LdapConstants;
 import org.identityconnectors.ldap.LdapConstants.ServerType;
 import org.identityconnectors.ldap.LdapNativeSchema;
 import org.identityconnectors.ldap.LdapUtil;
@@ -123,6 +125,7 @@ class LdapSchemaBuilder {
         schemaBld.defineOperationOption(OperationOptionInfoBuilder.buildPagedResultsCookie(), SearchOp.class);
         schemaBld.defineOperationOption(OperationOptionInfoBuilder.buildPagedResultsOffset(), SearchOp.class);
         schemaBld.defineOperationOption(OperationOptionInfoBuilder.buildSortKeys(), SearchOp.class);
+        schemaBld.defineOperationOption(new OperationOptionInfo(LdapConstants.COUNT_ONLY_NAME, Boolean.class), SearchOp.class);
 
         ObjectClassInfoBuilder objClassBld = new ObjectClassInfoBuilder();
         objClassBld.setType(LdapUtil.SERVER_INFO_NAME);
@@ -69,6 +69,7 @@ import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.ldap.LdapConnection;
 import org.identityconnectors.ldap.LdapConstants;
 import org.identityconnectors.ldap.LdapEntry;
+import org.identityconnectors.ldap.LdapNativeSchema;
 import org.identityconnectors.ldap.LdapUtil;
 import org.identityconnectors.ldap.ObjectClassMappingConfig;
 
@@ -103,6 +104,8 @@ public class LdapSchemaMapping {
 
     private final LdapConnection conn;
     private final Map<String, Set<String>> ldapClass2Effective = newCaseInsensitiveMap();
+    // Read once, as reading the server schema is expensive.
+    private LdapNativeSchema nativeSchema;
 
     private Schema schema;
 
@@ -110,17 +113,24 @@ public class LdapSchemaMapping {
         this.conn = conn;
     }
 
-    public Schema schema() {
+    public synchronized Schema schema() {
         if (schema == null) {
             schema = new LdapSchemaBuilder(conn).getSchema();
         }
         return schema;
     }
 
-    private Set<String> getEffectiveLdapClasses(String ldapClass) {
+    /**
+     * Returns the given LDAP object class together with its superior object
+     * classes, any superiors thereof, etc..
+     */
+    public synchronized Set<String> getEffectiveLdapClasses(String ldapClass) {
         Set<String> result = ldapClass2Effective.get(ldapClass);
         if (result == null) {
-            result = conn.createNativeSchema().getEffectiveObjectClasses(ldapClass);
+            if (nativeSchema == null) {
+                nativeSchema = conn.createNativeSchema();
+            }
+            result = nativeSchema.getEffectiveObjectClasses(ldapClass);
             ldapClass2Effective.put(ldapClass, result);
         }
         return result;
@@ -0,0 +1,56 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import java.util.List;
+
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.ldap.LdapAsyncTransport;
+
+/**
+ * The counterpart of {@link DefaultSearchStrategy} for the asynchronous
+ * transport: the searches of all the base DNs are sent at once.
+ */
+public class AsyncSearchStrategy extends LdapSearchStrategy {
+
+    private static final Log log = Log.getLog(AsyncSearchStrategy.class);
+
+    private final LdapAsyncTransport transport;
+    private final boolean ignoreNonExistingBaseDNs;
+
+    public AsyncSearchStrategy(LdapAsyncTransport transport, boolean ignoreNonExistingBaseDNs) {
+        this.transport = transport;
+        this.ignoreNonExistingBaseDNs = ignoreNonExistingBaseDNs;
+    }
+
+    @Override
+    public LdapSearchStrategy withTransport(LdapAsyncTransport transport) {
+        return new AsyncSearchStrategy(transport, ignoreNonExistingBaseDNs);
+    }
+
+    /**
+     * The context is not used; the search is performed over the transport.
+     */
+    @Override
+    public void doSearch(LdapContext initCtx, List<String> baseDNs, String query, SearchControls searchControls, LdapSearchResultsHandler handler) throws NamingException {
+        log.ok("Searching asynchronously in {0} with filter {1} and {2}", baseDNs, query, searchControlsToString(searchControls));
+        transport.search(baseDNs, query, searchControls, ignoreNonExistingBaseDNs, handler);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static org.identityconnectors.ldap.LdapUtil.escapeDNValueOfJNDIReservedChars;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.naming.InvalidNameException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+import javax.naming.ldap.SortControl;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.controls.VirtualListViewRequestControl;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.SortKey;
+
+/**
+ * Counts the entries matching a search without handing them to the handler.
+ *
+ * <p>When the server supports virtual list views, the count is the content
+ * count of a view sorted by the sort keys, or by the given sort attribute,
+ * for which the server returns at most one entry. Otherwise, or if the server
+ * cannot return the view, e.g. for lack of an index, the entries are read in
+ * pages of the given size, without their attributes, and counted. Only their
+ * DNs are then transferred.</p>
+ */
+public class CountSearchStrategy extends LdapSearchStrategy {
+
+    private static final Log log = Log.getLog(CountSearchStrategy.class);
+
+    // The attribute list asking the server for no attributes.
+    private static final String[] NO_ATTRIBUTES = { "1.1" };
+
+    private final int pageSize;
+    private final SortKey[] sortKeys;
+    private final String vlvSortAttr;
+    private final boolean ignoreNonExistingBaseDNs;
+
+    // Counted as the search goes, read by the caller after it. Updated by one
+    // thread only.
+    private volatile int count = -1;
+
+    /**
+     * @param pageSize the size of the pages the entries are counted in, or 0
+     *            if the server does not support the paged results control.
+     * @param sortKeys the sort keys of the virtual list view, or {@code null}.
+     * @param vlvSortAttr the attribute the virtual list view is sorted by
+     *            when there are no sort keys, or {@code null} not to count
+     *            through a virtual list view.
+     */
+    public CountSearchStrategy(int pageSize, SortKey[] sortKeys, String vlvSortAttr, boolean ignoreNonExistingBaseDNs) {
+        this.pageSize = pageSize;
+        this.sortKeys = sortKeys;
+        this.vlvSortAttr = vlvSortAttr;
+        this.ignoreNonExistingBaseDNs = ignoreNonExistingBaseDNs;
+    }
+
+    /**
+     * Returns the number of entries the search counted, or -1 if it did not
+     * start. The entries counted before a failure which the caller ignores,
+     * such as the referrals Active Directory reports at the end of a search
+     * from the naming context, are included.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public void doSearch(LdapContext initCtx, List<String> baseDNs, String query, SearchControls searchControls, LdapSearchResultsHandler handler) throws IOException, NamingException {
+        SearchControls countControls = new SearchControls(searchControls.getSearchScope(), 0, searchControls.getTimeLimit(), NO_ATTRIBUTES, false,
+                searchControls.getDerefLinkFlag());
+        log.ok("Counting in {0} with filter {1} and {2}", baseDNs, query, searchControlsToString(countControls));
+
+        count = 0;
+        LdapContext ctx = initCtx.newInstance(null);
+        try {
+            for (String baseDN : baseDNs) {
+                try {
+                    count(ctx, escapeDNValueOfJNDIReservedChars(baseDN), query, countControls);
+                } catch (NameNotFoundException e) {
+                    if (!ignoreNonExistingBaseDNs) {
+                        throw e;
+                    }
+                    log.info("Entry {0} does not exist", baseDN);
+                } catch (InvalidNameException e) {
+                    if (!ignoreNonExistingBaseDNs) {
+                        throw e;
+                    }
+                    log.info(e, null);
+                }
+            }
+        } finally {
+            ctx.close();
+        }
+    }
+
+    /**
+     * Adds the number of entries in the given base context to the count, one
+     * page at a time.
+     */
+    private void count(LdapContext ctx, String baseDN, String query, SearchControls searchControls) throws IOException, NamingException {
+        SortControl sortControl = getSortControl();
+        if (sortControl != null) {
+            int contentCount = countVlv(ctx, baseDN, query, searchControls, sortControl);
+            if (contentCount >= 0) {
+                count += contentCount;
+                return;
+            }
+        }
+        byte[] cookie = null;
+        do {
+            if (pageSize > 0) {
+                ctx.setRequestControls(new Control[]{new PagedResultsControl(pageSize, cookie, Control.CRITICAL)});
+            } else {
+                ctx.setRequestControls(null);
+            }
+            NamingEnumeration<SearchResult> results = ctx.search(baseDN, query, searchControls);
+            int pageCount = 0;
+            try {
+                while (results.hasMore()) {
+                    results.next();
+                    pageCount++;
+                }
+            } finally {
+                count += pageCount;
+                results.close();
+            }
+            cookie = pageSize > 0 ? getResponseCookie(ctx.getResponseControls()) : null;
+        } while (cookie != null);
+    }
+
+    /**
+     * Returns the content count of the virtual list view of the search, or -1
+     * if the server could not return it.
+     */
+    private int countVlv(LdapContext ctx, String baseDN, String query, SearchControls searchControls, SortControl sortControl) {
+        VirtualListViewRequestControl vlvreq = VirtualListViewRequestControl.newOffsetControl(Control.CRITICAL, 1, 0, 0, 0, ByteString.valueOf(new byte[0]));
+        BasicControl vlvControl = new BasicControl(VirtualListViewRequestControl.OID, Control.CRITICAL, vlvreq.getValue().toByteArray());
+        try {
+            ctx.setRequestControls(new Control[]{sortControl, vlvControl});
+            NamingEnumeration<SearchResult> results = ctx.search(baseDN, query, searchControls);
+            try {
+                while (results.hasMore()) {
+                    results.next();
+                }
+            } finally {
+                results.close();
+            }
+            return PagedSearchStrategy.getContentCount(ctx.getResponseControls());
+        } catch (NamingException e) {
+            log.ok(e, "Virtual list view search failed, counting the entries");
+            return -1;
+        }
+    }
+
+    private SortControl getSortControl() throws IOException {
+        if (sortKeys != null && sortKeys.length > 0) {
+            javax.naming.ldap.SortKey[] skis = new javax.naming.ldap.SortKey[sortKeys.length];
+            for (int i = 0; i < sortKeys.length; i++) {
+                skis[i] = new javax.naming.ldap.SortKey(sortKeys[i].getField(), sortKeys[i].isAscendingOrder(), null);
+            }
+            return new SortControl(skis, Control.CRITICAL);
+        }
+        if (vlvSortAttr != null) {
+            return new SortControl(vlvSortAttr, Control.CRITICAL);
+        }
+        return null;
+    }
+
+    private static byte[] getResponseCookie(Control[] controls) {
+        if (controls != null) {
+            for (Control control : controls) {
+                if (control instanceof PagedResultsResponseControl) {
+                    return ((PagedResultsResponseControl) control).getCookie();
+                }
+            }
+        }
+        return null;
+    }
+}
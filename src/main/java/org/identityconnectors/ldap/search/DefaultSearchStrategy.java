@@ -41,6 +41,7 @@ import javax.naming.ldap.SortControl;
 
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.objects.SortKey;
+import org.identityconnectors.ldap.LdapAsyncTransport;
 
 public class DefaultSearchStrategy extends LdapSearchStrategy {
 
@@ -59,6 +60,23 @@ public class DefaultSearchStrategy extends LdapSearchStrategy {
         this.sortKeys = sortKeys;
     }
 
+    @Override
+    public LdapSearchStrategy withTransport(LdapAsyncTransport transport) {
+        if (sortKeys != null && sortKeys.length > 0) {
+            return null;
+        }
+        return new AsyncSearchStrategy(transport, ignoreNonExistingBaseDNs);
+    }
+
+    @Override
+    public LdapSearchStrategy forParallelSearch() {
+        // The results sorted within each base context would be interleaved.
+        if (sortKeys != null && sortKeys.length > 0) {
+            return null;
+        }
+        return this;
+    }
+
     @Override
     public void doSearch(LdapContext initCtx, List<String> baseDNs, String query, SearchControls searchControls, LdapSearchResultsHandler handler) throws IOException,NamingException {
         log.ok("Searching in {0} with filter {1} and {2}", baseDNs, query, searchControlsToString(searchControls));
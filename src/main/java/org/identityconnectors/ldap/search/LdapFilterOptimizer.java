@@ -0,0 +1,644 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static org.identityconnectors.common.CollectionUtil.newCaseInsensitiveMap;
+import static org.identityconnectors.common.CollectionUtil.newCaseInsensitiveSet;
+import static org.identityconnectors.common.StringUtil.isBlank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.ldap.LdapConstants;
+import org.identityconnectors.ldap.LdapConstants.ServerType;
+
+/**
+ * Rewrites the search filters into equivalent ones which are cheaper for the
+ * server to evaluate.
+ *
+ * <p>The filters combined by the connector, from the filter translated from
+ * the query, the search filter option and the object class filter, come as
+ * nested conjunctions and disjunctions with duplicate terms. The optimizer
+ * parses a filter, and:</p>
+ * <ul>
+ * <li>flattens the nested conjunctions and disjunctions, and removes double
+ * negations;</li>
+ * <li>removes the duplicate terms, and the terms implied by another one of a
+ * conjunction, such as a presence term on an attribute another term tests,
+ * or an object class term on a superior class of another one;</li>
+ * <li>sorts the terms of a conjunction by their expected cost, which depends
+ * on the type of the term and the weight of its attribute, so that the server
+ * starts from the most selective term.</li>
+ * </ul>
+ *
+ * <p>The attributes which the servers of the detected type index in their
+ * default configuration, and the Uid attribute, have a weight of 1,
+ * <code>objectClass</code> a weight of 5, and the other attributes a weight
+ * of 10, unless they are given another weight. The index configuration of
+ * the server itself is not read, so the attributes it indexes otherwise
+ * need a weight in the configuration. A filter which cannot be parsed is
+ * returned unchanged.</p>
+ *
+ * <p>A filter with a disjunction of too many terms, such as one matching the
+ * members of a large group, can also be split into several filters, each
+ * with a part of the disjunction, which are searched separately.</p>
+ */
+public class LdapFilterOptimizer {
+
+    private static final Log log = Log.getLog(LdapFilterOptimizer.class);
+
+    /**
+     * The attributes which the servers of most types index for equality in
+     * their default configuration.
+     */
+    private static final List<String> COMMON_INDEXED_ATTRIBUTES = Arrays.asList("cn", "uid", "mail", "sn", "givenName",
+            "member", "uniqueMember");
+
+    private static final List<String> AD_INDEXED_ATTRIBUTES = Arrays.asList("cn", "sn", "givenName", "displayName", "mail",
+            "member", "objectGUID", "objectSid", "sAMAccountName", "userPrincipalName");
+
+    private static final int INDEXED_WEIGHT = 1;
+    private static final int OBJECT_CLASS_WEIGHT = 5;
+    private static final int DEFAULT_WEIGHT = 10;
+    // Negations are rarely evaluated through an index.
+    private static final int NOT_COST = 1000;
+
+    /**
+     * The superior classes of the LDAP object classes.
+     */
+    public interface ObjectClassHierarchy {
+
+        /**
+         * Returns the given object class together with its superior classes,
+         * any superiors thereof, etc.
+         */
+        Set<String> getEffectiveObjectClasses(String ldapClass);
+    }
+
+    private final Map<String, Integer> weights;
+    private final Set<String> indexedAttributes;
+    private final ObjectClassHierarchy hierarchy;
+    // Set once the hierarchy failed, not to fail again for every filter.
+    private volatile boolean hierarchyFailed;
+
+    /**
+     * @param weights the weights of the attributes, overriding the default
+     *            ones.
+     * @param serverType the type of the server, whose default indexes give
+     *            the default weights.
+     * @param hierarchy the superior classes of the object classes, or
+     *            {@code null} not to remove the terms implied by another
+     *            object class term.
+     */
+    public LdapFilterOptimizer(Map<String, Integer> weights, ServerType serverType, ObjectClassHierarchy hierarchy) {
+        this.weights = newCaseInsensitiveMap();
+        this.weights.putAll(weights);
+        this.indexedAttributes = getDefaultIndexedAttributes(serverType);
+        this.hierarchy = hierarchy;
+    }
+
+    /**
+     * Returns the attributes which the servers of the given type index for
+     * equality in their default configuration.
+     */
+    static Set<String> getDefaultIndexedAttributes(ServerType serverType) {
+        Set<String> result = newCaseInsensitiveSet();
+        if (serverType == null) {
+            serverType = ServerType.UNKNOWN;
+        }
+        switch (serverType) {
+        case MSAD:
+        case MSAD_GC:
+        case MSAD_LDS:
+            result.addAll(AD_INDEXED_ATTRIBUTES);
+            break;
+        case OPENDJ:
+        case OPENDS:
+        case UNBOUNDID:
+            result.addAll(COMMON_INDEXED_ATTRIBUTES);
+            result.addAll(Arrays.asList("entryUUID", "telephoneNumber"));
+            break;
+        case SUN_DSEE:
+        case RHDS:
+            result.addAll(COMMON_INDEXED_ATTRIBUTES);
+            result.addAll(Arrays.asList("nsUniqueId", "telephoneNumber"));
+            break;
+        case IBM:
+            result.addAll(COMMON_INDEXED_ATTRIBUTES);
+            result.add("ibm-entryUUID");
+            break;
+        case NOVELL:
+            result.addAll(COMMON_INDEXED_ATTRIBUTES);
+            result.add("GUID");
+            break;
+        default:
+            result.addAll(COMMON_INDEXED_ATTRIBUTES);
+            result.add("entryUUID");
+            break;
+        }
+        return result;
+    }
+
+    /**
+     * Parses the attribute weights of the configuration, given as
+     * "attribute=weight".
+     */
+    public static Map<String, Integer> parseWeights(String[] attributeWeights) {
+        Map<String, Integer> result = newCaseInsensitiveMap();
+        for (String each : attributeWeights) {
+            int index = each.indexOf('=');
+            result.put(each.substring(0, index).trim(), Integer.valueOf(each.substring(index + 1).trim()));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a filter matching the same entries as the given one, which is
+     * cheaper for the server to evaluate.
+     */
+    public String optimize(String filter) {
+        if (isBlank(filter)) {
+            return filter;
+        }
+        Node node = parse(filter);
+        if (node == null) {
+            return filter;
+        }
+        return optimize(node).toString();
+    }
+
+    /**
+     * Splits the given filter into filters whose disjunctions have at most
+     * the given number of terms, and which together match the same entries,
+     * or returns {@code null} if the filter need not be split. Only a
+     * disjunction at the top of the filter, or the largest disjunction of a
+     * conjunction at the top of the filter, is split. An entry may match
+     * several of the resulting filters.
+     */
+    public static List<String> split(String filter, int maxTerms) {
+        if (isBlank(filter) || maxTerms <= 0) {
+            return null;
+        }
+        Node node = parse(filter);
+        if (node == null) {
+            return null;
+        }
+        Node disjunction = null;
+        int index = -1;
+        if (node.type == NodeType.OR) {
+            disjunction = node;
+        } else if (node.type == NodeType.AND) {
+            for (int i = 0; i < node.children.size(); i++) {
+                Node child = node.children.get(i);
+                if (child.type == NodeType.OR && (disjunction == null || child.children.size() > disjunction.children.size())) {
+                    disjunction = child;
+                    index = i;
+                }
+            }
+        }
+        if (disjunction == null || disjunction.children.size() <= maxTerms) {
+            return null;
+        }
+        List<String> result = new ArrayList<String>();
+        int size = disjunction.children.size();
+        for (int from = 0; from < size; from += maxTerms) {
+            List<Node> terms = disjunction.children.subList(from, Math.min(from + maxTerms, size));
+            Node chunk = terms.size() == 1 ? terms.get(0) : new Node(NodeType.OR, terms, null);
+            if (index >= 0) {
+                List<Node> children = new ArrayList<Node>(node.children);
+                children.set(index, chunk);
+                chunk = new Node(NodeType.AND, children, null);
+            }
+            result.add(chunk.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Parses the given filter, or returns {@code null} if it cannot be parsed.
+     */
+    private static Node parse(String filter) {
+        try {
+            Parser parser = new Parser(filter.trim());
+            Node node = parser.parse();
+            if (!parser.isAtEnd()) {
+                throw new IllegalArgumentException("Unexpected characters after the filter");
+            }
+            return node;
+        } catch (IllegalArgumentException e) {
+            log.ok("Cannot parse filter {0}: {1}", filter, e.getMessage());
+            return null;
+        } catch (IndexOutOfBoundsException e) {
+            log.ok("Cannot parse filter {0}: filter is truncated", filter);
+            return null;
+        }
+    }
+
+    private Node optimize(Node node) {
+        switch (node.type) {
+        case ITEM:
+            return node;
+        case NOT:
+            Node child = optimize(node.children.get(0));
+            if (child.type == NodeType.NOT) {
+                return child.children.get(0);
+            }
+            return Node.not(child);
+        default:
+            break;
+        }
+
+        // Flatten and remove the duplicate terms, keeping the first of them.
+        Map<String, Node> terms = new LinkedHashMap<String, Node>();
+        for (Node each : node.children) {
+            Node optimized = optimize(each);
+            if (optimized.type == node.type) {
+                for (Node grandChild : optimized.children) {
+                    addTerm(terms, grandChild);
+                }
+            } else {
+                addTerm(terms, optimized);
+            }
+        }
+        List<Node> children = new ArrayList<Node>(terms.values());
+        if (node.type == NodeType.AND) {
+            removeImpliedTerms(children);
+            sortByCost(children);
+        } else {
+            Node alwaysTrue = removeAbsorbedTerms(children);
+            if (alwaysTrue != null) {
+                return alwaysTrue;
+            }
+        }
+        if (children.size() == 1) {
+            return children.get(0);
+        }
+        return new Node(node.type, children, null);
+    }
+
+    private static void addTerm(Map<String, Node> terms, Node term) {
+        String key = term.getKey();
+        if (!terms.containsKey(key)) {
+            terms.put(key, term);
+        }
+    }
+
+    /**
+     * Removes from the terms of a conjunction those which are true whenever
+     * another term is.
+     */
+    private void removeImpliedTerms(List<Node> terms) {
+        // The attributes tested by terms implying their presence.
+        Set<String> testedAttrs = newCaseInsensitiveSet();
+        // The object classes implied by the object class terms.
+        Set<String> impliedClasses = newCaseInsensitiveSet();
+        for (Node term : terms) {
+            // An extensible match may match the values of the DN only.
+            if (term.type != NodeType.ITEM || term.itemType == ItemType.PRESENT || term.itemType == ItemType.EXTENSIBLE) {
+                continue;
+            }
+            testedAttrs.add(term.attr);
+            if (term.isObjectClassEquality()) {
+                for (String ldapClass : getSuperiorClasses(term.value)) {
+                    if (!ldapClass.equalsIgnoreCase(term.value)) {
+                        impliedClasses.add(ldapClass);
+                    }
+                }
+            }
+        }
+        for (Iterator<Node> it = terms.iterator(); it.hasNext() && terms.size() > 1;) {
+            Node term = it.next();
+            if (term.type != NodeType.ITEM) {
+                continue;
+            }
+            // Every entry has an object class.
+            boolean implied = term.itemType == ItemType.PRESENT
+                    && (testedAttrs.contains(term.attr) || LdapConstants.OBJECTCLASS_ATTR.equalsIgnoreCase(term.attr));
+            implied |= term.isObjectClassEquality() && impliedClasses.contains(term.value);
+            if (implied) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the given object class together with its superior classes, or
+     * an empty set if they are unknown. A failure of the hierarchy, such as
+     * the server schema not being readable, only keeps the object class
+     * terms, as the filter can still be sent.
+     */
+    private Set<String> getSuperiorClasses(String ldapClass) {
+        if (hierarchy == null || hierarchyFailed) {
+            return Collections.emptySet();
+        }
+        try {
+            return hierarchy.getEffectiveObjectClasses(ldapClass);
+        } catch (RuntimeException e) {
+            log.warn(e, "Cannot read the superior classes of {0}, keeping the object class terms", ldapClass);
+            hierarchyFailed = true;
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Removes from the terms of a disjunction those which imply another
+     * term. Returns the term which is always true, if any.
+     */
+    private static Node removeAbsorbedTerms(List<Node> terms) {
+        Set<String> presentAttrs = newCaseInsensitiveSet();
+        for (Node term : terms) {
+            if (term.type == NodeType.ITEM && term.itemType == ItemType.PRESENT) {
+                if (LdapConstants.OBJECTCLASS_ATTR.equalsIgnoreCase(term.attr)) {
+                    return term;
+                }
+                presentAttrs.add(term.attr);
+            }
+        }
+        for (Iterator<Node> it = terms.iterator(); it.hasNext();) {
+            Node term = it.next();
+            // An extensible match may match the values of the DN only.
+            if (term.type == NodeType.ITEM && term.itemType != ItemType.PRESENT && term.itemType != ItemType.EXTENSIBLE
+                    && presentAttrs.contains(term.attr)) {
+                it.remove();
+            }
+        }
+        return null;
+    }
+
+    private void sortByCost(List<Node> terms) {
+        final Map<Node, Integer> costs = new HashMap<Node, Integer>();
+        for (Node term : terms) {
+            costs.put(term, getCost(term));
+        }
+        // The sort is stable, so the terms of the same cost stay in the given order.
+        Collections.sort(terms, new Comparator<Node>() {
+            public int compare(Node left, Node right) {
+                return costs.get(left).compareTo(costs.get(right));
+            }
+        });
+    }
+
+    /**
+     * Returns the expected cost for the server of evaluating the given term:
+     * the lower, the more selective.
+     */
+    int getCost(Node node) {
+        switch (node.type) {
+        case ITEM:
+            return getWeight(node.attr) * node.itemType.cost;
+        case NOT:
+            return NOT_COST;
+        case AND:
+            int min = Integer.MAX_VALUE;
+            for (Node child : node.children) {
+                min = Math.min(min, getCost(child));
+            }
+            return min;
+        default:
+            // The server evaluates each term of a disjunction.
+            long sum = 0;
+            for (Node child : node.children) {
+                sum += getCost(child);
+            }
+            return (int) Math.min(sum, Integer.MAX_VALUE);
+        }
+    }
+
+    private int getWeight(String attr) {
+        Integer weight = weights.get(attr);
+        if (weight != null) {
+            return weight;
+        }
+        if (LdapConstants.OBJECTCLASS_ATTR.equalsIgnoreCase(attr)) {
+            return OBJECT_CLASS_WEIGHT;
+        }
+        return indexedAttributes.contains(attr) ? INDEXED_WEIGHT : DEFAULT_WEIGHT;
+    }
+
+    enum NodeType {
+        AND, OR, NOT, ITEM
+    }
+
+    /**
+     * The types of filter items, with their relative cost.
+     */
+    enum ItemType {
+        EQUALITY(1), APPROX(2), INITIAL_SUBSTRING(2), ORDERING(3), SUBSTRING(4), EXTENSIBLE(4), PRESENT(6);
+
+        private final int cost;
+
+        private ItemType(int cost) {
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * A node of a parsed filter. An item keeps its text as given.
+     */
+    static final class Node {
+
+        final NodeType type;
+        final List<Node> children;
+        final String text;
+        final ItemType itemType;
+        final String attr;
+        final String value;
+        // The item from the end of the attribute, such as "=value".
+        private final String assertion;
+
+        static Node not(Node child) {
+            return new Node(NodeType.NOT, Collections.singletonList(child), null);
+        }
+
+        Node(NodeType type, List<Node> children, String text) {
+            this.type = type;
+            this.children = children;
+            this.text = text;
+            if (type != NodeType.ITEM) {
+                itemType = null;
+                attr = null;
+                value = null;
+                assertion = null;
+                return;
+            }
+            int index = text.indexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("Invalid filter item " + text);
+            }
+            char operator = '=';
+            int attrEnd = index;
+            char before = text.charAt(index - 1);
+            if (before == '~' || before == '>' || before == '<') {
+                attrEnd--;
+                operator = before;
+            }
+            int colon = text.indexOf(':');
+            if (colon >= 0 && colon < attrEnd) {
+                attrEnd = colon;
+                operator = ':';
+            }
+            attr = text.substring(0, attrEnd).trim();
+            value = text.substring(index + 1);
+            assertion = text.substring(attrEnd);
+            if (operator == '=') {
+                if (value.equals("*")) {
+                    itemType = ItemType.PRESENT;
+                } else if (value.indexOf('*') >= 0) {
+                    itemType = value.startsWith("*") ? ItemType.SUBSTRING : ItemType.INITIAL_SUBSTRING;
+                } else {
+                    itemType = ItemType.EQUALITY;
+                }
+            } else if (operator == '~') {
+                itemType = ItemType.APPROX;
+            } else if (operator == ':') {
+                itemType = ItemType.EXTENSIBLE;
+            } else {
+                itemType = ItemType.ORDERING;
+            }
+        }
+
+        boolean isObjectClassEquality() {
+            return type == NodeType.ITEM && itemType == ItemType.EQUALITY && LdapConstants.OBJECTCLASS_ATTR.equalsIgnoreCase(attr);
+        }
+
+        /**
+         * Returns the key identifying the duplicates of the node. The object
+         * classes are compared ignoring case.
+         */
+        String getKey() {
+            if (type == NodeType.ITEM) {
+                String key = attr.toLowerCase() + assertion;
+                return LdapConstants.OBJECTCLASS_ATTR.equalsIgnoreCase(attr) ? key.toLowerCase() : key;
+            }
+            StringBuilder builder = new StringBuilder();
+            builder.append(type);
+            for (Node child : children) {
+                builder.append('(').append(child.getKey()).append(')');
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            appendTo(builder);
+            return builder.toString();
+        }
+
+        private void appendTo(StringBuilder builder) {
+            builder.append('(');
+            switch (type) {
+            case AND:
+                builder.append('&');
+                break;
+            case OR:
+                builder.append('|');
+                break;
+            case NOT:
+                builder.append('!');
+                break;
+            default:
+                builder.append(text);
+                builder.append(')');
+                return;
+            }
+            for (Node child : children) {
+                child.appendTo(builder);
+            }
+            builder.append(')');
+        }
+    }
+
+    /**
+     * Parses a filter in the string representation of RFC 4515, whose values
+     * escape the parentheses.
+     */
+    private static final class Parser {
+
+        private final String filter;
+        private int pos;
+
+        Parser(String filter) {
+            this.filter = filter;
+        }
+
+        boolean isAtEnd() {
+            skipSpaces();
+            return pos == filter.length();
+        }
+
+        Node parse() {
+            skipSpaces();
+            expect('(');
+            skipSpaces();
+            Node result;
+            char c = filter.charAt(pos);
+            if (c == '&' || c == '|') {
+                pos++;
+                List<Node> children = new ArrayList<Node>();
+                skipSpaces();
+                while (filter.charAt(pos) == '(') {
+                    children.add(parse());
+                    skipSpaces();
+                }
+                if (children.isEmpty()) {
+                    // The absolute true and false filters of RFC 4526 are left as they are.
+                    throw new IllegalArgumentException("Empty " + c + " filter");
+                }
+                result = new Node(c == '&' ? NodeType.AND : NodeType.OR, children, null);
+            } else if (c == '!') {
+                pos++;
+                result = Node.not(parse());
+                skipSpaces();
+            } else {
+                int end = filter.indexOf(')', pos);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated filter item");
+                }
+                String text = filter.substring(pos, end);
+                if (text.indexOf('(') >= 0) {
+                    throw new IllegalArgumentException("Unescaped parenthesis in " + text);
+                }
+                result = new Node(NodeType.ITEM, null, text);
+                pos = end;
+            }
+            expect(')');
+            return result;
+        }
+
+        private void expect(char c) {
+            if (filter.charAt(pos) != c) {
+                throw new IllegalArgumentException("Expected " + c + " at " + pos);
+            }
+            pos++;
+        }
+
+        private void skipSpaces() {
+            while (pos < filter.length() && filter.charAt(pos) == ' ') {
+                pos++;
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.ldap.LdapConnection;
+
+/**
+ * Performs a search which is sent to a second server if the first one has
+ * neither returned a result nor completed within a delay. The first of the
+ * two searches to answer wins, and the other one is abandoned. When the
+ * second search wins, the time the first one had taken when it was abandoned
+ * is recorded as a read latency too, a lower bound of its actual latency.
+ *
+ * <p>Both searches run in threads of their own, each through a context it
+ * leases itself, while the results of the winner are handed to the handler
+ * in the calling thread, one at a time.</p>
+ */
+class LdapHedgedSearch {
+
+    private static final Log log = Log.getLog(LdapHedgedSearch.class);
+
+    // How often a search waiting for the handler checks it was not given up.
+    private static final long REPLY_POLL_INTERVAL = 100;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "LDAP hedged read");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final LdapConnection conn;
+    private final LdapSearchStrategy strategy;
+    private final long delay;
+
+    private final BlockingQueue<Event> events = new LinkedBlockingQueue<Event>();
+    private Attempt winner;
+    // Set once the calling thread no longer processes results.
+    private volatile boolean finished;
+
+    LdapHedgedSearch(LdapConnection conn, LdapSearchStrategy strategy, long delay) {
+        this.conn = conn;
+        this.strategy = strategy;
+        this.delay = delay;
+    }
+
+    void doSearch(List<String> baseDNs, String filter, SearchControls controls, LdapSearchResultsHandler handler)
+            throws IOException, NamingException {
+        Attempt primary = new Attempt(null, baseDNs, filter, controls);
+        Attempt hedge = null;
+        Exception failure = null;
+        long deadline = System.currentTimeMillis() + delay;
+        executor.execute(primary);
+        try {
+            while (true) {
+                Event event;
+                if (hedge == null && getWinner() == null) {
+                    event = events.poll(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                    if (event == null) {
+                        log.ok("No answer after {0} ms, hedging the search for {1}", delay, filter);
+                        hedge = new Attempt(primary, baseDNs, filter, controls);
+                        executor.execute(hedge);
+                        continue;
+                    }
+                } else {
+                    event = events.take();
+                }
+                if (event.result != null) {
+                    boolean more = false;
+                    try {
+                        more = handler.handle(event.baseDN, event.result);
+                    } finally {
+                        event.attempt.replies.offer(more);
+                    }
+                    continue;
+                }
+                // The search of the event completed.
+                if (event.failure == null) {
+                    if (claim(event.attempt)) {
+                        conn.recordReadLatency(event.attempt.getLatency());
+                        if (event.attempt != primary) {
+                            // Not to bias the latencies downward, also record
+                            // how long the slower primary search has taken so far.
+                            long elapsed = primary.getElapsed();
+                            if (elapsed >= 0) {
+                                conn.recordReadLatency(elapsed);
+                            }
+                        }
+                        return;
+                    }
+                    continue;
+                }
+                if (getWinner() == event.attempt) {
+                    throw event.failure;
+                }
+                if (getWinner() == null) {
+                    Attempt other = event.attempt == primary ? hedge : primary;
+                    if (other != null && !other.completed) {
+                        // Let the other search answer.
+                        failure = failure != null ? failure : event.failure;
+                        event.attempt.completed = true;
+                        continue;
+                    }
+                    throw failure != null ? failure : event.failure;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException(e);
+        } catch (NamingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ConnectorException(e);
+        } finally {
+            finished = true;
+            primary.abandon();
+            if (hedge != null) {
+                hedge.abandon();
+            }
+        }
+    }
+
+    private synchronized Attempt getWinner() {
+        return winner;
+    }
+
+    /**
+     * Makes the given search the winner, unless the other one already is.
+     */
+    private synchronized boolean claim(Attempt attempt) {
+        if (winner == null) {
+            winner = attempt;
+            if (attempt.primary != null) {
+                log.ok("The hedged search answered first");
+            }
+        }
+        return winner == attempt;
+    }
+
+    private static final class Event {
+
+        private final Attempt attempt;
+        private final String baseDN;
+        private final SearchResult result;
+        private final Exception failure;
+
+        Event(Attempt attempt, String baseDN, SearchResult result, Exception failure) {
+            this.attempt = attempt;
+            this.baseDN = baseDN;
+            this.result = result;
+            this.failure = failure;
+        }
+    }
+
+    private final class Attempt implements Runnable, LdapSearchResultsHandler {
+
+        // The search this one hedges, or null for the primary search.
+        private final Attempt primary;
+        private final List<String> baseDNs;
+        private final String filter;
+        private final SearchControls controls;
+        private final BlockingQueue<Boolean> replies = new ArrayBlockingQueue<Boolean>(1);
+        private volatile LdapContext ctx;
+        private volatile long start;
+        private volatile long latency = -1;
+        // Only accessed by the calling thread.
+        private boolean completed;
+        // Guarded by this: whether the context was handed back by the
+        // search, or closed by the calling thread.
+        private boolean released;
+        private boolean abandoned;
+
+        Attempt(Attempt primary, List<String> baseDNs, String filter, SearchControls controls) {
+            this.primary = primary;
+            this.baseDNs = baseDNs;
+            this.filter = filter;
+            this.controls = controls;
+        }
+
+        public void run() {
+            start = System.currentTimeMillis();
+            Exception failure = null;
+            try {
+                LdapContext leased = primary == null ? conn.borrowReadContext() : conn.borrowHedgeContext(primary.ctx);
+                synchronized (this) {
+                    ctx = leased;
+                }
+                if (!finished) {
+                    strategy.doSearch(leased, baseDNs, filter, controls, this);
+                }
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                release();
+            }
+            answered();
+            if (failure != null || !finished) {
+                events.add(new Event(this, null, null, failure));
+            }
+        }
+
+        public boolean handle(String baseDN, SearchResult result) throws NamingException {
+            answered();
+            if (finished || !claim(this)) {
+                return false;
+            }
+            events.add(new Event(this, baseDN, result, null));
+            try {
+                Boolean more;
+                while ((more = replies.poll(REPLY_POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null) {
+                    if (finished) {
+                        return false;
+                    }
+                }
+                return more;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private void answered() {
+            if (latency < 0) {
+                latency = System.currentTimeMillis() - start;
+            }
+        }
+
+        long getLatency() {
+            return latency;
+        }
+
+        /**
+         * Returns the latency of the search if it answered, the time it has
+         * been running otherwise, or -1 if it has not started.
+         */
+        long getElapsed() {
+            long answeredAfter = latency;
+            if (answeredAfter >= 0) {
+                return answeredAfter;
+            }
+            long started = start;
+            return started > 0 ? System.currentTimeMillis() - started : -1;
+        }
+
+        private void release() {
+            synchronized (this) {
+                if (abandoned) {
+                    return;
+                }
+                released = true;
+            }
+            conn.releaseContext(ctx);
+        }
+
+        /**
+         * Closes the context of the search if it is still running.
+         */
+        void abandon() {
+            LdapContext leased;
+            synchronized (this) {
+                // A context not leased yet is handed back by the search.
+                if (released || ctx == null) {
+                    return;
+                }
+                abandoned = true;
+                leased = ctx;
+            }
+            conn.abandonContext(leased);
+        }
+    }
+}
@@ -26,15 +26,22 @@ package org.identityconnectors.ldap.search;
 import static org.identityconnectors.common.StringUtil.isNotBlank;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.naming.NameNotFoundException;
 import javax.naming.NamingException;
 import javax.naming.PartialResultException;
 import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
 
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.ldap.LdapAsyncTransport;
 import org.identityconnectors.ldap.LdapConnection;
+import org.identityconnectors.ldap.LdapEntry;
 import org.identityconnectors.ldap.LdapConstants.ServerType;
 
 /**
@@ -58,10 +65,65 @@ public class LdapInternalSearch {
         this.controls = controls;
     }
 
+    String getFilter() {
+        return filter;
+    }
+
+    List<String> getBaseDNs() {
+        return baseDNs;
+    }
+
+    SearchControls getControls() {
+        return controls;
+    }
+
     public void execute(LdapSearchResultsHandler handler) {
         String filter = blankAsAllObjects(this.filter);
+        List<String> chunks = getFilterChunks(filter);
+        if (chunks != null) {
+            executeChunks(filter, chunks, new DistinctEntriesHandler(handler));
+            return;
+        }
+        LdapSearchStrategy asyncStrategy = null;
+        // The asynchronous transport is connected to the write servers.
+        LdapAsyncTransport transport = conn.hasReadServers() ? null : conn.getAsyncTransport();
+        if (transport != null) {
+            asyncStrategy = strategy.withTransport(transport);
+        }
+        LdapContext ctx = null;
+        LdapHedgedSearch hedgedSearch = null;
+        LdapParallelSearch parallelSearch = null;
+        if (asyncStrategy == null) {
+            if (isRecentlyWritten(filter)) {
+                ctx = conn.borrowContext();
+            } else if (baseDNs.size() > 1 && conn.canSearchInParallel() && strategy.forParallelSearch() != null) {
+                parallelSearch = new LdapParallelSearch(conn, strategy, conn.getSearchParallelism());
+            } else if (conn.canHedgeReads()) {
+                long delay = conn.getHedgeDelay();
+                if (delay >= 0) {
+                    hedgedSearch = new LdapHedgedSearch(conn, strategy, delay);
+                } else {
+                    // Measure the reads until the hedge delay can be computed.
+                    handler = new LatencyRecordingHandler(handler);
+                    ctx = conn.borrowReadContext();
+                }
+            } else {
+                ctx = conn.borrowReadContext();
+            }
+        }
         try {
-            strategy.doSearch(conn.getInitialContext(), baseDNs, filter, controls, handler);
+            if (asyncStrategy != null) {
+                asyncStrategy.doSearch(null, baseDNs, filter, controls, handler);
+            } else if (parallelSearch != null) {
+                parallelSearch.doSearch(baseDNs, filter, controls, handler);
+            } else if (hedgedSearch != null) {
+                hedgedSearch.doSearch(baseDNs, filter, controls, handler);
+            } else {
+                strategy.doSearch(ctx, baseDNs, filter, controls, handler);
+                if (handler instanceof LatencyRecordingHandler) {
+                    ((LatencyRecordingHandler) handler).completed();
+                }
+            }
         } catch (IOException e) {
             throw new ConnectorException(e);
         } catch (PartialResultException e) {
@@ -82,6 +144,118 @@ public class LdapInternalSearch {
             }
         } catch (NamingException e) {
             throw new ConnectorException(e);
+        } finally {
+            conn.releaseContext(ctx);
+        }
+    }
+
+    /**
+     * Returns the filters the given one is split into, or {@code null} if the
+     * search is not split. Only the searches whose strategy can be split
+     * across several contexts, i.e. which are neither sorted nor paged by the
+     * caller, are split. The count-only searches are not split either, since
+     * an entry matching several of the filters would be counted once for
+     * each of them.
+     */
+    private List<String> getFilterChunks(String filter) {
+        int chunkSize = conn.getConfiguration().getFilterChunkSize();
+        if (chunkSize <= 0 || strategy.forParallelSearch() == null) {
+            return null;
+        }
+        return LdapFilterOptimizer.split(filter, chunkSize);
+    }
+
+    /**
+     * Searches with each of the filters, at the same time if the connection
+     * can search in parallel, and one after another otherwise.
+     */
+    private void executeChunks(String filter, List<String> chunks, DistinctEntriesHandler handler) {
+        if (conn.canSearchInParallel() && !isRecentlyWritten(filter)) {
+            try {
+                new LdapParallelSearch(conn, strategy, conn.getSearchParallelism()).doSearch(baseDNs, chunks, controls, handler);
+            } catch (NamingException e) {
+                throw new ConnectorException(e);
+            }
+            return;
+        }
+        for (String chunk : chunks) {
+            if (handler.stopped) {
+                break;
+            }
+            new LdapInternalSearch(conn, chunk, baseDNs, strategy, controls).execute(handler);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the search concerns an entry written during the
+     * read-your-writes window, which the read servers may not have yet.
+     */
+    private boolean isRecentlyWritten(String filter) {
+        if (!conn.hasReadServers()) {
+            return false;
+        }
+        if (conn.isRecentlyWritten(filter)) {
+            return true;
+        }
+        for (String baseDN : baseDNs) {
+            if (conn.isRecentlyWritten(baseDN)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records how long the search took to return its first result, or to
+     * complete if it returned none.
+     */
+    private final class LatencyRecordingHandler implements LdapSearchResultsHandler {
+
+        private final LdapSearchResultsHandler delegate;
+        private final long start = System.currentTimeMillis();
+        private boolean recorded;
+
+        LatencyRecordingHandler(LdapSearchResultsHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        public boolean handle(String baseDN, SearchResult result) throws NamingException {
+            completed();
+            return delegate.handle(baseDN, result);
+        }
+
+        void completed() {
+            if (!recorded) {
+                recorded = true;
+                conn.recordReadLatency(System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    /**
+     * Hands each entry to the handler once, as an entry may match several of
+     * the filters a search was split into. Only called in the thread
+     * performing the search.
+     */
+    private static final class DistinctEntriesHandler implements LdapSearchResultsHandler {
+
+        private final LdapSearchResultsHandler delegate;
+        private final Set<LdapName> handled = new HashSet<LdapName>();
+        private boolean stopped;
+
+        DistinctEntriesHandler(LdapSearchResultsHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        public boolean handle(String baseDN, SearchResult result) throws NamingException {
+            if (!handled.add(LdapEntry.create(baseDN, result).getDN())) {
+                return true;
+            }
+            if (!delegate.handle(baseDN, result)) {
+                stopped = true;
+                return false;
+            }
+            return true;
         }
     }
 
@@ -0,0 +1,220 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static java.util.Collections.singletonList;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.ldap.LdapConnection;
+
+/**
+ * Performs a search in several base contexts, or with several filters, at the
+ * same time, each through a context of its own, and merges the results.
+ *
+ * <p>The searches are performed by at most the given number of threads,
+ * while the results are handed to the handler in the calling thread, one at
+ * a time. Once the handler returns {@code false}, or a search fails, the
+ * searches still running stop at their next result, and the search returns
+ * once they all did.</p>
+ */
+class LdapParallelSearch {
+
+    private static final Log log = Log.getLog(LdapParallelSearch.class);
+
+    // How often a search waiting for the handler checks it was not stopped.
+    private static final long REPLY_POLL_INTERVAL = 100;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "LDAP parallel search");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final LdapConnection conn;
+    private final LdapSearchStrategy strategy;
+    private final int parallelism;
+
+    private final BlockingQueue<Event> events = new LinkedBlockingQueue<Event>();
+    // Set once the calling thread no longer processes results.
+    private volatile boolean finished;
+
+    LdapParallelSearch(LdapConnection conn, LdapSearchStrategy strategy, int parallelism) {
+        this.conn = conn;
+        this.strategy = strategy;
+        this.parallelism = parallelism;
+    }
+
+    void doSearch(List<String> baseDNs, String filter, SearchControls controls, LdapSearchResultsHandler handler)
+            throws NamingException {
+        doSearch(baseDNs, singletonList(filter), controls, handler);
+    }
+
+    /**
+     * Searches each of the base contexts with each of the filters. An entry
+     * matching several filters is handed to the handler once for each.
+     */
+    void doSearch(List<String> baseDNs, List<String> filters, SearchControls controls, LdapSearchResultsHandler handler)
+            throws NamingException {
+        Queue<Task> pending = new ConcurrentLinkedQueue<Task>();
+        for (String filter : filters) {
+            for (String baseDN : baseDNs) {
+                pending.add(new Task(baseDN, filter));
+            }
+        }
+        int running = Math.min(parallelism, pending.size());
+        log.ok("Searching {0} base contexts with {1} filters with {2} threads", baseDNs.size(), filters.size(), running);
+        for (int i = 0; i < running; i++) {
+            executor.execute(new Branch(pending, controls));
+        }
+        Exception failure = null;
+        // The searches the handler makes meanwhile are not spread across threads.
+        conn.beginStreaming();
+        try {
+            while (running > 0) {
+                Event event = events.take();
+                if (event.result == null) {
+                    running--;
+                    if (event.failure != null && failure == null) {
+                        failure = event.failure;
+                        finished = true;
+                    }
+                    continue;
+                }
+                boolean more = false;
+                try {
+                    if (!finished) {
+                        more = handler.handle(event.baseDN, event.result);
+                    }
+                } catch (Exception e) {
+                    failure = e;
+                } finally {
+                    event.branch.replies.offer(more);
+                }
+                if (!more) {
+                    finished = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException(e);
+        } finally {
+            finished = true;
+            conn.endStreaming();
+        }
+        if (failure instanceof NamingException) {
+            throw (NamingException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new ConnectorException(failure);
+        }
+    }
+
+    private static final class Event {
+
+        private final Branch branch;
+        private final String baseDN;
+        private final SearchResult result;
+        private final Exception failure;
+
+        Event(Branch branch, String baseDN, SearchResult result, Exception failure) {
+            this.branch = branch;
+            this.baseDN = baseDN;
+            this.result = result;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * The search of a base context with a filter.
+     */
+    private static final class Task {
+
+        private final String baseDN;
+        private final String filter;
+
+        Task(String baseDN, String filter) {
+            this.baseDN = baseDN;
+            this.filter = filter;
+        }
+    }
+
+    /**
+     * Performs the pending searches, one after another, until there are none
+     * left or the search was stopped.
+     */
+    private final class Branch implements Runnable, LdapSearchResultsHandler {
+
+        private final Queue<Task> pending;
+        private final SearchControls controls;
+        private final BlockingQueue<Boolean> replies = new ArrayBlockingQueue<Boolean>(1);
+
+        Branch(Queue<Task> pending, SearchControls controls) {
+            this.pending = pending;
+            this.controls = controls;
+        }
+
+        public void run() {
+            Exception failure = null;
+            try {
+                Task task;
+                while (!finished && (task = pending.poll()) != null) {
+                    new LdapInternalSearch(conn, task.filter, singletonList(task.baseDN), strategy.forParallelSearch(), controls).execute(this);
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+            events.add(new Event(this, null, null, failure));
+        }
+
+        public boolean handle(String baseDN, SearchResult result) throws NamingException {
+            if (finished) {
+                return false;
+            }
+            events.add(new Event(this, baseDN, result, null));
+            try {
+                Boolean more;
+                while ((more = replies.poll(REPLY_POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null) {
+                    if (finished) {
+                        return false;
+                    }
+                }
+                return more;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -25,7 +25,10 @@
  */
 package org.identityconnectors.ldap.search;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -37,6 +40,7 @@ import javax.naming.ldap.SortControl;
 
 import org.forgerock.opendj.ldap.controls.VirtualListViewRequestControl;
 
+import org.identityconnectors.common.Pair;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.common.objects.Attribute;
@@ -54,13 +58,17 @@ import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.common.objects.SortKey;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.identityconnectors.ldap.ADTokenGroupsFetcher;
 import org.identityconnectors.ldap.ADUserAccountControl;
 import org.identityconnectors.ldap.ADGroupType;
 import org.identityconnectors.ldap.ADLdapUtil;
+import org.identityconnectors.ldap.ADRangedValues;
 import org.identityconnectors.ldap.GroupHelper;
+import org.identityconnectors.ldap.LdapConfiguration;
 import org.identityconnectors.ldap.LdapConnection;
 import org.identityconnectors.ldap.LdapConstants;
 import org.identityconnectors.ldap.LdapEntry;
+import org.identityconnectors.ldap.LdapMemberIdResolver;
 import org.identityconnectors.ldap.LdapUtil;
 import org.identityconnectors.ldap.schema.LdapSchemaMapping;
 
@@ -69,12 +77,13 @@ import static java.util.Collections.singletonList;
 import static org.identityconnectors.common.CollectionUtil.newCaseInsensitiveSet;
 import static org.identityconnectors.common.CollectionUtil.newSet;
 import static org.identityconnectors.common.StringUtil.isBlank;
+import static org.identityconnectors.common.StringUtil.isNotBlank;
 import static org.identityconnectors.ldap.ADLdapUtil.convertMSEpochToISO8601;
 import static org.identityconnectors.ldap.LdapUtil.buildMemberIdAttribute;
+import static org.identityconnectors.ldap.LdapUtil.addStringAttrValues;
 import static org.identityconnectors.ldap.LdapUtil.getStringAttrValues;
 import static org.identityconnectors.ldap.ADLdapUtil.objectGUIDtoString;
 import static org.identityconnectors.ldap.ADLdapUtil.objectSIDtoString;
-import static org.identityconnectors.ldap.ADLdapUtil.fetchTokenGroupsByDn;
 import static org.identityconnectors.ldap.ADLdapUtil.fetchGroupMembersByRange;
 
 /**
@@ -90,6 +99,8 @@ public class LdapSearch {
     private final LdapFilter filter;
     private final OperationOptions options;
     private final GroupHelper groupHelper;
+    private final LdapMemberIdResolver memberIds;
+    private final ADTokenGroupsFetcher tokenGroups;
     private final String[] baseDNs;
     private final ResultsHandler handler;
 
@@ -122,6 +133,8 @@ public class LdapSearch {
         this.handler = handler;
 
         groupHelper = new GroupHelper(conn);
+        memberIds = new LdapMemberIdResolver(conn);
+        tokenGroups = new ADTokenGroupsFetcher(conn);
     }
 
     public final void execute() {
@@ -135,36 +148,273 @@ public class LdapSearch {
      * @param handler the handler.
      * @throws NamingException if a JNDI exception occurs.
      */
-    public final void execute(final ResultsHandler handler) {
-        final String[] attrsToGetOption = options.getAttributesToGet();
-        final Set<String> attrsToGet = getAttributesToGet(attrsToGetOption);
-        LdapInternalSearch search = getInternalSearch(attrsToGet);
+    public final void execute(ResultsHandler handler) {
+        LdapSearchPlan plan = getPlan(options.getAttributesToGet());
+        LdapInternalSearch search = getInternalSearch(plan);
+        if (LdapConstants.isCountOnly(options)) {
+            count(search, handler);
+            return;
+        }
+        LdapSearchResultCache cache = conn.getSearchResultCache();
+        if (!isCached(cache)) {
+            execute(plan, search, handler);
+            return;
+        }
+        String key = getResultKey(search, false);
+        List<ConnectorObject> cached = cache.get(key);
+        if (cached != null) {
+            for (ConnectorObject object : cached) {
+                if (!handler.handle(object)) {
+                    break;
+                }
+            }
+            return;
+        }
+        long generation = cache.getGeneration();
+        ResultCollector collector = new ResultCollector(handler);
+        execute(plan, search, collector);
+        if (collector.isComplete()) {
+            cache.put(key, oclass, collector.objects, generation);
+        }
+    }
+
+    private void execute(final LdapSearchPlan plan, LdapInternalSearch search, final ResultsHandler handler) {
+        final boolean emptyAttrWhenNotFound = options.getAttributesToGet() != null;
+        if (isPipelined()) {
+            LdapSearchPipeline pipeline = new LdapSearchPipeline(conn.getSearchPipelineThreads(), conn.getConfiguration().getSearchPipelineQueueSize());
+            // The reader keeps its context while the other threads handle the
+            // entries, so the lookups they make must not fan out again.
+            conn.beginStreaming();
+            try {
+                pipeline.execute(search, new LdapSearchPipeline.Converter() {
+                    public ConnectorObject convert(String baseDN, SearchResult result) {
+                        conn.beginStreaming();
+                        try {
+                            return createConnectorObject(baseDN, result, plan, emptyAttrWhenNotFound);
+                        } finally {
+                            conn.endStreaming();
+                        }
+                    }
+                }, handler);
+            } finally {
+                conn.endStreaming();
+            }
+            return;
+        }
+        if (isBatched(plan)) {
+            BlockHandler block = new BlockHandler(handler, plan, emptyAttrWhenNotFound);
+            try {
+                search.execute(block);
+                block.flush();
+            } finally {
+                tokenGroups.cancel();
+            }
+            return;
+        }
         search.execute(new LdapSearchResultsHandler() {
             public boolean handle(String baseDN, SearchResult result) throws NamingException {
-                return handler.handle(createConnectorObject(baseDN, result, attrsToGet, attrsToGetOption != null));
+                return handler.handle(createConnectorObject(baseDN, result, plan, emptyAttrWhenNotFound));
             }
         });
     }
 
+    /**
+     * Returns {@code true} if the result of the search is cached. The
+     * searches paged by the caller are not.
+     */
+    private boolean isCached(LdapSearchResultCache cache) {
+        if (!cache.isEnabled()) {
+            return false;
+        }
+        return options.getPageSize() == null || options.getPageSize() <= 0;
+    }
+
+    /**
+     * Counts the entries the given search matches, and reports their number
+     * as the remaining paged results, without handing any object to the
+     * handler.
+     */
+    private void count(LdapInternalSearch search, ResultsHandler handler) {
+        LdapConfiguration config = conn.getConfiguration();
+        int pageSize = conn.supportsControl(PagedResultsControl.OID) ? config.getBlockSize() : 0;
+        SortKey[] sortKeys = null;
+        String vlvSortAttr = null;
+        if (conn.supportsControl(VirtualListViewRequestControl.OID) && conn.supportsControl(SortControl.OID)) {
+            sortKeys = options.getSortKeys();
+            vlvSortAttr = isNotBlank(config.getVlvSortAttribute()) ? config.getVlvSortAttribute() : null;
+        }
+        CountSearchStrategy strategy = new CountSearchStrategy(pageSize, sortKeys, vlvSortAttr, filter != null && filter.getBaseDN() != null);
+        new LdapInternalSearch(conn, search.getFilter(), search.getBaseDNs(), strategy, search.getControls()).execute(new LdapSearchResultsHandler() {
+            public boolean handle(String baseDN, SearchResult result) {
+                return false;
+            }
+        });
+        if (handler instanceof SearchResultsHandler) {
+            ((SearchResultsHandler) handler).handleResult(new org.identityconnectors.framework.common.objects.SearchResult(null, strategy.getCount()));
+        }
+    }
+
+    /**
+     * Returns the key of the result of the given search in the cache.
+     */
+    private String getResultKey(LdapInternalSearch search, boolean single) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(oclass.getObjectClassValue());
+        builder.append('|');
+        builder.append(search.getBaseDNs());
+        builder.append('|');
+        builder.append(search.getControls().getSearchScope());
+        builder.append('|');
+        builder.append(search.getFilter());
+        builder.append('|');
+        String[] attrsToGet = options.getAttributesToGet();
+        if (attrsToGet != null) {
+            builder.append(Arrays.asList(attrsToGet));
+        }
+        builder.append('|');
+        SortKey[] sortKeys = options.getSortKeys();
+        if (sortKeys != null) {
+            for (SortKey sortKey : sortKeys) {
+                builder.append(sortKey.isAscendingOrder() ? '+' : '-');
+                builder.append(sortKey.getField());
+                builder.append(',');
+            }
+        }
+        builder.append('|');
+        builder.append(single ? "single" : "all");
+        return builder.toString();
+    }
+
+    /**
+     * Returns {@code true} if the entries are handed over a block at a time,
+     * so that the POSIX groups of a block are searched together, or the
+     * tokenGroups of its entries are read while the search goes on. The
+     * searches paged by the caller are not batched, since their cookie is
+     * handed to the handler by the search.
+     */
+    private boolean isBatched(LdapSearchPlan plan) {
+        if (options.getPageSize() != null && options.getPageSize() > 0) {
+            return false;
+        }
+        return plan.isPosixGroupsRequested() || tokenGroups.isConcurrent() && plan.isTokenGroupsRequested();
+    }
+
+    /**
+     * Returns {@code true} if the entries are read, converted and handed to
+     * the handler by different threads, which takes a pooled context for the
+     * reader and at least another one for the lookups. Searches for a single
+     * entry are not pipelined, and neither are the searches paged by the
+     * caller, since their cookie is handed to the handler by the reading
+     * thread.
+     */
+    private boolean isPipelined() {
+        if (conn.getSearchPipelineThreads() <= 0) {
+            return false;
+        }
+        if (filter != null && filter.getBaseDN() != null) {
+            return false;
+        }
+        if (options.getPageSize() != null && options.getPageSize() > 0) {
+            return false;
+        }
+        return conn.canSearchInOtherThreads();
+    }
+
     /**
      * Executes the query against all configured base DNs and returns the first
      * {@link ConnectorObject} or {@code null}.
      */
     public final ConnectorObject getSingleResult() {
         final String[] attrsToGetOption = options.getAttributesToGet();
-        final Set<String> attrsToGet = getAttributesToGet(attrsToGetOption);
+        final LdapSearchPlan plan = getPlan(attrsToGetOption);
         final ConnectorObject[] results = new ConnectorObject[]{null};
-        LdapInternalSearch search = getInternalSearch(attrsToGet);
+        LdapInternalSearch search = getInternalSearch(plan);
+        LdapSearchResultCache cache = conn.getSearchResultCache();
+        String key = null;
+        long generation = 0;
+        if (isCached(cache)) {
+            key = getResultKey(search, true);
+            List<ConnectorObject> cached = cache.get(key);
+            if (cached != null) {
+                return cached.isEmpty() ? null : cached.get(0);
+            }
+            generation = cache.getGeneration();
+        }
         search.execute(new LdapSearchResultsHandler() {
             public boolean handle(String baseDN, SearchResult result) throws NamingException {
-                results[0] = createConnectorObject(baseDN, result, attrsToGet, attrsToGetOption != null);
+                results[0] = createConnectorObject(baseDN, result, plan, attrsToGetOption != null);
                 return false;
             }
         });
+        if (key != null) {
+            List<ConnectorObject> objects = results[0] != null ? singletonList(results[0]) : Collections.<ConnectorObject>emptyList();
+            cache.put(key, oclass, objects, generation);
+        }
         return results[0];
     }
 
-    private LdapInternalSearch getInternalSearch(Set<String> attrsToGet) {
+    /**
+     * Returns the plan of the searches of the object class for the given
+     * attributes, computing it if it is not cached by the connection yet.
+     */
+    private LdapSearchPlan getPlan(String[] attrsToGetOption) {
+        LdapSearchPlan.Cache plans = conn.getSearchPlans();
+        String key = LdapSearchPlan.Cache.getKey(oclass, attrsToGetOption);
+        LdapSearchPlan plan = plans.get(key);
+        if (plan == null) {
+            Set<String> attrsToGet = getAttributesToGet(attrsToGetOption);
+            String userFilter = null;
+            if (oclass.equals(ObjectClass.ACCOUNT)) {
+                userFilter = conn.getConfiguration().getAccountSearchFilter();
+            } else if (oclass.equals(ObjectClass.GROUP)) {
+                userFilter = conn.getConfiguration().getGroupSearchFilter();
+            }
+            String classFilter = !isBlank(userFilter) ? userFilter : getObjectClassFilter();
+            plan = new LdapSearchPlan(attrsToGet, getLdapAttributesToGet(attrsToGet), classFilter, getDecodedAttributes(attrsToGet));
+            plans.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Returns how the given attributes, but the Uid and Name, are read from
+     * the entries of the object class.
+     */
+    private List<LdapSearchPlan.DecodedAttribute> getDecodedAttributes(Set<String> attrsToGet) {
+        LdapConfiguration config = conn.getConfiguration();
+        boolean adFamily = ADLdapUtil.isServerMSADFamily(conn.getServerType());
+        List<LdapSearchPlan.DecodedAttribute> result = new ArrayList<LdapSearchPlan.DecodedAttribute>();
+        for (String attrName : attrsToGet) {
+            if (attrName.equalsIgnoreCase(Uid.NAME) || attrName.equalsIgnoreCase(Name.NAME)) {
+                continue;
+            }
+            LdapSearchPlan.Decoder decoder;
+            if (LdapConstants.isLdapGroups(attrName)) {
+                decoder = LdapSearchPlan.Decoder.LDAP_GROUPS;
+            } else if (LdapConstants.isPosixGroups(attrName)) {
+                decoder = LdapSearchPlan.Decoder.POSIX_GROUPS;
+            } else if (LdapConstants.PASSWORD.is(attrName)) {
+                decoder = LdapSearchPlan.Decoder.PASSWORD;
+            } else if (LdapConstants.MS_GUID_ATTR.equalsIgnoreCase(attrName)) {
+                decoder = LdapSearchPlan.Decoder.GUID;
+            } else if (LdapConstants.MS_SID_ATTR.equalsIgnoreCase(attrName)) {
+                decoder = LdapSearchPlan.Decoder.SID;
+            } else if (LdapConstants.MS_TOKEN_GROUPS_ATTR.equalsIgnoreCase(attrName)) {
+                decoder = LdapSearchPlan.Decoder.TOKEN_GROUPS;
+            } else if (adFamily && ADUserAccountControl.AD_CONTROLS_DATES.contains(attrName)) {
+                decoder = LdapSearchPlan.Decoder.AD_DATE;
+            } else if (config.isBinaryUid() && config.getUidAttribute().equalsIgnoreCase(attrName)) {
+                decoder = LdapSearchPlan.Decoder.BINARY_UID;
+            } else {
+                decoder = LdapSearchPlan.Decoder.SCHEMA;
+            }
+            boolean groupMembers = ObjectClass.GROUP.equals(oclass) && config.getGroupMemberAttribute().equalsIgnoreCase(attrName);
+            result.add(new LdapSearchPlan.DecodedAttribute(attrName, decoder, groupMembers));
+        }
+        return result;
+    }
+
+    private LdapInternalSearch getInternalSearch(LdapSearchPlan plan) {
         // This is a bit tricky. If the LdapFilter has an entry DN,
         // we only need to look at that entry and check whether it matches
         // the native filter. Moreover, when looking at the entry DN
@@ -195,19 +445,13 @@ public class LdapSearch {
         }
 
         SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
-        Set<String> ldapAttrsToGet = getLdapAttributesToGet(attrsToGet);
-        controls.setReturningAttributes(ldapAttrsToGet.toArray(new String[ldapAttrsToGet.size()]));
+        controls.setReturningAttributes(plan.getLdapAttributesToGet());
         controls.setSearchScope(searchScope);
 
         String optionsFilter = LdapConstants.getSearchFilter(options);
-        String userFilter = null;
-        if (oclass.equals(ObjectClass.ACCOUNT)) {
-            userFilter = conn.getConfiguration().getAccountSearchFilter();
-        } else if (oclass.equals(ObjectClass.GROUP)) {
-            userFilter = conn.getConfiguration().getGroupSearchFilter();
-        }
         String nativeFilter = filter != null ? filter.getNativeFilter() : null;
-        return new LdapInternalSearch(conn, getSearchFilter(optionsFilter, nativeFilter, userFilter), baseDNs, strategy, controls);
+        String searchFilter = conn.getFilterOptimizer().optimize(getSearchFilter(optionsFilter, nativeFilter, plan.getClassFilter()));
+        return new LdapInternalSearch(conn, searchFilter, baseDNs, strategy, controls);
     }
 
     private Set<String> getLdapAttributesToGet(Set<String> attrsToGet) {
@@ -232,44 +476,22 @@ public class LdapSearch {
      * baseDN} parameter is needed in order to create the whole entry DN, which
      * is used to compute the connector object's name attribute.
      */
-    private ConnectorObject createConnectorObject(String baseDN, SearchResult result, Set<String> attrsToGet, boolean emptyAttrWhenNotFound) {
+    private ConnectorObject createConnectorObject(String baseDN, SearchResult result, LdapSearchPlan plan, boolean emptyAttrWhenNotFound) {
         LdapEntry entry = LdapEntry.create(baseDN, result);
 
         ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
         builder.setObjectClass(oclass);
-        builder.setUid(conn.getSchemaMapping().createUid(oclass, entry));
+        Uid uid = conn.getSchemaMapping().createUid(oclass, entry);
+        builder.setUid(uid);
+        if (!LdapEntry.isDNAttribute(conn.getSchemaMapping().getLdapUidAttribute(oclass))) {
+            conn.getEntryDNCache().put(oclass, uid, entry.getDN().toString());
+        }
         builder.setName(conn.getSchemaMapping().createName(oclass, entry));
 
         // Some server type specific account control
         if (oclass.equals(ObjectClass.ACCOUNT)) {
             try {
-                switch (conn.getServerType()) {
-                    case MSAD_GC:
-                    case MSAD:
-                        if (entry.getAttributes().get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR) != null) {
-                            String uac = entry.getAttributes().get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR).get().toString();
-                            builder.addAttribute(AttributeBuilder.buildEnabled(!ADUserAccountControl.isAccountDisabled(uac)));
-                            builder.addAttribute(AttributeBuilder.build(ADUserAccountControl.DONT_EXPIRE_PASSWORD_NAME, ADUserAccountControl.isDontExpirePassword(uac)));
-                            builder.addAttribute(AttributeBuilder.build(ADUserAccountControl.PASSWORD_NOTREQD_NAME, ADUserAccountControl.isPasswordNotReq(uac)));
-                            builder.addAttribute(AttributeBuilder.build(ADUserAccountControl.SMARTCARD_REQUIRED_NAME, ADUserAccountControl.isSmartCardRequired(uac)));
-                        }
-                        if (entry.getAttributes().get(ADUserAccountControl.MSDS_USR_ACCT_CTRL_ATTR) != null) {
-                            String uac2 = entry.getAttributes().get(ADUserAccountControl.MSDS_USR_ACCT_CTRL_ATTR).get().toString();
-                            builder.addAttribute(AttributeBuilder.buildLockOut(ADUserAccountControl.isAccountLockOut(uac2)));
-                            builder.addAttribute(AttributeBuilder.buildPasswordExpired(ADUserAccountControl.isPasswordExpired(uac2)));
-                        }
-                        break;
-                    case MSAD_LDS:
-                        if (entry.getAttributes().get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED) != null) {
-                            builder.addAttribute(AttributeBuilder.buildEnabled(!Boolean.parseBoolean(entry.getAttributes().get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED).get().toString())));
-                        } else if (entry.getAttributes().get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED) != null) {
-                            builder.addAttribute(AttributeBuilder.buildPasswordExpired(Boolean.parseBoolean(entry.getAttributes().get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED).get().toString())));
-                        } else if (entry.getAttributes().get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED) != null) {
-                            builder.addAttribute(AttributeBuilder.buildLockOut(Boolean.parseBoolean(entry.getAttributes().get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED).get().toString())));
-                        }
-                        break;
-                    default:
-                }
+                ADUserAccountControl.addControlAttributes(builder, entry.getAttributes(), conn.getServerType());
             } catch (NamingException e) {
                 logger.warn(e, "Can't read special control attribute: " + e.getExplanation());
             }
@@ -287,47 +509,54 @@ public class LdapSearch {
             }
         }
 
-        for (String attrName : attrsToGet) {
+        for (LdapSearchPlan.DecodedAttribute decodedAttr : plan.getDecodedAttributes()) {
+            String attrName = decodedAttr.name;
             Attribute attribute = null;
-            if (attrName.equalsIgnoreCase(Uid.NAME) || attrName.equalsIgnoreCase(Name.NAME)) {
-                continue;
-            }
-            if (LdapConstants.isLdapGroups(attrName)) {
-                List<String> ldapGroups = groupHelper.getLdapGroups(entry.getDN().toString());
-                attribute = AttributeBuilder.build(LdapConstants.LDAP_GROUPS_NAME, ldapGroups);
-            } else if (LdapConstants.isPosixGroups(attrName)) {
-                Set<String> posixRefAttrs = getStringAttrValues(entry.getAttributes(), GroupHelper.getPosixRefAttribute());
-                List<String> posixGroups = groupHelper.getPosixGroups(posixRefAttrs);
-                attribute = AttributeBuilder.build(LdapConstants.POSIX_GROUPS_NAME, posixGroups);
-            } else if (LdapConstants.PASSWORD.is(attrName)) {
-                attribute = AttributeBuilder.build(attrName, new GuardedString());
-            } else if (LdapConstants.MS_GUID_ATTR.equalsIgnoreCase(attrName)) {
-                attribute = AttributeBuilder.build(LdapConstants.MS_GUID_ATTR, objectGUIDtoString(entry.getAttributes().get(LdapConstants.MS_GUID_ATTR)));
-            } else if (LdapConstants.MS_SID_ATTR.equalsIgnoreCase(attrName)) {
-                attribute = AttributeBuilder.build(LdapConstants.MS_SID_ATTR, objectSIDtoString(entry.getAttributes().get(LdapConstants.MS_SID_ATTR)));
-            } else if (LdapConstants.MS_TOKEN_GROUPS_ATTR.equalsIgnoreCase(attrName)) {
-                attribute = AttributeBuilder.build(LdapConstants.MS_TOKEN_GROUPS_ATTR, fetchTokenGroupsByDn(conn, entry));
-            } else if (ADLdapUtil.isServerMSADFamily(conn.getServerType()) && ADUserAccountControl.AD_CONTROLS_DATES.contains(attrName)) {
-                attribute = convertMSEpochToISO8601(entry.getAttributes().get(attrName));
-            } else if (conn.getConfiguration().isBinaryUid() && conn.getConfiguration().getUidAttribute().equalsIgnoreCase(attrName)) {
-                attribute = AttributeBuilder.build(conn.getConfiguration().getUidAttribute(), LdapUtil.formatBinaryUid(
-                        entry.getAttributes().get(conn.getConfiguration().getUidAttribute())));
-            } else {
-                attribute = conn.getSchemaMapping().createAttribute(oclass, attrName, entry, emptyAttrWhenNotFound);
+            switch (decodedAttr.decoder) {
+                case LDAP_GROUPS:
+                    List<String> ldapGroups = groupHelper.getIndexedLdapGroups(entry.getDN().toString());
+                    attribute = AttributeBuilder.build(LdapConstants.LDAP_GROUPS_NAME, ldapGroups);
+                    break;
+                case POSIX_GROUPS:
+                    Set<String> posixRefAttrs = getStringAttrValues(entry.getAttributes(), GroupHelper.getPosixRefAttribute());
+                    List<String> posixGroups = groupHelper.getPosixGroups(posixRefAttrs);
+                    attribute = AttributeBuilder.build(LdapConstants.POSIX_GROUPS_NAME, posixGroups);
+                    break;
+                case PASSWORD:
+                    attribute = AttributeBuilder.build(attrName, new GuardedString());
+                    break;
+                case GUID:
+                    attribute = AttributeBuilder.build(LdapConstants.MS_GUID_ATTR, objectGUIDtoString(entry.getAttributes().get(LdapConstants.MS_GUID_ATTR)));
+                    break;
+                case SID:
+                    attribute = AttributeBuilder.build(LdapConstants.MS_SID_ATTR, objectSIDtoString(entry.getAttributes().get(LdapConstants.MS_SID_ATTR)));
+                    break;
+                case TOKEN_GROUPS:
+                    attribute = AttributeBuilder.build(LdapConstants.MS_TOKEN_GROUPS_ATTR, tokenGroups.getTokenGroups(entry.getDN().toString()));
+                    break;
+                case AD_DATE:
+                    attribute = convertMSEpochToISO8601(entry.getAttributes().get(attrName));
+                    break;
+                case BINARY_UID:
+                    attribute = AttributeBuilder.build(conn.getConfiguration().getUidAttribute(), LdapUtil.formatBinaryUid(
+                            entry.getAttributes().get(conn.getConfiguration().getUidAttribute())));
+                    break;
+                default:
+                    attribute = conn.getSchemaMapping().createAttribute(oclass, attrName, entry, emptyAttrWhenNotFound);
             }
 
-            if (ObjectClass.GROUP.equals(oclass) && conn.getConfiguration().getGroupMemberAttribute().equalsIgnoreCase(attrName)) {
+            if (decodedAttr.groupMembers) {
                 if (ADLdapUtil.isServerMSADFamily(conn.getServerType())) {
                     // Make sure we're not hitting AD large group issue
                     // see: http://msdn.microsoft.com/en-us/library/ms817827.aspx
-                    if (entry.getAttributes().get("member;range=0-1499") != null) {
+                    if (ADRangedValues.getRangedAttribute(entry.getAttributes(), "member") != null) {
                         // we're in the limitation
                         attribute = AttributeBuilder.build(attrName, fetchGroupMembersByRange(conn, entry));
                     }
                 }
                 if (conn.getConfiguration().isGetGroupMemberId()) {
                     // create an extra _memberId attr for groups
-                    builder.addAttribute(buildMemberIdAttribute(conn, attribute));
+                    builder.addAttribute(buildMemberIdAttribute(memberIds, attribute));
                 }
             }
             if (attribute != null) {
@@ -341,10 +570,11 @@ public class LdapSearch {
     /**
      * Creates a search filter which will filter to a given {@link ObjectClass}.
      * It will be composed in order of an optional filter, the native filter
-     * from the query and last the user filter. If the user filter has not been
-     * defined, the object class filter is used.
+     * from the query and last the class filter of the plan, that is the user
+     * filter, or the object class filter if the user filter has not been
+     * defined.
      */
-    private String getSearchFilter(String optionsFilter, String nativeFilter, String userFilter) {
+    private String getSearchFilter(String optionsFilter, String nativeFilter, String classFilter) {
         StringBuilder builder = new StringBuilder();
         int nonBlank = 0;
 
@@ -358,18 +588,11 @@ public class LdapSearch {
             appendFilter(nativeFilter, builder);
             nonBlank++;
         }
-        //Last, userFilter. If this latter is null, then append the objectclass filter.
-        if ((null != userFilter) && (!isBlank(userFilter))){
-            appendFilter(userFilter, builder);
+        //Last, the user filter or the objectclass filter.
+        if (!isBlank(classFilter)) {
+            appendFilter(classFilter, builder);
             nonBlank++;
         }
-        else {
-            String ocFilter = getObjectClassFilter();
-            if (!isBlank(ocFilter)) {
-                appendFilter(ocFilter, builder);
-                nonBlank++;
-            }
-        }
         if (nonBlank > 1) {
             builder.append(')');
             builder.insert(0,"(&");
@@ -436,7 +659,9 @@ public class LdapSearch {
         }
 
         if ((null != options.getPageSize() && options.getPageSize() > 0) && conn.supportsControl(PagedResultsControl.OID)) {
-            strategy = new PagedSearchStrategy(options.getPageSize(), options.getPagedResultsCookie(), options.getPagedResultsOffset(), (SearchResultsHandler) handler, sortKeys);
+            boolean useVlv = conn.getConfiguration().isUseVlvForPagedResultsOffset() && conn.supportsControl(VirtualListViewRequestControl.OID);
+            strategy = new PagedSearchStrategy(options.getPageSize(), options.getPagedResultsCookie(), options.getPagedResultsOffset(), (SearchResultsHandler) handler, sortKeys,
+                    conn.getPagedResultsCheckpoints(), useVlv);
         } else if (useBlocks && !usePagedResultsControl && conn.supportsControl(VirtualListViewRequestControl.OID)) {
             String vlvSortAttr = conn.getConfiguration().getVlvSortAttribute();
             strategy = new VlvIndexSearchStrategy(vlvSortAttr, pageSize);
@@ -526,4 +751,101 @@ public class LdapSearch {
             throw new IllegalArgumentException("Invalid search scope " + scope);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Hands the objects of a search over to a handler and keeps them, until
+     * there are too many of them to be cached.
+     */
+    private static final class ResultCollector implements ResultsHandler {
+
+        private final ResultsHandler handler;
+        private List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        private boolean stopped;
+
+        ResultCollector(ResultsHandler handler) {
+            this.handler = handler;
+        }
+
+        public boolean handle(ConnectorObject object) {
+            if (objects != null) {
+                objects.add(object);
+                if (objects.size() > LdapSearchResultCache.MAX_RESULT_SIZE) {
+                    objects = null;
+                }
+            }
+            stopped = !handler.handle(object);
+            return !stopped;
+        }
+
+        /**
+         * Returns {@code true} if the handler was handed all the objects of
+         * the search, and they were few enough to be cached.
+         */
+        boolean isComplete() {
+            return objects != null && !stopped;
+        }
+    }
+
+    /**
+     * Hands the entries to the handler a block at a time. The tokenGroups of
+     * each entry start being read as soon as the entry is returned, and the
+     * POSIX groups of all the entries of a block are searched together before
+     * the block is handed over.
+     */
+    private final class BlockHandler implements LdapSearchResultsHandler {
+
+        private final ResultsHandler handler;
+        private final LdapSearchPlan plan;
+        private final boolean emptyAttrWhenNotFound;
+        private final boolean posixGroups;
+        private final boolean prefetchTokenGroups;
+        private final List<Pair<String, SearchResult>> block = new ArrayList<Pair<String, SearchResult>>();
+        private boolean stopped;
+
+        BlockHandler(ResultsHandler handler, LdapSearchPlan plan, boolean emptyAttrWhenNotFound) {
+            this.handler = handler;
+            this.plan = plan;
+            this.emptyAttrWhenNotFound = emptyAttrWhenNotFound;
+            posixGroups = plan.isPosixGroupsRequested();
+            prefetchTokenGroups = tokenGroups.isConcurrent() && plan.isTokenGroupsRequested();
+        }
+
+        public boolean handle(String baseDN, SearchResult result) throws NamingException {
+            block.add(new Pair<String, SearchResult>(baseDN, result));
+            if (prefetchTokenGroups) {
+                tokenGroups.prefetch(LdapEntry.create(baseDN, result).getDN().toString());
+            }
+            if (block.size() >= conn.getConfiguration().getBlockSize()) {
+                flush();
+            }
+            return !stopped;
+        }
+
+        /**
+         * Hands the entries of the current block to the handler, unless it
+         * already asked to stop.
+         */
+        void flush() {
+            if (stopped || block.isEmpty()) {
+                return;
+            }
+            if (posixGroups) {
+                Set<String> posixRefAttrs = new HashSet<String>();
+                for (Pair<String, SearchResult> entry : block) {
+                    addStringAttrValues(entry.second.getAttributes(), GroupHelper.getPosixRefAttribute(), posixRefAttrs);
+                }
+                groupHelper.prefetchPosixGroups(posixRefAttrs);
+            }
+            try {
+                for (Pair<String, SearchResult> entry : block) {
+                    if (!handler.handle(createConnectorObject(entry.first, entry.second, plan, emptyAttrWhenNotFound))) {
+                        stopped = true;
+                        return;
+                    }
+                }
+            } finally {
+                block.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.directory.SearchResult;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+
+/**
+ * Performs a search in three stages running at the same time: a thread reads
+ * the entries, several threads convert them into connector objects, and the
+ * calling thread hands the objects to the handler, in the order the entries
+ * were read.
+ *
+ * <p>The stages are connected by a bounded queue. Once it is full, reading
+ * waits for the handler, and so does the server. Once the handler returns
+ * {@code false}, or a stage fails, reading stops at the next entry, and the
+ * search returns once it did.</p>
+ */
+class LdapSearchPipeline {
+
+    /**
+     * Converts an entry into a connector object. Called by several threads
+     * at the same time.
+     */
+    interface Converter {
+
+        ConnectorObject convert(String baseDN, SearchResult result);
+    }
+
+    private static final Log log = Log.getLog(LdapSearchPipeline.class);
+
+    // How often a stage waiting for another one checks the search was not stopped.
+    private static final long POLL_INTERVAL = 100;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "LDAP search pipeline");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // Marks the end of the entries in the queue.
+    private static final Future<ConnectorObject> END = new FutureTask<ConnectorObject>(new Runnable() {
+        public void run() {
+        }
+    }, null);
+
+    private final BlockingQueue<Future<ConnectorObject>> queue = new LinkedBlockingQueue<Future<ConnectorObject>>();
+    // Bounds the entries read ahead of the handler.
+    private final Semaphore slots;
+    // Bounds the entries converted at the same time.
+    private final Semaphore converters;
+    // Set once the calling thread no longer processes results.
+    private volatile boolean finished;
+
+    /**
+     * @param threads the number of entries converted at the same time.
+     * @param capacity the number of entries read ahead of the handler.
+     */
+    LdapSearchPipeline(int threads, int capacity) {
+        slots = new Semaphore(capacity);
+        converters = new Semaphore(threads);
+    }
+
+    void execute(final LdapInternalSearch search, final Converter converter, ResultsHandler handler) {
+        FutureTask<Object> reader = new FutureTask<Object>(new Runnable() {
+            public void run() {
+                try {
+                    search.execute(new LdapSearchResultsHandler() {
+                        public boolean handle(String baseDN, SearchResult result) {
+                            return convert(converter, baseDN, result);
+                        }
+                    });
+                } finally {
+                    queue.add(END);
+                }
+            }
+        }, null);
+        executor.execute(reader);
+        boolean ended = false;
+        Throwable failure = null;
+        try {
+            ended = handle(handler);
+        } finally {
+            finished = true;
+            queue.clear();
+            // The reader does not outlive the search.
+            failure = await(reader);
+        }
+        if (ended && failure != null) {
+            throw failure instanceof RuntimeException ? (RuntimeException) failure : new ConnectorException(failure);
+        }
+    }
+
+    /**
+     * Hands the converted entries to the handler until there are none left,
+     * returning {@code true}, or the handler returns {@code false}.
+     */
+    private boolean handle(ResultsHandler handler) {
+        try {
+            for (;;) {
+                Future<ConnectorObject> next = queue.take();
+                if (next == END) {
+                    return true;
+                }
+                slots.release();
+                if (!handler.handle(getObject(next))) {
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException(e);
+        }
+    }
+
+    /**
+     * Queues the conversion of an entry, waiting for room in the queue and
+     * for a converter. Called by the reader.
+     */
+    private boolean convert(final Converter converter, final String baseDN, final SearchResult result) {
+        try {
+            if (!acquire(slots)) {
+                return false;
+            }
+            if (!acquire(converters)) {
+                return false;
+            }
+            FutureTask<ConnectorObject> conversion = new FutureTask<ConnectorObject>(new Callable<ConnectorObject>() {
+                public ConnectorObject call() {
+                    try {
+                        return converter.convert(baseDN, result);
+                    } finally {
+                        converters.release();
+                    }
+                }
+            });
+            // Queued before it runs, so that the order of the entries is kept.
+            queue.add(conversion);
+            executor.execute(conversion);
+            return !finished;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean acquire(Semaphore semaphore) throws InterruptedException {
+        while (!semaphore.tryAcquire(POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            if (finished) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ConnectorObject getObject(Future<ConnectorObject> conversion) throws InterruptedException {
+        try {
+            return conversion.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ConnectorException(cause);
+        }
+    }
+
+    private static Throwable await(FutureTask<Object> reader) {
+        try {
+            reader.get();
+        } catch (ExecutionException e) {
+            log.ok(e.getCause(), "The pipelined search failed");
+            return e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.ldap.LdapConstants;
+
+/**
+ * What the searches of an object class returning the same attributes have in
+ * common: the attributes to return, the LDAP attributes to ask the server
+ * for, the filter selecting the entries of the object class, and how each
+ * returned attribute is read from an entry.
+ *
+ * <p>Working these out goes through the schema, so a plan is computed once
+ * and kept in a {@link Cache} for as long as the connection, whose schema and
+ * configuration do not change. A plan is immutable.</p>
+ */
+public final class LdapSearchPlan {
+
+    private final Set<String> attrsToGet;
+    private final String[] ldapAttrsToGet;
+    private final String classFilter;
+    private final DecodedAttribute[] decodedAttrs;
+    private final boolean posixGroupsRequested;
+    private final boolean tokenGroupsRequested;
+
+    /**
+     * @param attrsToGet the connector attributes to return.
+     * @param ldapAttrsToGet the LDAP attributes to ask the server for.
+     * @param classFilter the user filter of the object class if any,
+     *            otherwise the filter on the LDAP object classes.
+     * @param decodedAttrs how the attributes to return, but the Uid and
+     *            Name, are read from an entry.
+     */
+    LdapSearchPlan(Set<String> attrsToGet, Set<String> ldapAttrsToGet, String classFilter, List<DecodedAttribute> decodedAttrs) {
+        this.attrsToGet = Collections.unmodifiableSet(attrsToGet);
+        this.ldapAttrsToGet = ldapAttrsToGet.toArray(new String[ldapAttrsToGet.size()]);
+        this.classFilter = classFilter;
+        this.decodedAttrs = decodedAttrs.toArray(new DecodedAttribute[decodedAttrs.size()]);
+        boolean posixGroups = false;
+        boolean tokenGroups = false;
+        for (String attrName : attrsToGet) {
+            posixGroups |= LdapConstants.isPosixGroups(attrName);
+            tokenGroups |= LdapConstants.MS_TOKEN_GROUPS_ATTR.equalsIgnoreCase(attrName);
+        }
+        posixGroupsRequested = posixGroups;
+        tokenGroupsRequested = tokenGroups;
+    }
+
+    Set<String> getAttributesToGet() {
+        return attrsToGet;
+    }
+
+    /**
+     * Returns a copy of the LDAP attributes to ask the server for, which the
+     * caller may hand to search controls.
+     */
+    String[] getLdapAttributesToGet() {
+        return ldapAttrsToGet.clone();
+    }
+
+    String getClassFilter() {
+        return classFilter;
+    }
+
+    DecodedAttribute[] getDecodedAttributes() {
+        return decodedAttrs;
+    }
+
+    boolean isPosixGroupsRequested() {
+        return posixGroupsRequested;
+    }
+
+    boolean isTokenGroupsRequested() {
+        return tokenGroupsRequested;
+    }
+
+    /**
+     * The ways a connector attribute is read from an entry.
+     */
+    enum Decoder {
+        LDAP_GROUPS, POSIX_GROUPS, PASSWORD, GUID, SID, TOKEN_GROUPS, AD_DATE, BINARY_UID, SCHEMA
+    }
+
+    /**
+     * A connector attribute to return and the way it is read from an entry.
+     */
+    static final class DecodedAttribute {
+
+        final String name;
+        final Decoder decoder;
+        // Whether the attribute is the member attribute of the groups.
+        final boolean groupMembers;
+
+        DecodedAttribute(String name, Decoder decoder, boolean groupMembers) {
+            this.name = name;
+            this.decoder = decoder;
+            this.groupMembers = groupMembers;
+        }
+    }
+
+    /**
+     * Keeps the plans of the most recently performed searches.
+     */
+    public static final class Cache {
+
+        /**
+         * The maximum number of cached plans.
+         */
+        static final int MAX_SIZE = 256;
+
+        private final Map<String, LdapSearchPlan> plans = new LinkedHashMap<String, LdapSearchPlan>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LdapSearchPlan> eldest) {
+                return size() > MAX_SIZE;
+            }
+        };
+
+        static String getKey(ObjectClass oclass, String[] attrsToGet) {
+            StringBuilder builder = new StringBuilder(oclass.getObjectClassValue());
+            builder.append('|');
+            if (attrsToGet != null) {
+                builder.append(Arrays.asList(attrsToGet));
+            }
+            return builder.toString();
+        }
+
+        synchronized LdapSearchPlan get(String key) {
+            return plans.get(key);
+        }
+
+        synchronized void put(String key, LdapSearchPlan plan) {
+            plans.put(key, plan);
+        }
+
+        public synchronized void clear() {
+            plans.clear();
+        }
+    }
+}
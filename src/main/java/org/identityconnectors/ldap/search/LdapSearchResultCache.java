@@ -0,0 +1,198 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static org.identityconnectors.ldap.LdapUtil.quietCreateLdapName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.naming.ldap.LdapName;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+
+/**
+ * Caches the connector objects returned by searches, so that the same search
+ * repeated shortly after is answered without reading the directory.
+ *
+ * <p>A result is keyed by object class, base contexts, scope, filter,
+ * attributes to get and sort keys. Only the results of at most
+ * {@link #MAX_RESULT_SIZE} objects are cached. Since a write may change the
+ * entries a search of the object class of the written entry matches, a write
+ * through the connection discards all the results of that object class, and
+ * the results of other object classes returning the written entry, identified
+ * by its DN or Uid. A group membership change also discards the account
+ * results, since they may return the groups of the member. A result being
+ * read while an entry is written is not cached. The changes made by other
+ * clients are seen once a result expires after the configured timeout. The
+ * least recently used results are discarded past the configured size. A timeout or a size of 0 disables the cache.</p>
+ */
+public class LdapSearchResultCache {
+
+    /**
+     * The maximum number of objects of a cached result.
+     */
+    public static final int MAX_RESULT_SIZE = 100;
+
+    private final int maxSize;
+    private final long timeout;
+
+    private final Map<String, CachedResult> results;
+    // Incremented by each write, so that a result read during a write is not cached.
+    private long generation;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxSize the maximum number of cached results.
+     * @param timeout the time in milliseconds after which a result is
+     *            discarded.
+     */
+    public LdapSearchResultCache(final int maxSize, long timeout) {
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+        results = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0 && timeout > 0;
+    }
+
+    /**
+     * Returns the cached result of the search with the given key, or
+     * {@code null} if it is not cached.
+     */
+    List<ConnectorObject> get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            CachedResult cached = results.get(key);
+            if (cached != null && now - cached.since >= timeout) {
+                results.remove(key);
+                cached = null;
+            }
+            if (cached == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return cached.objects;
+        }
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put} for a search starting
+     * now.
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches the result of the search with the given key, unless an entry
+     * was written since the search started at the given generation.
+     */
+    void put(String key, ObjectClass oclass, List<ConnectorObject> objects, long generation) {
+        if (!isEnabled() || objects.size() > MAX_RESULT_SIZE) {
+            return;
+        }
+        CachedResult cached = new CachedResult(oclass, objects, System.currentTimeMillis());
+        synchronized (this) {
+            if (generation == this.generation) {
+                results.put(key, cached);
+            }
+        }
+    }
+
+    /**
+     * Discards the results that the write of the entry of the given class
+     * with the given Uid and DN may change: those of the class, and those
+     * returning the entry. The Uid may be {@code null}.
+     */
+    public void invalidate(ObjectClass oclass, Uid uid, String entryDN) {
+        if (!isEnabled()) {
+            return;
+        }
+        String oclassValue = oclass.getObjectClassValue();
+        String uidValue = uid != null ? uid.getUidValue() : null;
+        LdapName dn = entryDN != null ? quietCreateLdapName(entryDN) : null;
+        synchronized (this) {
+            generation++;
+            for (Iterator<CachedResult> it = results.values().iterator(); it.hasNext();) {
+                CachedResult cached = it.next();
+                if (cached.oclass.equals(oclassValue) || cached.uids.contains(uidValue) || cached.dns.contains(dn)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        results.clear();
+    }
+
+    /**
+     * Returns the number of searches answered from the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of searches not answered from the cache.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized int size() {
+        return results.size();
+    }
+
+    private static final class CachedResult {
+
+        private final String oclass;
+        private final List<ConnectorObject> objects;
+        private final Set<String> uids = new HashSet<String>();
+        private final Set<LdapName> dns = new HashSet<LdapName>();
+        private final long since;
+
+        CachedResult(ObjectClass oclass, List<ConnectorObject> objects, long since) {
+            this.oclass = oclass.getObjectClassValue();
+            this.objects = Collections.unmodifiableList(new ArrayList<ConnectorObject>(objects));
+            this.since = since;
+            for (ConnectorObject object : objects) {
+                uids.add(object.getUid().getUidValue());
+                dns.add(quietCreateLdapName(object.getName().getNameValue()));
+            }
+        }
+    }
+}
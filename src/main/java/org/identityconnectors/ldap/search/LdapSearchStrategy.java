@@ -31,11 +31,32 @@ import javax.naming.NamingException;
 import javax.naming.directory.SearchControls;
 import javax.naming.ldap.LdapContext;
 
+import org.identityconnectors.ldap.LdapAsyncTransport;
+
 public abstract class LdapSearchStrategy {
 
     public abstract void doSearch(LdapContext initCtx, List<String> baseDNs, String query, SearchControls searchControls, LdapSearchResultsHandler handler)
             throws IOException, NamingException;
 
+    /**
+     * Returns a strategy performing the same search over the given
+     * asynchronous transport, or {@code null} if this strategy relies on JNDI
+     * request controls.
+     */
+    public LdapSearchStrategy withTransport(LdapAsyncTransport transport) {
+        return null;
+    }
+
+    /**
+     * Returns a strategy performing the same search which can run at the same
+     * time as this one, through another context and on other base contexts,
+     * or {@code null} if the base contexts must be searched one after
+     * another.
+     */
+    public LdapSearchStrategy forParallelSearch() {
+        return null;
+    }
+
     static String searchControlsToString(SearchControls controls) {
         StringBuilder builder = new StringBuilder();
         builder.append("SearchControls: {returningAttributes=");
@@ -48,6 +48,7 @@ import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
 import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
 import org.identityconnectors.ldap.LdapConnection;
 import org.identityconnectors.ldap.LdapEntry;
+import org.identityconnectors.ldap.LdapEntryDNCache;
 
 /**
  * Helper methods for searching. The "get" methods throw an exception when
@@ -115,6 +116,21 @@ public class LdapSearches {
         OperationOptionsBuilder builder = new OperationOptionsBuilder();
         builder.setAttributesToGet("entryDN");
 
+        LdapEntryDNCache cache = conn.getEntryDNCache();
+        String cachedDN = ldapFilter.getBaseDN() == null ? cache.get(oclass, uid) : null;
+        if (cachedDN != null) {
+            if (!conn.getConfiguration().isVerifyCachedEntryDNs()) {
+                return cachedDN;
+            }
+            // Reading the cached entry is enough to check it still has the Uid.
+            LdapSearch search = new LdapSearch(conn, oclass, LdapFilter.forEntryDN(cachedDN).and(ldapFilter), null, builder.build());
+            if (search.getSingleResult() != null) {
+                return cachedDN;
+            }
+            log.ok("Entry {0} no longer has Uid {1}", cachedDN, uid.getUidValue());
+            cache.invalidate(oclass, uid);
+        }
+
         LdapSearch search = new LdapSearch(conn, oclass, ldapFilter, null, builder.build());
         ConnectorObject object = search.getSingleResult();
         if (object != null) {
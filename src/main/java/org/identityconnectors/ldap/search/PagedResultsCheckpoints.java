@@ -0,0 +1,200 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.naming.directory.SearchControls;
+
+import org.identityconnectors.framework.common.objects.SortKey;
+
+/**
+ * Remembers the paged results cookies a search was at after skipping a
+ * number of entries, so that a later request for a page at a greater offset
+ * resumes from the nearest of them instead of reading all the entries before
+ * it again.
+ *
+ * <p>The checkpoints are kept by search, that is by base contexts, filter,
+ * scope, attributes, sort keys and page size, since a server only accepts a
+ * cookie with the request it was returned for. Since the entries may change,
+ * and the server may forget a cookie, a checkpoint expires after the
+ * configured timeout. The checkpoints of the least recently used searches are
+ * discarded past the configured number of searches. A timeout or a size of 0
+ * disables the checkpoints.</p>
+ */
+public class PagedResultsCheckpoints {
+
+    /**
+     * The maximum number of checkpoints kept for a search.
+     */
+    static final int MAX_CHECKPOINTS_PER_SEARCH = 100;
+
+    private final int maxSize;
+    private final long timeout;
+
+    private final Map<String, TreeMap<Integer, Checkpoint>> searches;
+
+    /**
+     * @param maxSize the maximum number of searches whose checkpoints are
+     *            kept.
+     * @param timeout the time in milliseconds after which a checkpoint is
+     *            discarded.
+     */
+    public PagedResultsCheckpoints(final int maxSize, long timeout) {
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+        searches = new LinkedHashMap<String, TreeMap<Integer, Checkpoint>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TreeMap<Integer, Checkpoint>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0 && timeout > 0;
+    }
+
+    /**
+     * Returns the key of the checkpoints of a search.
+     */
+    static String getKey(List<String> baseDNs, String query, SearchControls controls, SortKey[] sortKeys, int pageSize) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(baseDNs);
+        builder.append('|');
+        builder.append(query);
+        builder.append('|');
+        builder.append(controls.getSearchScope());
+        builder.append('|');
+        String[] attrs = controls.getReturningAttributes();
+        if (attrs != null) {
+            builder.append(Arrays.asList(attrs));
+        }
+        builder.append('|');
+        if (sortKeys != null) {
+            for (SortKey sortKey : sortKeys) {
+                builder.append(sortKey.isAscendingOrder() ? '+' : '-');
+                builder.append(sortKey.getField());
+                builder.append(',');
+            }
+        }
+        builder.append('|');
+        builder.append(pageSize);
+        return builder.toString();
+    }
+
+    /**
+     * Returns the checkpoint of the given search with the greatest offset
+     * not past the given one, or {@code null} if there is none.
+     */
+    Checkpoint getCheckpoint(String key, int offset) {
+        if (!isEnabled()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            TreeMap<Integer, Checkpoint> checkpoints = searches.get(key);
+            if (checkpoints == null) {
+                return null;
+            }
+            removeExpired(checkpoints, now);
+            if (checkpoints.isEmpty()) {
+                searches.remove(key);
+                return null;
+            }
+            Map.Entry<Integer, Checkpoint> entry = checkpoints.floorEntry(offset);
+            return entry != null ? entry.getValue() : null;
+        }
+    }
+
+    /**
+     * Remembers that the given search was at the given cookie and base
+     * context after skipping the given number of entries.
+     */
+    void addCheckpoint(String key, int offset, byte[] cookie, int context) {
+        if (!isEnabled() || offset <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            TreeMap<Integer, Checkpoint> checkpoints = searches.get(key);
+            if (checkpoints == null) {
+                checkpoints = new TreeMap<Integer, Checkpoint>();
+                searches.put(key, checkpoints);
+            }
+            checkpoints.put(offset, new Checkpoint(offset, cookie, context, now));
+            if (checkpoints.size() > MAX_CHECKPOINTS_PER_SEARCH) {
+                removeExpired(checkpoints, now);
+            }
+            if (checkpoints.size() > MAX_CHECKPOINTS_PER_SEARCH) {
+                removeOldest(checkpoints);
+            }
+        }
+    }
+
+    /**
+     * Forgets the checkpoints of the given search, e.g. because the server
+     * rejected one of its cookies.
+     */
+    synchronized void invalidate(String key) {
+        searches.remove(key);
+    }
+
+    public synchronized void clear() {
+        searches.clear();
+    }
+
+    private void removeExpired(TreeMap<Integer, Checkpoint> checkpoints, long now) {
+        for (Iterator<Checkpoint> it = checkpoints.values().iterator(); it.hasNext();) {
+            if (now - it.next().since >= timeout) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void removeOldest(TreeMap<Integer, Checkpoint> checkpoints) {
+        Checkpoint oldest = null;
+        for (Checkpoint each : checkpoints.values()) {
+            if (oldest == null || each.since < oldest.since) {
+                oldest = each;
+            }
+        }
+        checkpoints.remove(oldest.offset);
+    }
+
+    static final class Checkpoint {
+
+        final int offset;
+        // Null at the start of a base context.
+        final byte[] cookie;
+        final int context;
+        private final long since;
+
+        Checkpoint(int offset, byte[] cookie, int context, long since) {
+            this.offset = offset;
+            this.cookie = cookie;
+            this.context = context;
+            this.since = since;
+        }
+    }
+}
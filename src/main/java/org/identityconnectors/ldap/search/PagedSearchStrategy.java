@@ -23,6 +23,7 @@ package org.identityconnectors.ldap.search;
 import static org.identityconnectors.ldap.search.LdapSearchStrategy.searchControlsToString;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.naming.NamingEnumeration;
@@ -31,12 +32,18 @@ import javax.naming.OperationNotSupportedException;
 import javax.naming.PartialResultException;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.BasicControl;
 import javax.naming.ldap.Control;
 import javax.naming.ldap.LdapContext;
 import javax.naming.ldap.PagedResultsControl;
 import javax.naming.ldap.PagedResultsResponseControl;
 import javax.naming.ldap.SortControl;
 
+import org.forgerock.opendj.asn1.ASN1;
+import org.forgerock.opendj.asn1.ASN1Reader;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.controls.VirtualListViewRequestControl;
+import org.forgerock.opendj.ldap.controls.VirtualListViewResponseControl;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
 import org.identityconnectors.common.Base64;
@@ -53,13 +60,29 @@ public class PagedSearchStrategy extends LdapSearchStrategy {
     private final String pagedResultsCookie;
     private final SearchResultsHandler searchResultHandler;
     private final SortKey[] sortKeys;
+    private final PagedResultsCheckpoints checkpoints;
+    private final boolean useVlv;
 
     public PagedSearchStrategy(int pageSize, String pagedResultsCookie, int pagedResultsOffset, SearchResultsHandler searchResultHandler, SortKey[] sortKeys) {
+        this(pageSize, pagedResultsCookie, pagedResultsOffset, searchResultHandler, sortKeys, null, false);
+    }
+
+    /**
+     * @param checkpoints the cookies previous searches were at after skipping
+     *            entries, or {@code null}.
+     * @param useVlv whether to read the page at the offset of a sorted search
+     *            through a virtual list view, instead of skipping the entries
+     *            before it.
+     */
+    public PagedSearchStrategy(int pageSize, String pagedResultsCookie, int pagedResultsOffset, SearchResultsHandler searchResultHandler, SortKey[] sortKeys,
+            PagedResultsCheckpoints checkpoints, boolean useVlv) {
         this.pageSize = pageSize;
         this.pagedResultsOffset = pagedResultsOffset;
         this.pagedResultsCookie = pagedResultsCookie;
         this.searchResultHandler = searchResultHandler;
         this.sortKeys = sortKeys;
+        this.checkpoints = checkpoints;
+        this.useVlv = useVlv;
     }
 
     @Override
@@ -69,15 +92,18 @@ public class PagedSearchStrategy extends LdapSearchStrategy {
         String returnedCookie = null;
         int context = 0;
         int remainingResults = -1;
+        // The number of entries of the base context before the cookie, when known.
+        int cookieOffset = 0;
         boolean proceed = true;
         boolean needMore = false;
         byte[] cookie = null;
         PagedResultsResponseControl pagedControl = null;
         SortControl sortControl = null;
+        javax.naming.ldap.SortKey[] skis = null;
 
         // Sort Keys
         if (sortKeys != null && sortKeys.length > 0) {
-            javax.naming.ldap.SortKey[] skis = new javax.naming.ldap.SortKey[sortKeys.length];
+            skis = new javax.naming.ldap.SortKey[sortKeys.length];
             for (int i = 0; i < sortKeys.length; i++) {
                 skis[i] = new javax.naming.ldap.SortKey(sortKeys[i].getField(), sortKeys[i].isAscendingOrder(), null);
             }
@@ -88,22 +114,36 @@ public class PagedSearchStrategy extends LdapSearchStrategy {
         // Cookie
         if (StringUtil.isNotBlank(pagedResultsCookie)) {
             // we need to determine which base context we're dealing with...
-            // The cookie value is <base64 encoded LDAP cookie>:<index in baseDNs>
-            String[] split = pagedResultsCookie.split(":", 2);
+            // The cookie value is <base64 encoded LDAP cookie>:<index in baseDNs>[:<entries before the cookie>]
+            String[] split = pagedResultsCookie.split(":", 3);
             // bit of sanity check...
-            if (split.length == 2) {
+            if (split.length >= 2) {
                 try {
                     cookie = Base64.decode(split[0]);
                 } catch (RuntimeException e) {
                     throw new ConnectorException("PagedResultsCookie is not properly encoded", e);
                 }
                 context = Integer.valueOf(split[1]);
+                if (split.length == 3) {
+                    cookieOffset = Integer.valueOf(split[2]);
+                } else if (split[0].length() > 0) {
+                    // A cookie returned without the number of entries before it.
+                    cookieOffset = -1;
+                }
             } else {
                 throw new ConnectorException("PagedResultsCookie is not properly formatted");
             }
         }
 
+        // Checkpoints are offsets from the first entry, so they only apply to a search without cookie.
+        String checkpointsKey = null;
+        if (cookie == null && context == 0 && checkpoints != null && checkpoints.isEnabled()) {
+            checkpointsKey = PagedResultsCheckpoints.getKey(baseDNs, query, searchControls, sortKeys, pageSize);
+        }
+
         LdapContext ctx = initCtx.newInstance(null);
+        Position position = null;
+        int endOffset = -1;
 
         try {
             // Offset
@@ -111,28 +151,33 @@ public class PagedSearchStrategy extends LdapSearchStrategy {
             // We use the pageSize value to determine our paging strategy. Using the offset value as the page size
             // is risky since we have no clue about sizelimit for the results
             if (pagedResultsOffset > 0) {
-                // Calculate how many pages we need to iterate over...
-                // If pageSize is small < 20 and offset is high > 1000, we fix the pageSize for the pages to skip
-                // to the value of 500 to avoid slow page skipping
-                int rounds;
-                int left;
-
-                if ((pageSize < 20) && (pagedResultsOffset > 1000)){
-                    rounds = pagedResultsOffset / 500;
-                    left = pagedResultsOffset % 500;
+                if (useVlv && skis != null && cookie == null && context == 0 && baseDNs.size() == 1) {
+                    Integer remaining = searchVlvPage(ctx, baseDNs.get(0), query, searchControls, new SortControl(skis, Control.CRITICAL), handler);
+                    if (remaining != null) {
+                        searchResultHandler.handleResult(new org.identityconnectors.framework.common.objects.SearchResult(null, remaining));
+                        return;
+                    }
                 }
-                else {
-                    rounds = pagedResultsOffset / pageSize;
-                    left = pagedResultsOffset % pageSize;
+                position = skip(ctx, baseDNs, query, searchControls, sortControl, new Position(cookie, context, 0, false), checkpointsKey, true);
+                if (position == null) {
+                    // There are no entries past the offset.
+                    searchResultHandler.handleResult(new org.identityconnectors.framework.common.objects.SearchResult(null, 0));
+                    return;
                 }
+                cookie = position.cookie;
+                context = position.context;
+            }
 
-                for(int i = 0; i< rounds; i++) {
-                    int records = 0;
+        // Pages
+            int records = 0;
+            int resultSize = 0;
+            for (;;) {
+                try {
                     do {
-                        setControls(ctx, pageSize - records, cookie, sortControl);
+                        setControls(ctx,pageSize - records, cookie, sortControl);
                         NamingEnumeration<SearchResult> results = ctx.search(baseDNs.get(context), query, searchControls);
-                        while (results.hasMore()) {
-                            results.next();
+                        while (proceed && results.hasMore()) {
+                            proceed = handler.handle(baseDNs.get(context), results.next());
                             records++;
                         }
                         // We have less results than the pageSize and we're spanning multiple contexts...
@@ -145,75 +190,54 @@ public class PagedSearchStrategy extends LdapSearchStrategy {
                             pagedControl = getPagedControl(ctx.getResponseControls());
                             if (pagedControl != null) {
                                 cookie = pagedControl.getCookie();
+                                resultSize = pagedControl.getResultSize();
                                 // if ever cookie is null, we've just reached the last page of that suffix
-                                // make sure we iterate over the suffix
-                                if ((null == cookie) && (context + 1 < baseDNs.size())) {
-                                    context++;
-                                }
-                            }
-                        }
-                        results.close();
-                    } while (needMore);
-                }
-                if (left > 0) {
-                    int records = 0;
-                    do {
-                        setControls(ctx, left - records, cookie, sortControl);
-                        NamingEnumeration<SearchResult> results = ctx.search(baseDNs.get(context), query, searchControls);
-                        while (results.hasMore()) {
-                            results.next();
-                            records++;
-                        }
-                        // We have less results than the pageSize and we're spanning multiple contexts...
-                        if ((records < left) && (context + 1 < baseDNs.size())) {
-                            needMore = true;
-                            context++;
-                            cookie = null;
-                        } else {
-                            needMore = false;
-                            pagedControl = getPagedControl(ctx.getResponseControls());
-                            if (pagedControl != null) {
-                                cookie = pagedControl.getCookie();
-                                // if ever cookie is null, we've just reached the last page of that suffix
-                                // make sure we iterate over the suffix
+                                // make sure we iterate over the suffix and prepare a special cookie for next request
                                 if ((null == cookie) && (context + 1 < baseDNs.size())) {
-                                    context++;
+                                    returnedCookie = ":"+ (context+1);
                                 }
                             }
                         }
                         results.close();
                     } while (needMore);
+                    break;
+                } catch (NamingException e) {
+                    // The cookie of a checkpoint at the offset is only checked by reading the page.
+                    if (position == null || !position.resumed || records > 0 || e instanceof PartialResultException) {
+                        throw e;
+                    }
+                    logger.ok(e, "Cookie at offset {0} was rejected, skipping from the first entry", pagedResultsOffset);
+                    checkpoints.invalidate(checkpointsKey);
+                    position = skip(ctx, baseDNs, query, searchControls, sortControl, new Position(null, 0, 0, false), checkpointsKey, false);
+                    if (position == null) {
+                        searchResultHandler.handleResult(new org.identityconnectors.framework.common.objects.SearchResult(null, 0));
+                        return;
+                    }
+                    cookie = position.cookie;
+                    context = position.context;
                 }
             }
 
-        // Pages
-            int records = 0;
-            do {
-                setControls(ctx,pageSize - records, cookie, sortControl);
-                NamingEnumeration<SearchResult> results = ctx.search(baseDNs.get(context), query, searchControls);
-                while (proceed && results.hasMore()) {
-                    proceed = handler.handle(baseDNs.get(context), results.next());
-                    records++;
+            if (checkpointsKey != null && proceed) {
+                if (cookie != null) {
+                    checkpoints.addCheckpoint(checkpointsKey, pagedResultsOffset + records, cookie, context);
+                } else if (returnedCookie != null) {
+                    checkpoints.addCheckpoint(checkpointsKey, pagedResultsOffset + records, null, context + 1);
                 }
-                // We have less results than the pageSize and we're spanning multiple contexts...
-                if ((records < pageSize) && (context + 1 < baseDNs.size())) {
-                    needMore = true;
-                    context++;
-                    cookie = null;
-                } else {
-                    needMore = false;
-                    pagedControl = getPagedControl(ctx.getResponseControls());
-                    if (pagedControl != null) {
-                        cookie = pagedControl.getCookie();
-                        // if ever cookie is null, we've just reached the last page of that suffix
-                        // make sure we iterate over the suffix and prepare a special cookie for next request
-                        if ((null == cookie) && (context + 1 < baseDNs.size())) {
-                            returnedCookie = ":"+ (context+1);
-                        }
-                    }
-                }
-                results.close();
-            } while (needMore);
+            }
+
+            // The position is only known within a single base context, since the entries were not counted
+            // in the base contexts before the cookie.
+            if (proceed && cookieOffset >= 0 && baseDNs.size() == 1) {
+                endOffset = cookieOffset + (position != null ? position.offset : 0) + records;
+            }
+            if (proceed && cookie == null && returnedCookie == null) {
+                // The last page of the last base context.
+                remainingResults = 0;
+            } else if (endOffset >= 0 && resultSize > 0) {
+                // The server estimates the number of entries of the whole search.
+                remainingResults = Math.max(0, resultSize - endOffset);
+            }
         } catch (OperationNotSupportedException e) {
             logger.ok("OperationNotSupportedException caught: {0}. Check the Cookie validity", e.getRemainingName());
             throw new ConnectorException("Operation Not Supported. Bad cookie");
@@ -224,10 +248,147 @@ public class PagedSearchStrategy extends LdapSearchStrategy {
         }
         if (cookie != null) {
             returnedCookie = Base64.encode(cookie).concat(":" + context);
+            if (endOffset >= 0) {
+                returnedCookie = returnedCookie.concat(":" + endOffset);
+            }
         }
         searchResultHandler.handleResult(new org.identityconnectors.framework.common.objects.SearchResult(returnedCookie, remainingResults));
     }
 
+    /**
+     * Skips the entries up to the offset, from the nearest checkpoint if
+     * allowed to. Returns the position after them, or {@code null} if there
+     * are no entries past the offset.
+     */
+    private Position skip(LdapContext ctx, List<String> baseDNs, String query, SearchControls searchControls, SortControl sortControl, Position start, String checkpointsKey,
+            boolean resume) throws NamingException {
+        // If pageSize is small < 20 and offset is high > 1000, we fix the pageSize for the pages to skip
+        // to the value of 500 to avoid slow page skipping
+        int skipSize = (pageSize < 20) && (pagedResultsOffset > 1000) ? 500 : pageSize;
+        if (checkpointsKey != null && resume) {
+            PagedResultsCheckpoints.Checkpoint checkpoint = checkpoints.getCheckpoint(checkpointsKey, pagedResultsOffset);
+            if (checkpoint != null) {
+                logger.ok("Resuming the search at offset {0}", checkpoint.offset);
+                try {
+                    return skip(ctx, baseDNs, query, searchControls, sortControl, new Position(checkpoint.cookie, checkpoint.context, checkpoint.offset, true), skipSize, checkpointsKey);
+                } catch (NamingException e) {
+                    // The server may have forgotten the cookie, or only accept it on the connection it was returned on.
+                    logger.ok(e, "Cookie at offset {0} was rejected, skipping from the first entry", checkpoint.offset);
+                    checkpoints.invalidate(checkpointsKey);
+                }
+            }
+        }
+        return skip(ctx, baseDNs, query, searchControls, sortControl, start, skipSize, checkpointsKey);
+    }
+
+    private Position skip(LdapContext ctx, List<String> baseDNs, String query, SearchControls searchControls, SortControl sortControl, Position start, int skipSize, String checkpointsKey) throws NamingException {
+        byte[] cookie = start.cookie;
+        int context = start.context;
+        int skipped = start.offset;
+        while (skipped < pagedResultsOffset) {
+            int size = Math.min(skipSize, pagedResultsOffset - skipped);
+            int records = 0;
+            while (records < size) {
+                int before = records;
+                setControls(ctx, size - records, cookie, sortControl);
+                NamingEnumeration<SearchResult> results = ctx.search(baseDNs.get(context), query, searchControls);
+                try {
+                    while (results.hasMore()) {
+                        results.next();
+                        records++;
+                    }
+                } finally {
+                    results.close();
+                }
+                PagedResultsResponseControl pagedControl = getPagedControl(ctx.getResponseControls());
+                cookie = pagedControl != null ? pagedControl.getCookie() : null;
+                // if ever cookie is null, we've just reached the last page of that suffix
+                if (null == cookie) {
+                    if (context + 1 >= baseDNs.size()) {
+                        return null;
+                    }
+                    context++;
+                } else if (records == before) {
+                    // Do not loop over a server returning empty pages.
+                    return new Position(cookie, context, skipped + records, start.resumed);
+                }
+            }
+            skipped += records;
+            if (checkpointsKey != null) {
+                checkpoints.addCheckpoint(checkpointsKey, skipped, cookie, context);
+            }
+        }
+        return new Position(cookie, context, skipped, start.resumed);
+    }
+
+    /**
+     * Reads the page at the offset through a virtual list view, sorted by the
+     * sort keys. Returns the number of entries past the page, as estimated by
+     * the server, or {@code null} if the server could not return the page,
+     * e.g. for lack of an index.
+     */
+    private Integer searchVlvPage(LdapContext ctx, String baseDN, String query, SearchControls searchControls, SortControl sortControl, LdapSearchResultsHandler handler) throws NamingException {
+        VirtualListViewRequestControl vlvreq = VirtualListViewRequestControl.newOffsetControl(Control.CRITICAL, pagedResultsOffset + 1, 0, 0, pageSize - 1, ByteString.valueOf(new byte[0]));
+        BasicControl vlvControl = new BasicControl(VirtualListViewRequestControl.OID, Control.CRITICAL, vlvreq.getValue().toByteArray());
+        ctx.setRequestControls(new Control[]{sortControl, vlvControl});
+
+        // The entries are handed to the handler once the server said it could return the page.
+        List<SearchResult> page = new ArrayList<SearchResult>(pageSize);
+        int contentCount;
+        try {
+            NamingEnumeration<SearchResult> results = ctx.search(baseDN, query, searchControls);
+            try {
+                while (results.hasMore() && page.size() < pageSize) {
+                    page.add(results.next());
+                }
+            } finally {
+                results.close();
+            }
+            contentCount = getContentCount(ctx.getResponseControls());
+        } catch (NamingException e) {
+            logger.ok(e, "Virtual list view search failed, skipping to the offset");
+            return null;
+        }
+        if (contentCount < 0) {
+            return null;
+        }
+        for (SearchResult result : page) {
+            if (!handler.handle(baseDN, result)) {
+                break;
+            }
+        }
+        return Math.max(0, contentCount - pagedResultsOffset - page.size());
+    }
+
+    /**
+     * Returns the content count of the virtual list view response control
+     * among the given controls, or -1 if there is none or the server could
+     * not return the view.
+     */
+    static int getContentCount(Control[] controls) {
+        if (controls != null) {
+            for (Control control : controls) {
+                if (control.getID().equalsIgnoreCase(VirtualListViewResponseControl.OID)) {
+                    byte[] value = control.getEncodedValue();
+                    if ((value != null) && (value.length > 0)) {
+                        ASN1Reader reader = ASN1.getReader(value);
+                        try {
+                            reader.readStartSequence();
+                            reader.readInteger();
+                            int contentCount = (int) reader.readInteger();
+                            if (reader.readEnumerated() == 0) {
+                                return contentCount;
+                            }
+                        } catch (IOException e) {
+                            logger.error("Can't decode response control");
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
     private void setControls(LdapContext ctx, int pageSize, byte[] cookie, SortControl sortControl) {
         try {
             if (sortControl != null) {
@@ -241,27 +402,31 @@ public class PagedSearchStrategy extends LdapSearchStrategy {
         }
     }
 
-    private byte[] getResponseCookie(Control[] controls) {
+    private PagedResultsResponseControl getPagedControl(Control[] controls) {
         if (controls != null) {
             for (Control control : controls) {
                 if (control instanceof PagedResultsResponseControl) {
-                    PagedResultsResponseControl pagedControl = (PagedResultsResponseControl) control;
-                    pagedControl.getResultSize();
-                    return pagedControl.getCookie();
+                    return (PagedResultsResponseControl) control;
                 }
             }
         }
         return null;
     }
 
-    private PagedResultsResponseControl getPagedControl(Control[] controls) {
-        if (controls != null) {
-            for (Control control : controls) {
-                if (control instanceof PagedResultsResponseControl) {
-                    return (PagedResultsResponseControl) control;
-                }
-            }
+    private static final class Position {
+
+        // Null at the start of a base context.
+        private final byte[] cookie;
+        private final int context;
+        private final int offset;
+        // Whether the position was reached from a checkpoint.
+        private final boolean resumed;
+
+        Position(byte[] cookie, int context, int offset, boolean resumed) {
+            this.cookie = cookie;
+            this.context = context;
+            this.offset = offset;
+            this.resumed = resumed;
         }
-        return null;
     }
 }
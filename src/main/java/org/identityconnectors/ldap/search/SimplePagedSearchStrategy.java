@@ -58,6 +58,15 @@ public class SimplePagedSearchStrategy extends LdapSearchStrategy {
         this.sortKeys = sortKeys;
     }
 
+    @Override
+    public LdapSearchStrategy forParallelSearch() {
+        // The results sorted within each base context would be interleaved.
+        if (sortKeys != null && sortKeys.length > 0) {
+            return null;
+        }
+        return this;
+    }
+
     @Override
     public void doSearch(LdapContext initCtx, List<String> baseDNs, String query, SearchControls searchControls, LdapSearchResultsHandler handler) throws IOException, NamingException {
         log.ok("Searching in {0} with filter {1} and {2}", baseDNs, query, searchControlsToString(searchControls));
@@ -76,6 +76,12 @@ public class VlvIndexSearchStrategy extends LdapSearchStrategy {
         this.blockSize = blockSize;
     }
 
+    @Override
+    public LdapSearchStrategy forParallelSearch() {
+        // This strategy keeps the position of the search it performs.
+        return new VlvIndexSearchStrategy(vlvIndexAttr, blockSize);
+    }
+
     @Override
     public void doSearch(LdapContext initCtx, List<String> baseDNs, String query, SearchControls searchControls, LdapSearchResultsHandler handler) throws IOException, NamingException {
         getLog().ok("Searching in {0} with filter {1} and {2}", baseDNs, query, searchControlsToString(searchControls));
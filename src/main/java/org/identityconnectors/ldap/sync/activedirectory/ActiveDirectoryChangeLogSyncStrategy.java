@@ -69,9 +69,11 @@ import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
 import org.identityconnectors.ldap.ADGroupType;
 import org.identityconnectors.ldap.ADLdapUtil;
+import org.identityconnectors.ldap.ADRangedValues;
 import org.identityconnectors.ldap.ADUserAccountControl;
 import org.identityconnectors.ldap.LdapConnection;
 import org.identityconnectors.ldap.LdapConstants;
+import org.identityconnectors.ldap.LdapMemberIdResolver;
 import org.identityconnectors.ldap.search.LdapInternalSearch;
 import org.identityconnectors.ldap.search.LdapSearchResultsHandler;
 import org.identityconnectors.ldap.search.SimplePagedSearchStrategy;
@@ -85,7 +87,6 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
 
     private static final String DELETE_CTRL = "1.2.840.113556.1.4.417";
     private static final String DELETED_PREFIX = "cn=deleted objects,";
-    private static final String NAMING_CTX_ATTR = "defaultNamingContext";
     private static final String USN_CHANGED_ATTR = "uSNChanged";
     private static final String USN_CREATED_ATTR = "uSNCreated";
     private static final String HCU_CHANGED_ATTR = "highestCommittedUSN";
@@ -137,6 +138,7 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
                     Arrays.asList(conn.getConfiguration().getBaseContextsToSynchronize()),
                     new SimplePagedSearchStrategy(conn.getConfiguration().getBlockSize()),
                     controls);
+            final LdapMemberIdResolver memberIds = new LdapMemberIdResolver(conn);
             try {
                 search.execute(new LdapSearchResultsHandler() {
                     public boolean handle(String baseDN, SearchResult result) throws NamingException {
@@ -161,14 +163,15 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
                         // Make sure we're not hitting AD large group issue
                         if (ObjectClass.GROUP.equals(oclass)) {
                             // see: http://msdn.microsoft.com/en-us/library/ms817827.aspx
-                            if (attrs.get("member;range=0-1499") != null) {
+                            javax.naming.directory.Attribute rangedMembers = ADRangedValues.getRangedAttribute(attrs, "member");
+                            if (rangedMembers != null) {
                                 // we're in the limitation
                                 Attribute range = AttributeBuilder.build("member", fetchGroupMembersByRange(conn, result));
                                 cob.addAttribute(range);
                                 if (conn.getConfiguration().isGetGroupMemberId()) {
-                                    cob.addAttribute(buildMemberIdAttribute(conn, range));
+                                    cob.addAttribute(buildMemberIdAttribute(memberIds, range));
                                 }
-                                attrs.remove("member;range=0-1499");
+                                attrs.remove(rangedMembers.getID());
                                 attrs.remove("member");
                             }
                             try {
@@ -183,33 +186,7 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
                         }
                         // Process Account specifics (ENABLE/PASSWORD_EXPIRED/LOCKOUT/accountExpires/pwdLastSet)
                         if (oclass.equals(ObjectClass.ACCOUNT)) {
-                            switch (conn.getServerType()) {
-                                case MSAD_GC:
-                                case MSAD:
-                                    if (attrs.get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR) != null) {
-                                        String uac = attrs.get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR).get().toString();
-                                        cob.addAttribute(AttributeBuilder.buildEnabled(!ADUserAccountControl.isAccountDisabled(uac)));
-                                        cob.addAttribute(AttributeBuilder.build(ADUserAccountControl.DONT_EXPIRE_PASSWORD_NAME, ADUserAccountControl.isDontExpirePassword(uac)));
-                                        cob.addAttribute(AttributeBuilder.build(ADUserAccountControl.PASSWORD_NOTREQD_NAME, ADUserAccountControl.isPasswordNotReq(uac)));
-                                        cob.addAttribute(AttributeBuilder.build(ADUserAccountControl.SMARTCARD_REQUIRED_NAME, ADUserAccountControl.isSmartCardRequired(uac)));
-                                    }
-                                    if (attrs.get(ADUserAccountControl.MSDS_USR_ACCT_CTRL_ATTR) != null) {
-                                        String uac2 = attrs.get(ADUserAccountControl.MSDS_USR_ACCT_CTRL_ATTR).get().toString();
-                                        cob.addAttribute(AttributeBuilder.buildLockOut(ADUserAccountControl.isAccountLockOut(uac2)));
-                                        cob.addAttribute(AttributeBuilder.buildPasswordExpired(ADUserAccountControl.isPasswordExpired(uac2)));
-                                    }
-                                    break;
-                                case MSAD_LDS:
-                                    if (attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED) != null) {
-                                        cob.addAttribute(AttributeBuilder.buildEnabled(!Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED).get().toString())));
-                                    } else if (attrs.get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED) != null) {
-                                        cob.addAttribute(AttributeBuilder.buildPasswordExpired(Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED).get().toString())));
-                                    } else if (attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED) != null) {
-                                        cob.addAttribute(AttributeBuilder.buildLockOut(Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED).get().toString())));
-                                    }
-                                    break;
-                                default:
-                            }
+                            ADUserAccountControl.addControlAttributes(cob, attrs, conn.getServerType());
                             if (attrs.get(ADUserAccountControl.ACCOUNT_EXPIRES) != null) {
                                 cob.addAttribute(ADLdapUtil.convertMSEpochToISO8601(attrs.get(ADUserAccountControl.ACCOUNT_EXPIRES)));
                                 attrs.remove(ADUserAccountControl.ACCOUNT_EXPIRES);
@@ -240,7 +217,7 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
                             }
                             cob.addAttribute(AttributeBuilder.build(id, values));
                             if (conn.getConfiguration().isGetGroupMemberId() && oclass.equals(ObjectClass.GROUP) && attr.getID().equalsIgnoreCase("member")) {
-                                cob.addAttribute(buildMemberIdAttribute(conn, attr));
+                                cob.addAttribute(buildMemberIdAttribute(memberIds, attr));
                             }
                         }
                         SyncDeltaBuilder syncDeltaBuilder = new SyncDeltaBuilder();
@@ -272,8 +249,7 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
             // ldapsearch -J 1.2.840.113556.1.4.417 -h xx -p 389 -b "dc=example,dc=com" -D "cn=administrator,cn=users,dc=example,dc=com" -w xx "&(isDeleted=TRUE)(uSNChanged>=528433)"
             if (conn.supportsControl(DELETE_CTRL)) {
                 try {
-                    Attributes rootAttrs = conn.getInitialContext().getAttributes("", new String[]{NAMING_CTX_ATTR});
-                    String defaultContext = getStringAttrValue(rootAttrs, NAMING_CTX_ATTR);
+                    String defaultContext = conn.getCapabilities().getDefaultNamingContext();
                     if (defaultContext != null) {
                         LdapContext context = conn.getInitialContext().newInstance(new Control[]{new BasicControl(DELETE_CTRL)});
                         NamingEnumeration<SearchResult> deleted = context.search(DELETED_PREFIX + defaultContext, generateUSNChangedFilter(oclass, token, true), controls);
@@ -372,8 +348,7 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
 
     private byte[] getDirSyncCookie() {
         try {
-            Attributes rootAttrs = conn.getInitialContext().getAttributes("", new String[]{NAMING_CTX_ATTR});
-            String defaultContext = getStringAttrValue(rootAttrs, NAMING_CTX_ATTR);
+            String defaultContext = conn.getCapabilities().getDefaultNamingContext();
 
             LdapContext ctx = conn.getInitialContext().newInstance(null);
             String searchFilter = "(|(objectClass=group)(objectclass=user))";
@@ -423,8 +398,7 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
         boolean hasMore = false;
 
         try {
-            Attributes rootAttrs = conn.getInitialContext().getAttributes("", new String[]{NAMING_CTX_ATTR});
-            String defaultContext = getStringAttrValue(rootAttrs, NAMING_CTX_ATTR);
+            String defaultContext = conn.getCapabilities().getDefaultNamingContext();
             LdapContext ctx = conn.getInitialContext().newInstance(null);
 
             do {
@@ -578,18 +552,7 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
 
         ConnectorObjectBuilder cob = new ConnectorObjectBuilder();
 
-        if (attrs.get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR) != null) {
-            String uac = attrs.get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR).get().toString();
-            cob.addAttribute(AttributeBuilder.buildEnabled(!ADUserAccountControl.isAccountDisabled(uac)));
-            cob.addAttribute(AttributeBuilder.build(ADUserAccountControl.DONT_EXPIRE_PASSWORD_NAME, ADUserAccountControl.isDontExpirePassword(uac)));
-            cob.addAttribute(AttributeBuilder.build(ADUserAccountControl.PASSWORD_NOTREQD_NAME, ADUserAccountControl.isPasswordNotReq(uac)));
-            cob.addAttribute(AttributeBuilder.build(ADUserAccountControl.SMARTCARD_REQUIRED_NAME, ADUserAccountControl.isSmartCardRequired(uac)));
-        }
-        if (attrs.get(ADUserAccountControl.MSDS_USR_ACCT_CTRL_ATTR) != null) {
-            String uac2 = attrs.get(ADUserAccountControl.MSDS_USR_ACCT_CTRL_ATTR).get().toString();
-            cob.addAttribute(AttributeBuilder.buildLockOut(ADUserAccountControl.isAccountLockOut(uac2)));
-            cob.addAttribute(AttributeBuilder.buildPasswordExpired(ADUserAccountControl.isPasswordExpired(uac2)));
-        }
+        ADUserAccountControl.addUserAccountControlAttributes(cob, attrs);
         if (attrs.get("parentGUID") != null) {
             // move/rename that was out of scope
             cob.addAttribute(AttributeBuilder.build("outOfScope", true));
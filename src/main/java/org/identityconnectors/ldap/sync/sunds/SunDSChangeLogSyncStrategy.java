@@ -49,6 +49,7 @@ import javax.naming.NamingException;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
 import javax.naming.ldap.LdapName;
 
 import org.identityconnectors.common.Base64;
@@ -130,7 +131,18 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
         return new SyncToken(getChangeLogAttributes().getLastChangeNumber());
     }
 
-    public void sync(SyncToken token, final SyncResultsHandler handler, final OperationOptions options) {
+    public void sync(SyncToken token, SyncResultsHandler handler, OperationOptions options) {
+        // Change numbers are local to each server, so the whole change log
+        // must be read from the same one: pin the write servers.
+        LdapContext pinned = conn.borrowContext();
+        try {
+            doSync(token, handler, options);
+        } finally {
+            conn.releaseContext(pinned);
+        }
+    }
+
+    private void doSync(SyncToken token, final SyncResultsHandler handler, final OperationOptions options) {
         String context = getChangeLogAttributes().getChangeLogContext();
         final String changeNumberAttr = getChangeNumberAttribute();
         SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
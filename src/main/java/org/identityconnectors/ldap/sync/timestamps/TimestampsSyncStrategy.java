@@ -62,11 +62,13 @@ import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
 import org.identityconnectors.ldap.ADGroupType;
 import org.identityconnectors.ldap.ADLdapUtil;
+import org.identityconnectors.ldap.ADRangedValues;
 import org.identityconnectors.ldap.ADUserAccountControl;
 import org.identityconnectors.ldap.LdapConnection;
 import org.identityconnectors.ldap.LdapConstants;
 import org.identityconnectors.ldap.LdapConstants.ServerType;
 import org.identityconnectors.ldap.LdapEntry;
+import org.identityconnectors.ldap.LdapMemberIdResolver;
 import org.identityconnectors.ldap.search.DefaultSearchStrategy;
 import org.identityconnectors.ldap.search.LdapInternalSearch;
 import org.identityconnectors.ldap.search.LdapSearchResultsHandler;
@@ -133,6 +135,7 @@ public class TimestampsSyncStrategy implements LdapSyncStrategy {
                 Arrays.asList(conn.getConfiguration().getBaseContextsToSynchronize()),
                 strategy, controls);
 
+        final LdapMemberIdResolver memberIds = new LdapMemberIdResolver(conn);
         try {
             search.execute(new LdapSearchResultsHandler() {
                 public boolean handle(String baseDN, SearchResult result) throws NamingException {
@@ -152,28 +155,7 @@ public class TimestampsSyncStrategy implements LdapSyncStrategy {
                     // Let's process AD specifics...
                     if (ADLdapUtil.isServerMSADFamily(server)) {
                         if (ObjectClass.ACCOUNT.equals(oclass)) {
-                            if (ServerType.MSAD_LDS.equals(server)) {
-                                if (attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED) != null) {
-                                    cob.addAttribute(AttributeBuilder.buildEnabled(!Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED).get().toString())));
-                                } else if (attrs.get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED) != null) {
-                                    cob.addAttribute(AttributeBuilder.buildPasswordExpired(Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED).get().toString())));
-                                } else if (attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED) != null) {
-                                    cob.addAttribute(AttributeBuilder.buildLockOut(Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED).get().toString())));
-                                }
-                            } else {
-                                if (attrs.get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR) != null) {
-                                    String uac = attrs.get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR).get().toString();
-                                    cob.addAttribute(AttributeBuilder.buildEnabled(!ADUserAccountControl.isAccountDisabled(uac)));
-                                    cob.addAttribute(AttributeBuilder.build(ADUserAccountControl.DONT_EXPIRE_PASSWORD_NAME, ADUserAccountControl.isDontExpirePassword(uac)));
-                                    cob.addAttribute(AttributeBuilder.build(ADUserAccountControl.PASSWORD_NOTREQD_NAME, ADUserAccountControl.isPasswordNotReq(uac)));
-                                    cob.addAttribute(AttributeBuilder.build(ADUserAccountControl.SMARTCARD_REQUIRED_NAME, ADUserAccountControl.isSmartCardRequired(uac)));
-                                }
-                                if (attrs.get(ADUserAccountControl.MSDS_USR_ACCT_CTRL_ATTR) != null) {
-                                    String uac2 = attrs.get(ADUserAccountControl.MSDS_USR_ACCT_CTRL_ATTR).get().toString();
-                                    cob.addAttribute(AttributeBuilder.buildLockOut(ADUserAccountControl.isAccountLockOut(uac2)));
-                                    cob.addAttribute(AttributeBuilder.buildPasswordExpired(ADUserAccountControl.isPasswordExpired(uac2)));
-                                }
-                            }
+                            ADUserAccountControl.addControlAttributes(cob, attrs, server);
                             if (attrs.get(ADUserAccountControl.ACCOUNT_EXPIRES) != null) {
                                 cob.addAttribute(ADLdapUtil.convertMSEpochToISO8601(attrs.get(ADUserAccountControl.ACCOUNT_EXPIRES)));
                                 attrs.remove(ADUserAccountControl.ACCOUNT_EXPIRES);
@@ -194,14 +176,15 @@ public class TimestampsSyncStrategy implements LdapSyncStrategy {
                         if (ObjectClass.GROUP.equals(oclass)) {
                             // Make sure we're not hitting AD large group issue
                             // see: http://msdn.microsoft.com/en-us/library/ms817827.aspx
-                            if (attrs.get("member;range=0-1499") != null) {
+                            javax.naming.directory.Attribute rangedMembers = ADRangedValues.getRangedAttribute(attrs, "member");
+                            if (rangedMembers != null) {
                                 // we're in the limitation
                                 Attribute range = AttributeBuilder.build("member", fetchGroupMembersByRange(conn, result));
                                 cob.addAttribute(range);
                                 if (conn.getConfiguration().isGetGroupMemberId()) {
-                                    cob.addAttribute(buildMemberIdAttribute(conn, range));
+                                    cob.addAttribute(buildMemberIdAttribute(memberIds, range));
                                 }
-                                attrs.remove("member;range=0-1499");
+                                attrs.remove(rangedMembers.getID());
                                 attrs.remove("member");
                             }
                             try {
@@ -232,7 +215,7 @@ public class TimestampsSyncStrategy implements LdapSyncStrategy {
                         }
                         if (conn.getConfiguration().isGetGroupMemberId() && ObjectClass.GROUP.equals(oclass)
                                 && id.equalsIgnoreCase(conn.getConfiguration().getGroupMemberAttribute())) {
-                            cob.addAttribute(buildMemberIdAttribute(conn, attr));
+                            cob.addAttribute(buildMemberIdAttribute(memberIds, attr));
                         }
                         cob.addAttribute(AttributeBuilder.build(id, values));
                     }
@@ -0,0 +1,245 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.testng.annotations.Test;
+
+public class ADRangedValuesTest {
+
+    @Test
+    public void testRangedAttribute() {
+        BasicAttributes attrs = new BasicAttributes(true);
+        attrs.put(new BasicAttribute("cn", "Admins"));
+        assertNull(ADRangedValues.getRangedAttribute(attrs, "member"));
+        attrs.put(new BasicAttribute("member;range=0-0", "cn=Gone,o=Acme"));
+        assertNull(ADRangedValues.getRangedAttribute(attrs, "member"));
+        attrs.put(new BasicAttribute("memberOf;range=0-4999", "cn=Group,o=Acme"));
+        assertNull(ADRangedValues.getRangedAttribute(attrs, "member"));
+        attrs.put(new BasicAttribute("Member;Range=0-4999", "cn=User0,o=Acme"));
+        assertEquals(ADRangedValues.getRangedAttribute(attrs, "member").getID(), "Member;Range=0-4999");
+    }
+
+    @Test
+    public void testRangesAreSizedAfterMaxValRange() {
+        for (boolean pipelined : new boolean[] { false, true }) {
+            TestConnection conn = new TestConnection(11, 4, pipelined);
+            ADRangedValues values = new ADRangedValues(conn, conn.createEntry(2), "member");
+            assertEquals(collect(values), conn.members);
+            // The first range comes with the entry.
+            assertEquals(conn.requests, Arrays.asList("member;range=2-5", "member;range=6-9", "member;range=10-13"));
+            assertEquals(conn.borrowed, 1);
+            assertEquals(conn.released, 1);
+        }
+    }
+
+    @Test
+    public void testServerMayReturnLessThanAsked() {
+        TestConnection conn = new TestConnection(7, 5, false);
+        conn.serverRange = 2;
+        List<Object> members = ADLdapUtil.fetchGroupMembersByRange(conn, conn.createEntry(2));
+        assertEquals(members, conn.members);
+        assertEquals(conn.requests, Arrays.asList("member;range=2-6", "member;range=4-8", "member;range=6-10"));
+    }
+
+    @Test
+    public void testCloseReleasesConnection() {
+        TestConnection conn = new TestConnection(100, 10, true);
+        ADRangedValues values = new ADRangedValues(conn, conn.createEntry(10), "member");
+        for (int i = 0; i < 15; i++) {
+            values.next();
+        }
+        values.close();
+        assertFalse(values.hasNext());
+        assertEquals(conn.released, 1);
+        // The range after the one being iterated over was read ahead.
+        assertEquals(conn.requests.size(), 2);
+    }
+
+    @Test
+    public void testAllValuesInFirstRange() {
+        TestConnection conn = new TestConnection(3, 10, true);
+        BasicAttributes attrs = new BasicAttributes(true);
+        BasicAttribute attr = new BasicAttribute("member;range=0-*");
+        for (Object member : conn.members) {
+            attr.add(member);
+        }
+        attrs.put(attr);
+        assertNotNull(ADRangedValues.getRangedAttribute(attrs, "member"));
+        SearchResult result = new SearchResult("cn=Admins", null, attrs);
+        result.setNameInNamespace("cn=Admins,o=Acme");
+        assertEquals(collect(new ADRangedValues(conn, LdapEntry.create(null, result), "member")), conn.members);
+        assertEquals(conn.borrowed, 0);
+    }
+
+    @Test
+    public void testFailedReadIsThrown() {
+        for (boolean pipelined : new boolean[] { false, true }) {
+            TestConnection conn = new TestConnection(11, 4, pipelined);
+            conn.failFrom = 6;
+            ADRangedValues values = new ADRangedValues(conn, conn.createEntry(2), "member");
+            List<Object> result = new ArrayList<Object>();
+            try {
+                while (values.hasNext()) {
+                    result.add(values.next());
+                }
+                fail();
+            } catch (ConnectorException e) {
+                assertEquals(e.getCause().getClass(), CommunicationException.class);
+            }
+            // The values read before the failure were returned, and the connection released.
+            assertEquals(result, conn.members.subList(0, 6));
+            assertEquals(conn.released, 1);
+        }
+    }
+
+    private static List<Object> collect(ADRangedValues values) {
+        List<Object> result = new ArrayList<Object>();
+        while (values.hasNext()) {
+            result.add(values.next());
+        }
+        return result;
+    }
+
+    private static final class TestConnection extends LdapConnection {
+
+        private static final Pattern RANGE = Pattern.compile("member;range=(\\d+)-(\\d+)");
+
+        private final List<Object> members = new ArrayList<Object>();
+        private final int maxValRange;
+        private final boolean pipelined;
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        private int serverRange = 1000;
+        private int failFrom = Integer.MAX_VALUE;
+        private int borrowed;
+        private int released;
+
+        TestConnection(int size, int maxValRange, boolean pipelined) {
+            super(new LdapConfiguration());
+            for (int i = 0; i < size; i++) {
+                members.add("cn=User" + i + ",o=Acme");
+            }
+            this.maxValRange = maxValRange;
+            this.pipelined = pipelined;
+        }
+
+        LdapEntry createEntry(int firstRangeSize) {
+            BasicAttributes attrs = new BasicAttributes(true);
+            attrs.put(range(0, firstRangeSize - 1));
+            SearchResult result = new SearchResult("cn=Admins", null, attrs);
+            result.setNameInNamespace("cn=Admins,o=Acme");
+            return LdapEntry.create(null, result);
+        }
+
+        private BasicAttribute range(int first, int last) {
+            last = Math.min(last, first + serverRange - 1);
+            boolean end = last >= members.size() - 1;
+            BasicAttribute attr = new BasicAttribute("member;range=" + first + "-" + (end ? "*" : String.valueOf(last)));
+            for (int i = first; i <= Math.min(last, members.size() - 1); i++) {
+                attr.add(members.get(i));
+            }
+            return attr;
+        }
+
+        @Override
+        public Map<String, Integer> getAdminLimits() {
+            return Collections.singletonMap("MaxValRange", maxValRange);
+        }
+
+        @Override
+        public boolean canSearchInOtherThreads() {
+            return pipelined;
+        }
+
+        @Override
+        public LdapContext borrowReadContext() {
+            borrowed++;
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { LdapContext.class },
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws NamingException {
+                            if ("search".equals(method.getName())) {
+                                return search(((SearchControls) args[2]).getReturningAttributes()[0]);
+                            }
+                            return null;
+                        }
+                    });
+        }
+
+        @Override
+        public void releaseContext(LdapContext ctx) {
+            released++;
+        }
+
+        private NamingEnumeration<SearchResult> search(String rangeAttr) throws NamingException {
+            requests.add(rangeAttr);
+            Matcher matcher = RANGE.matcher(rangeAttr);
+            matcher.matches();
+            if (Integer.parseInt(matcher.group(1)) >= failFrom) {
+                throw new CommunicationException("Server down");
+            }
+            BasicAttributes attrs = new BasicAttributes(true);
+            attrs.put(range(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+            final Iterator<SearchResult> iterator = Collections.singletonList(new SearchResult("", null, attrs)).iterator();
+            return new NamingEnumeration<SearchResult>() {
+                public boolean hasMore() {
+                    return iterator.hasNext();
+                }
+
+                public SearchResult next() {
+                    return iterator.next();
+                }
+
+                public boolean hasMoreElements() {
+                    return iterator.hasNext();
+                }
+
+                public SearchResult nextElement() {
+                    return iterator.next();
+                }
+
+                public void close() {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+import org.testng.annotations.Test;
+
+public class ADTokenGroupsFetcherTest {
+
+    @Test
+    public void testEntriesAreReadConcurrently() {
+        // Each read waits until two of them started.
+        final CountDownLatch started = new CountDownLatch(2);
+        TestConnection conn = new TestConnection(2, false) {
+            @Override
+            void beforeRead() throws InterruptedException {
+                started.countDown();
+                started.await(5, TimeUnit.SECONDS);
+            }
+        };
+        conn.addUser("cn=John,o=Acme", 512, 513);
+        conn.addUser("cn=Jane,o=Acme", 513);
+        ADTokenGroupsFetcher fetcher = new ADTokenGroupsFetcher(conn);
+        assertTrue(fetcher.isConcurrent());
+        fetcher.prefetch("cn=John,o=Acme");
+        fetcher.prefetch("cn=Jane,o=Acme");
+        assertEquals(fetcher.getTokenGroups("cn=John,o=Acme"), Arrays.asList(sid(512), sid(513)));
+        assertEquals(fetcher.getTokenGroups("cn=Jane,o=Acme"), Arrays.asList(sid(513)));
+        assertEquals(started.getCount(), 0L);
+        assertEquals(conn.reads, 2);
+    }
+
+    @Test
+    public void testEntriesAreReadInTurnWithoutThreads() {
+        TestConnection conn = new TestConnection(0, false);
+        conn.addUser("cn=John,o=Acme", 512);
+        ADTokenGroupsFetcher fetcher = new ADTokenGroupsFetcher(conn);
+        assertFalse(fetcher.isConcurrent());
+        fetcher.prefetch("cn=John,o=Acme");
+        assertEquals(conn.reads, 0);
+        assertEquals(fetcher.getTokenGroups("cn=John,o=Acme"), Arrays.asList(sid(512)));
+        assertEquals(conn.reads, 1);
+    }
+
+    @Test
+    public void testGroupsAsDNsAreResolvedOnce() {
+        TestConnection conn = new TestConnection(0, true);
+        conn.addGroup("cn=Admins,o=Acme", 512);
+        conn.addGroup("cn=Users,o=Acme", 513);
+        conn.addUser("cn=John,o=Acme", 512, 513, 999);
+        conn.addUser("cn=Jane,o=Acme", 513);
+        ADTokenGroupsFetcher fetcher = new ADTokenGroupsFetcher(conn);
+        // The SID of a group out of the base contexts is kept.
+        assertEquals(fetcher.getTokenGroups("cn=John,o=Acme"), Arrays.asList("cn=Admins,o=Acme", "cn=Users,o=Acme", sid(999)));
+        assertEquals(conn.filters, Arrays.asList("(|(objectSid=" + sid(512) + ")(objectSid=" + sid(513) + ")(objectSid=" + sid(999) + "))"));
+        assertEquals(fetcher.getTokenGroups("cn=Jane,o=Acme"), Arrays.asList("cn=Users,o=Acme"));
+        assertEquals(conn.filters.size(), 1);
+    }
+
+    private static String sid(int rid) {
+        return "S-1-5-21-" + rid;
+    }
+
+    private static byte[] sidBytes(int rid) {
+        return new byte[] { 1, 2, 0, 0, 0, 0, 0, 5, 21, 0, 0, 0,
+                (byte) rid, (byte) (rid >> 8), (byte) (rid >> 16), (byte) (rid >> 24) };
+    }
+
+    private static LdapConfiguration createConfiguration(int threads, boolean asDNs) {
+        LdapConfiguration config = new LdapConfiguration();
+        config.setBaseContexts("o=Acme");
+        config.setTokenGroupsThreads(threads);
+        config.setTokenGroupsAsDNs(asDNs);
+        return config;
+    }
+
+    private static class TestConnection extends LdapConnection {
+
+        private static final Pattern OBJECT_SID = Pattern.compile("\\(objectSid=([^)]*)\\)");
+
+        private final Map<String, List<Integer>> users = Collections.synchronizedMap(new HashMap<String, List<Integer>>());
+        private final Map<Integer, String> groups = new HashMap<Integer, String>();
+        private final List<String> filters = new ArrayList<String>();
+        private volatile int reads;
+
+        TestConnection(int threads, boolean asDNs) {
+            super(createConfiguration(threads, asDNs));
+        }
+
+        void beforeRead() throws InterruptedException {
+        }
+
+        void addUser(String dn, Integer... rids) {
+            users.put(dn, Arrays.asList(rids));
+        }
+
+        void addGroup(String dn, int rid) {
+            groups.put(rid, dn);
+        }
+
+        @Override
+        public boolean canSearchInOtherThreads() {
+            return true;
+        }
+
+        @Override
+        public LdapContext borrowReadContext() {
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { LdapContext.class },
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                            if ("getAttributes".equals(method.getName())) {
+                                return read((String) args[0]);
+                            }
+                            if ("search".equals(method.getName())) {
+                                return search((String) args[1]);
+                            }
+                            return null;
+                        }
+                    });
+        }
+
+        @Override
+        public void releaseContext(LdapContext ctx) {
+        }
+
+        private BasicAttributes read(String dn) throws InterruptedException {
+            beforeRead();
+            synchronized (this) {
+                reads++;
+            }
+            BasicAttribute attr = new BasicAttribute(LdapConstants.MS_TOKEN_GROUPS_ATTR);
+            for (int rid : users.get(dn)) {
+                attr.add(sidBytes(rid));
+            }
+            BasicAttributes attrs = new BasicAttributes(true);
+            attrs.put(attr);
+            return attrs;
+        }
+
+        private NamingEnumeration<SearchResult> search(String filter) {
+            filters.add(filter);
+            List<SearchResult> results = new ArrayList<SearchResult>();
+            Matcher matcher = OBJECT_SID.matcher(filter);
+            while (matcher.find()) {
+                String sid = matcher.group(1);
+                int rid = Integer.parseInt(sid.substring(sid.lastIndexOf('-') + 1));
+                String dn = groups.get(rid);
+                if (dn != null) {
+                    BasicAttributes attrs = new BasicAttributes(LdapConstants.MS_SID_ATTR, sidBytes(rid), true);
+                    SearchResult result = new SearchResult(dn.substring(0, dn.length() - ",o=Acme".length()), null, attrs);
+                    result.setNameInNamespace(dn);
+                    results.add(result);
+                }
+            }
+            final Iterator<SearchResult> iterator = results.iterator();
+            return new NamingEnumeration<SearchResult>() {
+                public boolean hasMore() {
+                    return iterator.hasNext();
+                }
+
+                public SearchResult next() {
+                    return iterator.next();
+                }
+
+                public boolean hasMoreElements() {
+                    return iterator.hasNext();
+                }
+
+                public SearchResult nextElement() {
+                    return iterator.next();
+                }
+
+                public void close() {
+                }
+            };
+        }
+    }
+}
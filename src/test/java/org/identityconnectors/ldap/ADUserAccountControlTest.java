@@ -0,0 +1,73 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static java.util.Collections.singletonList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import javax.naming.directory.BasicAttributes;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationalAttributes;
+import org.identityconnectors.ldap.LdapConstants.ServerType;
+import org.testng.annotations.Test;
+
+public class ADUserAccountControlTest {
+
+    @Test
+    public void testUserAccountControlFlags() throws Exception {
+        BasicAttributes attrs = new BasicAttributes(true);
+        attrs.put(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR, Integer.toString(ADUserAccountControl.NORMAL_ACCOUNT
+                | ADUserAccountControl.ACCOUNT_DISABLED | ADUserAccountControl.DONT_EXPIRE_PASSWORD));
+        attrs.put(ADUserAccountControl.MSDS_USR_ACCT_CTRL_ATTR, Integer.toString(ADUserAccountControl.LOCKOUT));
+        ConnectorObject object = build(attrs, ServerType.MSAD);
+        assertEquals(object.getAttributeByName(OperationalAttributes.ENABLE_NAME).getValue(), singletonList(false));
+        assertEquals(object.getAttributeByName(ADUserAccountControl.DONT_EXPIRE_PASSWORD_NAME).getValue(), singletonList(true));
+        assertEquals(object.getAttributeByName(ADUserAccountControl.PASSWORD_NOTREQD_NAME).getValue(), singletonList(false));
+        assertEquals(object.getAttributeByName(ADUserAccountControl.SMARTCARD_REQUIRED_NAME).getValue(), singletonList(false));
+        assertEquals(object.getAttributeByName(OperationalAttributes.LOCK_OUT_NAME).getValue(), singletonList(true));
+        assertEquals(object.getAttributeByName(OperationalAttributes.PASSWORD_EXPIRED_NAME).getValue(), singletonList(false));
+    }
+
+    @Test
+    public void testLdsControlAttributes() throws Exception {
+        BasicAttributes attrs = new BasicAttributes(true);
+        attrs.put(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED, "TRUE");
+        ConnectorObject object = build(attrs, ServerType.MSAD_LDS);
+        assertEquals(object.getAttributeByName(OperationalAttributes.ENABLE_NAME).getValue(), singletonList(false));
+        assertNull(object.getAttributeByName(OperationalAttributes.LOCK_OUT_NAME));
+    }
+
+    @Test
+    public void testNoControlAttributesOutsideActiveDirectory() throws Exception {
+        BasicAttributes attrs = new BasicAttributes(true);
+        attrs.put(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR, ADUserAccountControl.NORMAL_DISABLED);
+        ConnectorObject object = build(attrs, ServerType.OPENDJ);
+        assertNull(object.getAttributeByName(OperationalAttributes.ENABLE_NAME));
+    }
+
+    private static ConnectorObject build(BasicAttributes attrs, ServerType serverType) throws Exception {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setObjectClass(ObjectClass.ACCOUNT);
+        builder.setUid("john");
+        builder.setName("uid=john,o=Acme");
+        ADUserAccountControl.addControlAttributes(builder, attrs, serverType);
+        return builder.build();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.ldap.GroupHelper.GroupMembership;
+import org.testng.annotations.Test;
+
+public class GroupHelperTest {
+
+    @Test
+    public void testPosixGroupMembershipsAreSearchedAtOnce() {
+        TestConnection conn = createConnection();
+        Set<GroupMembership> memberships = new GroupHelper(conn).getPosixGroupMemberships(Arrays.asList("john", "jane", "nobody"));
+        assertEquals(conn.filters, Arrays.asList("(|(memberUid=john)(memberUid=jane)(memberUid=nobody))"));
+        assertEquals(memberships, new HashSet<GroupMembership>(Arrays.asList(
+                new GroupMembership("john", "cn=Admins,o=Acme"),
+                new GroupMembership("john", "cn=Users,o=Acme"),
+                new GroupMembership("jane", "cn=Users,o=Acme"))));
+    }
+
+    @Test
+    public void testPosixGroupsAreSearchedInChunks() {
+        TestConnection conn = createConnection();
+        List<String> refs = new ArrayList<String>();
+        for (int i = 0; i < GroupHelper.POSIX_GROUPS_CHUNK_SIZE; i++) {
+            refs.add("user" + i);
+        }
+        refs.add("jane");
+        List<String> groups = new GroupHelper(conn).getPosixGroups(refs);
+        assertEquals(conn.filters.size(), 2);
+        assertEquals(conn.filters.get(1), "(memberUid=jane)");
+        assertEquals(groups, Arrays.asList("cn=Users,o=Acme"));
+    }
+
+    @Test
+    public void testPrefetchedPosixGroupsAreNotSearched() {
+        TestConnection conn = createConnection();
+        GroupHelper helper = new GroupHelper(conn);
+        helper.prefetchPosixGroups(Arrays.asList("john", "jane"));
+        assertEquals(helper.getPosixGroups(Arrays.asList("jane")), Arrays.asList("cn=Users,o=Acme"));
+        assertEquals(helper.getPosixGroups(Arrays.asList("john")), Arrays.asList("cn=Admins,o=Acme", "cn=Users,o=Acme"));
+        assertTrue(helper.getPosixGroups(new ArrayList<String>()).isEmpty());
+        assertEquals(conn.filters.size(), 1);
+        // A reference which was not prefetched is searched.
+        assertEquals(helper.getPosixGroups(Arrays.asList("root")), Arrays.asList("cn=Admins,o=Acme"));
+        assertEquals(conn.filters.size(), 2);
+    }
+
+    @Test
+    public void testPosixGroupValuesDifferingInCase() {
+        TestConnection conn = createConnection();
+        Set<GroupMembership> memberships = new GroupHelper(conn).getPosixGroupMemberships(Arrays.asList("ROOT", "jane"));
+        assertEquals(memberships, new HashSet<GroupMembership>(Arrays.asList(
+                new GroupMembership("ROOT", "cn=Admins,o=Acme"),
+                new GroupMembership("jane", "cn=Users,o=Acme"))));
+        assertEquals(conn.filters.size(), 1);
+    }
+
+    private static TestConnection createConnection() {
+        TestConnection conn = new TestConnection();
+        conn.addGroup("cn=Admins,o=Acme", "root", "john");
+        conn.addGroup("cn=Users,o=Acme", "john", "jane");
+        return conn;
+    }
+
+    private static LdapConfiguration createConfiguration() {
+        LdapConfiguration config = new LdapConfiguration();
+        config.setBaseContexts("o=Acme");
+        return config;
+    }
+
+    private static final class TestConnection extends LdapConnection {
+
+        private static final Pattern MEMBER_UID = Pattern.compile("\\(memberUid=([^)]*)\\)");
+
+        private final List<SearchResult> groups = new ArrayList<SearchResult>();
+        private final List<String> filters = new ArrayList<String>();
+
+        TestConnection() {
+            super(createConfiguration());
+        }
+
+        void addGroup(String dn, String... memberUids) {
+            BasicAttribute attr = new BasicAttribute("memberUid");
+            for (String memberUid : memberUids) {
+                attr.add(memberUid);
+            }
+            SearchResult result = new SearchResult(dn.substring(0, dn.length() - ",o=Acme".length()), null, new BasicAttributes(true));
+            result.getAttributes().put(attr);
+            result.setNameInNamespace(dn);
+            groups.add(result);
+        }
+
+        @Override
+        public LdapContext borrowReadContext() {
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { LdapContext.class },
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                            if ("search".equals(method.getName())) {
+                                return search((String) args[1]);
+                            }
+                            return null;
+                        }
+                    });
+        }
+
+        @Override
+        public void releaseContext(LdapContext ctx) {
+        }
+
+        // Matches the memberUid values ignoring case, as a server may do.
+        private NamingEnumeration<SearchResult> search(String filter) throws NamingException {
+            filters.add(filter);
+            Set<String> wanted = new HashSet<String>();
+            Matcher matcher = MEMBER_UID.matcher(filter);
+            while (matcher.find()) {
+                wanted.add(matcher.group(1).toLowerCase(Locale.ENGLISH));
+            }
+            List<SearchResult> results = new ArrayList<SearchResult>();
+            for (SearchResult group : groups) {
+                Attribute attr = group.getAttributes().get("memberUid");
+                for (int i = 0; i < attr.size(); i++) {
+                    if (wanted.contains(attr.get(i).toString().toLowerCase(Locale.ENGLISH))) {
+                        results.add(group);
+                        break;
+                    }
+                }
+            }
+            final Iterator<SearchResult> iterator = results.iterator();
+            return new NamingEnumeration<SearchResult>() {
+                public boolean hasMore() {
+                    return iterator.hasNext();
+                }
+
+                public SearchResult next() {
+                    return iterator.next();
+                }
+
+                public boolean hasMoreElements() {
+                    return iterator.hasNext();
+                }
+
+                public SearchResult nextElement() {
+                    return iterator.next();
+                }
+
+                public void close() {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static java.util.Collections.singletonList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import javax.naming.CommunicationException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.PartialResultException;
+import javax.naming.directory.AttributeInUseException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.Connection;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.ErrorResultException;
+import org.forgerock.opendj.ldap.FutureResult;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.ldap.SearchResultHandler;
+import org.forgerock.opendj.ldap.controls.SimplePagedResultsControl;
+import org.forgerock.opendj.ldap.requests.SearchRequest;
+import org.forgerock.opendj.ldap.responses.Responses;
+import org.identityconnectors.ldap.search.LdapSearchResultsHandler;
+import org.testng.annotations.Test;
+
+public class LdapAsyncTransportTest {
+
+    private static final Executor DIRECT = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void testErrorResultsMapToJndiExceptions() {
+        assertMapsTo(ResultCode.NO_SUCH_OBJECT, NameNotFoundException.class);
+        assertMapsTo(ResultCode.ATTRIBUTE_OR_VALUE_EXISTS, AttributeInUseException.class);
+        assertMapsTo(ResultCode.REFERRAL, PartialResultException.class);
+        assertMapsTo(ResultCode.CLIENT_SIDE_SERVER_DOWN, CommunicationException.class);
+        assertMapsTo(ResultCode.OTHER, NamingException.class);
+    }
+
+    @Test
+    public void testCauseIsKept() {
+        ErrorResultException error = ErrorResultException.newErrorResult(ResultCode.NO_SUCH_OBJECT);
+        assertSame(LdapAsyncTransport.toNamingException(error).getCause(), error);
+    }
+
+    @Test(timeOut = 30000)
+    public void testHandlerCanReadEntriesWhileResultsAreBuffered() throws Exception {
+        final int count = LdapAsyncTransport.MAX_BUFFERED_RESULTS + 500;
+        // The thread reading the connection, which the replies to the nested
+        // reads come from.
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            final CountDownLatch nestedRead = new CountDownLatch(1);
+            final LdapAsyncTransport transport = new LdapAsyncTransport(new TestConnection(),
+                    createConnection(reader, count, nestedRead));
+            final List<String> read = new ArrayList<String>();
+            final int[] handled = { 0 };
+            transport.search(singletonList("o=Acme"), "(objectClass=*)", new SearchControls(), false,
+                    new LdapSearchResultsHandler() {
+                        public boolean handle(String baseDN, SearchResult result) throws NamingException {
+                            if (handled[0]++ == 0) {
+                                // Replied once all the results of the search were received.
+                                read.addAll(transport.readEntries(singletonList("uid=nested,o=Acme")).keySet());
+                            }
+                            return true;
+                        }
+                    });
+            assertEquals(handled[0], count);
+            assertEquals(read, singletonList("uid=nested,o=Acme"));
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPagesAreRequestedOnceTheHandlerCaughtUp() throws Exception {
+        final int pages = 3 * LdapAsyncTransport.MAX_BUFFERED_RESULTS / LdapAsyncTransport.SEARCH_PAGE_SIZE;
+        final List<Integer> buffered = new ArrayList<Integer>();
+        final int[] handled = { 0 };
+        Connection connection = (Connection) Proxy.newProxyInstance(LdapAsyncTransportTest.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                        SearchRequest request = (SearchRequest) args[0];
+                        SimplePagedResultsControl control = (SimplePagedResultsControl) request.getControls().get(0);
+                        int page = buffered.size();
+                        // The results received but not handled yet.
+                        buffered.add(page * LdapAsyncTransport.SEARCH_PAGE_SIZE - handled[0]);
+                        SearchResultHandler handler = (SearchResultHandler) args[2];
+                        for (int i = 0; i < control.getSize(); i++) {
+                            handler.handleEntry(Responses.newSearchResultEntry("uid=user" + page + "-" + i + ",o=Acme"));
+                        }
+                        String cookie = page + 1 < pages ? "page" + (page + 1) : "";
+                        handler.handleResult(Responses.newResult(ResultCode.SUCCESS).addControl(
+                                SimplePagedResultsControl.newControl(false, 0, ByteString.valueOf(cookie))));
+                        return submit(DIRECT, new Callable<Object>() {
+                            public Object call() {
+                                return null;
+                            }
+                        });
+                    }
+                });
+        TestConnection conn = new TestConnection();
+        conn.pagedResults = true;
+        new LdapAsyncTransport(conn, connection).search(singletonList("o=Acme"), "(objectClass=*)", new SearchControls(),
+                false, new LdapSearchResultsHandler() {
+                    public boolean handle(String baseDN, SearchResult result) {
+                        handled[0]++;
+                        return true;
+                    }
+                });
+        assertEquals(handled[0], pages * LdapAsyncTransport.SEARCH_PAGE_SIZE);
+        assertEquals(buffered.size(), pages);
+        for (int waiting : buffered) {
+            assertTrue(waiting < LdapAsyncTransport.MAX_BUFFERED_RESULTS);
+        }
+    }
+
+    /**
+     * Returns a connection whose searches return the given number of entries
+     * once a nested read was requested, and whose requests are all answered
+     * by the given thread, in order.
+     */
+    private static Connection createConnection(final ExecutorService reader, final int count,
+            final CountDownLatch nestedRead) {
+        return (Connection) Proxy.newProxyInstance(LdapAsyncTransportTest.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("searchAsync".equals(method.getName())) {
+                            final SearchResultHandler handler = (SearchResultHandler) args[2];
+                            return submit(reader, new Callable<Object>() {
+                                public Object call() throws Exception {
+                                    for (int i = 0; i < count; i++) {
+                                        handler.handleEntry(Responses.newSearchResultEntry("uid=user" + i + ",o=Acme"));
+                                        if (i == 0) {
+                                            nestedRead.await();
+                                        }
+                                    }
+                                    handler.handleResult(Responses.newResult(ResultCode.SUCCESS));
+                                    return null;
+                                }
+                            });
+                        }
+                        if ("readEntryAsync".equals(method.getName())) {
+                            final DN name = (DN) args[0];
+                            nestedRead.countDown();
+                            return submit(reader, new Callable<Object>() {
+                                public Object call() {
+                                    return Responses.newSearchResultEntry(name);
+                                }
+                            });
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static FutureResult<?> submit(Executor reader, Callable<Object> reply) {
+        final FutureTask<Object> task = new FutureTask<Object>(reply);
+        reader.execute(task);
+        return (FutureResult<?>) Proxy.newProxyInstance(LdapAsyncTransportTest.class.getClassLoader(),
+                new Class<?>[] { FutureResult.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("getRequestID".equals(method.getName())) {
+                            return 0;
+                        }
+                        try {
+                            return FutureTask.class.getMethod(method.getName(), method.getParameterTypes()).invoke(task, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+    private static final class TestConnection extends LdapConnection {
+
+        TestConnection() {
+            super(new LdapConfiguration());
+        }
+
+        private boolean pagedResults;
+
+        @Override
+        public boolean supportsControl(String oid) {
+            return pagedResults;
+        }
+    }
+
+    private static void assertMapsTo(ResultCode resultCode, Class<? extends NamingException> expected) {
+        NamingException e = LdapAsyncTransport.toNamingException(ErrorResultException.newErrorResult(resultCode));
+        assertEquals(e.getClass(), expected);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+
+import org.identityconnectors.ldap.LdapConstants.ServerType;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class LdapCapabilitiesTest {
+
+    @BeforeMethod
+    public void clearRegistry() {
+        LdapCapabilityRegistry.clear();
+    }
+
+    @Test
+    public void testDetectServerType() {
+        assertEquals(LdapCapabilities.detectServerType(attrs("vendorVersion", "OpenDJ Server 3.5.0"), 389), ServerType.OPENDJ);
+        assertEquals(LdapCapabilities.detectServerType(attrs("vendorName", "389 Project"), 389), ServerType.RHDS);
+        assertEquals(LdapCapabilities.detectServerType(attrs("structuralObjectClass", "OpenLDAProotDSE"), 389), ServerType.OPENLDAP);
+        assertEquals(LdapCapabilities.detectServerType(new BasicAttributes(true), 389), ServerType.UNKNOWN);
+
+        BasicAttributes ad = attrs("highestCommittedUSN", "12345");
+        assertEquals(LdapCapabilities.detectServerType(ad, 389), ServerType.MSAD_LDS);
+        ad.put("rootDomainNamingContext", "DC=example,DC=com");
+        assertEquals(LdapCapabilities.detectServerType(ad, 636), ServerType.MSAD);
+        assertEquals(LdapCapabilities.detectServerType(ad, 3268), ServerType.MSAD_GC);
+    }
+
+    @Test
+    public void testCreate() throws NamingException {
+        BasicAttributes rootDSE = attrs("vendorVersion", "OpenDJ Server 3.5.0");
+        BasicAttribute controls = new BasicAttribute("supportedControl");
+        controls.add("1.2.840.113556.1.4.319");
+        controls.add("2.16.840.1.113730.3.4.9");
+        rootDSE.put(controls);
+        BasicAttribute contexts = new BasicAttribute("namingContexts");
+        contexts.add("dc=example,dc=com");
+        contexts.add("cn=changelog");
+        rootDSE.put(contexts);
+        rootDSE.put("changeLog", "cn=changelog");
+
+        LdapCapabilities capabilities = LdapCapabilities.create(rootDSE, 389, 0);
+        assertEquals(capabilities.getServerType(), ServerType.OPENDJ);
+        assertTrue(capabilities.getSupportedControls().contains("1.2.840.113556.1.4.319"));
+        assertTrue(capabilities.getSupportedExtensions().isEmpty());
+        assertEquals(capabilities.getNamingContexts().size(), 2);
+        assertEquals(capabilities.getChangeLog(), "cn=changelog");
+        assertNull(capabilities.getDefaultNamingContext());
+        assertNull(capabilities.getAdminLimits());
+    }
+
+    @Test
+    public void testParseAdminLimit() {
+        Map<String, Integer> limits = new HashMap<String, Integer>();
+        LdapCapabilities.parseAdminLimit("MaxValRange=1500", limits);
+        LdapCapabilities.parseAdminLimit("MaxPageSize = 1000", limits);
+        LdapCapabilities.parseAdminLimit("MaxQueryDuration=abc", limits);
+        LdapCapabilities.parseAdminLimit("Garbage", limits);
+        assertEquals(limits.size(), 2);
+        assertEquals(limits.get("MaxValRange"), Integer.valueOf(1500));
+        assertEquals(limits.get("MaxPageSize"), Integer.valueOf(1000));
+    }
+
+    @Test
+    public void testRegistrySharesCapabilities() throws NamingException {
+        CountingLoader loader = new CountingLoader();
+        LdapCapabilities first = LdapCapabilityRegistry.get("ldap://host:389|cn=admin|simple", 60000, loader);
+        LdapCapabilities second = LdapCapabilityRegistry.get("ldap://host:389|cn=admin|simple", 60000, loader);
+        assertSame(second, first);
+        assertEquals(loader.count, 1);
+        assertSame(LdapCapabilityRegistry.peek("ldap://host:389|cn=admin|simple", 60000), first);
+
+        LdapCapabilityRegistry.get("ldap://host:389|cn=other|simple", 60000, loader);
+        assertEquals(loader.count, 2);
+    }
+
+    @Test
+    public void testRegistryReloadsStaleCapabilities() throws NamingException, InterruptedException {
+        CountingLoader loader = new CountingLoader();
+        LdapCapabilityRegistry.get("key", 1, loader);
+        Thread.sleep(10);
+        assertNull(LdapCapabilityRegistry.peek("key", 1));
+        LdapCapabilityRegistry.get("key", 1, loader);
+        assertEquals(loader.count, 2);
+
+        LdapCapabilityRegistry.invalidate("key");
+        LdapCapabilityRegistry.get("key", 60000, loader);
+        assertEquals(loader.count, 3);
+    }
+
+    private static BasicAttributes attrs(String name, String value) {
+        BasicAttributes result = new BasicAttributes(true);
+        result.put(name, value);
+        return result;
+    }
+
+    private static final class CountingLoader implements LdapCapabilityRegistry.Loader {
+
+        private int count;
+
+        public LdapCapabilities load() {
+            count++;
+            return LdapCapabilities.unknown();
+        }
+    }
+}
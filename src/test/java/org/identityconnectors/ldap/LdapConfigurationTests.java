@@ -287,6 +287,157 @@ public class LdapConfigurationTests {
         config.validate();
     }
 
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testConnectionPoolMaxSizeNotNegative() {
+        config.setConnectionPoolMaxSize(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testLoadBalancingPolicyIsValid() {
+        config.setLoadBalancingPolicy("random");
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testReadYourWritesWindowNotNegative() {
+        config.setReadYourWritesWindow(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testDnsSRVRecordCacheTimeoutNotNegative() {
+        config.setDnsSRVRecordCacheTimeout(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testHedgedReadPercentileBelow100() {
+        config.setHedgedReadPercentile(100);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testHedgedReadMinDelayNotNegative() {
+        config.setHedgedReadMinDelay(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testParallelSearchThreadsPositive() {
+        config.setParallelSearchThreads(0);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testSearchPipelineThreadsNotNegative() {
+        config.setSearchPipelineThreads(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testSearchPipelineQueueSizePositive() {
+        config.setSearchPipelineQueueSize(0);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testLdapGroupsIndexThresholdNotNegative() {
+        config.setLdapGroupsIndexThreshold(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testLdapGroupsIndexTimeoutNotNegative() {
+        config.setLdapGroupsIndexTimeout(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testTokenGroupsThreadsNotNegative() {
+        config.setTokenGroupsThreads(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testEntryDNCacheSizeNotNegative() {
+        config.setEntryDNCacheSize(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testEntryDNCacheTimeoutNotNegative() {
+        config.setEntryDNCacheTimeout(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testPagedResultsCheckpointsNotNegative() {
+        config.setPagedResultsCheckpoints(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testPagedResultsCheckpointsTimeoutNotNegative() {
+        config.setPagedResultsCheckpointsTimeout(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testSearchResultCacheSizeNotNegative() {
+        config.setSearchResultCacheSize(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testSearchResultCacheTimeoutNotNegative() {
+        config.setSearchResultCacheTimeout(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testFilterAttributeWeightsHaveWeight() {
+        config.setFilterAttributeWeights("mail=1", "uid");
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testFilterAttributeWeightsNotNegative() {
+        config.setFilterAttributeWeights("mail=-1");
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testFilterChunkSizeNotNegative() {
+        config.setFilterChunkSize(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testAuthenticationPoolMaxSizeNotNegative() {
+        config.setAuthenticationPoolMaxSize(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testRunAsCacheSizeNotNegative() {
+        config.setRunAsCacheSize(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testServerCapabilitiesCacheTimeoutNotNegative() {
+        config.setServerCapabilitiesCacheTimeout(-1);
+        config.validate();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testConnectionPoolMinSizeNotGreaterThanMaxSize() {
+        config.setConnectionPoolMaxSize(2);
+        config.setConnectionPoolMinSize(3);
+        config.validate();
+    }
+
     @Test
     public void testDefaultValues() {
         config = new LdapConfiguration();
@@ -325,6 +476,37 @@ public class LdapConfigurationTests {
         assertNull(config.getPasswordAttributeToSynchronize());
         assertNull(config.getPasswordDecryptionKey());
         assertNull(config.getPasswordDecryptionInitializationVector());
+        assertEquals(0, config.getConnectionPoolMaxSize());
+        assertEquals(0, config.getConnectionPoolMinSize());
+        assertEquals(600000, config.getServerCapabilitiesCacheTimeout());
+        assertEquals(0, config.getAuthenticationPoolMaxSize());
+        assertEquals("failover", config.getLoadBalancingPolicy());
+        assertEquals(30000, config.getServerEjectionTime());
+        assertEquals(0, config.getRunAsCacheSize());
+        assertEquals(60000, config.getRunAsCacheTimeout());
+        assertEquals(0, config.getReadServers().length);
+        assertEquals(0, config.getReadYourWritesWindow());
+        assertEquals(300000, config.getDnsSRVRecordCacheTimeout());
+        assertFalse(config.isWarmUpOnInit());
+        assertEquals(0, config.getHedgedReadPercentile());
+        assertEquals(10, config.getHedgedReadMinDelay());
+        assertEquals(1, config.getParallelSearchThreads());
+        assertEquals(0, config.getSearchPipelineThreads());
+        assertEquals(100, config.getSearchPipelineQueueSize());
+        assertEquals(0, config.getLdapGroupsIndexThreshold());
+        assertEquals(0, config.getLdapGroupsIndexTimeout());
+        assertEquals(0, config.getTokenGroupsThreads());
+        assertFalse(config.isTokenGroupsAsDNs());
+        assertEquals(0, config.getEntryDNCacheSize());
+        assertEquals(300000, config.getEntryDNCacheTimeout());
+        assertTrue(config.isVerifyCachedEntryDNs());
+        assertEquals(0, config.getPagedResultsCheckpoints());
+        assertEquals(60000, config.getPagedResultsCheckpointsTimeout());
+        assertFalse(config.isUseVlvForPagedResultsOffset());
+        assertEquals(0, config.getSearchResultCacheSize());
+        assertEquals(60000, config.getSearchResultCacheTimeout());
+        assertEquals(0, config.getFilterAttributeWeights().length);
+        assertEquals(500, config.getFilterChunkSize());
     }
 
     private static void assertCanValidate(LdapConfiguration config) {
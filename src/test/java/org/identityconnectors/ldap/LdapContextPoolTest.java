@@ -0,0 +1,224 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
+import org.testng.annotations.Test;
+
+public class LdapContextPoolTest {
+
+    @Test
+    public void testReleasedContextIsReused() {
+        TestFactory factory = new TestFactory();
+        LdapContextPool pool = new LdapContextPool(factory, 0, 2, 0, 0);
+        LdapContext first = pool.borrow();
+        pool.release(first);
+        LdapContext second = pool.borrow();
+        assertSame(second, first);
+        assertEquals(factory.created.size(), 1);
+        pool.release(second);
+        assertEquals(pool.getIdleCount(), 1);
+        assertEquals(pool.getActiveCount(), 0);
+    }
+
+    @Test
+    public void testPrefillOpensMinSize() {
+        TestFactory factory = new TestFactory();
+        LdapContextPool pool = new LdapContextPool(factory, 2, 4, 0, 0);
+        pool.prefill();
+        assertEquals(factory.created.size(), 2);
+        assertEquals(pool.getIdleCount(), 2);
+        LdapContext context = pool.borrow();
+        assertEquals(factory.created.size(), 2);
+        pool.release(context);
+        pool.prefill();
+        assertEquals(factory.created.size(), 2);
+    }
+
+    @Test
+    public void testNestedBorrowReturnsSameContext() {
+        TestFactory factory = new TestFactory();
+        LdapContextPool pool = new LdapContextPool(factory, 0, 1, 0, 0);
+        LdapContext outer = pool.borrow();
+        LdapContext inner = pool.borrow();
+        assertSame(inner, outer);
+        pool.release(inner);
+        assertEquals(pool.getActiveCount(), 1);
+        assertTrue(pool.hasLease());
+        pool.release(outer);
+        assertEquals(pool.getActiveCount(), 0);
+        assertFalse(pool.hasLease());
+        assertEquals(factory.created.size(), 1);
+    }
+
+    @Test
+    public void testOtherThreadGetsOwnContext() throws InterruptedException {
+        TestFactory factory = new TestFactory();
+        final LdapContextPool pool = new LdapContextPool(factory, 0, 2, 0, 0);
+        LdapContext mine = pool.borrow();
+        final AtomicReference<LdapContext> theirs = new AtomicReference<LdapContext>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                LdapContext ctx = pool.borrow();
+                theirs.set(ctx);
+                pool.release(ctx);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotSame(theirs.get(), mine);
+        pool.release(mine);
+        assertEquals(pool.getIdleCount(), 2);
+    }
+
+    @Test
+    public void testExhaustedPoolTimesOut() throws InterruptedException {
+        TestFactory factory = new TestFactory();
+        final LdapContextPool pool = new LdapContextPool(factory, 0, 1, 0, 50);
+        LdapContext mine = pool.borrow();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pool.borrow();
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertTrue(failure.get() instanceof ConnectionFailedException);
+        pool.release(mine);
+    }
+
+    @Test
+    public void testInvalidContextIsReplaced() {
+        TestFactory factory = new TestFactory();
+        LdapContextPool pool = new LdapContextPool(factory, 0, 1, 0, 0);
+        LdapContext first = pool.borrow();
+        pool.release(first);
+        factory.valid = false;
+        LdapContext second = pool.borrow();
+        assertNotSame(second, first);
+        assertTrue(factory.destroyed.contains(first));
+        pool.release(second);
+    }
+
+    @Test
+    public void testInvalidatedContextIsDestroyed() {
+        TestFactory factory = new TestFactory();
+        LdapContextPool pool = new LdapContextPool(factory, 0, 1, 0, 0);
+        LdapContext ctx = pool.borrow();
+        pool.invalidate(ctx);
+        assertTrue(factory.destroyed.contains(ctx));
+        assertEquals(pool.getIdleCount(), 0);
+        assertNotSame(pool.borrow(), ctx);
+    }
+
+    @Test
+    public void testIdleContextsAreEvictedDownToMinSize() throws InterruptedException {
+        TestFactory factory = new TestFactory();
+        final LdapContextPool pool = new LdapContextPool(factory, 1, 3, 1, 0);
+        final List<LdapContext> leased = new ArrayList<LdapContext>();
+        leased.add(pool.borrow());
+        for (int i = 0; i < 2; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    // Leases are per thread, so borrow from other threads to get distinct contexts.
+                    leased.add(pool.borrow());
+                }
+            };
+            thread.start();
+            thread.join();
+        }
+        for (LdapContext ctx : leased) {
+            pool.release(ctx);
+        }
+        assertEquals(pool.getIdleCount(), 3);
+        Thread.sleep(10);
+        pool.release(pool.borrow());
+        assertEquals(pool.getIdleCount(), 1);
+        assertEquals(factory.destroyed.size(), 2);
+    }
+
+    @Test
+    public void testCloseDestroysContexts() {
+        TestFactory factory = new TestFactory();
+        LdapContextPool pool = new LdapContextPool(factory, 0, 2, 0, 0);
+        LdapContext ctx = pool.borrow();
+        pool.close();
+        pool.release(ctx);
+        assertTrue(factory.destroyed.contains(ctx));
+        try {
+            pool.borrow();
+            fail();
+        } catch (RuntimeException e) {
+            // Expected.
+        }
+    }
+
+    private static final class TestFactory implements LdapContextPool.ContextFactory {
+
+        private final List<LdapContext> created = new ArrayList<LdapContext>();
+        private final List<LdapContext> destroyed = new ArrayList<LdapContext>();
+        private volatile boolean valid = true;
+
+        public synchronized LdapContext createContext() {
+            LdapContext ctx = (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { LdapContext.class }, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if ("hashCode".equals(method.getName())) {
+                                return System.identityHashCode(proxy);
+                            }
+                            if ("equals".equals(method.getName())) {
+                                return proxy == args[0];
+                            }
+                            return null;
+                        }
+                    });
+            created.add(ctx);
+            return ctx;
+        }
+
+        public boolean validateContext(LdapContext context) {
+            return valid;
+        }
+
+        public synchronized void destroyContext(LdapContext context) {
+            destroyed.add(context);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.common.Pair;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.ldap.LdapConnection.AuthenticationResult;
+import org.identityconnectors.ldap.LdapConnection.AuthenticationResultType;
+import org.testng.annotations.Test;
+
+public class LdapContextRouterTest {
+
+    private static final String A = "ldap://a:389";
+    private static final String B = "ldap://b:389";
+    private static final String READ = "ldap://read:389";
+
+    @Test
+    public void testReadContextsAreOpenedToTheReadServers() {
+        LdapConfiguration config = newConfiguration();
+        config.setReadServers(READ);
+        TestConnector connector = new TestConnector();
+        LdapContextRouter router = new LdapContextRouter(config, connector);
+        LdapContext read = router.borrowReadContext();
+        assertEquals(connector.getUrls(read), READ);
+        router.releaseContext(read);
+        LdapContext write = router.borrowContext();
+        assertEquals(connector.getUrls(write), A);
+        // Reads made while holding a context to the write servers see the writes.
+        assertSame(router.borrowReadContext(), write);
+        router.releaseContext(write);
+        router.releaseContext(write);
+    }
+
+    @Test
+    public void testFailoverGivesAllServersToTheConnector() {
+        LdapConfiguration config = newConfiguration();
+        config.setLoadBalancingPolicy("failover");
+        TestConnector connector = new TestConnector();
+        LdapContextRouter router = new LdapContextRouter(config, connector);
+        LdapContext ctx = router.borrowContext();
+        assertEquals(connector.getUrls(ctx), A + " " + B);
+        router.releaseContext(ctx);
+    }
+
+    @Test
+    public void testHedgeContextIsOpenedToAnotherServer() throws InterruptedException {
+        LdapConfiguration config = newConfiguration();
+        TestConnector connector = new TestConnector();
+        final LdapContextRouter router = new LdapContextRouter(config, connector);
+        final LdapContext primary = router.borrowContext();
+        // The hedged copy of a read is made by a thread holding no lease.
+        final LdapContext[] hedge = new LdapContext[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                hedge[0] = router.borrowHedgeContext(primary);
+                router.releaseContext(hedge[0]);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotSame(hedge[0], primary);
+        assertFalse(connector.getUrls(hedge[0]).equals(connector.getUrls(primary)));
+        router.releaseContext(primary);
+    }
+
+    @Test
+    public void testAbandonedContextIsClosed() {
+        TestConnector connector = new TestConnector();
+        LdapContextRouter router = new LdapContextRouter(newConfiguration(), connector);
+        LdapContext first = router.borrowContext();
+        router.abandonContext(first);
+        assertTrue(connector.closed.contains(first));
+        assertFalse(router.isLeased(first));
+        LdapContext second = router.borrowContext();
+        assertNotSame(second, first);
+        router.releaseContext(second);
+    }
+
+    @Test
+    public void testStreamingThreadDoesNotSearchInOtherThreads() {
+        TestConnector connector = new TestConnector();
+        LdapContextRouter router = new LdapContextRouter(newConfiguration(), connector);
+        assertTrue(router.canSearchInOtherThreads());
+        router.beginStreaming();
+        router.beginStreaming();
+        router.endStreaming();
+        assertFalse(router.canSearchInOtherThreads());
+        router.endStreaming();
+        assertTrue(router.canSearchInOtherThreads());
+        LdapContext ctx = router.borrowContext();
+        assertFalse(router.canSearchInOtherThreads());
+        router.releaseContext(ctx);
+    }
+
+    @Test
+    public void testCloseClosesIdleContexts() {
+        TestConnector connector = new TestConnector();
+        LdapContextRouter router = new LdapContextRouter(newConfiguration(), connector);
+        LdapContext ctx = router.borrowContext();
+        router.releaseContext(ctx);
+        router.close();
+        assertTrue(connector.closed.contains(ctx));
+    }
+
+    private static LdapConfiguration newConfiguration() {
+        LdapConfiguration config = new LdapConfiguration();
+        config.setHost("a");
+        config.setPort(389);
+        config.setFailover(B);
+        config.setLoadBalancingPolicy("round-robin");
+        config.setConnectionPoolMaxSize(2);
+        return config;
+    }
+
+    private static final class TestConnector implements LdapContextRouter.Connector {
+
+        private final Map<LdapContext, String> urls = new IdentityHashMap<LdapContext, String>();
+        private final List<LdapContext> closed = new ArrayList<LdapContext>();
+
+        public synchronized Pair<AuthenticationResult, LdapContext> connect(String urls, String principal, GuardedString credentials) {
+            LdapContext ctx = newContext();
+            this.urls.put(ctx, urls);
+            return new Pair<AuthenticationResult, LdapContext>(new AuthenticationResult(AuthenticationResultType.SUCCESS), ctx);
+        }
+
+        public synchronized LdapContext connectForBinds(String urls) {
+            LdapContext ctx = newContext();
+            this.urls.put(ctx, urls);
+            return ctx;
+        }
+
+        public LdapContext connectWithSasl() {
+            throw new UnsupportedOperationException();
+        }
+
+        public synchronized void close(LdapContext context) {
+            closed.add(context);
+        }
+
+        synchronized String getUrls(LdapContext context) {
+            return urls.get(context);
+        }
+
+        private static LdapContext newContext() {
+            return (LdapContext) Proxy.newProxyInstance(LdapContextRouterTest.class.getClassLoader(),
+                    new Class<?>[] { LdapContext.class }, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if ("hashCode".equals(method.getName())) {
+                                return System.identityHashCode(proxy);
+                            }
+                            if ("equals".equals(method.getName())) {
+                                return proxy == args[0];
+                            }
+                            // Answers the liveness check.
+                            return null;
+                        }
+                    });
+        }
+    }
+}
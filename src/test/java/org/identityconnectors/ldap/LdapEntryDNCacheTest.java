@@ -0,0 +1,72 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.testng.annotations.Test;
+
+public class LdapEntryDNCacheTest {
+
+    @Test
+    public void testDNsAreKeyedByObjectClassAndUid() {
+        LdapEntryDNCache cache = new LdapEntryDNCache(10, 60000);
+        cache.put(ObjectClass.ACCOUNT, new Uid("1"), "uid=john,o=Acme");
+        cache.put(ObjectClass.GROUP, new Uid("1"), "cn=Admins,o=Acme");
+        assertEquals(cache.get(ObjectClass.ACCOUNT, new Uid("1")), "uid=john,o=Acme");
+        assertEquals(cache.get(ObjectClass.GROUP, new Uid("1")), "cn=Admins,o=Acme");
+        assertNull(cache.get(ObjectClass.ACCOUNT, new Uid("2")));
+
+        cache.invalidate(ObjectClass.ACCOUNT, new Uid("1"));
+        assertNull(cache.get(ObjectClass.ACCOUNT, new Uid("1")));
+        assertEquals(cache.get(ObjectClass.GROUP, new Uid("1")), "cn=Admins,o=Acme");
+    }
+
+    @Test
+    public void testLeastRecentlyUsedDNIsDiscarded() {
+        LdapEntryDNCache cache = new LdapEntryDNCache(2, 60000);
+        cache.put(ObjectClass.ACCOUNT, new Uid("1"), "uid=user1,o=Acme");
+        cache.put(ObjectClass.ACCOUNT, new Uid("2"), "uid=user2,o=Acme");
+        cache.get(ObjectClass.ACCOUNT, new Uid("1"));
+        cache.put(ObjectClass.ACCOUNT, new Uid("3"), "uid=user3,o=Acme");
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.get(ObjectClass.ACCOUNT, new Uid("1")), "uid=user1,o=Acme");
+        assertNull(cache.get(ObjectClass.ACCOUNT, new Uid("2")));
+    }
+
+    @Test
+    public void testDNsExpire() throws InterruptedException {
+        LdapEntryDNCache cache = new LdapEntryDNCache(10, 20);
+        cache.put(ObjectClass.ACCOUNT, new Uid("1"), "uid=john,o=Acme");
+        Thread.sleep(40);
+        assertNull(cache.get(ObjectClass.ACCOUNT, new Uid("1")));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testDisabledCache() {
+        for (LdapEntryDNCache cache : new LdapEntryDNCache[] { new LdapEntryDNCache(0, 60000), new LdapEntryDNCache(10, 0) }) {
+            assertFalse(cache.isEnabled());
+            cache.put(ObjectClass.ACCOUNT, new Uid("1"), "uid=john,o=Acme");
+            assertNull(cache.get(ObjectClass.ACCOUNT, new Uid("1")));
+            assertEquals(cache.size(), 0);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+import org.testng.annotations.Test;
+
+public class LdapGroupIndexTest {
+
+    @Test
+    public void testNormalize() {
+        assertEquals(LdapGroupIndex.normalize("UID=John,ou=People, o=Acme"), "uid=john,ou=people,o=acme");
+        assertEquals(LdapGroupIndex.normalize("cn=Smith\\2C John,o=Acme"), LdapGroupIndex.normalize("CN=smith\\, john,O=ACME"));
+        assertEquals(LdapGroupIndex.normalize("cn=a+sn=b,o=Acme"), LdapGroupIndex.normalize("sn=b+cn=a,o=Acme"));
+    }
+
+    @Test
+    public void testGroupsOfMembers() {
+        TestConnection conn = new TestConnection();
+        conn.addGroup("cn=Admins,ou=Groups,o=Acme", "uid=root,ou=People,o=Acme", "UID=John,ou=People,o=Acme");
+        conn.addGroup("cn=Users,ou=Groups,o=Acme", "uid=john, ou=people, o=acme", "uid=jane,ou=People,o=Acme");
+        conn.addGroup("cn=Empty,ou=Groups,o=Acme");
+        LdapGroupIndex index = LdapGroupIndex.build(conn, "uniqueMember");
+        assertEquals(conn.filters, Arrays.asList("(uniqueMember=*)"));
+        assertEquals(index.getGroups("uid=john,ou=People,o=Acme"),
+                Arrays.asList("cn=Admins,ou=Groups,o=Acme", "cn=Users,ou=Groups,o=Acme"));
+        assertEquals(index.getGroups("uid=jane,ou=People,o=Acme"), Arrays.asList("cn=Users,ou=Groups,o=Acme"));
+        assertTrue(index.getGroups("uid=nobody,ou=People,o=Acme").isEmpty());
+    }
+
+    @Test
+    public void testMemberListedTwice() {
+        TestConnection conn = new TestConnection();
+        conn.addGroup("cn=Admins,ou=Groups,o=Acme", "uid=root,ou=People,o=Acme", "UID=ROOT,ou=People,o=Acme");
+        LdapGroupIndex index = LdapGroupIndex.build(conn, "uniqueMember");
+        assertEquals(index.getGroups("uid=root,ou=People,o=Acme"), Arrays.asList("cn=Admins,ou=Groups,o=Acme"));
+    }
+
+    private static LdapConfiguration createConfiguration() {
+        LdapConfiguration config = new LdapConfiguration();
+        config.setBaseContexts("o=Acme");
+        return config;
+    }
+
+    private static final class TestConnection extends LdapConnection {
+
+        private final List<SearchResult> groups = new ArrayList<SearchResult>();
+        private final List<String> filters = new ArrayList<String>();
+
+        TestConnection() {
+            super(createConfiguration());
+        }
+
+        void addGroup(String dn, String... members) {
+            BasicAttributes attrs = new BasicAttributes(true);
+            BasicAttribute attr = new BasicAttribute("uniqueMember");
+            for (String member : members) {
+                attr.add(member);
+            }
+            if (members.length > 0) {
+                attrs.put(attr);
+            }
+            SearchResult result = new SearchResult(dn.substring(0, dn.length() - ",o=Acme".length()), null, attrs);
+            result.setNameInNamespace(dn);
+            groups.add(result);
+        }
+
+        @Override
+        public boolean supportsControl(String oid) {
+            return false;
+        }
+
+        @Override
+        public LdapContext borrowReadContext() {
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { LdapContext.class },
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if ("search".equals(method.getName())) {
+                                return search((String) args[1]);
+                            }
+                            return null;
+                        }
+                    });
+        }
+
+        @Override
+        public void releaseContext(LdapContext ctx) {
+        }
+
+        // Returns the groups which have members.
+        private NamingEnumeration<SearchResult> search(String filter) {
+            filters.add(filter);
+            List<SearchResult> results = new ArrayList<SearchResult>();
+            for (SearchResult group : groups) {
+                if (group.getAttributes().size() > 0) {
+                    results.add(group);
+                }
+            }
+            final Iterator<SearchResult> iterator = results.iterator();
+            return new NamingEnumeration<SearchResult>() {
+                public boolean hasMore() {
+                    return iterator.hasNext();
+                }
+
+                public SearchResult next() {
+                    return iterator.next();
+                }
+
+                public boolean hasMoreElements() {
+                    return iterator.hasNext();
+                }
+
+                public SearchResult nextElement() {
+                    return iterator.next();
+                }
+
+                public void close() {
+                }
+            };
+        }
+    }
+}
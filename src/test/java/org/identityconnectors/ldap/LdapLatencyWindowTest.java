@@ -0,0 +1,54 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+public class LdapLatencyWindowTest {
+
+    @Test
+    public void testNoPercentileBeforeMinSamples() {
+        LdapLatencyWindow window = new LdapLatencyWindow(10, 3);
+        window.record(5);
+        window.record(7);
+        assertEquals(window.getPercentile(50), -1L);
+        window.record(9);
+        assertEquals(window.getPercentile(50), 7L);
+    }
+
+    @Test
+    public void testPercentile() {
+        LdapLatencyWindow window = new LdapLatencyWindow(100, 1);
+        for (int i = 100; i >= 1; i--) {
+            window.record(i);
+        }
+        assertEquals(window.getPercentile(95), 95L);
+        assertEquals(window.getPercentile(99), 99L);
+        assertEquals(window.getPercentile(1), 1L);
+    }
+
+    @Test
+    public void testOldestSamplesReplaced() {
+        LdapLatencyWindow window = new LdapLatencyWindow(3, 1);
+        window.record(1000);
+        window.record(1);
+        window.record(2);
+        window.record(3);
+        assertEquals(window.getPercentile(99), 3L);
+    }
+}
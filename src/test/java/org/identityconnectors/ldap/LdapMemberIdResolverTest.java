@@ -0,0 +1,187 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+
+import org.testng.annotations.Test;
+
+public class LdapMemberIdResolverTest {
+
+    @Test
+    public void testMembersAreSearchedByParentInChunks() throws Exception {
+        TestConnection conn = new TestConnection("uid");
+        for (String uid : new String[] { "a", "b", "c", "d", "e" }) {
+            conn.add("uid=" + uid + ",ou=People,o=Acme", uid);
+        }
+        conn.add("uid=root,ou=Admins,o=Acme", "root");
+        LdapMemberIdResolver resolver = new LdapMemberIdResolver(conn, 3, 100);
+        List<String> ids = resolver.resolve(Arrays.asList("uid=a,ou=People,o=Acme", "uid=root,ou=Admins,o=Acme",
+                "uid=b,ou=People,o=Acme", "uid=c,ou=People,o=Acme", "uid=d,ou=People,o=Acme"));
+        assertEquals(ids, Arrays.asList("a", "root", "b", "c", "d"));
+        // Two chunks under ou=People, one under ou=Admins.
+        assertEquals(conn.filters, Arrays.asList("(|(uid=a)(uid=b)(uid=c))", "(uid=d)", "(uid=root)"));
+        assertEquals(conn.reads, 0);
+    }
+
+    @Test
+    public void testResolvedMembersAreRemembered() throws Exception {
+        TestConnection conn = new TestConnection("uid");
+        conn.add("uid=a,ou=People,o=Acme", "a");
+        conn.add("uid=b,ou=People,o=Acme", "b");
+        LdapMemberIdResolver resolver = new LdapMemberIdResolver(conn);
+        resolver.resolve(Arrays.asList("uid=a,ou=People,o=Acme", "uid=b,ou=People,o=Acme"));
+        List<String> ids = resolver.resolve(Arrays.asList("UID=B, ou=people,o=acme", "uid=a,ou=People,o=Acme"));
+        assertEquals(ids, Arrays.asList("b", "a"));
+        assertEquals(conn.filters.size(), 1);
+    }
+
+    @Test
+    public void testMembersNotFoundAreReadOnTheirOwn() throws Exception {
+        TestConnection conn = new TestConnection("uid");
+        conn.add("uid=a,ou=People,o=Acme", "a");
+        LdapMemberIdResolver resolver = new LdapMemberIdResolver(conn);
+        List<String> ids = resolver.resolve(Arrays.asList("uid=a,ou=People,o=Acme", "uid=gone,ou=People,o=Acme"));
+        // The member which does not exist is left out.
+        assertEquals(ids, Arrays.asList("a"));
+        assertEquals(conn.reads, 1);
+    }
+
+    @Test
+    public void testDNUidIsNotSearched() throws Exception {
+        TestConnection conn = new TestConnection("entryDN");
+        List<String> ids = new LdapMemberIdResolver(conn).resolve(Arrays.asList("uid=a,ou=People,o=Acme"));
+        assertEquals(ids, Arrays.asList("uid=a,ou=People,o=Acme"));
+        assertTrue(conn.filters.isEmpty());
+    }
+
+    private static LdapConfiguration createConfiguration(String uidAttribute) {
+        LdapConfiguration config = new LdapConfiguration();
+        config.setUidAttribute(uidAttribute);
+        return config;
+    }
+
+    private static final class TestConnection extends LdapConnection {
+
+        private final Map<LdapName, String> entries = new LinkedHashMap<LdapName, String>();
+        private final List<String> filters = new ArrayList<String>();
+        private int reads;
+
+        TestConnection(String uidAttribute) {
+            super(createConfiguration(uidAttribute));
+        }
+
+        void add(String dn, String uid) throws Exception {
+            entries.put(new LdapName(dn), uid);
+        }
+
+        @Override
+        public LdapContext getInitialContext() {
+            return createContext();
+        }
+
+        @Override
+        public LdapContext borrowReadContext() {
+            return createContext();
+        }
+
+        @Override
+        public void releaseContext(LdapContext ctx) {
+        }
+
+        private LdapContext createContext() {
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { LdapContext.class },
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                            if ("search".equals(method.getName())) {
+                                return search(new LdapName((String) args[0]), (String) args[1]);
+                            }
+                            if ("getAttributes".equals(method.getName())) {
+                                return read(new LdapName((String) args[0]));
+                            }
+                            return null;
+                        }
+                    });
+        }
+
+        // Returns all the children, the resolver only keeps those it asked for.
+        private NamingEnumeration<SearchResult> search(LdapName parent, String filter) {
+            filters.add(filter);
+            List<SearchResult> results = new ArrayList<SearchResult>();
+            for (Map.Entry<LdapName, String> entry : entries.entrySet()) {
+                LdapName dn = entry.getKey();
+                if (dn.size() == parent.size() + 1 && dn.startsWith(parent)) {
+                    SearchResult result = new SearchResult(dn.getRdn(dn.size() - 1).toString(), null, attributes(entry.getValue()));
+                    result.setNameInNamespace(dn.toString());
+                    results.add(result);
+                }
+            }
+            final Iterator<SearchResult> iterator = results.iterator();
+            return new NamingEnumeration<SearchResult>() {
+                public boolean hasMore() {
+                    return iterator.hasNext();
+                }
+
+                public SearchResult next() {
+                    return iterator.next();
+                }
+
+                public boolean hasMoreElements() {
+                    return iterator.hasNext();
+                }
+
+                public SearchResult nextElement() {
+                    return iterator.next();
+                }
+
+                public void close() {
+                }
+            };
+        }
+
+        private Attributes read(LdapName dn) throws NameNotFoundException {
+            reads++;
+            String uid = entries.get(dn);
+            if (uid == null) {
+                throw new NameNotFoundException(dn.toString());
+            }
+            return attributes(uid);
+        }
+
+        private Attributes attributes(String uid) {
+            return new BasicAttributes(getConfiguration().getUidAttribute(), uid, true);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class LdapRecentWritesTest {
+
+    @Test
+    public void testMentionedIgnoringCase() {
+        LdapRecentWrites writes = new LdapRecentWrites(60000, 10);
+        writes.record("uid=bugs.bunny,ou=People,o=Acme", "bugs.bunny");
+        assertTrue(writes.isMentionedIn("(uid=Bugs.Bunny)"));
+        assertTrue(writes.isMentionedIn("UID=BUGS.BUNNY,OU=PEOPLE,O=ACME"));
+        assertFalse(writes.isMentionedIn("(uid=daffy.duck)"));
+        assertFalse(writes.isMentionedIn(null));
+    }
+
+    @Test
+    public void testWholeValuesMatched() {
+        LdapRecentWrites writes = new LdapRecentWrites(60000, 10);
+        writes.record("uid=john,ou=People,o=Acme", "john");
+        assertFalse(writes.isMentionedIn("(uid=jo)"));
+        assertFalse(writes.isMentionedIn("(uid=johnny)"));
+        assertFalse(writes.isMentionedIn("uid=jo,ou=People,o=Acme"));
+        assertFalse(writes.isMentionedIn("ou=People,o=Acme"));
+        assertTrue(writes.isMentionedIn("(&(objectClass=person)(|(uid=jane)(uid=John)))"));
+        assertTrue(writes.isMentionedIn("(uid=jo*)"));
+        assertFalse(writes.isMentionedIn("(uid=ja*)"));
+        assertFalse(writes.isMentionedIn("(uid=*)"));
+    }
+
+    @Test
+    public void testDNsNormalized() {
+        LdapRecentWrites writes = new LdapRecentWrites(60000, 10);
+        writes.record("uid=john, ou=People, o=Acme");
+        assertTrue(writes.isMentionedIn("UID=John,OU=People,O=Acme"));
+        assertTrue(writes.isMentionedIn("cn=Mail,uid=john,ou=People,o=Acme"));
+        assertTrue(writes.isMentionedIn("(member=uid=john,ou=people,o=acme)"));
+        assertFalse(writes.isMentionedIn("(member=uid=john,ou=Groups,o=Acme)"));
+    }
+
+    @Test
+    public void testEscapedValuesMatched() {
+        LdapRecentWrites writes = new LdapRecentWrites(60000, 10);
+        writes.record("cn=Doe\\, John,o=Acme", "a*b");
+        assertTrue(writes.isMentionedIn("(uid=a\\2ab)"));
+        assertTrue(writes.isMentionedIn("(member=cn=Doe\\5c, John,o=Acme)"));
+    }
+
+    @Test
+    public void testDisabled() {
+        LdapRecentWrites writes = new LdapRecentWrites(0, 10);
+        assertFalse(writes.isEnabled());
+        writes.record("bugs.bunny");
+        assertFalse(writes.isMentionedIn("(uid=bugs.bunny)"));
+    }
+
+    @Test
+    public void testExpires() throws Exception {
+        LdapRecentWrites writes = new LdapRecentWrites(50, 10);
+        writes.record("bugs.bunny");
+        assertTrue(writes.isMentionedIn("(uid=bugs.bunny)"));
+        Thread.sleep(100);
+        assertFalse(writes.isMentionedIn("(uid=bugs.bunny)"));
+    }
+
+    @Test
+    public void testOldestForgottenFirst() {
+        LdapRecentWrites writes = new LdapRecentWrites(60000, 2);
+        writes.record("first");
+        writes.record("second");
+        writes.record("third");
+        assertFalse(writes.isMentionedIn("(uid=first)"));
+        assertTrue(writes.isMentionedIn("(uid=second)"));
+        assertTrue(writes.isMentionedIn("(uid=third)"));
+    }
+}
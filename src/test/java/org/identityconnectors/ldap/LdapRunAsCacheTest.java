@@ -0,0 +1,178 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.testng.annotations.Test;
+
+public class LdapRunAsCacheTest {
+
+    private static final String DN = "uid=admin,ou=people,dc=example,dc=com";
+
+    @Test
+    public void testContextIsReusedWithSamePassword() {
+        TestOpener opener = new TestOpener();
+        LdapRunAsCache cache = new LdapRunAsCache(opener, 10, 60000);
+        LdapContext first = cache.borrow(DN, password("secret"));
+        cache.release(first);
+        LdapContext second = cache.borrow(DN, password("secret"));
+        assertSame(second, first);
+        assertEquals(opener.opened.size(), 1);
+        cache.release(second);
+        assertEquals(cache.getIdleCount(), 1);
+    }
+
+    @Test
+    public void testContextIsNotReusedWithOtherPassword() {
+        TestOpener opener = new TestOpener();
+        LdapRunAsCache cache = new LdapRunAsCache(opener, 10, 60000);
+        LdapContext first = cache.borrow(DN, password("secret"));
+        cache.release(first);
+        LdapContext second = cache.borrow(DN, password("wrong"));
+        assertNotSame(second, first);
+        assertEquals(opener.opened.size(), 2);
+    }
+
+    @Test
+    public void testContextKeyDependsOnPassword() {
+        LdapRunAsCache cache = new LdapRunAsCache(new TestOpener(), 10, 60000);
+        String key = cache.getContextKey(DN, password("secret"));
+        assertEquals(cache.getContextKey(DN, password("secret")), key);
+        assertFalse(key.equals(cache.getContextKey(DN, password("Secret"))));
+        assertFalse(key.contains("secret"));
+    }
+
+    @Test
+    public void testExpiredContextIsClosed() throws InterruptedException {
+        TestOpener opener = new TestOpener();
+        LdapRunAsCache cache = new LdapRunAsCache(opener, 10, 1);
+        LdapContext first = cache.borrow(DN, password("secret"));
+        cache.release(first);
+        Thread.sleep(10);
+        LdapContext second = cache.borrow(DN, password("secret"));
+        assertNotSame(second, first);
+        assertTrue(opener.closed.contains(first));
+    }
+
+    @Test
+    public void testLeastRecentlyReleasedContextIsEvicted() {
+        TestOpener opener = new TestOpener();
+        LdapRunAsCache cache = new LdapRunAsCache(opener, 1, 60000);
+        LdapContext first = cache.borrow(DN, password("one"));
+        LdapContext second = cache.borrow(DN, password("two"));
+        cache.release(first);
+        cache.release(second);
+        assertEquals(cache.getIdleCount(), 1);
+        assertTrue(opener.closed.contains(first));
+    }
+
+    @Test
+    public void testDisabledCacheClosesContexts() {
+        TestOpener opener = new TestOpener();
+        LdapRunAsCache cache = new LdapRunAsCache(opener, 0, 60000);
+        LdapContext ctx = cache.borrow(DN, password("secret"));
+        cache.release(ctx);
+        assertTrue(opener.closed.contains(ctx));
+        assertEquals(cache.getIdleCount(), 0);
+    }
+
+    @Test
+    public void testCloseClosesIdleAndReleasedContexts() {
+        TestOpener opener = new TestOpener();
+        LdapRunAsCache cache = new LdapRunAsCache(opener, 10, 60000);
+        LdapContext idle = cache.borrow(DN, password("one"));
+        LdapContext leased = cache.borrow(DN, password("two"));
+        cache.release(idle);
+        cache.close();
+        assertTrue(opener.closed.contains(idle));
+        cache.release(leased);
+        assertTrue(opener.closed.contains(leased));
+    }
+
+    @Test
+    public void testContextFailingValidationIsNotReused() {
+        TestOpener opener = new TestOpener();
+        LdapRunAsCache cache = new LdapRunAsCache(opener, 10, 60000);
+        LdapContext first = cache.borrow(DN, password("secret"));
+        cache.release(first);
+        opener.broken.add(first);
+        LdapContext second = cache.borrow(DN, password("secret"));
+        assertNotSame(second, first);
+        assertTrue(opener.closed.contains(first));
+        assertEquals(opener.opened.size(), 2);
+    }
+
+    @Test
+    public void testInvalidatedContextIsClosed() {
+        TestOpener opener = new TestOpener();
+        LdapRunAsCache cache = new LdapRunAsCache(opener, 10, 60000);
+        LdapContext ctx = cache.borrow(DN, password("secret"));
+        cache.invalidate(ctx);
+        assertTrue(opener.closed.contains(ctx));
+        assertEquals(cache.getIdleCount(), 0);
+        assertNotSame(cache.borrow(DN, password("secret")), ctx);
+    }
+
+    private static GuardedString password(String clear) {
+        return new GuardedString(clear.toCharArray());
+    }
+
+    private static final class TestOpener implements LdapRunAsCache.ContextOpener {
+
+        private final List<LdapContext> opened = new ArrayList<LdapContext>();
+        private final List<LdapContext> closed = new ArrayList<LdapContext>();
+        private final List<LdapContext> broken = new ArrayList<LdapContext>();
+
+        public LdapContext open(String dn, GuardedString password) {
+            LdapContext ctx = (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { LdapContext.class }, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if ("hashCode".equals(method.getName())) {
+                                return System.identityHashCode(proxy);
+                            }
+                            if ("equals".equals(method.getName())) {
+                                return proxy == args[0];
+                            }
+                            return null;
+                        }
+                    });
+            opened.add(ctx);
+            return ctx;
+        }
+
+        public boolean validate(LdapContext context) {
+            return !broken.contains(context);
+        }
+
+        public void close(LdapContext context) {
+            closed.add(context);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.identityconnectors.ldap.LdapServerSelector.Policy;
+import org.testng.annotations.Test;
+
+public class LdapServerSelectorTest {
+
+    private static final String A = "ldap://a:389";
+    private static final String B = "ldap://b:389";
+    private static final String C = "ldap://c:389";
+
+    @Test
+    public void testParsePolicy() {
+        assertEquals(Policy.parse("round-robin"), Policy.ROUND_ROBIN);
+        assertEquals(Policy.parse(" Latency "), Policy.LATENCY);
+    }
+
+    @Test
+    public void testFailoverKeepsConfiguredOrder() {
+        LdapServerSelector selector = new LdapServerSelector(Arrays.asList(A, B, C), Policy.FAILOVER, 1000);
+        assertEquals(selector.getCandidates(), Arrays.asList(A, B, C));
+        assertEquals(selector.getCandidates(), Arrays.asList(A, B, C));
+    }
+
+    @Test
+    public void testRoundRobinStartsWithEachServerInTurn() {
+        LdapServerSelector selector = new LdapServerSelector(Arrays.asList(A, B, C), Policy.ROUND_ROBIN, 1000);
+        Set<String> first = new HashSet<String>();
+        for (int i = 0; i < 3; i++) {
+            List<String> candidates = selector.getCandidates();
+            assertEquals(candidates.size(), 3);
+            first.add(candidates.get(0));
+        }
+        assertEquals(first, new HashSet<String>(Arrays.asList(A, B, C)));
+    }
+
+    @Test
+    public void testLeastOutstanding() {
+        LdapServerSelector selector = new LdapServerSelector(Arrays.asList(A, B, C), Policy.LEAST_OUTSTANDING, 1000);
+        selector.acquired(A);
+        selector.acquired(A);
+        selector.acquired(C);
+        assertEquals(selector.getCandidates(), Arrays.asList(B, C, A));
+        selector.released(A);
+        selector.released(A);
+        assertEquals(selector.getOutstanding(A), 0);
+    }
+
+    @Test
+    public void testLatency() {
+        LdapServerSelector selector = new LdapServerSelector(Arrays.asList(A, B, C), Policy.LATENCY, 1000);
+        selector.recordSuccess(A, 50);
+        selector.recordSuccess(B, 10);
+        // C has not been measured yet.
+        assertEquals(selector.getCandidates(), Arrays.asList(C, B, A));
+        selector.recordSuccess(C, 30);
+        selector.acquired(B);
+        selector.acquired(B);
+        // B costs 10 * 3 now.
+        assertEquals(selector.getCandidates().get(2), A);
+        selector.acquired(B);
+        assertEquals(selector.getCandidates(), Arrays.asList(C, B, A));
+    }
+
+    @Test
+    public void testFailedServerIsTriedLast() throws InterruptedException {
+        LdapServerSelector selector = new LdapServerSelector(Arrays.asList(A, B, C), Policy.FAILOVER, 20);
+        selector.recordFailure(A);
+        assertEquals(selector.getCandidates(), Arrays.asList(B, C, A));
+        Thread.sleep(40);
+        assertEquals(selector.getCandidates(), Arrays.asList(A, B, C));
+
+        selector.recordFailure(B);
+        selector.recordSuccess(B, 5);
+        assertEquals(selector.getCandidates(), Arrays.asList(A, B, C));
+    }
+
+    @Test
+    public void testLowerPriorityFirst() {
+        LdapServerSelector selector = new LdapServerSelector(Arrays.asList(A), Policy.LEAST_OUTSTANDING, 1000);
+        selector.acquired(A);
+        selector.setServers(Arrays.asList(A, B, C), Arrays.asList(0, 0, 10));
+        // A is kept with its operations in progress.
+        assertEquals(selector.getOutstanding(A), 1);
+        assertEquals(selector.getCandidates(), Arrays.asList(B, A, C));
+        selector.recordFailure(A);
+        selector.recordFailure(B);
+        assertEquals(selector.getCandidates(), Arrays.asList(C, A, B));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+import org.identityconnectors.ldap.LdapSrvResolver.DnsContextFactory;
+import org.identityconnectors.ldap.LdapSrvResolver.Target;
+import org.testng.annotations.Test;
+
+public class LdapSrvResolverTest {
+
+    private static final String NAME = "_ldap._tcp.example.com";
+
+    private static final Executor SAME_THREAD = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void testParse() {
+        Target target = LdapSrvResolver.parse("0 100 389 dc1.example.com.");
+        assertEquals(target.getHost(), "dc1.example.com");
+        assertEquals(target.getPort(), 389);
+        assertEquals(target.getPriority(), 0);
+        assertEquals(target.getWeight(), 100);
+        assertEquals(target.getUrl(), "ldap://dc1.example.com:389");
+        assertNull(LdapSrvResolver.parse("0 0 0 ."));
+        assertNull(LdapSrvResolver.parse("0 100 dc1.example.com."));
+    }
+
+    @Test
+    public void testOrderedByPriority() {
+        List<Target> targets = Arrays.asList(new Target("c", 389, 20, 0), new Target("a", 389, 0, 0),
+                new Target("b", 389, 10, 0));
+        assertEquals(hosts(LdapSrvResolver.order(targets, new Random())), Arrays.asList("a", "b", "c"));
+    }
+
+    @Test
+    public void testOrderedByWeight() {
+        List<Target> targets = Arrays.asList(new Target("light", 389, 0, 1), new Target("heavy", 389, 0, 99));
+        Random random = new Random(42);
+        int heavyFirst = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (LdapSrvResolver.order(targets, random).get(0).getHost().equals("heavy")) {
+                heavyFirst++;
+            }
+        }
+        assertTrue(heavyFirst > 900, "heavy first " + heavyFirst + " times");
+    }
+
+    @Test
+    public void testAnswerCached() {
+        StubDnsContextFactory dns = new StubDnsContextFactory("0 100 389 dc1.example.com.", "1 100 389 dc2.example.com.");
+        LdapSrvResolver resolver = new LdapSrvResolver(NAME, 60000, dns, SAME_THREAD, new Random());
+        List<Target> targets = resolver.getTargets();
+        assertEquals(hosts(targets), Arrays.asList("dc1.example.com", "dc2.example.com"));
+        assertSame(resolver.getTargets(), targets);
+        assertEquals(dns.lookups, 1);
+    }
+
+    @Test
+    public void testExpiredAnswerRefreshed() {
+        StubDnsContextFactory dns = new StubDnsContextFactory("0 100 389 dc1.example.com.");
+        final List<Runnable> refreshes = new ArrayList<Runnable>();
+        LdapSrvResolver resolver = new LdapSrvResolver(NAME, 1, dns, new Executor() {
+            public void execute(Runnable command) {
+                refreshes.add(command);
+            }
+        }, new Random());
+        List<Target> targets = resolver.getTargets();
+        sleep(10);
+        dns.records = new String[] { "0 100 389 dc2.example.com." };
+        // The expired answer is returned while it is resolved again.
+        assertSame(resolver.getTargets(), targets);
+        assertEquals(refreshes.size(), 1);
+        refreshes.get(0).run();
+        assertEquals(hosts(resolver.getTargets()), Arrays.asList("dc2.example.com"));
+    }
+
+    @Test
+    public void testPreviousAnswerKeptOnFailure() {
+        StubDnsContextFactory dns = new StubDnsContextFactory("0 100 389 dc1.example.com.");
+        LdapSrvResolver resolver = new LdapSrvResolver(NAME, 1, dns, SAME_THREAD, new Random());
+        resolver.getTargets();
+        sleep(10);
+        dns.records = null;
+        resolver.getTargets();
+        assertEquals(hosts(resolver.getTargets()), Arrays.asList("dc1.example.com"));
+    }
+
+    private static List<String> hosts(List<Target> targets) {
+        List<String> result = new ArrayList<String>();
+        for (Target target : targets) {
+            result.add(target.getHost());
+        }
+        return result;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class StubDnsContextFactory implements DnsContextFactory {
+
+        // Null to fail the lookups.
+        private volatile String[] records;
+        private volatile int lookups;
+
+        StubDnsContextFactory(String... records) {
+            this.records = records;
+        }
+
+        public DirContext open() throws NamingException {
+            return new InitialDirContext(true) {
+                @Override
+                public Attributes getAttributes(String name, String[] attrIds) throws NamingException {
+                    lookups++;
+                    assertEquals(name, "dns:/" + NAME);
+                    if (records == null) {
+                        throw new CommunicationException("DNS server unreachable");
+                    }
+                    BasicAttribute srv = new BasicAttribute("SRV");
+                    for (String record : records) {
+                        srv.add(record);
+                    }
+                    Attributes attrs = new BasicAttributes(true);
+                    attrs.put(srv);
+                    return attrs;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+}
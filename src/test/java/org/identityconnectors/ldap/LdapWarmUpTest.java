@@ -0,0 +1,60 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.Test;
+
+public class LdapWarmUpTest {
+
+    @Test
+    public void testAwaitWaitsForSteps() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean done = new AtomicBoolean();
+        LdapWarmUp warmUp = LdapWarmUp.start(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.set(true);
+            }
+        });
+        started.await();
+        assertFalse(warmUp.isDone());
+        warmUp.await();
+        assertTrue(done.get());
+        assertTrue(warmUp.isDone());
+    }
+
+    @Test
+    public void testFailureNotThrown() {
+        LdapWarmUp warmUp = LdapWarmUp.start(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("Server down");
+            }
+        });
+        warmUp.await();
+        assertTrue(warmUp.isDone());
+    }
+}
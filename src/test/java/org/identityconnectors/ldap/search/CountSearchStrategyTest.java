@@ -0,0 +1,242 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.PartialResultException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.forgerock.opendj.ldap.controls.VirtualListViewRequestControl;
+import org.forgerock.opendj.ldap.controls.VirtualListViewResponseControl;
+import org.testng.annotations.Test;
+
+public class CountSearchStrategyTest {
+
+    @Test
+    public void testCountFromVirtualListView() throws Exception {
+        TestDirectory directory = new TestDirectory(42);
+        directory.vlv = true;
+        assertEquals(directory.count(new CountSearchStrategy(10, null, "uid", false)), 42);
+        assertEquals(directory.pageSizes, Collections.emptyList());
+    }
+
+    @Test
+    public void testPagesAreCountedWhenVirtualListViewFails() throws Exception {
+        TestDirectory directory = new TestDirectory(25);
+        assertEquals(directory.count(new CountSearchStrategy(10, null, "uid", false)), 25);
+        assertEquals(directory.pageSizes, Arrays.asList(10, 10, 10));
+        assertEquals(directory.returningAttributes, Arrays.asList("1.1"));
+    }
+
+    @Test
+    public void testBaseContextsAreCounted() throws Exception {
+        TestDirectory directory = new TestDirectory(5, 7);
+        // Not used without an attribute to sort the view by.
+        directory.vlv = true;
+        assertEquals(directory.count(new CountSearchStrategy(10, null, null, false)), 12);
+        assertEquals(directory.pageSizes, Arrays.asList(10, 10));
+    }
+
+    @Test
+    public void testNonExistingBaseContexts() throws Exception {
+        TestDirectory directory = new TestDirectory(5);
+        directory.baseDNs.add("ou=missing,o=Acme");
+        assertEquals(directory.count(new CountSearchStrategy(10, null, null, true)), 5);
+        try {
+            directory.count(new CountSearchStrategy(10, null, null, false));
+            fail();
+        } catch (NameNotFoundException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testEntriesCountedBeforeIgnoredFailureAreKept() throws Exception {
+        TestDirectory directory = new TestDirectory(25);
+        directory.referrals = true;
+        CountSearchStrategy strategy = new CountSearchStrategy(10, null, null, false);
+        try {
+            directory.count(strategy);
+            fail();
+        } catch (PartialResultException e) {
+            // Ignored by the search on Active Directory.
+        }
+        assertEquals(strategy.getCount(), 25);
+    }
+
+    /**
+     * Serves the pages of the entries of its base contexts, or their count
+     * through a virtual list view if enabled. A cookie is the index of the
+     * next entry in the base context. The base contexts without a size do
+     * not exist. With referrals, the last page ends with the referrals to the
+     * other naming contexts, as Active Directory does.
+     */
+    private static final class TestDirectory {
+
+        private final List<String> baseDNs = new ArrayList<String>();
+        private final List<Integer> sizes = new ArrayList<Integer>();
+        private final List<Integer> pageSizes = new ArrayList<Integer>();
+        private boolean vlv;
+        private boolean referrals;
+        private List<String> returningAttributes;
+
+        TestDirectory(Integer... sizes) {
+            for (int i = 0; i < sizes.length; i++) {
+                baseDNs.add("ou=" + i + ",o=Acme");
+            }
+            this.sizes.addAll(Arrays.asList(sizes));
+        }
+
+        int count(CountSearchStrategy strategy) throws Exception {
+            strategy.doSearch(createContext(), baseDNs, "(objectClass=*)", new SearchControls(), new LdapSearchResultsHandler() {
+                public boolean handle(String baseDN, SearchResult searchResult) {
+                    throw new AssertionError("Entry handed to the handler");
+                }
+            });
+            return strategy.getCount();
+        }
+
+        private LdapContext createContext() {
+            final Control[][] requestControls = { null };
+            final Control[][] responseControls = { null };
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { LdapContext.class },
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                            if ("newInstance".equals(method.getName())) {
+                                return proxy;
+                            }
+                            if ("setRequestControls".equals(method.getName())) {
+                                requestControls[0] = (Control[]) args[0];
+                            }
+                            if ("getResponseControls".equals(method.getName())) {
+                                return responseControls[0];
+                            }
+                            if ("search".equals(method.getName())) {
+                                int context = baseDNs.indexOf(args[0]);
+                                if (context >= sizes.size()) {
+                                    throw new NameNotFoundException((String) args[0]);
+                                }
+                                returningAttributes = Arrays.asList(((SearchControls) args[2]).getReturningAttributes());
+                                int size = sizes.get(context);
+                                List<SearchResult> results = new ArrayList<SearchResult>();
+                                if (requestControls[0].length == 2 && VirtualListViewRequestControl.OID.equals(requestControls[0][1].getID())) {
+                                    if (!vlv) {
+                                        throw new OperationNotSupportedException("Unindexed search");
+                                    }
+                                    responseControls[0] = new Control[] { createVlvResponseControl(size) };
+                                    results.add(new SearchResult("uid=user0", null, new BasicAttributes(true)));
+                                    return enumeration(results, false);
+                                }
+                                assertTrue(requestControls[0][0] instanceof PagedResultsControl);
+                                byte[][] page = readPagedControl(requestControls[0][0].getEncodedValue());
+                                int pageSize = new BigInteger(page[0]).intValue();
+                                int from = page[1].length > 0 ? page[1][0] : 0;
+                                pageSizes.add(pageSize);
+                                int to = Math.min(from + pageSize, size);
+                                byte[] next = to < size ? new byte[] { (byte) to } : new byte[0];
+                                responseControls[0] = new Control[] { createPagedResponseControl(next) };
+                                for (int i = from; i < to; i++) {
+                                    results.add(new SearchResult("uid=user" + i, null, new BasicAttributes(true)));
+                                }
+                                return enumeration(results, referrals && to == size);
+                            }
+                            return null;
+                        }
+                    });
+        }
+    }
+
+    // The value of a paged results control is a sequence of an integer and an octet string.
+    private static byte[][] readPagedControl(byte[] value) {
+        int pos = 2;
+        byte[] size = Arrays.copyOfRange(value, pos + 2, pos + 2 + value[pos + 1]);
+        pos += 2 + value[pos + 1];
+        byte[] cookie = Arrays.copyOfRange(value, pos + 2, pos + 2 + value[pos + 1]);
+        return new byte[][] { size, cookie };
+    }
+
+    private static Control createPagedResponseControl(byte[] cookie) throws IOException {
+        byte[] value = new byte[7 + cookie.length];
+        value[0] = 0x30;
+        value[1] = (byte) (5 + cookie.length);
+        value[2] = 0x02;
+        value[3] = 1;
+        value[4] = 0;
+        value[5] = 0x04;
+        value[6] = (byte) cookie.length;
+        System.arraycopy(cookie, 0, value, 7, cookie.length);
+        return new PagedResultsResponseControl(PagedResultsResponseControl.OID, false, value);
+    }
+
+    // The value of a virtual list view response control is a sequence of the target position,
+    // the content count and the result code.
+    private static Control createVlvResponseControl(int contentCount) {
+        byte[] value = { 0x30, 9, 0x02, 1, 1, 0x02, 1, (byte) contentCount, 0x0a, 1, 0 };
+        return new BasicControl(VirtualListViewResponseControl.OID, false, value);
+    }
+
+    private static NamingEnumeration<SearchResult> enumeration(List<SearchResult> results, final boolean referrals) {
+        final Iterator<SearchResult> iterator = results.iterator();
+        return new NamingEnumeration<SearchResult>() {
+            public boolean hasMore() throws NamingException {
+                if (referrals && !iterator.hasNext()) {
+                    throw new PartialResultException("Unprocessed continuation references");
+                }
+                return iterator.hasNext();
+            }
+
+            public SearchResult next() {
+                return iterator.next();
+            }
+
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            public SearchResult nextElement() {
+                return iterator.next();
+            }
+
+            public void close() throws NamingException {
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.ldap.LdapConstants.ServerType;
+import org.testng.annotations.Test;
+
+public class LdapFilterOptimizerTest {
+
+    private static final LdapFilterOptimizer.ObjectClassHierarchy HIERARCHY = new LdapFilterOptimizer.ObjectClassHierarchy() {
+        public Set<String> getEffectiveObjectClasses(String ldapClass) {
+            if (ldapClass.equalsIgnoreCase("inetOrgPerson")) {
+                return CollectionUtil.newCaseInsensitiveSet(ldapClass, "organizationalPerson", "person", "top");
+            }
+            return CollectionUtil.newCaseInsensitiveSet(ldapClass, "top");
+        }
+    };
+
+    @Test
+    public void testNestedConjunctionsAreFlattened() {
+        LdapFilterOptimizer optimizer = new LdapFilterOptimizer(Collections.<String, Integer>emptyMap(), ServerType.UNKNOWN, null);
+        assertEquals(optimizer.optimize("(&(&(description=a)(title=b))(&(l=c)))"), "(&(description=a)(title=b)(l=c))");
+        assertEquals(optimizer.optimize("(|(|(uid=a)(uid=b))(uid=c))"), "(|(uid=a)(uid=b)(uid=c))");
+        assertEquals(optimizer.optimize("(!(!(uid=a)))"), "(uid=a)");
+    }
+
+    @Test
+    public void testDuplicateTermsAreRemoved() {
+        LdapFilterOptimizer optimizer = new LdapFilterOptimizer(Collections.<String, Integer>emptyMap(), ServerType.UNKNOWN, null);
+        assertEquals(optimizer.optimize("(&(uid=john)(UID=john)(objectClass=person)(objectclass=Person))"), "(&(uid=john)(objectClass=person))");
+        assertEquals(optimizer.optimize("(|(uid=a)(uid=b)(uid=a))"), "(|(uid=a)(uid=b))");
+        // The values are compared as given.
+        assertEquals(optimizer.optimize("(|(uid=a)(uid=A))"), "(|(uid=a)(uid=A))");
+    }
+
+    @Test
+    public void testImpliedTermsAreRemoved() {
+        LdapFilterOptimizer optimizer = new LdapFilterOptimizer(Collections.<String, Integer>emptyMap(), ServerType.UNKNOWN, HIERARCHY);
+        assertEquals(optimizer.optimize("(&(objectClass=top)(objectClass=inetOrgPerson)(objectClass=person)(uid=john))"),
+                "(&(uid=john)(objectClass=inetOrgPerson))");
+        assertEquals(optimizer.optimize("(&(mail=*)(mail=john@*)(objectClass=*))"), "(mail=john@*)");
+        assertEquals(optimizer.optimize("(|(mail=*)(mail=john@*))"), "(mail=*)");
+        // An extensible match may match an entry without the attribute through its DN.
+        assertEquals(optimizer.optimize("(|(cn=*)(cn:dn:=x))"), "(|(cn=*)(cn:dn:=x))");
+        assertEquals(optimizer.optimize("(|(objectClass=*)(uid=john))"), "(objectClass=*)");
+        assertEquals(optimizer.optimize("(objectClass=*)"), "(objectClass=*)");
+        // The terms under a negation are not implied by the others.
+        assertEquals(optimizer.optimize("(&(objectClass=inetOrgPerson)(!(objectClass=person)))"), "(&(objectClass=inetOrgPerson)(!(objectClass=person)))");
+    }
+
+    @Test
+    public void testHierarchyFailureKeepsObjectClassTerms() {
+        LdapFilterOptimizer optimizer = new LdapFilterOptimizer(Collections.<String, Integer>emptyMap(), ServerType.UNKNOWN,
+                new LdapFilterOptimizer.ObjectClassHierarchy() {
+                    public Set<String> getEffectiveObjectClasses(String ldapClass) {
+                        throw new ConnectorException("Schema not readable");
+                    }
+                });
+        assertEquals(optimizer.optimize("(&(objectClass=inetOrgPerson)(objectClass=person)(uid=john))"),
+                "(&(uid=john)(objectClass=inetOrgPerson)(objectClass=person))");
+    }
+
+    @Test
+    public void testConjunctionTermsAreSortedByCost() {
+        Map<String, Integer> weights = new HashMap<String, Integer>();
+        weights.put("employeeNumber", 1);
+        LdapFilterOptimizer optimizer = new LdapFilterOptimizer(weights, ServerType.UNKNOWN, null);
+        assertEquals(optimizer.optimize("(&(!(uid=john))(description=*x*)(objectClass=person)(cn=J*)(employeeNumber=12)(uid=john))"),
+                "(&(employeeNumber=12)(uid=john)(cn=J*)(objectClass=person)(description=*x*)(!(uid=john)))");
+        // A disjunction costs as much as all its terms.
+        assertEquals(optimizer.optimize("(&(|(mail=a)(mail=b)(cn=c)(cn=d)(sn=e)(sn=f))(objectClass=person))"),
+                "(&(objectClass=person)(|(mail=a)(mail=b)(cn=c)(cn=d)(sn=e)(sn=f)))");
+    }
+
+    @Test
+    public void testDefaultIndexesDependOnServerType() {
+        String filter = "(&(description=x)(sAMAccountName=john)(entryUUID=1))";
+        assertEquals(new LdapFilterOptimizer(Collections.<String, Integer>emptyMap(), ServerType.MSAD, null).optimize(filter),
+                "(&(sAMAccountName=john)(description=x)(entryUUID=1))");
+        assertEquals(new LdapFilterOptimizer(Collections.<String, Integer>emptyMap(), ServerType.OPENDJ, null).optimize(filter),
+                "(&(entryUUID=1)(description=x)(sAMAccountName=john))");
+    }
+
+    @Test
+    public void testUnparsableFiltersAreUnchanged() {
+        LdapFilterOptimizer optimizer = new LdapFilterOptimizer(Collections.<String, Integer>emptyMap(), ServerType.UNKNOWN, HIERARCHY);
+        assertEquals(optimizer.optimize("(&(uid=john)"), "(&(uid=john)");
+        assertEquals(optimizer.optimize("(&)"), "(&)");
+        assertEquals(optimizer.optimize("(uid=a(b)"), "(uid=a(b)");
+        assertEquals(optimizer.optimize(""), "");
+        // Escaped values and extensible matches are kept as they are.
+        assertEquals(optimizer.optimize("(&(cn=a\\29b)(cn:dn:=x)(cn=*))"), "(&(cn=a\\29b)(cn:dn:=x))");
+    }
+
+    @Test
+    public void testLargeDisjunctionsAreSplit() {
+        assertEquals(LdapFilterOptimizer.split("(|(uid=a)(uid=b)(uid=c)(uid=d)(uid=e))", 2),
+                Arrays.asList("(|(uid=a)(uid=b))", "(|(uid=c)(uid=d))", "(uid=e)"));
+        // The largest disjunction of a conjunction is split, in its place.
+        assertEquals(LdapFilterOptimizer.split("(&(objectClass=person)(|(cn=x)(cn=y))(|(uid=a)(uid=b)(uid=c)))", 2),
+                Arrays.asList("(&(objectClass=person)(|(cn=x)(cn=y))(|(uid=a)(uid=b)))", "(&(objectClass=person)(|(cn=x)(cn=y))(uid=c))"));
+    }
+
+    @Test
+    public void testSmallOrNestedDisjunctionsAreNotSplit() {
+        assertNull(LdapFilterOptimizer.split("(|(uid=a)(uid=b))", 2));
+        assertNull(LdapFilterOptimizer.split("(!(|(uid=a)(uid=b)(uid=c)))", 2));
+        assertNull(LdapFilterOptimizer.split("(uid=a)", 2));
+        assertNull(LdapFilterOptimizer.split("(|(uid=a)(uid=b)(uid=c)", 2));
+        assertNull(LdapFilterOptimizer.split("(|(uid=a)(uid=b)(uid=c))", 0));
+        assertNull(LdapFilterOptimizer.split(null, 2));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static java.util.Collections.singletonList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.ldap.LdapConfiguration;
+import org.identityconnectors.ldap.LdapConnection;
+import org.testng.annotations.Test;
+
+public class LdapHedgedSearchTest {
+
+    @Test
+    public void testFastPrimaryIsNotHedged() throws Exception {
+        TestConnection conn = new TestConnection();
+        TestStrategy strategy = new TestStrategy();
+        strategy.answer(conn.primary, 0, "uid=a", "uid=b");
+        List<String> results = search(conn, strategy, 1000);
+        assertEquals(results, Arrays.asList("uid=a", "uid=b"));
+        assertEquals(conn.hedges, 0);
+        assertEquals(conn.released, Arrays.asList(conn.primary));
+        assertEquals(conn.latencies.size(), 1);
+    }
+
+    @Test
+    public void testSlowPrimaryIsHedged() throws Exception {
+        TestConnection conn = new TestConnection();
+        TestStrategy strategy = new TestStrategy();
+        strategy.answer(conn.primary, 5000, "uid=slow");
+        strategy.answer(conn.hedge, 0, "uid=a");
+        long start = System.currentTimeMillis();
+        List<String> results = search(conn, strategy, 20);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(results, Arrays.asList("uid=a"));
+        assertEquals(conn.hedges, 1);
+        // The primary search is given up, and its context closed.
+        assertEquals(conn.abandoned, Arrays.asList(conn.primary));
+        // The time the primary search took so far is recorded too.
+        assertEquals(conn.latencies.size(), 2);
+        assertTrue(conn.latencies.get(1) >= 20);
+        strategy.release.countDown();
+    }
+
+    @Test
+    public void testHedgeFailureWaitsForPrimary() throws Exception {
+        TestConnection conn = new TestConnection();
+        TestStrategy strategy = new TestStrategy();
+        strategy.answer(conn.primary, 100, "uid=a");
+        strategy.fail(conn.hedge);
+        List<String> results = search(conn, strategy, 10);
+        assertEquals(results, Arrays.asList("uid=a"));
+        assertEquals(conn.hedges, 1);
+    }
+
+    @Test
+    public void testPrimaryFailureIsThrown() throws Exception {
+        TestConnection conn = new TestConnection();
+        TestStrategy strategy = new TestStrategy();
+        strategy.fail(conn.primary);
+        try {
+            search(conn, strategy, 1000);
+            fail();
+        } catch (CommunicationException e) {
+            // Expected.
+        }
+        assertEquals(conn.hedges, 0);
+    }
+
+    private static List<String> search(TestConnection conn, TestStrategy strategy, long delay) throws Exception {
+        final List<String> results = new ArrayList<String>();
+        new LdapHedgedSearch(conn, strategy, delay).doSearch(singletonList("o=Acme"), "(objectClass=*)",
+                new SearchControls(), new LdapSearchResultsHandler() {
+                    public boolean handle(String baseDN, SearchResult result) {
+                        results.add(result.getName());
+                        return true;
+                    }
+                });
+        return results;
+    }
+
+    private static LdapContext createContext() {
+        return (LdapContext) Proxy.newProxyInstance(LdapHedgedSearchTest.class.getClassLoader(),
+                new Class<?>[] { LdapContext.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("hashCode".equals(method.getName())) {
+                            return System.identityHashCode(proxy);
+                        }
+                        if ("equals".equals(method.getName())) {
+                            return proxy == args[0];
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static final class TestConnection extends LdapConnection {
+
+        private final LdapContext primary = createContext();
+        private final LdapContext hedge = createContext();
+        private final List<LdapContext> released = Collections.synchronizedList(new ArrayList<LdapContext>());
+        private final List<LdapContext> abandoned = Collections.synchronizedList(new ArrayList<LdapContext>());
+        private final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+        private volatile int hedges;
+
+        TestConnection() {
+            super(new LdapConfiguration());
+        }
+
+        @Override
+        public LdapContext borrowReadContext() {
+            return primary;
+        }
+
+        @Override
+        public LdapContext borrowHedgeContext(LdapContext ctx) {
+            assertEquals(ctx, primary);
+            hedges++;
+            return hedge;
+        }
+
+        @Override
+        public void releaseContext(LdapContext ctx) {
+            released.add(ctx);
+        }
+
+        @Override
+        public void abandonContext(LdapContext ctx) {
+            abandoned.add(ctx);
+        }
+
+        @Override
+        public void recordReadLatency(long latency) {
+            latencies.add(latency);
+        }
+    }
+
+    private static final class TestStrategy extends LdapSearchStrategy {
+
+        private final List<Object[]> answers = Collections.synchronizedList(new ArrayList<Object[]>());
+        // Lets the slow searches end.
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        void answer(LdapContext ctx, long delay, String... names) {
+            answers.add(new Object[] { ctx, delay, names });
+        }
+
+        void fail(LdapContext ctx) {
+            answers.add(new Object[] { ctx, 0L, null });
+        }
+
+        @Override
+        public void doSearch(LdapContext ctx, List<String> baseDNs, String query, SearchControls controls,
+                LdapSearchResultsHandler handler) throws NamingException {
+            for (Object[] answer : answers) {
+                if (answer[0] == ctx) {
+                    try {
+                        release.await((Long) answer[1], TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    String[] names = (String[]) answer[2];
+                    if (names == null) {
+                        throw new CommunicationException("Server down");
+                    }
+                    for (String name : names) {
+                        if (!handler.handle(baseDNs.get(0), new SearchResult(name, null, new BasicAttributes()))) {
+                            return;
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.ldap.LdapConfiguration;
+import org.identityconnectors.ldap.LdapConnection;
+import org.testng.annotations.Test;
+
+public class LdapParallelSearchTest {
+
+    private static final List<String> BASE_DNS = Arrays.asList("ou=A,o=Acme", "ou=B,o=Acme", "ou=C,o=Acme");
+
+    @Test
+    public void testBaseContextsAreSearchedConcurrently() throws Exception {
+        TestConnection conn = new TestConnection();
+        // Each search waits until all of them started.
+        final CountDownLatch started = new CountDownLatch(BASE_DNS.size());
+        TestStrategy strategy = new TestStrategy(3) {
+            @Override
+            void beforeSearch(String baseDN) throws NamingException {
+                started.countDown();
+                try {
+                    if (!started.await(5, TimeUnit.SECONDS)) {
+                        throw new CommunicationException("Not searched concurrently");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        List<String> results = search(conn, strategy, 3, -1);
+        assertEquals(results.size(), 9);
+        assertEquals(new HashSet<String>(results).size(), 9);
+        assertEquals(conn.maxActive, 3);
+        assertEquals(conn.released.size(), 3);
+        assertEquals(conn.active, 0);
+    }
+
+    @Test
+    public void testParallelismIsBounded() throws Exception {
+        TestConnection conn = new TestConnection();
+        TestStrategy strategy = new TestStrategy(2) {
+            @Override
+            void beforeSearch(String baseDN) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        List<String> results = search(conn, strategy, 2, -1);
+        assertEquals(results.size(), 6);
+        assertEquals(conn.maxActive, 2);
+        assertEquals(conn.released.size(), 3);
+    }
+
+    @Test
+    public void testHandlerStopsAllSearches() throws Exception {
+        TestConnection conn = new TestConnection();
+        TestStrategy strategy = new TestStrategy(1000);
+        List<String> results = search(conn, strategy, 3, 1);
+        assertEquals(results.size(), 1);
+        // The searches stopped, and handed their contexts back.
+        assertEquals(conn.active, 0);
+        assertTrue(strategy.handled < 10);
+    }
+
+    @Test
+    public void testFailureIsThrown() throws Exception {
+        TestConnection conn = new TestConnection();
+        TestStrategy strategy = new TestStrategy(1000) {
+            @Override
+            void beforeSearch(String baseDN) throws NamingException {
+                if (baseDN.equals(BASE_DNS.get(1))) {
+                    throw new CommunicationException("Server down");
+                }
+            }
+        };
+        try {
+            search(conn, strategy, 3, -1);
+            fail();
+        } catch (ConnectorException e) {
+            assertTrue(e.getCause() instanceof CommunicationException);
+        }
+        assertEquals(conn.active, 0);
+    }
+
+    @Test
+    public void testEachFilterIsSearchedInEachBaseContext() throws Exception {
+        TestConnection conn = new TestConnection(new LdapConfiguration());
+        TermStrategy strategy = new TermStrategy();
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        new LdapParallelSearch(conn, strategy, 2).doSearch(BASE_DNS, Arrays.asList("(uid=a)", "(uid=b)"),
+                new SearchControls(), new LdapSearchResultsHandler() {
+                    public boolean handle(String baseDN, SearchResult result) {
+                        results.add(result.getName() + "," + baseDN);
+                        return true;
+                    }
+                });
+        assertEquals(results.size(), 6);
+        assertEquals(new HashSet<String>(results).size(), 6);
+        assertEquals(strategy.queries.size(), 6);
+        assertEquals(conn.active, 0);
+    }
+
+    @Test
+    public void testLargeDisjunctionIsSplit() throws Exception {
+        LdapConfiguration config = new LdapConfiguration();
+        config.setFilterChunkSize(2);
+        TestConnection conn = new TestConnection(config);
+        TermStrategy strategy = new TermStrategy();
+        final List<String> results = new ArrayList<String>();
+        LdapSearchResultsHandler handler = new LdapSearchResultsHandler() {
+            public boolean handle(String baseDN, SearchResult result) {
+                results.add(result.getName());
+                return true;
+            }
+        };
+        new LdapInternalSearch(conn, "(|(uid=a)(uid=b)(uid=c)(uid=a))", Collections.singletonList(BASE_DNS.get(0)), strategy,
+                new SearchControls()).execute(handler);
+        assertEquals(strategy.queries, Arrays.asList("(|(uid=a)(uid=b))", "(|(uid=c)(uid=a))"));
+        // The entry matching both searches is returned once.
+        assertEquals(results, Arrays.asList("uid=a", "uid=b", "uid=c"));
+        assertEquals(conn.active, 0);
+
+        // A disjunction within the chunk size is searched as it is.
+        strategy.queries.clear();
+        new LdapInternalSearch(conn, "(|(uid=a)(uid=b))", Collections.singletonList(BASE_DNS.get(0)), strategy,
+                new SearchControls()).execute(handler);
+        assertEquals(strategy.queries, Arrays.asList("(|(uid=a)(uid=b))"));
+    }
+
+    @Test
+    public void testHandlerCanSearchWhenThreadsMatchThePoolSize() throws Exception {
+        LdapConfiguration config = new LdapConfiguration();
+        config.setConnectionPoolMaxSize(3);
+        config.setParallelSearchThreads(3);
+        final TestConnection conn = new TestConnection(config);
+        conn.poolSize = 3;
+        LookupHandler handler = new LookupHandler(conn);
+        new LdapInternalSearch(conn, "(objectClass=*)", BASE_DNS, new TestStrategy(2), new SearchControls()).execute(handler);
+        assertEquals(handler.results.size(), 6);
+        assertEquals(handler.groups.size(), 18);
+        assertTrue(conn.maxActive <= 3);
+        assertEquals(conn.active, 0);
+    }
+
+    @Test
+    public void testHandlerCanSearchWhenChunksMatchThePoolSize() throws Exception {
+        LdapConfiguration config = new LdapConfiguration();
+        config.setConnectionPoolMaxSize(3);
+        config.setParallelSearchThreads(3);
+        config.setFilterChunkSize(1);
+        TestConnection conn = new TestConnection(config);
+        conn.poolSize = 3;
+        LookupHandler handler = new LookupHandler(conn);
+        new LdapInternalSearch(conn, "(|(uid=a)(uid=b)(uid=c))", Collections.singletonList(BASE_DNS.get(0)),
+                new TermStrategy(), new SearchControls()).execute(handler);
+        assertEquals(handler.results.size(), 3);
+        assertEquals(handler.groups.size(), 9);
+        assertTrue(conn.maxActive <= 3);
+        assertEquals(conn.active, 0);
+    }
+
+    private static List<String> search(TestConnection conn, TestStrategy strategy, int parallelism, final int limit)
+            throws Exception {
+        final List<String> results = new ArrayList<String>();
+        new LdapParallelSearch(conn, strategy, parallelism).doSearch(BASE_DNS, "(objectClass=*)",
+                new SearchControls(), new LdapSearchResultsHandler() {
+                    public boolean handle(String baseDN, SearchResult result) {
+                        results.add(result.getName());
+                        return limit < 0 || results.size() < limit;
+                    }
+                });
+        return results;
+    }
+
+    private static LdapContext createContext() {
+        return (LdapContext) Proxy.newProxyInstance(LdapParallelSearchTest.class.getClassLoader(),
+                new Class<?>[] { LdapContext.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("hashCode".equals(method.getName())) {
+                            return System.identityHashCode(proxy);
+                        }
+                        if ("equals".equals(method.getName())) {
+                            return proxy == args[0];
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static final class TestConnection extends LdapConnection {
+
+        private final List<LdapContext> released = Collections.synchronizedList(new ArrayList<LdapContext>());
+        private int active;
+        private int maxActive;
+        private int poolSize = Integer.MAX_VALUE;
+
+        TestConnection() {
+            this(new LdapConfiguration());
+        }
+
+        TestConnection(LdapConfiguration config) {
+            super(config);
+        }
+
+        @Override
+        public synchronized LdapContext borrowReadContext() {
+            if (active == poolSize) {
+                throw new ConnectionFailedException("No pooled connection left");
+            }
+            active++;
+            maxActive = Math.max(active, maxActive);
+            return createContext();
+        }
+
+        @Override
+        public synchronized void releaseContext(LdapContext ctx) {
+            if (ctx != null) {
+                active--;
+                released.add(ctx);
+            }
+        }
+    }
+
+    /**
+     * Looks up the groups of each entry in all the base contexts, as the
+     * handler of a search of users does.
+     */
+    private static final class LookupHandler implements LdapSearchResultsHandler {
+
+        private final LdapConnection conn;
+        private final List<String> results = new ArrayList<String>();
+        private final List<String> groups = new ArrayList<String>();
+
+        LookupHandler(LdapConnection conn) {
+            this.conn = conn;
+        }
+
+        public boolean handle(String baseDN, SearchResult result) throws NamingException {
+            results.add(result.getName());
+            LdapSearchStrategy lookup = new LdapSearchStrategy() {
+                @Override
+                public LdapSearchStrategy forParallelSearch() {
+                    return this;
+                }
+
+                @Override
+                public void doSearch(LdapContext ctx, List<String> baseDNs, String query, SearchControls controls,
+                        LdapSearchResultsHandler handler) throws NamingException {
+                    for (String baseDN : baseDNs) {
+                        handler.handle(baseDN, new SearchResult("cn=Group," + baseDN, null, new BasicAttributes()));
+                    }
+                }
+            };
+            new LdapInternalSearch(conn, "(member=*)", BASE_DNS, lookup, new SearchControls()).execute(
+                    new LdapSearchResultsHandler() {
+                        public boolean handle(String baseDN, SearchResult result) {
+                            groups.add(result.getName());
+                            return true;
+                        }
+                    });
+            return true;
+        }
+    }
+
+    private static class TestStrategy extends LdapSearchStrategy {
+
+        private final int count;
+        private volatile int handled;
+
+        TestStrategy(int count) {
+            this.count = count;
+        }
+
+        void beforeSearch(String baseDN) throws NamingException {
+        }
+
+        @Override
+        public LdapSearchStrategy forParallelSearch() {
+            return this;
+        }
+
+        @Override
+        public void doSearch(LdapContext ctx, List<String> baseDNs, String query, SearchControls controls,
+                LdapSearchResultsHandler handler) throws NamingException {
+            assertEquals(baseDNs.size(), 1);
+            String baseDN = baseDNs.get(0);
+            beforeSearch(baseDN);
+            for (int i = 0; i < count; i++) {
+                handled++;
+                if (!handler.handle(baseDN, new SearchResult("uid=" + i + "," + baseDN, null, new BasicAttributes()))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an entry for each uid the query tests.
+     */
+    private static final class TermStrategy extends TestStrategy {
+
+        private static final Pattern UID_TERM = Pattern.compile("\\(uid=(\\w+)\\)");
+
+        private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+
+        TermStrategy() {
+            super(0);
+        }
+
+        @Override
+        public void doSearch(LdapContext ctx, List<String> baseDNs, String query, SearchControls controls,
+                LdapSearchResultsHandler handler) throws NamingException {
+            assertEquals(baseDNs.size(), 1);
+            queries.add(query);
+            Matcher matcher = UID_TERM.matcher(query);
+            while (matcher.find()) {
+                if (!handler.handle(baseDNs.get(0), new SearchResult("uid=" + matcher.group(1), null, new BasicAttributes()))) {
+                    return;
+                }
+            }
+        }
+    }
+}
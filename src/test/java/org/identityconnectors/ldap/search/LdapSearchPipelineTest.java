@@ -0,0 +1,202 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.testng.annotations.Test;
+
+public class LdapSearchPipelineTest {
+
+    @Test
+    public void testOrderIsKept() {
+        final Random random = new Random(17);
+        TestSearch search = new TestSearch(200);
+        List<String> results = execute(new LdapSearchPipeline(4, 10), search, new TestConverter() {
+            @Override
+            void beforeConvert(String name) throws InterruptedException {
+                Thread.sleep(random.nextInt(3));
+            }
+        }, -1);
+        assertEquals(results.size(), 200);
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(results.get(i), "uid=" + i);
+        }
+    }
+
+    @Test
+    public void testEntriesAreConvertedConcurrently() {
+        // Each conversion waits until three of them started.
+        final CountDownLatch started = new CountDownLatch(3);
+        TestSearch search = new TestSearch(3);
+        List<String> results = execute(new LdapSearchPipeline(3, 10), search, new TestConverter() {
+            @Override
+            void beforeConvert(String name) throws InterruptedException {
+                started.countDown();
+                if (!started.await(5, TimeUnit.SECONDS)) {
+                    throw new ConnectorException("Not converted concurrently");
+                }
+            }
+        }, -1);
+        assertEquals(results.size(), 3);
+    }
+
+    @Test
+    public void testReadingWaitsForHandler() {
+        final TestSearch search = new TestSearch(1000);
+        final int[] readAhead = new int[] { 0 };
+        new LdapSearchPipeline(2, 5).execute(search, new TestConverter(), new ResultsHandler() {
+            public boolean handle(ConnectorObject object) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                readAhead[0] = Math.max(readAhead[0], search.read - 1);
+                return false;
+            }
+        });
+        // The entry handled, the ones queued, and the one waiting for room.
+        assertTrue(readAhead[0] <= 6, "Read ahead: " + readAhead[0]);
+    }
+
+    @Test
+    public void testHandlerStopsReading() {
+        TestSearch search = new TestSearch(100000);
+        List<String> results = execute(new LdapSearchPipeline(2, 10), search, new TestConverter(), 3);
+        assertEquals(results.size(), 3);
+        // The reader stopped before the search returned.
+        assertTrue(search.completed);
+        assertTrue(search.read < 100);
+    }
+
+    @Test
+    public void testReadFailureIsThrownAfterEntries() {
+        TestSearch search = new TestSearch(2) {
+            @Override
+            void afterRead() {
+                throw new ConnectorException("Server down");
+            }
+        };
+        final List<String> results = new ArrayList<String>();
+        try {
+            new LdapSearchPipeline(2, 10).execute(search, new TestConverter(), collect(results, -1));
+            fail();
+        } catch (ConnectorException e) {
+            assertEquals(e.getMessage(), "Server down");
+        }
+        assertEquals(results.size(), 2);
+    }
+
+    @Test
+    public void testConversionFailureIsThrown() {
+        TestSearch search = new TestSearch(100000);
+        try {
+            execute(new LdapSearchPipeline(2, 10), search, new TestConverter() {
+                @Override
+                void beforeConvert(String name) {
+                    if (name.equals("uid=5")) {
+                        throw new ConnectorException("Bad entry");
+                    }
+                }
+            }, -1);
+            fail();
+        } catch (ConnectorException e) {
+            assertEquals(e.getMessage(), "Bad entry");
+        }
+        assertTrue(search.completed);
+        assertFalse(search.read == 100000);
+    }
+
+    private static List<String> execute(LdapSearchPipeline pipeline, TestSearch search, TestConverter converter, int limit) {
+        List<String> results = new ArrayList<String>();
+        pipeline.execute(search, converter, collect(results, limit));
+        return results;
+    }
+
+    private static ResultsHandler collect(final List<String> results, final int limit) {
+        return new ResultsHandler() {
+            public boolean handle(ConnectorObject object) {
+                results.add(object.getUid().getUidValue());
+                return limit < 0 || results.size() < limit;
+            }
+        };
+    }
+
+    private static class TestSearch extends LdapInternalSearch {
+
+        private final int count;
+        private volatile int read;
+        private volatile boolean completed;
+
+        TestSearch(int count) {
+            super(null, null, null, null, null);
+            this.count = count;
+        }
+
+        void afterRead() {
+        }
+
+        @Override
+        public void execute(LdapSearchResultsHandler handler) {
+            try {
+                for (int i = 0; i < count; i++) {
+                    read++;
+                    if (!handler.handle("o=Acme", new SearchResult("uid=" + i, null, new BasicAttributes()))) {
+                        return;
+                    }
+                }
+                afterRead();
+            } catch (NamingException e) {
+                throw new ConnectorException(e);
+            } finally {
+                completed = true;
+            }
+        }
+    }
+
+    private static class TestConverter implements LdapSearchPipeline.Converter {
+
+        void beforeConvert(String name) throws InterruptedException {
+        }
+
+        public ConnectorObject convert(String baseDN, SearchResult result) {
+            try {
+                beforeConvert(result.getName());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ConnectorObjectBuilder().setUid(result.getName()).setName(result.getName()).build();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.ldap.LdapConstants;
+import org.testng.annotations.Test;
+
+public class LdapSearchPlanTest {
+
+    @Test
+    public void testPlansAreKeyedByObjectClassAndAttributes() {
+        String key = LdapSearchPlan.Cache.getKey(ObjectClass.ACCOUNT, new String[] { "cn", "sn" });
+        assertEquals(LdapSearchPlan.Cache.getKey(ObjectClass.ACCOUNT, new String[] { "cn", "sn" }), key);
+        assertFalse(LdapSearchPlan.Cache.getKey(ObjectClass.GROUP, new String[] { "cn", "sn" }).equals(key));
+        assertFalse(LdapSearchPlan.Cache.getKey(ObjectClass.ACCOUNT, new String[] { "cn" }).equals(key));
+        assertFalse(LdapSearchPlan.Cache.getKey(ObjectClass.ACCOUNT, null).equals(
+                LdapSearchPlan.Cache.getKey(ObjectClass.ACCOUNT, new String[0])));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPlanIsDiscarded() {
+        LdapSearchPlan.Cache cache = new LdapSearchPlan.Cache();
+        LdapSearchPlan first = createPlan("cn");
+        cache.put("0", first);
+        for (int i = 1; i < LdapSearchPlan.Cache.MAX_SIZE; i++) {
+            cache.put(Integer.toString(i), createPlan("cn"));
+        }
+        assertSame(cache.get("0"), first);
+        cache.put("last", createPlan("cn"));
+        assertSame(cache.get("0"), first);
+        assertNull(cache.get("1"));
+
+        cache.clear();
+        assertNull(cache.get("0"));
+    }
+
+    @Test
+    public void testPlanIsNotChangedBySearches() {
+        LdapSearchPlan plan = createPlan("cn", LdapConstants.MS_TOKEN_GROUPS_ATTR);
+        assertTrue(plan.isTokenGroupsRequested());
+        assertFalse(plan.isPosixGroupsRequested());
+        assertEquals(plan.getClassFilter(), "(objectClass=person)");
+
+        plan.getLdapAttributesToGet()[0] = "sn";
+        assertEquals(Arrays.asList(plan.getLdapAttributesToGet()), Arrays.asList("cn"));
+        try {
+            plan.getAttributesToGet().add("sn");
+            fail("The attributes to get of a plan must not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // Expected.
+        }
+    }
+
+    private static LdapSearchPlan createPlan(String... attrsToGet) {
+        Set<String> attrs = new HashSet<String>(Arrays.asList(attrsToGet));
+        return new LdapSearchPlan(attrs, new HashSet<String>(Arrays.asList("cn")), "(objectClass=person)",
+                Collections.<LdapSearchPlan.DecodedAttribute>emptyList());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static java.util.Collections.singletonList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.testng.annotations.Test;
+
+public class LdapSearchResultCacheTest {
+
+    private static final ObjectClass PERSON = new ObjectClass("person");
+
+    @Test
+    public void testHitsAndMissesAreCounted() {
+        LdapSearchResultCache cache = new LdapSearchResultCache(10, 60000);
+        List<ConnectorObject> john = singletonList(createObject(ObjectClass.ACCOUNT, "1", "uid=john,o=Acme"));
+        assertNull(cache.get("john"));
+        cache.put("john", ObjectClass.ACCOUNT, john, cache.getGeneration());
+        assertEquals(cache.get("john"), john);
+        assertEquals(cache.get("john"), john);
+        assertEquals(cache.getHits(), 2L);
+        assertEquals(cache.getMisses(), 1L);
+    }
+
+    @Test
+    public void testWriteDiscardsResultsOfObjectClassAndWrittenEntry() {
+        LdapSearchResultCache cache = new LdapSearchResultCache(10, 60000);
+        cache.put("nobody", ObjectClass.ACCOUNT, Collections.<ConnectorObject>emptyList(), cache.getGeneration());
+        cache.put("person", PERSON, singletonList(createObject(PERSON, "1", "uid=john,o=Acme")), cache.getGeneration());
+        cache.put("other", PERSON, singletonList(createObject(PERSON, "2", "uid=jane,o=Acme")), cache.getGeneration());
+        cache.put("admins", ObjectClass.GROUP, singletonList(createObject(ObjectClass.GROUP, "3", "cn=Admins,o=Acme")), cache.getGeneration());
+
+        cache.invalidate(ObjectClass.ACCOUNT, new Uid("1"), "UID=John,O=Acme");
+        assertNull(cache.get("nobody"));
+        assertNull(cache.get("person"));
+        assertNotNull(cache.get("other"));
+        assertNotNull(cache.get("admins"));
+
+        cache.invalidate(PERSON, null, "uid=nobody,o=Acme");
+        assertNull(cache.get("other"));
+        assertNotNull(cache.get("admins"));
+
+        cache.invalidate(ObjectClass.GROUP, null, "cn=Admins,o=Acme");
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testResultReadDuringWriteIsNotCached() {
+        LdapSearchResultCache cache = new LdapSearchResultCache(10, 60000);
+        long generation = cache.getGeneration();
+        cache.invalidate(ObjectClass.ACCOUNT, new Uid("1"), "uid=john,o=Acme");
+        cache.put("john", ObjectClass.ACCOUNT, singletonList(createObject(ObjectClass.ACCOUNT, "1", "uid=john,o=Acme")), generation);
+        assertNull(cache.get("john"));
+    }
+
+    @Test
+    public void testLargeResultsAreNotCached() {
+        LdapSearchResultCache cache = new LdapSearchResultCache(10, 60000);
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        for (int i = 0; i <= LdapSearchResultCache.MAX_RESULT_SIZE; i++) {
+            objects.add(createObject(ObjectClass.ACCOUNT, Integer.toString(i), "uid=user" + i + ",o=Acme"));
+        }
+        cache.put("all", ObjectClass.ACCOUNT, objects, cache.getGeneration());
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testResultsExpire() throws InterruptedException {
+        LdapSearchResultCache cache = new LdapSearchResultCache(10, 20);
+        cache.put("nobody", ObjectClass.ACCOUNT, Collections.<ConnectorObject>emptyList(), cache.getGeneration());
+        Thread.sleep(40);
+        assertNull(cache.get("nobody"));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testDisabledCache() {
+        for (LdapSearchResultCache cache : new LdapSearchResultCache[] { new LdapSearchResultCache(0, 60000), new LdapSearchResultCache(10, 0) }) {
+            assertFalse(cache.isEnabled());
+            cache.put("nobody", ObjectClass.ACCOUNT, Collections.<ConnectorObject>emptyList(), cache.getGeneration());
+            assertEquals(cache.size(), 0);
+        }
+    }
+
+    private static ConnectorObject createObject(ObjectClass oclass, String uid, String dn) {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setObjectClass(oclass);
+        builder.setUid(uid);
+        builder.setName(dn);
+        return builder.build();
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.1.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.1.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions Copyright 2026 Wren Security.
+ */
+package org.identityconnectors.ldap.search;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.testng.annotations.Test;
+
+public class PagedSearchStrategyTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testEntriesBeforeOffsetAreSkippedInPages() throws Exception {
+        TestDirectory directory = new TestDirectory(100);
+        assertEquals(directory.search(10, 25, null), range(25, 35));
+        assertEquals(directory.pageSizes, Arrays.asList(10, 10, 5, 10));
+    }
+
+    @Test
+    public void testSmallPagesAreSkippedInLargerOnes() throws Exception {
+        TestDirectory directory = new TestDirectory(2000);
+        assertEquals(directory.search(5, 1200, null), range(1200, 1205));
+        assertEquals(directory.pageSizes, Arrays.asList(500, 500, 200, 5));
+    }
+
+    @Test
+    public void testOffsetSpanningBaseContexts() throws Exception {
+        TestDirectory directory = new TestDirectory(15, 15);
+        assertEquals(directory.search(10, 20, null), range(20, 30));
+    }
+
+    @Test
+    public void testOffsetPastLastEntry() throws Exception {
+        TestDirectory directory = new TestDirectory(15);
+        assertEquals(directory.search(10, 20, null), Collections.emptyList());
+        assertEquals(directory.remaining, 0);
+        assertNull(directory.cookie);
+    }
+
+    @Test
+    public void testSearchResumesFromNearestCheckpoint() throws Exception {
+        TestDirectory directory = new TestDirectory(100);
+        PagedResultsCheckpoints checkpoints = new PagedResultsCheckpoints(10, 60000);
+        assertEquals(directory.search(10, 30, checkpoints), range(30, 40));
+        assertEquals(directory.pageSizes.size(), 4);
+
+        // The page after the previous one.
+        directory.pageSizes.clear();
+        assertEquals(directory.search(10, 40, checkpoints), range(40, 50));
+        assertEquals(directory.pageSizes, Arrays.asList(10));
+
+        directory.pageSizes.clear();
+        assertEquals(directory.search(10, 35, checkpoints), range(35, 45));
+        assertEquals(directory.pageSizes, Arrays.asList(5, 10));
+
+        // Another search does not share the checkpoints.
+        directory.pageSizes.clear();
+        assertEquals(directory.search(5, 40, checkpoints), range(40, 45));
+        assertEquals(directory.pageSizes.size(), 9);
+    }
+
+    @Test
+    public void testRejectedCookieRestartsFromFirstEntry() throws Exception {
+        TestDirectory directory = new TestDirectory(100);
+        PagedResultsCheckpoints checkpoints = new PagedResultsCheckpoints(10, 60000);
+        directory.search(10, 30, checkpoints);
+        // The server forgot the cookies it returned.
+        directory.generation++;
+        directory.pageSizes.clear();
+        assertEquals(directory.search(10, 40, checkpoints), range(40, 50));
+        // The pages served after the cookie of the checkpoint at 40 was rejected.
+        assertEquals(directory.pageSizes, Arrays.asList(10, 10, 10, 10, 10));
+    }
+
+    @Test
+    public void testCheckpointsExpire() throws Exception {
+        TestDirectory directory = new TestDirectory(100);
+        PagedResultsCheckpoints checkpoints = new PagedResultsCheckpoints(10, 20);
+        directory.search(10, 30, checkpoints);
+        Thread.sleep(40);
+        directory.pageSizes.clear();
+        assertEquals(directory.search(10, 40, checkpoints), range(40, 50));
+        assertEquals(directory.pageSizes.size(), 5);
+    }
+
+    @Test
+    public void testRemainingResultsEstimatedByServer() throws Exception {
+        TestDirectory directory = new TestDirectory(100);
+        directory.estimates = true;
+        assertEquals(directory.search(10, 25, null), range(25, 35));
+        assertEquals(directory.remaining, 65);
+
+        // The next page, from the cookie of the previous one.
+        assertEquals(directory.search(10, 0, null, directory.cookie), range(35, 45));
+        assertEquals(directory.remaining, 55);
+        assertEquals(directory.search(10, 50, null, directory.cookie), range(95, 100));
+        assertEquals(directory.remaining, 0);
+        assertNull(directory.cookie);
+    }
+
+    @Test
+    public void testRemainingResultsUnknownWithoutEstimate() throws Exception {
+        TestDirectory directory = new TestDirectory(15);
+        assertEquals(directory.search(10, 0, null), range(0, 10));
+        assertEquals(directory.remaining, -1);
+        assertEquals(directory.search(10, 0, null, directory.cookie), range(10, 15));
+        assertEquals(directory.remaining, 0);
+        assertNull(directory.cookie);
+    }
+
+    @Test
+    public void testRemainingResultsUnknownAcrossBaseContexts() throws Exception {
+        TestDirectory directory = new TestDirectory(15, 30);
+        directory.estimates = true;
+        assertEquals(directory.search(10, 20, null), range(20, 30));
+        assertEquals(directory.remaining, -1);
+    }
+
+    private static List<String> range(int from, int to) {
+        List<String> result = new ArrayList<String>();
+        for (int i = from; i < to; i++) {
+            result.add("uid=user" + i);
+        }
+        return result;
+    }
+
+    /**
+     * Serves the pages of the entries of its base contexts. A cookie is the
+     * index of the next entry in the base context.
+     */
+    private static final class TestDirectory {
+
+        private final List<String> baseDNs = new ArrayList<String>();
+        private final List<Integer> sizes = new ArrayList<Integer>();
+        private final List<Integer> pageSizes = new ArrayList<Integer>();
+        private int generation;
+        // Whether the server estimates the number of entries of the search.
+        private boolean estimates;
+        private String cookie;
+        private int remaining;
+
+        TestDirectory(Integer... sizes) {
+            for (int i = 0; i < sizes.length; i++) {
+                baseDNs.add("ou=" + i + ",o=Acme");
+            }
+            this.sizes.addAll(Arrays.asList(sizes));
+        }
+
+        List<String> search(int pageSize, int offset, PagedResultsCheckpoints checkpoints) throws Exception {
+            return search(pageSize, offset, checkpoints, null);
+        }
+
+        List<String> search(int pageSize, int offset, PagedResultsCheckpoints checkpoints, String pagedResultsCookie) throws Exception {
+            final List<String> result = new ArrayList<String>();
+            SearchResultsHandler handler = new SearchResultsHandler() {
+                public boolean handle(ConnectorObject object) {
+                    return true;
+                }
+
+                public void handleResult(org.identityconnectors.framework.common.objects.SearchResult searchResult) {
+                    cookie = searchResult.getPagedResultsCookie();
+                    remaining = searchResult.getRemainingPagedResults();
+                }
+            };
+            PagedSearchStrategy strategy = new PagedSearchStrategy(pageSize, pagedResultsCookie, offset, handler, null, checkpoints, false);
+            strategy.doSearch(createContext(), baseDNs, "(objectClass=*)", new SearchControls(), new LdapSearchResultsHandler() {
+                public boolean handle(String baseDN, SearchResult searchResult) {
+                    result.add(searchResult.getName());
+                    return true;
+                }
+            });
+            return result;
+        }
+
+        private LdapContext createContext() {
+            final Control[][] requestControls = { null };
+            final Control[][] responseControls = { null };
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { LdapContext.class },
+                    new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                            if ("newInstance".equals(method.getName())) {
+                                return proxy;
+                            }
+                            if ("setRequestControls".equals(method.getName())) {
+                                requestControls[0] = (Control[]) args[0];
+                            }
+                            if ("getResponseControls".equals(method.getName())) {
+                                return responseControls[0];
+                            }
+                            if ("search".equals(method.getName())) {
+                                int context = baseDNs.indexOf(args[0]);
+                                byte[][] page = readPagedControl(requestControls[0][0].getEncodedValue());
+                                int size = new BigInteger(page[0]).intValue();
+                                int from = 0;
+                                if (page[1].length > 0) {
+                                    String[] split = new String(page[1], UTF8).split(":");
+                                    if (Integer.parseInt(split[0]) != generation) {
+                                        throw new OperationNotSupportedException("Invalid cookie");
+                                    }
+                                    from = Integer.parseInt(split[1]);
+                                }
+                                pageSizes.add(size);
+                                int to = Math.min(from + size, sizes.get(context));
+                                String next = to < sizes.get(context) ? generation + ":" + to : "";
+                                responseControls[0] = new Control[] { createPagedResponseControl(estimates ? sizes.get(context) : 0, next.getBytes(UTF8)) };
+                                int first = 0;
+                                for (int i = 0; i < context; i++) {
+                                    first += sizes.get(i);
+                                }
+                                List<SearchResult> results = new ArrayList<SearchResult>();
+                                for (int i = from; i < to; i++) {
+                                    results.add(new SearchResult("uid=user" + (first + i), null, new BasicAttributes(true)));
+                                }
+                                return enumeration(results);
+                            }
+                            return null;
+                        }
+                    });
+        }
+    }
+
+    // The value of a paged results control is a sequence of an integer and an octet string.
+    private static byte[][] readPagedControl(byte[] value) {
+        int pos = 2;
+        byte[] size = Arrays.copyOfRange(value, pos + 2, pos + 2 + value[pos + 1]);
+        pos += 2 + value[pos + 1];
+        byte[] cookie = Arrays.copyOfRange(value, pos + 2, pos + 2 + value[pos + 1]);
+        return new byte[][] { size, cookie };
+    }
+
+    private static Control createPagedResponseControl(int resultSize, byte[] cookie) throws IOException {
+        byte[] size = BigInteger.valueOf(resultSize).toByteArray();
+        byte[] value = new byte[6 + size.length + cookie.length];
+        value[0] = 0x30;
+        value[1] = (byte) (4 + size.length + cookie.length);
+        value[2] = 0x02;
+        value[3] = (byte) size.length;
+        System.arraycopy(size, 0, value, 4, size.length);
+        value[4 + size.length] = 0x04;
+        value[5 + size.length] = (byte) cookie.length;
+        System.arraycopy(cookie, 0, value, 6 + size.length, cookie.length);
+        return new PagedResultsResponseControl(PagedResultsResponseControl.OID, false, value);
+    }
+
+    private static NamingEnumeration<SearchResult> enumeration(List<SearchResult> results) {
+        final Iterator<SearchResult> iterator = results.iterator();
+        return new NamingEnumeration<SearchResult>() {
+            public boolean hasMore() {
+                return iterator.hasNext();
+            }
+
+            public SearchResult next() {
+                return iterator.next();
+            }
+
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            public SearchResult nextElement() {
+                return iterator.next();
+            }
+
+            public void close() throws NamingException {
+            }
+        };
+    }
+}